@@ -50,12 +50,14 @@ import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.classfile.constant.*;
 import com.sun.max.vm.classfile.constant.UnresolvedType.*;
 import com.sun.max.vm.compiler.*;
+import com.sun.max.vm.compiler.deopt.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.debug.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.methodhandle.*;
 import com.sun.max.vm.object.*;
+import com.sun.max.vm.profilers.sampling.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.runtime.aarch64.*;
 import com.sun.max.vm.runtime.amd64.*;
@@ -83,6 +85,9 @@ public class MaxXirGenerator implements RiXirGenerator {
             public XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
                 return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
             }
+            public XirTemplate[] barrierStubs() {
+                return XirWriteBarrierSpecification.NO_BARRIER_STUBS;
+            }
         };
     }
 
@@ -217,6 +222,11 @@ public class MaxXirGenerator implements RiXirGenerator {
 
     private static final Class<? extends RuntimeCalls> runtimeCalls = RuntimeCalls.class;
 
+    static {
+        // Allocations taking the slow path of compiled code go through the runtime calls.
+        AllocationSampler.registerRuntimeAllocator(RuntimeCalls.class);
+    }
+
     private CiXirAssembler asm;
 
     @Override
@@ -320,7 +330,10 @@ public class MaxXirGenerator implements RiXirGenerator {
         exceptionObjectTemplate = buildExceptionObject();
 
         MaxTargetMethod.initializeMaxXirGeneratorRuntimeCallsMonitorEnterMethodActor(getRuntimeCallsMonitorEnterMethodActor());
+        Deoptimization.initializeTypeGuardFailedMethodActor(getRuntimeCallsTypeGuardFailedMethodActor());
 
+        // Stubs called by the write barriers are only known once all the templates with write barriers are built.
+        Collections.addAll(stubs, writeBarrierSpecification().barrierStubs());
         return stubs;
     }
 
@@ -333,6 +346,15 @@ public class MaxXirGenerator implements RiXirGenerator {
         return ClassActor.fromJava(MaxXirGenerator.RuntimeCalls.class).findLocalStaticMethodActor(runtimeCallsMonitorEnterMethodName);
     }
 
+    /**
+     * Returns method actor for {@link RuntimeCalls#typeGuardFailed()}.
+     */
+    @HOSTED_ONLY
+    private static StaticMethodActor getRuntimeCallsTypeGuardFailedMethodActor() {
+        Utf8Constant runtimeCallsTypeGuardFailedMethodName = SymbolTable.makeSymbol("typeGuardFailed");
+        return ClassActor.fromJava(MaxXirGenerator.RuntimeCalls.class).findLocalStaticMethodActor(runtimeCallsTypeGuardFailedMethodName);
+    }
+
     @Override
     public XirSnippet genPrologue(XirSite site, RiResolvedMethod method) {
         ClassMethodActor callee = (ClassMethodActor) method;
@@ -684,6 +706,14 @@ public class MaxXirGenerator implements RiXirGenerator {
         return new XirSnippet(typeAssertTemplate, object, hub);
     }
 
+    @Override
+    public XirSnippet genMaterializeTypeCheck(XirSite site, XirArgument object, XirArgument hub, XirArgument trueValue, XirArgument falseValue, RiType type) {
+        assert type instanceof RiResolvedType;
+        assert site.isNonNull(object);
+        // the instanceof test for a leaf type is an exact hub comparison
+        return new XirSnippet(materializedInstanceofForLeafAndNonNullTemplate.resolved, object, hub, trueValue, falseValue);
+    }
+
     @Override
     public XirSnippet genArrayLoad(XirSite site, XirArgument array, XirArgument index, CiKind elementKind, RiType elementType) {
         XirTemplate template;
@@ -1482,7 +1512,7 @@ public class MaxXirGenerator implements RiXirGenerator {
             XirParameter value = asm.createInputParameter("value", kind);
             XirParameter fieldOffset = asm.createConstantInputParameter("fieldOffset", CiKind.Int);
             if (genWriteBarrier) {
-                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset);
             }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
@@ -1501,9 +1531,12 @@ public class MaxXirGenerator implements RiXirGenerator {
             } else {
                 callRuntimeThroughStub(asm, "resolvePutField", fieldOffset, guard);
             }
+            if (genWriteBarrier) {
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset);
+            }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
-                writeBarrier(asm, object, null, value);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_POST_BARRIER).genWriteBarrier(asm, object);
             }
             xirTemplate = finishTemplate(asm, "putfield<" + kind + ", " + genWriteBarrier + ">-unresolved");
         }
@@ -1772,7 +1805,8 @@ public class MaxXirGenerator implements RiXirGenerator {
 
         // -- out of line -------------------------------------------------------
         asm.bindOutOfLine(slowPath);
-        asm.callRuntime(CiRuntimeCall.Deoptimize, null);
+        // records the failed speculation and deoptimizes this frame on return
+        callRuntime(asm, "typeGuardFailed", null);
         asm.shouldNotReachHere();
 
         return asm.finishTemplate(object, "typeCheck");
@@ -1873,10 +1907,6 @@ public class MaxXirGenerator implements RiXirGenerator {
         return template;
     }
 
-    private void writeBarrier(CiXirAssembler asm, XirOperand object, XirOperand fieldOffset, XirOperand value) {
-        // XXX: add write barrier mechanism
-    }
-
     @HOSTED_ONLY
     private void callRuntimeThroughStub(CiXirAssembler asm, String method, XirOperand result, XirOperand... args) {
         XirTemplate stub = runtimeCallStubs.get(method);
@@ -2276,6 +2306,10 @@ public class MaxXirGenerator implements RiXirGenerator {
             vmConfig().monitorScheme().monitorEnter(o);
         }
 
+        public static void typeGuardFailed() {
+            Deoptimization.typeGuardFailed();
+        }
+
         public static void monitorExit(Object o) {
             vmConfig().monitorScheme().monitorExit(o);
         }
@@ -38,6 +38,13 @@
 #include <sys/sysctl.h>
 #endif
 
+#if os_LINUX
+#include <stdio.h>
+#include <dirent.h>
+#include <ctype.h>
+#include <sys/syscall.h>
+#endif
+
 /* There is a problem binding these identifiers in RedHat's include files, so we fake them: */
 #if os_LINUX
 #   ifndef MAP_ANONYMOUS
@@ -310,3 +317,146 @@ Address virtualMemory_pageAlign(Address address) {
     long alignment = virtualMemory_getPageSize() - 1;
     return ((long)(address + alignment) & ~alignment);
 }
+
+#if os_LINUX
+/* Memory policy mode for mbind, defined here to avoid depending on libnuma's numaif.h. */
+#define NUMA_MPOL_PREFERRED 1
+/* Number of NUMA nodes that can be designated by the node mask passed to mbind. */
+#define NUMA_MAX_NODES 1024
+#define NUMA_BITS_PER_MASK_WORD (8 * sizeof(unsigned long))
+#endif
+
+static int numNumaNodes = 0;
+
+/*
+ * Number of NUMA nodes of the platform, as enumerated in sysfs. Returns 1 if the platform isn't NUMA or the information is unavailable.
+ */
+int virtualMemory_numNumaNodes(void) {
+    if (numNumaNodes == 0) {
+        int highestNode = 0;
+#if os_LINUX
+        DIR *nodes = opendir("/sys/devices/system/node");
+        if (nodes != NULL) {
+            struct dirent *entry;
+            while ((entry = readdir(nodes)) != NULL) {
+                if (strncmp(entry->d_name, "node", 4) == 0 && isdigit(entry->d_name[4])) {
+                    int node = atoi(entry->d_name + 4);
+                    if (node > highestNode) {
+                        highestNode = node;
+                    }
+                }
+            }
+            closedir(nodes);
+        }
+        if (highestNode >= NUMA_MAX_NODES) {
+            highestNode = NUMA_MAX_NODES - 1;
+        }
+#endif
+        numNumaNodes = highestNode + 1;
+    }
+    return numNumaNodes;
+}
+
+/*
+ * Set the memory policy of a range of virtual memory so that its pages are preferably allocated on the specified NUMA node.
+ * The policy applies to pages touched after the call, and is lost if the range is re-mapped (e.g., when uncommitted).
+ */
+boolean virtualMemory_bindToNumaNode(Address address, Size size, int node) {
+#if os_LINUX && defined(SYS_mbind)
+    unsigned long nodeMask[NUMA_MAX_NODES / NUMA_BITS_PER_MASK_WORD];
+    if (node < 0 || node >= NUMA_MAX_NODES) {
+        return false;
+    }
+    memset(nodeMask, 0, sizeof(nodeMask));
+    nodeMask[node / NUMA_BITS_PER_MASK_WORD] = 1UL << (node % NUMA_BITS_PER_MASK_WORD);
+    /* The kernel expects the number of bits of the mask plus one. */
+    if (syscall(SYS_mbind, (void *) address, (unsigned long) size, NUMA_MPOL_PREFERRED, nodeMask, (unsigned long) NUMA_MAX_NODES + 1, 0) != 0) {
+#if log_MMAP
+        log_println("mbind(%p, %p, node %d) failed: %s", address, size, node, strerror(errno));
+#endif
+        return false;
+    }
+    return true;
+#else
+    return false;
+#endif
+}
+
+/*
+ * NUMA node of the processor the current thread is running on, 0 if unknown.
+ */
+int virtualMemory_currentNumaNode(void) {
+#if os_LINUX && defined(SYS_getcpu)
+    unsigned int cpu;
+    unsigned int node;
+    if (syscall(SYS_getcpu, &cpu, &node, NULL) == 0) {
+        return (int) node;
+    }
+#endif
+    return 0;
+}
+
+static Size largePageSize = 0;
+static boolean largePageSizeInitialized = false;
+
+/*
+ * Size of the large pages (e.g., 2MB on x86_64 Linux) used to back transparent huge pages, 0 if the platform doesn't support them.
+ */
+Size virtualMemory_getLargePageSize(void) {
+    if (!largePageSizeInitialized) {
+#if os_LINUX && defined(MADV_HUGEPAGE)
+        FILE *meminfo = fopen("/proc/meminfo", "r");
+        if (meminfo != NULL) {
+            char line[256];
+            unsigned long sizeInKB;
+            while (fgets(line, sizeof(line), meminfo) != NULL) {
+                if (sscanf(line, "Hugepagesize: %lu kB", &sizeInKB) == 1) {
+                    largePageSize = (Size) sizeInKB * 1024;
+                    break;
+                }
+            }
+            fclose(meminfo);
+        }
+#endif
+        largePageSizeInitialized = true;
+    }
+    return largePageSize;
+}
+
+/*
+ * Advise the kernel to back a range of virtual memory with transparent huge pages.
+ * The advice is lost if the range is re-mapped (e.g., when uncommitted).
+ * Returns false if transparent huge pages are not available, in which case the range stays backed by normal pages.
+ */
+boolean virtualMemory_adviseLargePages(Address address, Size size) {
+#if os_LINUX && defined(MADV_HUGEPAGE)
+    if (madvise((void *) address, (size_t) size, MADV_HUGEPAGE) != 0) {
+#if log_MMAP
+        log_println("madvise(%p, %p, MADV_HUGEPAGE) failed: %s", address, size, strerror(errno));
+#endif
+        return false;
+    }
+    return true;
+#else
+    return false;
+#endif
+}
+
+/*
+ * Release the physical pages backing a range of virtual memory without unmapping it.
+ * The range stays accessible; its content is lost and reads as zero the next time it is touched.
+ * Returns false if the range couldn't be discarded.
+ */
+boolean virtualMemory_discardMemory(Address address, Size size) {
+#if os_LINUX
+    if (madvise((void *) address, (size_t) size, MADV_DONTNEED) != 0) {
+#if log_MMAP
+        log_println("madvise(%p, %p, MADV_DONTNEED) failed: %s", address, size, strerror(errno));
+#endif
+        return false;
+    }
+    return true;
+#else
+    return false;
+#endif
+}
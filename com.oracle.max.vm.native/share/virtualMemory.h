@@ -49,6 +49,15 @@ extern Size virtualMemory_getPhysicalMemorySize(void);
 
 extern Address virtualMemory_pageAlign(Address address);
 
+extern int virtualMemory_numNumaNodes(void);
+extern boolean virtualMemory_bindToNumaNode(Address address, Size size, int node);
+extern int virtualMemory_currentNumaNode(void);
+
+extern Size virtualMemory_getLargePageSize(void);
+extern boolean virtualMemory_adviseLargePages(Address address, Size size);
+
+extern boolean virtualMemory_discardMemory(Address address, Size size);
+
 extern void virtualMemory_protectPages(Address address, int count);
 extern void virtualMemory_unprotectPages(Address address, int count);
 #endif /*__virtualMemory_h__*/
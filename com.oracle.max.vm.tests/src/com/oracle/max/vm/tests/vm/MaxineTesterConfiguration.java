@@ -159,7 +159,7 @@ public class MaxineTesterConfiguration {
         output(Classes.forName("test.output.GCTest8"), RAND_ALL);
         output(Classes.forName("test.output.CatchOutOfMemory"), RAND_ALL);
 
-        vmoutput(findOutputTests("com.sun.max.vm.tests.vm.output."));
+        vmoutput(findOutputTests("com.oracle.max.vm.tests.vm.output."));
 
         // Register all classes containing JUnit tests on the class path
         findJUnitTests();
@@ -332,6 +332,10 @@ public class MaxineTesterConfiguration {
                         joinCompileCommands(testCallerT1X, testCalleeT1X), "--XX:+FailOverCompilation");
 
         imageConfig("jtt-c1xc1x", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", "-run=com.oracle.max.vm.tests.vm.jtrun.all", build, "-native-tests");
+        // jtt.optimize with one of the C1X level 3 passes (SCCP, LICM, range check elimination) turned off
+        imageConfig("jtt-c1xc1x-nosccp", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", "-run=com.oracle.max.vm.tests.vm.jtrun.all", build, "-native-tests", "--C1X:-OptSCCP");
+        imageConfig("jtt-c1xc1x-nolicm", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", "-run=com.oracle.max.vm.tests.vm.jtrun.all", build, "-native-tests", "--C1X:-OptLoopInvariantCodeMotion");
+        imageConfig("jtt-c1xc1x-norce", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", "-run=com.oracle.max.vm.tests.vm.jtrun.all", build, "-native-tests", "--C1X:-OptRangeCheckElimination");
         imageConfig("jtt-c1xgraal", opt_c1xgraal, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-native-tests", joinCompileCommands(testCallerT1X, testCalleeGraal));
 
         imageConfig("jtt-msc1xt1x", opt_c1x, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-heap=gcx.ms", "-native-tests", testCalleeT1X);
@@ -343,6 +347,7 @@ public class MaxineTesterConfiguration {
         imageConfig("jtt-mset1xc1x", opt_c1x, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-heap=gcx.mse", "-native-tests", testCallerT1X);
         imageConfig("jtt-mset1xt1x", opt_c1x, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-heap=gcx.mse", "-native-tests", joinCompileCommands(testCallerT1X, testCalleeT1X));
         imageConfig("jtt-msec1xc1x", opt_c1x, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-heap=gcx.mse", "-native-tests");
+        imageConfig("jtt-immixc1xc1x", opt_c1x, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-heap=gcx.immix", "-native-tests");
 
         imageConfig("vm-output", "-run=com.oracle.max.vm.tests.vm.output");
 
@@ -358,6 +363,19 @@ public class MaxineTesterConfiguration {
         maxvmConfig("mx256m", "-Xmx256m");
         maxvmConfig("mx512m", "-Xmx512m");
 
+        // Lazy sweeping of the gcx.mse heap schemes
+        maxvmConfig("lazysweep", "-Xmx256m", "-XX:+LazySweep");
+        // Heap verification after each GC (gcx heap schemes)
+        maxvmConfig("verifygc", "-Xmx256m", "-XX:+VerifyAfterGC");
+        // Parallel GC worker threads started while collections are forced (gcx.mse heap schemes)
+        maxvmConfig("pargcstress", "-Xmx256m", "-XX:ParallelGCThreads=4", "-XX:ExcessiveGCFrequency=5");
+        // Parallel evacuation with small evacuation buffers, so that workers often run out of them (gcx.gen.mse heap scheme)
+        maxvmConfig("parevac", "-Xmx256m", "-XX:ParallelGCThreads=4", "-XX:ELABSize=4k");
+        // Young generation resized after every minor collection to a tight pause time goal (gcx.gen.mse heap scheme)
+        maxvmConfig("pausegoal", "-Xmx256m", "-XX:MaxGCPauseMillis=1", "-XX:+VerifyAfterGC");
+        // Concurrent marking of the gcx.mse heap scheme (needs an image built with SATB barriers, e.g., msed-satb)
+        maxvmConfig("concmark", "-Xmx256m", "-XX:+ConcurrentMarking", "-XX:ConcurrentMarkingOccupancyPercent=10");
+
         // VEE 2010 benchmarking configurations
         maxvmConfig("noGC", "-XX:+DisableGC", "-Xmx3g");
         maxvmConfig("GC", "-Xmx2g");
@@ -391,8 +409,11 @@ public class MaxineTesterConfiguration {
         imageConfig("msd", opt_c1x, "-run=java", "-heap=gcx.ms", "-build=DEBUG");
         imageConfig("msed", opt_c1x, "-run=java", "-heap=gcx.mse", "-build=DEBUG");
         imageConfig("mse", opt_c1x, "-run=java", "-heap=gcx.mse");
+        imageConfig("msed-satb", opt_c1x, "-run=java", "-heap=gcx.mse", "-build=DEBUG", "--J @\"-Dmax.heap.mse.satb=true\"");
         imageConfig("gmse", opt_c1x, "-run=java", "-heap=gcx.gen.mse");
         imageConfig("gmsed", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "-build=DEBUG");
+        imageConfig("immix", opt_c1x, "-run=java", "-heap=gcx.immix");
+        imageConfig("immixd", opt_c1x, "-run=java", "-heap=gcx.immix", "-build=DEBUG");
 
         // VMA configurations
         final String vmaT1X = "com.oracle.max.vm.ext.vma.t1x.VMAT1X";
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.vm.tests.vm.compiler;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.oracle.max.vm.tests.vm.VmTestCase;
+import com.oracle.max.vm.tests.vm.VmTestSetup;
+import junit.framework.*;
+
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.*;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * Tests for the queue of {@link CompilationThreadPool}. Compilations are recorded instead of being performed.
+ */
+public class CompilationThreadPoolTest extends VmTestCase {
+
+    public static Test suite() {
+        final TestSuite suite = new TestSuite(CompilationThreadPoolTest.class.getSimpleName());
+        suite.addTestSuite(CompilationThreadPoolTest.class);
+        return new VmTestSetup(suite);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CompilationThreadPoolTest.suite());
+    }
+
+    public CompilationThreadPoolTest(String name) {
+        super(name);
+    }
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    static class RecordingPool extends CompilationThreadPool {
+        final List<ClassMethodActor> compiled = Collections.synchronizedList(new ArrayList<ClassMethodActor>());
+        final CountDownLatch latch;
+
+        RecordingPool(int expectedCompilations, int halfLife, int staleTime) {
+            super(1, halfLife, staleTime);
+            latch = new CountDownLatch(expectedCompilations);
+            setDaemon(true);
+        }
+
+        @Override
+        protected void compile(Compilation compilation) {
+            compiled.add(compilation.classMethodActor);
+            latch.countDown();
+        }
+    }
+
+    public static void first() {
+    }
+
+    public static void second() {
+    }
+
+    public static void third() {
+    }
+
+    private static ClassMethodActor methodActor(String name) throws NoSuchMethodException {
+        return ClassMethodActor.fromJava(CompilationThreadPoolTest.class.getDeclaredMethod(name));
+    }
+
+    /**
+     * Creates a compilation of a method that has no compiled code yet, and so can't be abandoned.
+     */
+    private static Compilation newCompilation(ClassMethodActor classMethodActor) {
+        final Compilation compilation = new Compilation(null, classMethodActor, Compilations.EMPTY, null, RuntimeCompiler.Nature.OPT, false);
+        // Not compiled by this thread.
+        compilation.relinquishOwnership();
+        return compilation;
+    }
+
+    public void test_hottestFirst() throws Exception {
+        final RecordingPool pool = new RecordingPool(3, 0, 0);
+        final Compilation first = newCompilation(methodActor("first"));
+        final Compilation second = newCompilation(methodActor("second"));
+        final Compilation third = newCompilation(methodActor("third"));
+        pool.addCompilationToQueue(first);
+        pool.addCompilationToQueue(second);
+        pool.addCompilationToQueue(third);
+        pool.requestCompilation(third);
+        pool.requestCompilation(third);
+        pool.requestCompilation(second);
+        pool.startThreads();
+        assertTrue(pool.latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(third.classMethodActor, second.classMethodActor, first.classMethodActor), pool.compiled);
+    }
+
+    /**
+     * A stale compilation that can't be abandoned is put back in the queue. The thread that dropped it must poll the
+     * queue again rather than wait for a signal that no enqueue will send.
+     */
+    public void test_stalePolledAgainAfterDrop() throws Exception {
+        final int staleTime = 5;
+        final RecordingPool pool = new RecordingPool(2, 0, staleTime);
+        final Compilation first = newCompilation(methodActor("first"));
+        final Compilation second = newCompilation(methodActor("second"));
+        pool.addCompilationToQueue(first);
+        pool.addCompilationToQueue(second);
+        Thread.sleep(10 * staleTime);
+        pool.startThreads();
+        assertTrue("stale compilations were left in the queue", pool.latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, pool.compiled.size());
+        assertTrue(pool.compiled.contains(first.classMethodActor));
+        assertTrue(pool.compiled.contains(second.classMethodActor));
+    }
+}
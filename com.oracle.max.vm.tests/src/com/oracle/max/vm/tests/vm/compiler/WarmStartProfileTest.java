@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.vm.tests.vm.compiler;
+
+import java.io.*;
+import java.util.*;
+
+import com.oracle.max.vm.tests.vm.VmTestCase;
+import com.oracle.max.vm.tests.vm.VmTestSetup;
+import junit.framework.*;
+
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.*;
+
+/**
+ * Tests for {@link WarmStartProfile}.
+ */
+public class WarmStartProfileTest extends VmTestCase {
+
+    public static Test suite() {
+        final TestSuite suite = new TestSuite(WarmStartProfileTest.class.getSimpleName());
+        suite.addTestSuite(WarmStartProfileTest.class);
+        return new VmTestSetup(suite);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(WarmStartProfileTest.suite());
+    }
+
+    public WarmStartProfileTest(String name) {
+        super(name);
+    }
+
+    public static int hot(int i) {
+        return i + 1;
+    }
+
+    public static long hot(long l) {
+        return l + 1;
+    }
+
+    public static int warm(int i) {
+        return i - 1;
+    }
+
+    public static int cold(int i) {
+        return i * 2;
+    }
+
+    private static ClassMethodActor methodActor(String name, Class... parameterTypes) throws NoSuchMethodException {
+        return ClassMethodActor.fromJava(WarmStartProfileTest.class.getDeclaredMethod(name, parameterTypes));
+    }
+
+    public void test_roundTrip() throws Exception {
+        final ClassMethodActor hotInt = methodActor("hot", int.class);
+        final ClassMethodActor hotLong = methodActor("hot", long.class);
+        final ClassMethodActor warm = methodActor("warm", int.class);
+        final ClassMethodActor cold = methodActor("cold", int.class);
+        final File first = File.createTempFile("WarmStartProfileTest", ".txt");
+        final File second = File.createTempFile("WarmStartProfileTest", ".txt");
+        try {
+            WarmStartProfile.load(first.getPath());
+            WarmStartProfile.save(first.getPath(), Arrays.asList(hotInt));
+            WarmStartProfile.load(first.getPath());
+            assertTrue(WarmStartProfile.contains(hotInt));
+            // Overloads are told apart by their signature.
+            assertFalse(WarmStartProfile.contains(hotLong));
+            assertFalse(WarmStartProfile.contains(warm));
+
+            // A new profile keeps the methods of the profile it was started with.
+            WarmStartProfile.save(second.getPath(), Arrays.asList(warm));
+            WarmStartProfile.load(second.getPath());
+            assertTrue(WarmStartProfile.contains(hotInt));
+            assertTrue(WarmStartProfile.contains(warm));
+            assertFalse(WarmStartProfile.contains(hotLong));
+            assertFalse(WarmStartProfile.contains(cold));
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    public void test_malformedLinesIgnored() throws Exception {
+        final ClassMethodActor hotInt = methodActor("hot", int.class);
+        final File file = File.createTempFile("WarmStartProfileTest", ".txt");
+        try {
+            final PrintStream out = new PrintStream(new FileOutputStream(file));
+            out.println("# comment");
+            out.println();
+            out.println("malformed");
+            out.println(hotInt.holder().typeDescriptor.string + " " + hotInt.name.string + " " + hotInt.descriptor().string);
+            out.close();
+            WarmStartProfile.load(file.getPath());
+            assertTrue(WarmStartProfile.contains(hotInt));
+        } finally {
+            file.delete();
+        }
+    }
+}
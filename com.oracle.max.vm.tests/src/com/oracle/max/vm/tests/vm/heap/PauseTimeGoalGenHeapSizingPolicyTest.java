@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.vm.tests.vm.heap;
+
+import com.oracle.max.vm.tests.vm.VmTestCase;
+import com.oracle.max.vm.tests.vm.VmTestSetup;
+import junit.framework.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.gcx.*;
+
+/**
+ * Tests for {@link PauseTimeGoalGenHeapSizingPolicy}.
+ */
+public class PauseTimeGoalGenHeapSizingPolicyTest extends VmTestCase {
+
+    public static Test suite() {
+        final TestSuite suite = new TestSuite(PauseTimeGoalGenHeapSizingPolicyTest.class.getSimpleName());
+        suite.addTestSuite(PauseTimeGoalGenHeapSizingPolicyTest.class);
+        return new VmTestSetup(suite);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PauseTimeGoalGenHeapSizingPolicyTest.suite());
+    }
+
+    public PauseTimeGoalGenHeapSizingPolicyTest(String name) {
+        super(name);
+    }
+
+    private static final long MS = 1000000L;
+
+    private static final int PAUSE_TIME_GOAL_MILLIS = 10;
+    private static final int GC_TIME_PERCENT_GOAL = 10;
+
+    private static PauseTimeGoalGenHeapSizingPolicy createPolicy() {
+        return new PauseTimeGoalGenHeapSizingPolicy(Size.M.times(64), Size.M.times(256), 25, 20, 8, 15, 50,
+                        PAUSE_TIME_GOAL_MILLIS, GC_TIME_PERCENT_GOAL);
+    }
+
+    private static Size eden(PauseTimeGoalGenHeapSizingPolicy policy, Size youngGenSize) {
+        return youngGenSize.minus(policy.survivorSpaceSize().times(2));
+    }
+
+    public void test_firstCollectionIsNotSampled() {
+        final PauseTimeGoalGenHeapSizingPolicy policy = createPolicy();
+        final Size youngGenSize = policy.initialYoungGenSize();
+        // No mutator phase precedes the first collection: neither the pause nor the GC time can be judged.
+        assertEquals(youngGenSize, policy.youngGenSizeAfterMinorCollection(youngGenSize, 100 * MS, -1L));
+        // The ignored sample doesn't weigh on later decisions.
+        assertEquals(youngGenSize, policy.youngGenSizeAfterMinorCollection(youngGenSize, MS, 1000 * MS));
+    }
+
+    public void test_goalsMet() {
+        final PauseTimeGoalGenHeapSizingPolicy policy = createPolicy();
+        final Size youngGenSize = policy.initialYoungGenSize();
+        assertEquals(youngGenSize, policy.youngGenSizeAfterMinorCollection(youngGenSize, MS, 1000 * MS));
+    }
+
+    public void test_shrinkWhenPauseAboveGoal() {
+        final PauseTimeGoalGenHeapSizingPolicy policy = createPolicy();
+        final Size youngGenSize = policy.initialYoungGenSize();
+        final Size newYoungGenSize = policy.youngGenSizeAfterMinorCollection(youngGenSize, 15 * MS, 1000 * MS);
+        assertTrue(newYoungGenSize.lessThan(youngGenSize));
+        // Never shrink eden by more than half in one step.
+        assertTrue(eden(policy, newYoungGenSize).greaterEqual(eden(policy, youngGenSize).dividedBy(2)));
+    }
+
+    public void test_growWhenGCTimeAboveGoal() {
+        final PauseTimeGoalGenHeapSizingPolicy policy = createPolicy();
+        final Size youngGenSize = policy.initialYoungGenSize();
+        // 1 ms pauses every 4 ms of mutator time: 20% of the time is spent in GC.
+        final Size newYoungGenSize = policy.youngGenSizeAfterMinorCollection(youngGenSize, MS, 4 * MS);
+        assertTrue(newYoungGenSize.greaterThan(youngGenSize));
+        // Never grow eden more than twice in one step.
+        assertTrue(eden(policy, newYoungGenSize).lessEqual(eden(policy, youngGenSize).times(2)));
+    }
+
+    public void test_noGrowthWithoutPauseHeadroom() {
+        final PauseTimeGoalGenHeapSizingPolicy policy = createPolicy();
+        final Size youngGenSize = policy.initialYoungGenSize();
+        // GC time is above goal, but the pause is already close to the goal.
+        assertEquals(youngGenSize, policy.youngGenSizeAfterMinorCollection(youngGenSize, 95 * MS / 10, 10 * MS));
+    }
+
+    public void test_bounds() {
+        final PauseTimeGoalGenHeapSizingPolicy policy = createPolicy();
+        Size youngGenSize = policy.initialYoungGenSize();
+        for (int i = 0; i < 20; i++) {
+            youngGenSize = policy.youngGenSizeAfterMinorCollection(youngGenSize, 1000 * MS, 1000 * MS);
+            assertTrue(youngGenSize.greaterEqual(policy.minYoungGenSize()));
+        }
+        assertEquals(policy.minYoungGenSize(), youngGenSize);
+
+        final PauseTimeGoalGenHeapSizingPolicy otherPolicy = createPolicy();
+        youngGenSize = otherPolicy.initialYoungGenSize();
+        for (int i = 0; i < 20; i++) {
+            youngGenSize = otherPolicy.youngGenSizeAfterMinorCollection(youngGenSize, MS / 10, MS / 10);
+            assertTrue(youngGenSize.lessEqual(otherPolicy.maxYoungGenSize()));
+        }
+        assertEquals(otherPolicy.maxYoungGenSize(), youngGenSize);
+    }
+}
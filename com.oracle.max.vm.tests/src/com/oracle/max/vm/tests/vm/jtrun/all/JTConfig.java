@@ -600,6 +600,10 @@ public class JTConfig {
         jtt.optimize.ABCE_01.class,
         jtt.optimize.ABCE_02.class,
         jtt.optimize.ABCE_03.class,
+        jtt.optimize.ABCE_04.class,
+        jtt.optimize.ABCE_05.class,
+        jtt.optimize.ABCE_06.class,
+        jtt.optimize.ABCE_07.class,
         jtt.optimize.ArrayCopy01.class,
         jtt.optimize.ArrayLength01.class,
         jtt.optimize.BC_idiv_16.class,
@@ -637,6 +641,7 @@ public class JTConfig {
         jtt.optimize.Fold_Math01.class,
         jtt.optimize.Inline01.class,
         jtt.optimize.Inline02.class,
+        jtt.optimize.LICM_01.class,
         jtt.optimize.LLE_01.class,
         jtt.optimize.List_reorder_bug.class,
         jtt.optimize.NCE_01.class,
@@ -675,9 +680,13 @@ public class JTConfig {
         jtt.optimize.Reduce_Long04.class,
         jtt.optimize.Reduce_LongShift01.class,
         jtt.optimize.Reduce_LongShift02.class,
+        jtt.optimize.SCCP_01.class,
+        jtt.optimize.SCCP_02.class,
         jtt.optimize.Switch01.class,
         jtt.optimize.Switch02.class,
         jtt.optimize.TypeCastElem.class,
+        jtt.optimize.TypeGuard01.class,
+        jtt.optimize.TypeGuard02.class,
         jtt.optimize.VN_Cast01.class,
         jtt.optimize.VN_Cast02.class,
         jtt.optimize.VN_Convert01.class,
@@ -652,190 +652,199 @@ public class JTRuns {
             case 567: jtt_optimize_ABCE_01(); break;
             case 568: jtt_optimize_ABCE_02(); break;
             case 569: jtt_optimize_ABCE_03(); break;
-            case 570: jtt_optimize_ArrayCopy01(); break;
-            case 571: jtt_optimize_ArrayLength01(); break;
-            case 572: jtt_optimize_BC_idiv_16(); break;
-            case 573: jtt_optimize_BC_idiv_4(); break;
-            case 574: jtt_optimize_BC_imul_16(); break;
-            case 575: jtt_optimize_BC_imul_4(); break;
-            case 576: jtt_optimize_BC_ldiv_16(); break;
-            case 577: jtt_optimize_BC_ldiv_4(); break;
-            case 578: jtt_optimize_BC_lmul_16(); break;
-            case 579: jtt_optimize_BC_lmul_4(); break;
-            case 580: jtt_optimize_BC_lshr_C16(); break;
-            case 581: jtt_optimize_BC_lshr_C24(); break;
-            case 582: jtt_optimize_BC_lshr_C32(); break;
-            case 583: jtt_optimize_BlockSkip01(); break;
-            case 584: jtt_optimize_Cmov01(); break;
-            case 585: jtt_optimize_Cmov02(); break;
-            case 586: jtt_optimize_Conditional01(); break;
-            case 587: jtt_optimize_DeadCode01(); break;
-            case 588: jtt_optimize_DeadCode02(); break;
-            case 589: jtt_optimize_Fold_Cast01(); break;
-            case 590: jtt_optimize_Fold_Convert01(); break;
-            case 591: jtt_optimize_Fold_Convert02(); break;
-            case 592: jtt_optimize_Fold_Convert03(); break;
-            case 593: jtt_optimize_Fold_Convert04(); break;
-            case 594: jtt_optimize_Fold_Double01(); break;
-            case 595: jtt_optimize_Fold_Double02(); break;
-            case 596: jtt_optimize_Fold_Double03(); break;
-            case 597: jtt_optimize_Fold_Float01(); break;
-            case 598: jtt_optimize_Fold_Float02(); break;
-            case 599: jtt_optimize_Fold_InstanceOf01(); break;
-            case 600: jtt_optimize_Fold_Int01(); break;
-            case 601: jtt_optimize_Fold_Int02(); break;
-            case 602: jtt_optimize_Fold_Long01(); break;
-            case 603: jtt_optimize_Fold_Long02(); break;
-            case 604: jtt_optimize_Fold_Math01(); break;
-            case 605: jtt_optimize_Inline01(); break;
-            case 606: jtt_optimize_Inline02(); break;
-            case 607: jtt_optimize_LLE_01(); break;
-            case 608: jtt_optimize_List_reorder_bug(); break;
-            case 609: jtt_optimize_NCE_01(); break;
-            case 610: jtt_optimize_NCE_02(); break;
-            case 611: jtt_optimize_NCE_03(); break;
-            case 612: jtt_optimize_NCE_04(); break;
-            case 613: jtt_optimize_NCE_FlowSensitive01(); break;
-            case 614: jtt_optimize_NCE_FlowSensitive02(); break;
-            case 615: jtt_optimize_NCE_FlowSensitive03(); break;
-            case 616: jtt_optimize_NCE_FlowSensitive04(); break;
-            case 617: jtt_optimize_NCE_FlowSensitive05(); break;
-            case 618: jtt_optimize_Narrow_byte01(); break;
-            case 619: jtt_optimize_Narrow_byte02(); break;
-            case 620: jtt_optimize_Narrow_byte03(); break;
-            case 621: jtt_optimize_Narrow_char01(); break;
-            case 622: jtt_optimize_Narrow_char02(); break;
-            case 623: jtt_optimize_Narrow_char03(); break;
-            case 624: jtt_optimize_Narrow_short01(); break;
-            case 625: jtt_optimize_Narrow_short02(); break;
-            case 626: jtt_optimize_Narrow_short03(); break;
-            case 627: jtt_optimize_Phi01(); break;
-            case 628: jtt_optimize_Phi02(); break;
-            case 629: jtt_optimize_Phi03(); break;
-            case 630: jtt_optimize_Reduce_Convert01(); break;
-            case 631: jtt_optimize_Reduce_Double01(); break;
-            case 632: jtt_optimize_Reduce_Float01(); break;
-            case 633: jtt_optimize_Reduce_Int01(); break;
-            case 634: jtt_optimize_Reduce_Int02(); break;
-            case 635: jtt_optimize_Reduce_Int03(); break;
-            case 636: jtt_optimize_Reduce_Int04(); break;
-            case 637: jtt_optimize_Reduce_IntShift01(); break;
-            case 638: jtt_optimize_Reduce_IntShift02(); break;
-            case 639: jtt_optimize_Reduce_Long01(); break;
-            case 640: jtt_optimize_Reduce_Long02(); break;
-            case 641: jtt_optimize_Reduce_Long03(); break;
-            case 642: jtt_optimize_Reduce_Long04(); break;
-            case 643: jtt_optimize_Reduce_LongShift01(); break;
-            case 644: jtt_optimize_Reduce_LongShift02(); break;
-            case 645: jtt_optimize_Switch01(); break;
-            case 646: jtt_optimize_Switch02(); break;
-            case 647: jtt_optimize_TypeCastElem(); break;
-            case 648: jtt_optimize_VN_Cast01(); break;
-            case 649: jtt_optimize_VN_Cast02(); break;
-            case 650: jtt_optimize_VN_Convert01(); break;
-            case 651: jtt_optimize_VN_Convert02(); break;
-            case 652: jtt_optimize_VN_Double01(); break;
-            case 653: jtt_optimize_VN_Double02(); break;
-            case 654: jtt_optimize_VN_Field01(); break;
-            case 655: jtt_optimize_VN_Field02(); break;
-            case 656: jtt_optimize_VN_Float01(); break;
-            case 657: jtt_optimize_VN_Float02(); break;
-            case 658: jtt_optimize_VN_InstanceOf01(); break;
-            case 659: jtt_optimize_VN_InstanceOf02(); break;
-            case 660: jtt_optimize_VN_InstanceOf03(); break;
-            case 661: jtt_optimize_VN_Int01(); break;
-            case 662: jtt_optimize_VN_Int02(); break;
-            case 663: jtt_optimize_VN_Int03(); break;
-            case 664: jtt_optimize_VN_Long01(); break;
-            case 665: jtt_optimize_VN_Long02(); break;
-            case 666: jtt_optimize_VN_Long03(); break;
-            case 667: jtt_optimize_VN_Loop01(); break;
-            case 668: jtt_reflect_Array_get01(); break;
-            case 669: jtt_reflect_Array_get02(); break;
-            case 670: jtt_reflect_Array_get03(); break;
-            case 671: jtt_reflect_Array_getBoolean01(); break;
-            case 672: jtt_reflect_Array_getByte01(); break;
-            case 673: jtt_reflect_Array_getChar01(); break;
-            case 674: jtt_reflect_Array_getDouble01(); break;
-            case 675: jtt_reflect_Array_getFloat01(); break;
-            case 676: jtt_reflect_Array_getInt01(); break;
-            case 677: jtt_reflect_Array_getLength01(); break;
-            case 678: jtt_reflect_Array_getLong01(); break;
-            case 679: jtt_reflect_Array_getShort01(); break;
-            case 680: jtt_reflect_Array_newInstance01(); break;
-            case 681: jtt_reflect_Array_newInstance02(); break;
-            case 682: jtt_reflect_Array_newInstance03(); break;
-            case 683: jtt_reflect_Array_newInstance04(); break;
-            case 684: jtt_reflect_Array_newInstance05(); break;
-            case 685: jtt_reflect_Array_newInstance06(); break;
-            case 686: jtt_reflect_Array_set01(); break;
-            case 687: jtt_reflect_Array_set02(); break;
-            case 688: jtt_reflect_Array_set03(); break;
-            case 689: jtt_reflect_Array_setBoolean01(); break;
-            case 690: jtt_reflect_Array_setByte01(); break;
-            case 691: jtt_reflect_Array_setChar01(); break;
-            case 692: jtt_reflect_Array_setDouble01(); break;
-            case 693: jtt_reflect_Array_setFloat01(); break;
-            case 694: jtt_reflect_Array_setInt01(); break;
-            case 695: jtt_reflect_Array_setLong01(); break;
-            case 696: jtt_reflect_Array_setShort01(); break;
-            case 697: jtt_reflect_Class_getDeclaredField01(); break;
-            case 698: jtt_reflect_Class_getDeclaredMethod01(); break;
-            case 699: jtt_reflect_Class_getField01(); break;
-            case 700: jtt_reflect_Class_getField02(); break;
-            case 701: jtt_reflect_Class_getMethod01(); break;
-            case 702: jtt_reflect_Class_getMethod02(); break;
-            case 703: jtt_reflect_Class_newInstance01(); break;
-            case 704: jtt_reflect_Class_newInstance02(); break;
-            case 705: jtt_reflect_Class_newInstance03(); break;
-            case 706: jtt_reflect_Class_newInstance06(); break;
-            case 707: jtt_reflect_Class_newInstance07(); break;
-            case 708: jtt_reflect_Field_get01(); break;
-            case 709: jtt_reflect_Field_get02(); break;
-            case 710: jtt_reflect_Field_get03(); break;
-            case 711: jtt_reflect_Field_get04(); break;
-            case 712: jtt_reflect_Field_getType01(); break;
-            case 713: jtt_reflect_Field_set01(); break;
-            case 714: jtt_reflect_Field_set02(); break;
-            case 715: jtt_reflect_Field_set03(); break;
-            case 716: jtt_reflect_Invoke_except01(); break;
-            case 717: jtt_reflect_Invoke_main01(); break;
-            case 718: jtt_reflect_Invoke_main02(); break;
-            case 719: jtt_reflect_Invoke_main03(); break;
-            case 720: jtt_reflect_Invoke_virtual01(); break;
-            case 721: jtt_reflect_Method_getParameterTypes01(); break;
-            case 722: jtt_reflect_Method_getReturnType01(); break;
-            case 723: jtt_reflect_Reflection_getCallerClass01(); break;
-            case 724: jtt_reflect_Reflection_getCallerClass02(); break;
-            case 725: jtt_threads_Monitor_contended01(); break;
-            case 726: jtt_threads_Monitor_notowner01(); break;
-            case 727: jtt_threads_Monitorenter01(); break;
-            case 728: jtt_threads_Monitorenter02(); break;
-            case 729: jtt_threads_Object_wait01(); break;
-            case 730: jtt_threads_Object_wait02(); break;
-            case 731: jtt_threads_Object_wait03(); break;
-            case 732: jtt_threads_Object_wait04(); break;
-            case 733: jtt_threads_ThreadLocal01(); break;
-            case 734: jtt_threads_ThreadLocal02(); break;
-            case 735: jtt_threads_ThreadLocal03(); break;
-            case 736: jtt_threads_Thread_currentThread01(); break;
-            case 737: jtt_threads_Thread_getState01(); break;
-            case 738: jtt_threads_Thread_getState02(); break;
-            case 739: jtt_threads_Thread_holdsLock01(); break;
-            case 740: jtt_threads_Thread_isAlive01(); break;
-            case 741: jtt_threads_Thread_isInterrupted01(); break;
-            case 742: jtt_threads_Thread_isInterrupted02(); break;
-            case 743: jtt_threads_Thread_isInterrupted03(); break;
-            case 744: jtt_threads_Thread_isInterrupted04(); break;
-            case 745: jtt_threads_Thread_isInterrupted05(); break;
-            case 746: jtt_threads_Thread_join01(); break;
-            case 747: jtt_threads_Thread_join02(); break;
-            case 748: jtt_threads_Thread_join03(); break;
-            case 749: jtt_threads_Thread_new01(); break;
-            case 750: jtt_threads_Thread_new02(); break;
-            case 751: jtt_threads_Thread_setPriority01(); break;
-            case 752: jtt_threads_Thread_sleep01(); break;
-            case 753: jtt_threads_Thread_yield01(); break;
+            case 570: jtt_optimize_ABCE_04(); break;
+            case 571: jtt_optimize_ABCE_05(); break;
+            case 572: jtt_optimize_ABCE_06(); break;
+            case 573: jtt_optimize_ABCE_07(); break;
+            case 574: jtt_optimize_ArrayCopy01(); break;
+            case 575: jtt_optimize_ArrayLength01(); break;
+            case 576: jtt_optimize_BC_idiv_16(); break;
+            case 577: jtt_optimize_BC_idiv_4(); break;
+            case 578: jtt_optimize_BC_imul_16(); break;
+            case 579: jtt_optimize_BC_imul_4(); break;
+            case 580: jtt_optimize_BC_ldiv_16(); break;
+            case 581: jtt_optimize_BC_ldiv_4(); break;
+            case 582: jtt_optimize_BC_lmul_16(); break;
+            case 583: jtt_optimize_BC_lmul_4(); break;
+            case 584: jtt_optimize_BC_lshr_C16(); break;
+            case 585: jtt_optimize_BC_lshr_C24(); break;
+            case 586: jtt_optimize_BC_lshr_C32(); break;
+            case 587: jtt_optimize_BlockSkip01(); break;
+            case 588: jtt_optimize_Cmov01(); break;
+            case 589: jtt_optimize_Cmov02(); break;
+            case 590: jtt_optimize_Conditional01(); break;
+            case 591: jtt_optimize_DeadCode01(); break;
+            case 592: jtt_optimize_DeadCode02(); break;
+            case 593: jtt_optimize_Fold_Cast01(); break;
+            case 594: jtt_optimize_Fold_Convert01(); break;
+            case 595: jtt_optimize_Fold_Convert02(); break;
+            case 596: jtt_optimize_Fold_Convert03(); break;
+            case 597: jtt_optimize_Fold_Convert04(); break;
+            case 598: jtt_optimize_Fold_Double01(); break;
+            case 599: jtt_optimize_Fold_Double02(); break;
+            case 600: jtt_optimize_Fold_Double03(); break;
+            case 601: jtt_optimize_Fold_Float01(); break;
+            case 602: jtt_optimize_Fold_Float02(); break;
+            case 603: jtt_optimize_Fold_InstanceOf01(); break;
+            case 604: jtt_optimize_Fold_Int01(); break;
+            case 605: jtt_optimize_Fold_Int02(); break;
+            case 606: jtt_optimize_Fold_Long01(); break;
+            case 607: jtt_optimize_Fold_Long02(); break;
+            case 608: jtt_optimize_Fold_Math01(); break;
+            case 609: jtt_optimize_Inline01(); break;
+            case 610: jtt_optimize_Inline02(); break;
+            case 611: jtt_optimize_LICM_01(); break;
+            case 612: jtt_optimize_LLE_01(); break;
+            case 613: jtt_optimize_List_reorder_bug(); break;
+            case 614: jtt_optimize_NCE_01(); break;
+            case 615: jtt_optimize_NCE_02(); break;
+            case 616: jtt_optimize_NCE_03(); break;
+            case 617: jtt_optimize_NCE_04(); break;
+            case 618: jtt_optimize_NCE_FlowSensitive01(); break;
+            case 619: jtt_optimize_NCE_FlowSensitive02(); break;
+            case 620: jtt_optimize_NCE_FlowSensitive03(); break;
+            case 621: jtt_optimize_NCE_FlowSensitive04(); break;
+            case 622: jtt_optimize_NCE_FlowSensitive05(); break;
+            case 623: jtt_optimize_Narrow_byte01(); break;
+            case 624: jtt_optimize_Narrow_byte02(); break;
+            case 625: jtt_optimize_Narrow_byte03(); break;
+            case 626: jtt_optimize_Narrow_char01(); break;
+            case 627: jtt_optimize_Narrow_char02(); break;
+            case 628: jtt_optimize_Narrow_char03(); break;
+            case 629: jtt_optimize_Narrow_short01(); break;
+            case 630: jtt_optimize_Narrow_short02(); break;
+            case 631: jtt_optimize_Narrow_short03(); break;
+            case 632: jtt_optimize_Phi01(); break;
+            case 633: jtt_optimize_Phi02(); break;
+            case 634: jtt_optimize_Phi03(); break;
+            case 635: jtt_optimize_Reduce_Convert01(); break;
+            case 636: jtt_optimize_Reduce_Double01(); break;
+            case 637: jtt_optimize_Reduce_Float01(); break;
+            case 638: jtt_optimize_Reduce_Int01(); break;
+            case 639: jtt_optimize_Reduce_Int02(); break;
+            case 640: jtt_optimize_Reduce_Int03(); break;
+            case 641: jtt_optimize_Reduce_Int04(); break;
+            case 642: jtt_optimize_Reduce_IntShift01(); break;
+            case 643: jtt_optimize_Reduce_IntShift02(); break;
+            case 644: jtt_optimize_Reduce_Long01(); break;
+            case 645: jtt_optimize_Reduce_Long02(); break;
+            case 646: jtt_optimize_Reduce_Long03(); break;
+            case 647: jtt_optimize_Reduce_Long04(); break;
+            case 648: jtt_optimize_Reduce_LongShift01(); break;
+            case 649: jtt_optimize_Reduce_LongShift02(); break;
+            case 650: jtt_optimize_SCCP_01(); break;
+            case 651: jtt_optimize_SCCP_02(); break;
+            case 652: jtt_optimize_Switch01(); break;
+            case 653: jtt_optimize_Switch02(); break;
+            case 654: jtt_optimize_TypeCastElem(); break;
+            case 655: jtt_optimize_TypeGuard01(); break;
+            case 656: jtt_optimize_TypeGuard02(); break;
+            case 657: jtt_optimize_VN_Cast01(); break;
+            case 658: jtt_optimize_VN_Cast02(); break;
+            case 659: jtt_optimize_VN_Convert01(); break;
+            case 660: jtt_optimize_VN_Convert02(); break;
+            case 661: jtt_optimize_VN_Double01(); break;
+            case 662: jtt_optimize_VN_Double02(); break;
+            case 663: jtt_optimize_VN_Field01(); break;
+            case 664: jtt_optimize_VN_Field02(); break;
+            case 665: jtt_optimize_VN_Float01(); break;
+            case 666: jtt_optimize_VN_Float02(); break;
+            case 667: jtt_optimize_VN_InstanceOf01(); break;
+            case 668: jtt_optimize_VN_InstanceOf02(); break;
+            case 669: jtt_optimize_VN_InstanceOf03(); break;
+            case 670: jtt_optimize_VN_Int01(); break;
+            case 671: jtt_optimize_VN_Int02(); break;
+            case 672: jtt_optimize_VN_Int03(); break;
+            case 673: jtt_optimize_VN_Long01(); break;
+            case 674: jtt_optimize_VN_Long02(); break;
+            case 675: jtt_optimize_VN_Long03(); break;
+            case 676: jtt_optimize_VN_Loop01(); break;
+            case 677: jtt_reflect_Array_get01(); break;
+            case 678: jtt_reflect_Array_get02(); break;
+            case 679: jtt_reflect_Array_get03(); break;
+            case 680: jtt_reflect_Array_getBoolean01(); break;
+            case 681: jtt_reflect_Array_getByte01(); break;
+            case 682: jtt_reflect_Array_getChar01(); break;
+            case 683: jtt_reflect_Array_getDouble01(); break;
+            case 684: jtt_reflect_Array_getFloat01(); break;
+            case 685: jtt_reflect_Array_getInt01(); break;
+            case 686: jtt_reflect_Array_getLength01(); break;
+            case 687: jtt_reflect_Array_getLong01(); break;
+            case 688: jtt_reflect_Array_getShort01(); break;
+            case 689: jtt_reflect_Array_newInstance01(); break;
+            case 690: jtt_reflect_Array_newInstance02(); break;
+            case 691: jtt_reflect_Array_newInstance03(); break;
+            case 692: jtt_reflect_Array_newInstance04(); break;
+            case 693: jtt_reflect_Array_newInstance05(); break;
+            case 694: jtt_reflect_Array_newInstance06(); break;
+            case 695: jtt_reflect_Array_set01(); break;
+            case 696: jtt_reflect_Array_set02(); break;
+            case 697: jtt_reflect_Array_set03(); break;
+            case 698: jtt_reflect_Array_setBoolean01(); break;
+            case 699: jtt_reflect_Array_setByte01(); break;
+            case 700: jtt_reflect_Array_setChar01(); break;
+            case 701: jtt_reflect_Array_setDouble01(); break;
+            case 702: jtt_reflect_Array_setFloat01(); break;
+            case 703: jtt_reflect_Array_setInt01(); break;
+            case 704: jtt_reflect_Array_setLong01(); break;
+            case 705: jtt_reflect_Array_setShort01(); break;
+            case 706: jtt_reflect_Class_getDeclaredField01(); break;
+            case 707: jtt_reflect_Class_getDeclaredMethod01(); break;
+            case 708: jtt_reflect_Class_getField01(); break;
+            case 709: jtt_reflect_Class_getField02(); break;
+            case 710: jtt_reflect_Class_getMethod01(); break;
+            case 711: jtt_reflect_Class_getMethod02(); break;
+            case 712: jtt_reflect_Class_newInstance01(); break;
+            case 713: jtt_reflect_Class_newInstance02(); break;
+            case 714: jtt_reflect_Class_newInstance03(); break;
+            case 715: jtt_reflect_Class_newInstance06(); break;
+            case 716: jtt_reflect_Class_newInstance07(); break;
+            case 717: jtt_reflect_Field_get01(); break;
+            case 718: jtt_reflect_Field_get02(); break;
+            case 719: jtt_reflect_Field_get03(); break;
+            case 720: jtt_reflect_Field_get04(); break;
+            case 721: jtt_reflect_Field_getType01(); break;
+            case 722: jtt_reflect_Field_set01(); break;
+            case 723: jtt_reflect_Field_set02(); break;
+            case 724: jtt_reflect_Field_set03(); break;
+            case 725: jtt_reflect_Invoke_except01(); break;
+            case 726: jtt_reflect_Invoke_main01(); break;
+            case 727: jtt_reflect_Invoke_main02(); break;
+            case 728: jtt_reflect_Invoke_main03(); break;
+            case 729: jtt_reflect_Invoke_virtual01(); break;
+            case 730: jtt_reflect_Method_getParameterTypes01(); break;
+            case 731: jtt_reflect_Method_getReturnType01(); break;
+            case 732: jtt_reflect_Reflection_getCallerClass01(); break;
+            case 733: jtt_reflect_Reflection_getCallerClass02(); break;
+            case 734: jtt_threads_Monitor_contended01(); break;
+            case 735: jtt_threads_Monitor_notowner01(); break;
+            case 736: jtt_threads_Monitorenter01(); break;
+            case 737: jtt_threads_Monitorenter02(); break;
+            case 738: jtt_threads_Object_wait01(); break;
+            case 739: jtt_threads_Object_wait02(); break;
+            case 740: jtt_threads_Object_wait03(); break;
+            case 741: jtt_threads_Object_wait04(); break;
+            case 742: jtt_threads_ThreadLocal01(); break;
+            case 743: jtt_threads_ThreadLocal02(); break;
+            case 744: jtt_threads_ThreadLocal03(); break;
+            case 745: jtt_threads_Thread_currentThread01(); break;
+            case 746: jtt_threads_Thread_getState01(); break;
+            case 747: jtt_threads_Thread_getState02(); break;
+            case 748: jtt_threads_Thread_holdsLock01(); break;
+            case 749: jtt_threads_Thread_isAlive01(); break;
+            case 750: jtt_threads_Thread_isInterrupted01(); break;
+            case 751: jtt_threads_Thread_isInterrupted02(); break;
+            case 752: jtt_threads_Thread_isInterrupted03(); break;
+            case 753: jtt_threads_Thread_isInterrupted04(); break;
+            case 754: jtt_threads_Thread_isInterrupted05(); break;
+            case 755: jtt_threads_Thread_join01(); break;
+            case 756: jtt_threads_Thread_join02(); break;
+            case 757: jtt_threads_Thread_join03(); break;
+            case 758: jtt_threads_Thread_new01(); break;
+            case 759: jtt_threads_Thread_new02(); break;
+            case 760: jtt_threads_Thread_setPriority01(); break;
+            case 761: jtt_threads_Thread_sleep01(); break;
+            case 762: jtt_threads_Thread_yield01(); break;
         }
         return true;
     }
@@ -20807,6 +20816,148 @@ public class JTRuns {
             }
             pass();
         }
+        static void jtt_optimize_ABCE_04() {
+            begin("jtt.optimize.ABCE_04");
+            String runString = null;
+            try {
+            // (0) == 0
+                runString = "(0)";
+                if (0 != jtt.optimize.ABCE_04.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (1) == 0
+                runString = "(1)";
+                if (0 != jtt.optimize.ABCE_04.test(1)) {
+                    fail(runString);
+                    return;
+                }
+            // (10) == 45
+                runString = "(10)";
+                if (45 != jtt.optimize.ABCE_04.test(10)) {
+                    fail(runString);
+                    return;
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
+        static void jtt_optimize_ABCE_05() {
+            begin("jtt.optimize.ABCE_05");
+            String runString = null;
+            try {
+            // (0) == !java.lang.ArrayIndexOutOfBoundsException
+                try {
+                    runString = "(0)";
+                    jtt.optimize.ABCE_05.test(0);
+                    fail(runString);
+                    return;
+                } catch (Throwable e) {
+                    if (e.getClass() != java.lang.ArrayIndexOutOfBoundsException.class) {
+                        fail(runString, e);
+                        return;
+                    }
+                }
+            // (10) == !java.lang.ArrayIndexOutOfBoundsException
+                try {
+                    runString = "(10)";
+                    jtt.optimize.ABCE_05.test(10);
+                    fail(runString);
+                    return;
+                } catch (Throwable e) {
+                    if (e.getClass() != java.lang.ArrayIndexOutOfBoundsException.class) {
+                        fail(runString, e);
+                        return;
+                    }
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
+        static void jtt_optimize_ABCE_06() {
+            begin("jtt.optimize.ABCE_06");
+            String runString = null;
+            try {
+            // (0) == 0
+                runString = "(0)";
+                if (0 != jtt.optimize.ABCE_06.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (2) == 1
+                runString = "(2)";
+                if (1 != jtt.optimize.ABCE_06.test(2)) {
+                    fail(runString);
+                    return;
+                }
+            // (10) == 45
+                runString = "(10)";
+                if (45 != jtt.optimize.ABCE_06.test(10)) {
+                    fail(runString);
+                    return;
+                }
+            // (9) == !java.lang.ArrayIndexOutOfBoundsException
+                try {
+                    runString = "(9)";
+                    jtt.optimize.ABCE_06.test(9);
+                    fail(runString);
+                    return;
+                } catch (Throwable e) {
+                    if (e.getClass() != java.lang.ArrayIndexOutOfBoundsException.class) {
+                        fail(runString, e);
+                        return;
+                    }
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
+        static void jtt_optimize_ABCE_07() {
+            begin("jtt.optimize.ABCE_07");
+            String runString = null;
+            try {
+            // (0) == 55
+                runString = "(0)";
+                if (55 != jtt.optimize.ABCE_07.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (5) == 40
+                runString = "(5)";
+                if (40 != jtt.optimize.ABCE_07.test(5)) {
+                    fail(runString);
+                    return;
+                }
+            // (10) == 0
+                runString = "(10)";
+                if (0 != jtt.optimize.ABCE_07.test(10)) {
+                    fail(runString);
+                    return;
+                }
+            // (-1) == !java.lang.ArrayIndexOutOfBoundsException
+                try {
+                    runString = "(-1)";
+                    jtt.optimize.ABCE_07.test(-1);
+                    fail(runString);
+                    return;
+                } catch (Throwable e) {
+                    if (e.getClass() != java.lang.ArrayIndexOutOfBoundsException.class) {
+                        fail(runString, e);
+                        return;
+                    }
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
         static void jtt_optimize_ArrayCopy01() {
             begin("jtt.optimize.ArrayCopy01");
             String runString = null;
@@ -22413,6 +22564,40 @@ public class JTRuns {
             }
             pass();
         }
+        static void jtt_optimize_LICM_01() {
+            begin("jtt.optimize.LICM_01");
+            String runString = null;
+            try {
+            // (0) == 0
+                runString = "(0)";
+                if (0 != jtt.optimize.LICM_01.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (-1) == 0
+                runString = "(-1)";
+                if (0 != jtt.optimize.LICM_01.test(-1)) {
+                    fail(runString);
+                    return;
+                }
+            // (1) == 1006
+                runString = "(1)";
+                if (1006 != jtt.optimize.LICM_01.test(1)) {
+                    fail(runString);
+                    return;
+                }
+            // (10) == 1930
+                runString = "(10)";
+                if (1930 != jtt.optimize.LICM_01.test(10)) {
+                    fail(runString);
+                    return;
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
         static void jtt_optimize_LLE_01() {
             begin("jtt.optimize.LLE_01");
             String runString = null;
@@ -23753,6 +23938,68 @@ public class JTRuns {
             }
             pass();
         }
+        static void jtt_optimize_SCCP_01() {
+            begin("jtt.optimize.SCCP_01");
+            String runString = null;
+            try {
+            // (0) == 11
+                runString = "(0)";
+                if (11 != jtt.optimize.SCCP_01.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (1) == 21
+                runString = "(1)";
+                if (21 != jtt.optimize.SCCP_01.test(1)) {
+                    fail(runString);
+                    return;
+                }
+            // (10) == 111
+                runString = "(10)";
+                if (111 != jtt.optimize.SCCP_01.test(10)) {
+                    fail(runString);
+                    return;
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
+        static void jtt_optimize_SCCP_02() {
+            begin("jtt.optimize.SCCP_02");
+            String runString = null;
+            try {
+            // (0) == 1
+                runString = "(0)";
+                if (1 != jtt.optimize.SCCP_02.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (5) == 51
+                runString = "(5)";
+                if (51 != jtt.optimize.SCCP_02.test(5)) {
+                    fail(runString);
+                    return;
+                }
+            // (6) == 72
+                runString = "(6)";
+                if (72 != jtt.optimize.SCCP_02.test(6)) {
+                    fail(runString);
+                    return;
+                }
+            // (10) == 152
+                runString = "(10)";
+                if (152 != jtt.optimize.SCCP_02.test(10)) {
+                    fail(runString);
+                    return;
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
         static void jtt_optimize_Switch01() {
             begin("jtt.optimize.Switch01");
             String runString = null;
@@ -23807,6 +24054,62 @@ public class JTRuns {
             }
             pass();
         }
+        static void jtt_optimize_TypeGuard01() {
+            begin("jtt.optimize.TypeGuard01");
+            String runString = null;
+            try {
+            // (0) == 10001
+                runString = "(0)";
+                if (10001 != jtt.optimize.TypeGuard01.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (1) == 10002
+                runString = "(1)";
+                if (10002 != jtt.optimize.TypeGuard01.test(1)) {
+                    fail(runString);
+                    return;
+                }
+            // (2) == 10003
+                runString = "(2)";
+                if (10003 != jtt.optimize.TypeGuard01.test(2)) {
+                    fail(runString);
+                    return;
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
+        static void jtt_optimize_TypeGuard02() {
+            begin("jtt.optimize.TypeGuard02");
+            String runString = null;
+            try {
+            // (0) == 15001
+                runString = "(0)";
+                if (15001 != jtt.optimize.TypeGuard02.test(0)) {
+                    fail(runString);
+                    return;
+                }
+            // (1) == 15002
+                runString = "(1)";
+                if (15002 != jtt.optimize.TypeGuard02.test(1)) {
+                    fail(runString);
+                    return;
+                }
+            // (2) == 15003
+                runString = "(2)";
+                if (15003 != jtt.optimize.TypeGuard02.test(2)) {
+                    fail(runString);
+                    return;
+                }
+            } catch (Throwable t) {
+                fail(runString, t);
+                return;
+            }
+            pass();
+        }
         static void jtt_optimize_VN_Cast01() {
             begin("jtt.optimize.VN_Cast01");
             String runString = null;
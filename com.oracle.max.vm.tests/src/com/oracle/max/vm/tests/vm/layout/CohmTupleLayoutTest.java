@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.vm.tests.vm.layout;
+
+import com.oracle.max.vm.tests.vm.VmTestCase;
+import com.oracle.max.vm.tests.vm.VmTestSetup;
+import junit.framework.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.cohm.*;
+import com.sun.max.vm.layout.ohm.*;
+
+/**
+ * Tests for {@link CohmTupleLayout}.
+ * The field offsets of the test classes are recomputed in place, which is harmless as no instance of them is ever
+ * created in the boot image.
+ */
+public class CohmTupleLayoutTest extends VmTestCase {
+
+    public static Test suite() {
+        final TestSuite suite = new TestSuite(CohmTupleLayoutTest.class.getSimpleName());
+        suite.addTestSuite(CohmTupleLayoutTest.class);
+        return new VmTestSetup(suite);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CohmTupleLayoutTest.suite());
+    }
+
+    public CohmTupleLayoutTest(String name) {
+        super(name);
+    }
+
+    static class Base {
+        int baseInt;
+    }
+
+    static class Narrow extends Base {
+        byte narrowByte;
+        short narrowShort;
+        byte otherNarrowByte;
+    }
+
+    static class Wide extends Base {
+        long wideLong;
+        double wideDouble;
+        int wideInt;
+    }
+
+    static class WithReferences extends Base {
+        Object firstReference;
+        char referencesChar;
+        Object secondReference;
+    }
+
+    static class Leaf extends WithReferences {
+        byte leafByte;
+        Object leafReference;
+    }
+
+    /**
+     * Lays out the instance fields of a class and of its superclasses with a given tuple layout.
+     *
+     * @return the tuple size of the class
+     */
+    private static Size layout(OhmTupleLayout tupleLayout, ClassActor classActor) {
+        final ClassActor superClassActor = classActor.superClassActor;
+        if (superClassActor != null && superClassActor.superClassActor != null) {
+            layout(tupleLayout, superClassActor);
+        }
+        return tupleLayout.layoutFields(superClassActor, classActor.localInstanceFieldActors());
+    }
+
+    private static int fieldsEnd(ClassActor classActor) {
+        int end = 0;
+        for (FieldActor fieldActor : classActor.localInstanceFieldActors()) {
+            end = Math.max(end, fieldActor.offset() + fieldActor.kind.width.numberOfBytes);
+        }
+        return end;
+    }
+
+    /**
+     * Checks that the instance fields of a class and of its superclasses are naturally aligned, lie past the header and within the
+     * tuple size, and don't overlap.
+     */
+    private static void checkFields(OhmTupleLayout tupleLayout, ClassActor classActor, Size tupleSize) {
+        assertTrue(tupleSize.isWordAligned());
+        final byte[] used = new byte[tupleSize.toInt()];
+        for (ClassActor c = classActor; c != null; c = c.superClassActor) {
+            for (FieldActor fieldActor : c.localInstanceFieldActors()) {
+                final int offset = fieldActor.offset();
+                final int width = fieldActor.kind.width.numberOfBytes;
+                assertTrue(fieldActor.name + " overlaps the header", offset >= tupleLayout.headerSize());
+                assertTrue(fieldActor.name + " is not naturally aligned", offset % width == 0);
+                assertTrue(fieldActor.name + " exceeds the tuple size", offset + width <= tupleSize.toInt());
+                for (int i = offset; i < offset + width; i++) {
+                    assertTrue(fieldActor.name + " overlaps another field", used[i] == 0);
+                    used[i] = 1;
+                }
+            }
+        }
+    }
+
+    private Size checkLayout(Class javaClass) {
+        final ClassActor classActor = ClassActor.fromJava(javaClass);
+        final CohmTupleLayout tupleLayout = new CohmTupleLayout();
+        final Size tupleSize = layout(tupleLayout, classActor);
+        checkFields(tupleLayout, classActor, tupleSize);
+        return tupleSize;
+    }
+
+    /**
+     * Checks that packing the fields of a class never makes its instances larger than with the OHM layout, and
+     * makes them smaller if the OHM layout leaves padding after the superclass fields.
+     */
+    private static void checkInstanceSizeShrinks(Class javaClass) {
+        final ClassActor classActor = ClassActor.fromJava(javaClass);
+        // The OHM layout starts the fields of the class at the tuple size of the superclass, which it doesn't recompute.
+        final Size ohmSize = layout(new OhmTupleLayout(), classActor);
+        final Size cohmSize = layout(new CohmTupleLayout(), classActor);
+        assertTrue(javaClass.getSimpleName() + " instances are not smaller than with the OHM layout", cohmSize.lessThan(ohmSize));
+    }
+
+    public void test_instanceSizeShrinks() {
+        // The superclass' int field leaves 4 bytes of padding on 64-bit targets, which the fields of these subclasses fill.
+        if (Word.size() == 8) {
+            checkInstanceSizeShrinks(Narrow.class);
+            checkInstanceSizeShrinks(Wide.class);
+        }
+        final CohmTupleLayout cohm = new CohmTupleLayout();
+        final OhmTupleLayout ohm = new OhmTupleLayout();
+        for (Class javaClass : new Class[] {Base.class, Narrow.class, Wide.class, WithReferences.class, Leaf.class}) {
+            final ClassActor classActor = ClassActor.fromJava(javaClass);
+            final Size ohmSize = layout(ohm, classActor);
+            final Size cohmSize = layout(cohm, classActor);
+            assertTrue(javaClass.getSimpleName() + " instances are larger than with the OHM layout", cohmSize.lessEqual(ohmSize));
+        }
+    }
+
+    public void test_inheritedFields() {
+        checkLayout(Narrow.class);
+        final ClassActor classActor = ClassActor.fromJava(Narrow.class);
+        // The fields of the subclass fill the 4 bytes of padding after the superclass' int field.
+        final int superFieldsEnd = fieldsEnd(classActor.superClassActor);
+        for (FieldActor fieldActor : classActor.localInstanceFieldActors()) {
+            assertTrue(fieldActor.name + " is not packed after the superclass fields",
+                fieldActor.offset() >= superFieldsEnd && fieldActor.offset() < superFieldsEnd + 4);
+        }
+    }
+
+    public void test_longAndDoubleAlignment() {
+        checkLayout(Wide.class);
+        final ClassActor classActor = ClassActor.fromJava(Wide.class);
+        assertEquals(0, classActor.findLocalInstanceFieldActor("wideLong").offset() % 8);
+        assertEquals(0, classActor.findLocalInstanceFieldActor("wideDouble").offset() % 8);
+    }
+
+    public void test_referenceFields() {
+        checkLayout(Leaf.class);
+        for (ClassActor c = ClassActor.fromJava(Leaf.class); c != null; c = c.superClassActor) {
+            for (FieldActor fieldActor : c.localInstanceFieldActors()) {
+                if (fieldActor.kind.isReference) {
+                    assertEquals(fieldActor.name + " is not word aligned", 0, fieldActor.offset() % Word.size());
+                }
+            }
+        }
+    }
+
+    public void test_referenceMap() {
+        checkLayout(Leaf.class);
+        final ClassActor classActor = ClassActor.fromJava(Leaf.class);
+        int numberOfReferences = 0;
+        for (ClassActor c = classActor; c != null; c = c.superClassActor) {
+            for (FieldActor fieldActor : c.localInstanceFieldActors()) {
+                if (fieldActor.kind.isReference) {
+                    numberOfReferences++;
+                }
+            }
+        }
+        assertEquals(3, numberOfReferences);
+        // Word-scaled reference map indexes only denote the reference fields if these are word aligned (see test_referenceFields).
+        assertEquals(numberOfReferences, new TupleReferenceMap(classActor).numberOfEntries());
+    }
+}
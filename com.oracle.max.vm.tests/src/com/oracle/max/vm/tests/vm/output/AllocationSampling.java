@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.vm.tests.vm.output;
+
+import sun.misc.*;
+
+import com.sun.max.lang.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.profilers.sampling.*;
+
+/**
+ * Checks that the {@link AllocationSampler} attributes sampled allocations to their type and allocation site, and that a
+ * SIGQUIT dumps the sampled allocations.
+ */
+public class AllocationSampling implements MaxineOnly {
+
+    static final class Sampled {
+        long a;
+        long b;
+        Object next;
+    }
+
+    private static Object sink;
+
+    private static void allocateSampled(int count) {
+        for (int i = 0; i < count; i++) {
+            sink = new Sampled();
+        }
+    }
+
+    private static void allocateArrays(int count) {
+        for (int i = 0; i < count; i++) {
+            sink = new int[16];
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        AllocationSampler.AllocationSampling = true;
+        AllocationSampler.AllocationSamplingInterval = Size.K.times(16);
+        AllocationSampler.startSampling();
+
+        // A few megabytes each, i.e., hundreds of samples on average.
+        allocateSampled(200000);
+        allocateArrays(100000);
+        // Complete the pending sample of this thread, if any.
+        allocateSampled(10000);
+
+        final ClassActor sampledType = ClassActor.fromJava(Sampled.class);
+        final ClassActor arrayType = ClassActor.fromJava(int[].class);
+        final ClassMethodActor sampledSite = ClassMethodActor.fromJava(Classes.getDeclaredMethod(AllocationSampling.class, "allocateSampled", int.class));
+        final ClassMethodActor arraySite = ClassMethodActor.fromJava(Classes.getDeclaredMethod(AllocationSampling.class, "allocateArrays", int.class));
+        check(AllocationSampler.sampleCount(sampledType, sampledSite) > 0, "no sample of Sampled in allocateSampled");
+        check(AllocationSampler.sampleCount(arrayType, arraySite) > 0, "no sample of int[] in allocateArrays");
+        check(AllocationSampler.sampleCount(sampledType, arraySite) == 0, "Sampled attributed to allocateArrays");
+        check(AllocationSampler.sampleCount(arrayType, sampledSite) == 0, "int[] attributed to allocateSampled");
+
+        final int dumps = AllocationSampler.dumpCount();
+        Signal.raise(new Signal("QUIT"));
+        for (int i = 0; i < 100 && AllocationSampler.dumpCount() == dumps; i++) {
+            Thread.sleep(100);
+        }
+        check(AllocationSampler.dumpCount() > dumps, "SIGQUIT didn't dump the sampled allocations");
+        System.out.println("done.");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -54,7 +54,7 @@ public class VMOutputRunScheme extends AbstractTestRunScheme {
             }
         } else {
             if (phase == MaxineVM.Phase.BOOTSTRAPPING) {
-                Class<?>[] testClasses = MaxineTesterConfiguration.findOutputTests("test.vm.output.");
+                Class<?>[] testClasses = MaxineTesterConfiguration.findOutputTests("com.oracle.max.vm.tests.vm.output.");
                 for (Class<?> klass : testClasses) {
                     addClassToImage(klass);
                 }
@@ -49,6 +49,9 @@ public class C1XMetrics {
     public static int StoreCheckEliminations;
     public static int BoundsChecksElminations;
     public static int ConditionalEliminations;
+    public static int ConstantsPropagated;
+    public static int BranchesFolded;
+    public static int LoopInvariantsHoisted;
     public static int BlocksMerged;
     public static int BlocksSkipped;
     public static int BlocksDeleted;
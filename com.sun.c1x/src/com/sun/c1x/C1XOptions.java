@@ -46,6 +46,16 @@ public final class C1XOptions {
     public static int     MaximumDesiredSize                 = 8000;
     public static int     MaximumShortLoopSize               = 5;
 
+    // profile-guided settings
+    public static boolean OptProfileInlining                 = ____;
+    public static boolean OptProfileTypeSpeculation          = ____;
+    public static boolean OptProfileBlockLayout              = ____;
+    public static int     ProfileMinimumCount                = 100;
+    public static float   ProfileTypeSpeculationProbability  = 0.95f;
+    public static float   ProfileHotCallSiteFrequency        = 1.0f;
+    public static float   ProfileHotCallSiteInlineRatio      = 2.0f;
+    public static float   ProfileUnlikelyBranchProbability   = 0.05f;
+
     // intrinsification settings
     public static boolean OptIntrinsify                      = ____;
 
@@ -117,6 +127,9 @@ public final class C1XOptions {
     public static boolean OptFlowSensitiveNCE;
     public static boolean OptDeadCodeElimination1;
     public static boolean OptDeadCodeElimination2;
+    public static boolean OptSCCP;
+    public static boolean OptLoopInvariantCodeMotion;
+    public static boolean OptRangeCheckElimination;
     public static boolean OptControlFlow;
     public static boolean OptMoveElimination;
 
@@ -226,9 +239,15 @@ public final class C1XOptions {
         OptFlowSensitiveNCE             = lll;
         OptDeadCodeElimination1         = lll;
         OptDeadCodeElimination2         = lll;
+        OptSCCP                         = lll;
+        OptLoopInvariantCodeMotion      = lll;
+        OptRangeCheckElimination        = lll;
         OptGlobalValueNumbering         = lll;
         OptDiamondElimination           = lll;
         OptCEElimination                = lll;
         OptBlockSkipping                = lll;
+        OptProfileInlining              = lll;
+        OptProfileTypeSpeculation       = lll;
+        OptProfileBlockLayout           = lll;
     }
 }
@@ -2260,4 +2260,18 @@ public abstract class LIRGenerator extends ValueVisitor {
         lir.cmp(typeEqualityCheck.condition.negate(), leftValue, rightValue);
         emitGuard(typeEqualityCheck);
     }
+
+    @Override
+    public void visitTypeGuard(TypeGuard x) {
+        XirArgument obj = toXirArgument(x.object());
+        XirSnippet snippet = xir.genTypeCheck(site(x), obj, toXirArgument(x.hub()), x.type());
+        emitXir(snippet, x, stateFor(x), null, false);
+    }
+
+    @Override
+    public void visitIsType(IsType x) {
+        XirArgument obj = toXirArgument(x.object());
+        XirSnippet snippet = xir.genMaterializeTypeCheck(site(x), obj, toXirArgument(x.hub()), XirArgument.forInt(1), XirArgument.forInt(0), x.type());
+        emitXir(snippet, x, null, null, true);
+    }
 }
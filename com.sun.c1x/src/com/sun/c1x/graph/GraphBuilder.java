@@ -699,7 +699,14 @@ public final class GraphBuilder {
         BlockBegin fsucc = blockAt(stream().nextBCI());
         int bci = stream().currentBCI();
         boolean isSafepointPoll = !scopeData.noSafepointPolls() && tsucc.bci() <= bci || fsucc.bci() <= bci;
-        append(new If(x, cond, false, y, tsucc, fsucc, isSafepointPoll ? stateBefore : null, isSafepointPoll));
+        Value result = append(new If(x, cond, false, y, tsucc, fsucc, isSafepointPoll ? stateBefore : null, isSafepointPoll));
+        if (C1XOptions.OptProfileBlockLayout && result instanceof If) {
+            double probability = method().branchProbability(bci);
+            if (probability >= 0) {
+                If ifNode = (If) result;
+                ifNode.setTakenProbability(ifNode.trueSuccessor() == tsucc ? probability : 1 - probability);
+            }
+        }
     }
 
     void genIfZero(Condition cond) {
@@ -1098,12 +1105,152 @@ public final class GraphBuilder {
                 assert result : "Inlining must succeed";
                 return;
             }
+            // 4. speculate on the receiver type recorded in the profile of this call site
+            if (C1XOptions.OptProfileTypeSpeculation && genProfiledInvoke(resolvedTarget, args, cpi, constantPool)) {
+                return;
+            }
         }
 
         // devirtualization failed, produce an actual invokevirtual
         appendInvoke(opcode, target, args, false, cpi, constantPool);
     }
 
+    /**
+     * Binds a virtual or interface call to the implementations for the receiver types that dominate the profile of
+     * the call site. If one type dominates, a {@link TypeGuard} in front of the bound call deoptimizes when the
+     * receiver has another type. If two types dominate together, the call is {@linkplain #genBimorphicInvoke
+     * dispatched} on the receiver type, and the guard is in front of the call for the second type.
+     */
+    private boolean genProfiledInvoke(RiResolvedMethod target, Value[] args, int cpi, RiConstantPool constantPool) {
+        RiTypeProfile profile = method().typeProfile(bci());
+        if (profile == null || profile.count < C1XOptions.ProfileMinimumCount || profile.types.length == 0) {
+            return false;
+        }
+        RiResolvedType type = profile.types[0];
+        RiResolvedMethod concrete = profiledImplementation(target, type);
+        if (concrete == null) {
+            return false;
+        }
+        RiResolvedType secondType = null;
+        RiResolvedMethod secondConcrete = null;
+        if (profile.probabilities[0] < C1XOptions.ProfileTypeSpeculationProbability) {
+            if (profile.types.length < 2 || profile.probabilities[0] + profile.probabilities[1] < C1XOptions.ProfileTypeSpeculationProbability) {
+                return false;
+            }
+            secondType = profile.types[1];
+            secondConcrete = profiledImplementation(target, secondType);
+            if (secondConcrete == null) {
+                return false;
+            }
+        }
+        if (C1XOptions.PrintAssumptions) {
+            TTY.println("Speculative invoke direct because of profiled receiver type " + type + " to " + concrete);
+            if (secondType != null) {
+                TTY.println("Speculative invoke direct because of profiled receiver type " + secondType + " to " + secondConcrete);
+            }
+        }
+
+        Value receiver = args[0];
+        if (!receiver.isNonNull()) {
+            args[0] = append(new NullCheck(receiver, null));
+        }
+        // the guard resumes in the interpreter before the invoke, with the arguments still on the stack
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i] != null) {
+                curState.push(args[i].kind.stackKind(), args[i]);
+            }
+        }
+        FrameState stateBefore = curState.immutableCopy(bci());
+        curState.popArguments(args.length);
+
+        if (secondType != null) {
+            float firstProbability = profile.probabilities[0] / (profile.probabilities[0] + profile.probabilities[1]);
+            genBimorphicInvoke(type, concrete, secondType, secondConcrete, firstProbability, args, stateBefore, cpi, constantPool);
+            return true;
+        }
+        Value hub = appendConstant(type.getEncoding(Representation.ObjectHub));
+        append(new TypeGuard(args[0], hub, type, stateBefore));
+        invokeDirect(concrete, args, type, cpi, constantPool);
+        return true;
+    }
+
+    /**
+     * Gets the implementation of {@code target} that a call dispatches to for a receiver type found in a profile.
+     *
+     * @return {@code null} if the type is not a receiver type of {@code target} or has no concrete implementation
+     */
+    private static RiResolvedMethod profiledImplementation(RiResolvedMethod target, RiResolvedType type) {
+        if (!type.isSubtypeOf(target.holder())) {
+            return null;
+        }
+        RiResolvedMethod concrete = type.resolveMethodImpl(target);
+        if (concrete == null || isAbstract(concrete.accessFlags())) {
+            return null;
+        }
+        return concrete;
+    }
+
+    /**
+     * Dispatches a call to the implementations for two profiled receiver types. The current block ends with an
+     * {@link If} testing the receiver type. One successor calls the implementation for the first type, the other
+     * guards on the second type before calling its implementation, and both jump to a new block at the next bytecode
+     * in which parsing continues. The calls are not inlined, since inlining parses the rest of the caller itself.
+     *
+     * @param firstProbability the probability of the first type among the two
+     * @param args the arguments of the call, the first being the non-null receiver
+     * @param stateBefore the state to resume in when the guard fails
+     */
+    private void genBimorphicInvoke(RiResolvedType firstType, RiResolvedMethod first, RiResolvedType secondType, RiResolvedMethod second,
+                                    float firstProbability, Value[] args, FrameState stateBefore, int cpi, RiConstantPool constantPool) {
+        int dfn = curBlock.depthFirstNumber();
+        BlockBegin firstBlock = new BlockBegin(bci(), ir.nextBlockNumber());
+        BlockBegin secondBlock = new BlockBegin(bci(), ir.nextBlockNumber());
+        BlockBegin join = new BlockBegin(nextBCI(), ir.nextBlockNumber());
+
+        Value firstHub = appendConstant(firstType.getEncoding(Representation.ObjectHub));
+        Value isFirst = append(new IsType(args[0], firstHub, firstType));
+        If dispatch = new If(isFirst, Condition.NE, false, appendConstant(CiConstant.INT_0), firstBlock, secondBlock, null, false);
+        dispatch.setTakenProbability(firstProbability);
+        endBlock(dispatch);
+
+        startBlock(firstBlock, dfn);
+        appendInvoke(INVOKESPECIAL, first, args.clone(), false, cpi, constantPool);
+        endBlock(new Goto(join, null, false));
+
+        startBlock(secondBlock, dfn);
+        Value secondHub = appendConstant(secondType.getEncoding(Representation.ObjectHub));
+        append(new TypeGuard(args[0], secondHub, secondType, stateBefore));
+        appendInvoke(INVOKESPECIAL, second, args.clone(), false, cpi, constantPool);
+        endBlock(new Goto(join, null, false));
+
+        // the bytecode parsing loop continues in the join block
+        startBlock(join, dfn);
+    }
+
+    /**
+     * Ends the current block with a control flow instruction built by the graph builder itself rather than parsed
+     * from a bytecode, and merges the current state into its successors.
+     */
+    private void endBlock(BlockEnd end) {
+        appendWithoutOptimization(end, bci());
+        end.setStateAfter(curState.immutableCopy(bci()));
+        curBlock.setEnd(end);
+        for (BlockBegin succ : end.successors()) {
+            succ.mergeOrClone(end.stateAfter());
+        }
+    }
+
+    /**
+     * Starts appending to a block built by the graph builder itself, once all its predecessors have ended.
+     */
+    private void startBlock(BlockBegin block, int depthFirstNumber) {
+        block.setDepthFirstNumber(depthFirstNumber);
+        block.setWasVisited(true);
+        killMemoryMap();
+        lastInstr = curBlock = block;
+        curState = block.stateBefore().copy();
+    }
+
     private CiKind returnKind(RiMethod target) {
         return target.signature().returnKind(false);
     }
@@ -1856,7 +2003,7 @@ public final class GraphBuilder {
         if (recursiveInlineLevel(target) > C1XOptions.MaximumRecursiveInlineLevel) {
             return cannotInline(target, "recursive inlining too deep");
         }
-        if (target.code().length > scopeData.maxInlineSize()) {
+        if (target.code().length > maxInlineSize()) {
             return cannotInline(target, "inlinee too large for this level");
         }
         if (scopeData.scope.level + 1 > C1XOptions.MaximumInlineLevel) {
@@ -1896,6 +2043,23 @@ public final class GraphBuilder {
         return true;
     }
 
+    /**
+     * Gets the bytecode size limit for inlining at the current call site. A call site that the profile shows to
+     * run at least {@link C1XOptions#ProfileHotCallSiteFrequency} times per method entry or loop iteration gets
+     * a budget scaled by {@link C1XOptions#ProfileHotCallSiteInlineRatio}.
+     */
+    private int maxInlineSize() {
+        int maxInlineSize = scopeData.maxInlineSize();
+        if (C1XOptions.OptProfileInlining) {
+            RiTypeProfile profile = method().typeProfile(bci());
+            int invocations = method().invocationCount();
+            if (profile != null && invocations > 0 && profile.count >= C1XOptions.ProfileHotCallSiteFrequency * invocations) {
+                maxInlineSize = (int) (maxInlineSize * C1XOptions.ProfileHotCallSiteInlineRatio);
+            }
+        }
+        return maxInlineSize;
+    }
+
     private boolean cannotInline(RiMethod target, String reason) {
         if (C1XOptions.PrintInliningFailures) {
             TTY.println("Cannot inline " + target.toString() + " into " + compilation.method.toString() + " because of " + reason);
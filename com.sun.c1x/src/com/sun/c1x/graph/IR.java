@@ -135,6 +135,10 @@ public class IR {
             new DiamondEliminator(this);
             observeCompilationEvent("After Diamond elimination");
         }
+        if (C1XOptions.OptSCCP) {
+            new SCCPropagator(this);
+            observeCompilationEvent("After sparse conditional constant propagation");
+        }
     }
 
     private void computeLinearScanOrder() {
@@ -163,6 +167,16 @@ public class IR {
             new GlobalValueNumberer(this);
             observeCompilationEvent("After global value numbering");
         }
+        if (C1XOptions.OptLoopInvariantCodeMotion) {
+            makeLinearScanOrder();
+            new LoopInvariantCodeMover(this);
+            observeCompilationEvent("After loop invariant code motion");
+        }
+        if (C1XOptions.OptRangeCheckElimination) {
+            makeLinearScanOrder();
+            new RangeCheckEliminator(this);
+            observeCompilationEvent("After range check elimination");
+        }
         if (C1XOptions.OptDeadCodeElimination2) {
             new LivenessMarker(this).removeDeadCode();
             observeCompilationEvent("After dead code elimination 2");
@@ -426,6 +426,12 @@ public final class ComputeLinearScanOrder {
         }
         curBit--;
 
+        // blocks only reached over branches the profile shows to be rarely taken are added after the others
+        if (!isReachedOnlyByUnlikelyBranches(cur)) {
+            weight |= 1 << curBit;
+        }
+        curBit--;
+
         // guarantee that weight is > 0
         weight |= 1;
 
@@ -435,6 +441,29 @@ public final class ComputeLinearScanOrder {
         return weight;
     }
 
+    private static boolean isReachedOnlyByUnlikelyBranches(BlockBegin cur) {
+        if (cur.numberOfPreds() == 0) {
+            return false;
+        }
+        for (int i = 0; i < cur.numberOfPreds(); i++) {
+            BlockBegin pred = cur.predAt(i);
+            BlockBegin succ = cur;
+            if (pred.isCriticalEdgeSplit() && pred.numberOfPreds() == 1) {
+                // look through the block splitting the edge from the branch
+                succ = pred;
+                pred = pred.predAt(0);
+            }
+            if (!(pred.end() instanceof If)) {
+                return false;
+            }
+            double probability = ((If) pred.end()).successorProbability(succ);
+            if (probability < 0 || probability >= C1XOptions.ProfileUnlikelyBranchProbability) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     boolean readyForProcessing(BlockBegin cur) {
         // Discount the edge just traveled.
         // When the number drops to zero, all forward branches were processed
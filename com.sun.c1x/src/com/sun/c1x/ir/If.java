@@ -36,6 +36,7 @@ public final class If extends BlockEnd {
     Value x;
     Value y;
     Condition condition;
+    double takenProbability = -1;
 
     /**
      * Constructs a new If instruction.
@@ -117,6 +118,33 @@ public final class If extends BlockEnd {
         return successors.get(istrue ? 0 : 1);
     }
 
+    /**
+     * Sets the profiled probability that the true successor is taken.
+     * @param probability the probability, or {@code -1} if it is not known
+     */
+    public void setTakenProbability(double probability) {
+        takenProbability = probability;
+    }
+
+    /**
+     * Gets the profiled probability that the specified successor is taken.
+     * @param successor a successor of this instruction
+     * @return the probability, or {@code -1} if it is not known
+     */
+    public double successorProbability(BlockBegin successor) {
+        if (takenProbability < 0) {
+            return -1;
+        }
+        double probability = 0;
+        if (trueSuccessor() == successor) {
+            probability += takenProbability;
+        }
+        if (falseSuccessor() == successor) {
+            probability += 1 - takenProbability;
+        }
+        return probability;
+    }
+
     /**
      * Gets the successor of this instruction for the unordered case.
      * @return the successor for unordered inputs
@@ -147,6 +175,9 @@ public final class If extends BlockEnd {
         BlockBegin f = successors.get(1);
         successors.set(0, f);
         successors.set(1, t);
+        if (takenProbability >= 0) {
+            takenProbability = 1 - takenProbability;
+        }
     }
 
     @Override
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.c1x.ir;
+
+import static com.sun.c1x.util.Util.*;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.value.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * Deoptimizes unless a non-null object is exactly of a given type. The compiler emits it in front of
+ * code that was specialized for the receiver type recorded in the profile of a call site.
+ */
+public final class TypeGuard extends Guard {
+
+    Value object;
+    Value hub;
+    final RiResolvedType type;
+
+    /**
+     * Creates a new TypeGuard instruction.
+     * @param object the instruction producing the object, which must be non-null
+     * @param hub the instruction producing the hub of {@code type}
+     * @param type the type the object is expected to have
+     * @param stateBefore the state to resume in when the guard fails
+     */
+    public TypeGuard(Value object, Value hub, RiResolvedType type, FrameState stateBefore) {
+        super(Condition.EQ, stateBefore);
+        this.object = object;
+        this.hub = hub;
+        this.type = type;
+        assert object.isNonNull();
+    }
+
+    public Value object() {
+        return object;
+    }
+
+    public Value hub() {
+        return hub;
+    }
+
+    public RiResolvedType type() {
+        return type;
+    }
+
+    @Override
+    public void inputValuesDo(ValueClosure closure) {
+        object = closure.apply(object);
+        hub = closure.apply(hub);
+    }
+
+    @Override
+    public void accept(ValueVisitor v) {
+        v.visitTypeGuard(this);
+    }
+
+    @Override
+    public void print(LogStream out) {
+        out.print("typeGuard ").print(valueString(object)).print(" ").print(CiUtil.toJavaName(type));
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.c1x.opt;
+
+import java.util.*;
+
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+
+/**
+ * This class implements loop-invariant code motion, which moves side-effect free instructions
+ * whose inputs are all defined outside a loop into the block that precedes the loop header.
+ * It requires the dominators and loop information computed for the linear scan order.
+ */
+public class LoopInvariantCodeMover {
+
+    final IR ir;
+    final IdentityHashMap<BlockBegin, BlockBegin> loopBlocks = new IdentityHashMap<BlockBegin, BlockBegin>();
+    final IdentityHashMap<Instruction, Instruction> loopInstructions = new IdentityHashMap<Instruction, Instruction>();
+
+    public LoopInvariantCodeMover(IR ir) {
+        this.ir = ir;
+        List<BlockBegin> headers = new ArrayList<BlockBegin>();
+        for (BlockBegin block : ir.linearScanOrder()) {
+            if (block.isLinearScanLoopHeader() && !block.isExceptionEntry()) {
+                headers.add(block);
+            }
+        }
+        // process inner loops first so that their invariants can move further out
+        Collections.sort(headers, new Comparator<BlockBegin>() {
+            public int compare(BlockBegin a, BlockBegin b) {
+                return b.loopDepth() - a.loopDepth();
+            }
+        });
+        for (BlockBegin header : headers) {
+            optimize(header);
+        }
+    }
+
+    private void optimize(BlockBegin header) {
+        loopBlocks.clear();
+        loopInstructions.clear();
+        if (!findLoopBlocks(header)) {
+            return;
+        }
+
+        // the loop must be entered from a single block ending with a goto
+        BlockBegin preHeader = null;
+        for (BlockBegin pred : header.predecessors()) {
+            if (!loopBlocks.containsKey(pred)) {
+                if (preHeader != null && preHeader != pred) {
+                    return;
+                }
+                preHeader = pred;
+            }
+        }
+        if (preHeader == null || !(preHeader.end() instanceof Goto)) {
+            return;
+        }
+
+        List<BlockBegin> blocks = new ArrayList<BlockBegin>(loopBlocks.size());
+        for (BlockBegin block : ir.linearScanOrder()) {
+            if (loopBlocks.containsKey(block)) {
+                blocks.add(block);
+                for (Instruction i = block.next(); i != null; i = i.next()) {
+                    loopInstructions.put(i, i);
+                }
+            }
+        }
+
+        // visit the loop blocks in linear scan order, so that definitions are visited before uses
+        for (BlockBegin block : blocks) {
+            Instruction prev = block;
+            Instruction i = block.next();
+            while (!(i instanceof BlockEnd)) {
+                Instruction next = i.next();
+                if (isHoistable(i)) {
+                    prev.resetNext(next);
+                    hoistConstantInputs(i, preHeader);
+                    moveBefore(i, preHeader);
+                    C1XMetrics.LoopInvariantsHoisted++;
+                    // a constant input may have preceded this instruction
+                    prev = next.prev(block);
+                } else {
+                    prev = i;
+                }
+                i = next;
+            }
+        }
+    }
+
+    /**
+     * Collects the blocks of the natural loop with the specified header by walking
+     * backwards from the sources of its back edges.
+     * @return {@code false} if the loop has no back edge or is not reducible
+     */
+    private boolean findLoopBlocks(BlockBegin header) {
+        loopBlocks.put(header, header);
+        ArrayList<BlockBegin> worklist = new ArrayList<BlockBegin>();
+        for (BlockBegin pred : header.predecessors()) {
+            if (dominates(header, pred)) {
+                worklist.add(pred);
+            }
+        }
+        if (worklist.isEmpty()) {
+            return false;
+        }
+        while (!worklist.isEmpty()) {
+            BlockBegin block = worklist.remove(worklist.size() - 1);
+            if (!loopBlocks.containsKey(block)) {
+                if (!dominates(header, block)) {
+                    return false;
+                }
+                loopBlocks.put(block, block);
+                worklist.addAll(block.predecessors());
+            }
+        }
+        return true;
+    }
+
+    private void moveBefore(Instruction i, BlockBegin preHeader) {
+        BlockEnd end = preHeader.end();
+        end.prev(preHeader).resetNext(i);
+        i.resetNext(end);
+        loopInstructions.remove(i);
+    }
+
+    /**
+     * Moves the constant inputs of a hoisted instruction that are defined in the loop along with it.
+     */
+    private void hoistConstantInputs(Instruction i, final BlockBegin preHeader) {
+        i.inputValuesDo(new ValueClosure() {
+            public Value apply(Value v) {
+                if (v.isConstant() && loopInstructions.containsKey(v)) {
+                    Instruction c = (Instruction) v;
+                    c.prev(c.block()).resetNext(c.next());
+                    moveBefore(c, preHeader);
+                }
+                return v;
+            }
+        });
+    }
+
+    private static boolean dominates(BlockBegin dominator, BlockBegin block) {
+        for (BlockBegin b = block; b != null; b = b.dominator()) {
+            if (b == dominator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether an instruction is free of side effects and cannot trap,
+     * and all of its inputs are defined outside the current loop.
+     */
+    private boolean isHoistable(Instruction i) {
+        if (i.stateBefore() != null || i.isConstant()) {
+            return false;
+        }
+        if (!(i instanceof ArithmeticOp || i instanceof LogicOp || i instanceof ShiftOp || i instanceof CompareOp ||
+              i instanceof IfOp || i instanceof NegateOp || i instanceof Convert) || i.canTrap()) {
+            return false;
+        }
+        final boolean[] invariant = {true};
+        i.inputValuesDo(new ValueClosure() {
+            public Value apply(Value v) {
+                if (v.isConstant()) {
+                    return v;
+                }
+                if ((v instanceof Phi && loopBlocks.containsKey(v.block())) || loopInstructions.containsKey(v)) {
+                    invariant[0] = false;
+                }
+                return v;
+            }
+        });
+        return invariant[0];
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.c1x.opt;
+
+import static com.sun.cri.bytecode.Bytecodes.*;
+
+import java.util.*;
+
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.cri.ci.*;
+
+/**
+ * This class implements range check elimination for array accesses indexed by the induction
+ * variable of a counted loop. The bounds check of an access {@code a[i]} is redundant if
+ * <ul>
+ * <li>{@code i} is a phi whose inputs are either non-negative constants or {@code i + 1}, and</li>
+ * <li>the access is dominated by a block inside the loop of {@code i} that is only entered
+ * if {@code i < a.length}, and which also dominates all the increments of {@code i}.</li>
+ * </ul>
+ * The first condition guarantees that {@code i} never becomes negative, since the
+ * second one guarantees that the increments cannot overflow. It requires the dominators
+ * computed for the linear scan order.
+ */
+public class RangeCheckEliminator {
+
+    final IR ir;
+    final IdentityHashMap<Phi, List<Instruction>> inductionVariables = new IdentityHashMap<Phi, List<Instruction>>();
+
+    public RangeCheckEliminator(IR ir) {
+        this.ir = ir;
+        for (BlockBegin block : ir.linearScanOrder()) {
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                if (i instanceof AccessIndexed) {
+                    AccessIndexed access = (AccessIndexed) i;
+                    if (access.needsBoundsCheck() && isRedundant(access, block)) {
+                        access.eliminateBoundsCheck();
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isRedundant(AccessIndexed access, BlockBegin block) {
+        if (!(access.index() instanceof Phi)) {
+            return false;
+        }
+        Phi phi = (Phi) access.index();
+        List<Instruction> increments = increments(phi);
+        if (increments == null) {
+            return false;
+        }
+
+        // look for the dominator of the access that is guarded by the loop condition
+        BlockBegin header = phi.block();
+        for (BlockBegin d = block; d != header; d = d.dominator()) {
+            if (d == null) {
+                return false;
+            }
+            if (d.numberOfPreds() == 1 && !d.isExceptionEntry() && isGuarded(d, phi, access.array())) {
+                for (Instruction increment : increments) {
+                    if (!dominates(d, increment.block())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the increments of a phi that is a non-negative induction variable.
+     * @return the instructions incrementing the phi by one, or {@code null} if the phi is not an induction variable
+     */
+    private List<Instruction> increments(Phi phi) {
+        if (inductionVariables.containsKey(phi)) {
+            return inductionVariables.get(phi);
+        }
+        List<Instruction> increments = new ArrayList<Instruction>(2);
+        if (phi.kind != CiKind.Int || phi.isIllegal() || phi.block().isExceptionEntry()) {
+            increments = null;
+        } else {
+            int max = phi.inputCount();
+            for (int j = 0; j < max; j++) {
+                Value input = phi.inputAt(j);
+                if (input != null && input.isConstant() && input.asConstant().asInt() >= 0) {
+                    continue;
+                }
+                if (input instanceof ArithmeticOp && ((ArithmeticOp) input).opcode == IADD) {
+                    ArithmeticOp add = (ArithmeticOp) input;
+                    if ((add.x() == phi && isOne(add.y())) || (add.y() == phi && isOne(add.x()))) {
+                        increments.add(add);
+                        continue;
+                    }
+                }
+                increments = null;
+                break;
+            }
+        }
+        inductionVariables.put(phi, increments);
+        return increments;
+    }
+
+    private static boolean isOne(Value v) {
+        return v.isConstant() && v.asConstant().asInt() == 1;
+    }
+
+    /**
+     * Checks whether the single predecessor of a block only branches to it if {@code phi < array.length}.
+     */
+    private static boolean isGuarded(BlockBegin block, Phi phi, Value array) {
+        BlockEnd end = block.predAt(0).end();
+        if (!(end instanceof If)) {
+            return false;
+        }
+        If ifNode = (If) end;
+        if (ifNode.trueSuccessor() == ifNode.falseSuccessor()) {
+            return false;
+        }
+        Condition cond;
+        Value length;
+        if (ifNode.x() == phi) {
+            cond = ifNode.condition();
+            length = ifNode.y();
+        } else if (ifNode.y() == phi) {
+            cond = ifNode.condition().mirror();
+            length = ifNode.x();
+        } else {
+            return false;
+        }
+        if (ifNode.falseSuccessor() == block) {
+            cond = cond.negate();
+        }
+        return cond == Condition.LT && length instanceof ArrayLength && ((ArrayLength) length).array() == array;
+    }
+
+    private static boolean dominates(BlockBegin dominator, BlockBegin block) {
+        for (BlockBegin b = block; b != null; b = b.dominator()) {
+            if (b == dominator) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -22,12 +22,412 @@
  */
 package com.sun.c1x.opt;
 
+import static com.sun.cri.bytecode.Bytecodes.*;
+
+import java.util.*;
+
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.c1x.value.FrameState.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
 /**
  * The {@code SCCPropagator} class implements sparse conditional constant propagation.
  * While most canonicalization opportunities are revealed and exploited during graph construction
  * in SSA form, some opportunities can be missed, and still more may be created by later optimizations.
  * This class implements a classic iterative data-flow analysis to discover all canonicalization
  * opportunities.
+ * <p>
+ * The analysis optimistically assumes that no block is executable and no value is defined, and
+ * then propagates constants and executable control flow edges together until a fixed point is
+ * reached. Only {@code int} and {@code long} values are tracked. Afterwards, values proven to be
+ * constant are replaced by {@link Constant} instructions and conditional branches with constant
+ * inputs are replaced by {@link Goto}s, disconnecting the blocks that were proven unreachable.
  */
 public class SCCPropagator {
+
+    /**
+     * The lattice value of a value that is known to not be constant.
+     * A value that is not in the lattice map has not been defined yet.
+     */
+    private static final Object OVERDEFINED = new Object();
+
+    final IR ir;
+    final RiRuntime runtime;
+    final List<BlockBegin> blocks = new ArrayList<BlockBegin>();
+    final IdentityHashMap<Value, Object> lattice = new IdentityHashMap<Value, Object>();
+    final IdentityHashMap<BlockBegin, List<BlockBegin>> executableEdges = new IdentityHashMap<BlockBegin, List<BlockBegin>>();
+    final IdentityHashMap<Phi, Phi> phis = new IdentityHashMap<Phi, Phi>();
+    boolean changed;
+
+    public SCCPropagator(IR ir) {
+        this.ir = ir;
+        this.runtime = ir.compilation.runtime;
+        ir.startBlock.iteratePreOrder(new BlockClosure() {
+            public void apply(BlockBegin block) {
+                blocks.add(block);
+            }
+        });
+        propagate();
+        transform();
+    }
+
+    private void propagate() {
+        executableEdges.put(ir.startBlock, new ArrayList<BlockBegin>(2));
+        do {
+            changed = false;
+            for (BlockBegin block : blocks) {
+                if (isExecutable(block)) {
+                    visitBlock(block);
+                }
+            }
+            for (Phi phi : new ArrayList<Phi>(phis.keySet())) {
+                visitPhi(phi);
+            }
+            if (!changed) {
+                markUndecidedBranches();
+            }
+        } while (changed);
+    }
+
+    private boolean isExecutable(BlockBegin block) {
+        return executableEdges.containsKey(block);
+    }
+
+    private boolean isExecutableEdge(BlockBegin from, BlockBegin to) {
+        List<BlockBegin> preds = executableEdges.get(to);
+        return preds != null && preds.contains(from);
+    }
+
+    private void markEdge(BlockBegin from, BlockBegin to) {
+        List<BlockBegin> preds = executableEdges.get(to);
+        if (preds == null) {
+            preds = new ArrayList<BlockBegin>(2);
+            executableEdges.put(to, preds);
+        }
+        if (!preds.contains(from)) {
+            preds.add(from);
+            changed = true;
+        }
+    }
+
+    private void visitBlock(BlockBegin block) {
+        block.stateBefore().forEachPhi(block, new PhiProcedure() {
+            public boolean doPhi(Phi phi) {
+                register(phi);
+                return true;
+            }
+        });
+        for (Instruction i = block.next(); i != null; i = i.next()) {
+            if (i instanceof BlockEnd) {
+                visitBlockEnd(block, (BlockEnd) i);
+            } else {
+                update(i, evaluate(i));
+            }
+        }
+        for (BlockBegin handler : block.exceptionHandlerBlocks()) {
+            markEdge(block, handler);
+        }
+    }
+
+    private void visitBlockEnd(BlockBegin block, BlockEnd end) {
+        if (end instanceof If) {
+            If ifNode = (If) end;
+            Object x = valueOf(ifNode.x());
+            Object y = valueOf(ifNode.y());
+            if (x != OVERDEFINED && y != OVERDEFINED) {
+                if (x == null || y == null) {
+                    // wait until both inputs are defined
+                    return;
+                }
+                Boolean result = ifNode.condition().foldCondition((CiConstant) x, (CiConstant) y, runtime);
+                if (result != null) {
+                    markEdge(block, ifNode.successor(result));
+                    return;
+                }
+            }
+        }
+        for (BlockBegin succ : end.successors()) {
+            markEdge(block, succ);
+        }
+    }
+
+    /**
+     * Conservatively marks all successors of branches whose inputs are still undefined
+     * once a fixed point has been reached.
+     */
+    private void markUndecidedBranches() {
+        for (BlockBegin block : blocks) {
+            if (isExecutable(block) && block.end() instanceof If) {
+                If ifNode = (If) block.end();
+                if (valueOf(ifNode.x()) == null || valueOf(ifNode.y()) == null) {
+                    for (BlockBegin succ : ifNode.successors()) {
+                        markEdge(block, succ);
+                    }
+                }
+            }
+        }
+    }
+
+    private void register(Phi phi) {
+        if (!phis.containsKey(phi)) {
+            phis.put(phi, phi);
+            changed = true;
+        }
+    }
+
+    private void visitPhi(Phi phi) {
+        BlockBegin block = phi.block();
+        if (!isExecutable(block)) {
+            return;
+        }
+        if (phi.isIllegal() || block.isExceptionEntry()) {
+            update(phi, OVERDEFINED);
+            return;
+        }
+        Object result = null;
+        int max = phi.inputCount();
+        for (int j = 0; j < max; j++) {
+            if (isExecutableEdge(block.predAt(j), block)) {
+                result = meet(result, valueOf(phi.inputAt(j)));
+            }
+        }
+        update(phi, result);
+    }
+
+    private static boolean isTracked(CiKind kind) {
+        return kind == CiKind.Int || kind == CiKind.Long;
+    }
+
+    /**
+     * Gets the current lattice value of a value.
+     * @return a {@link CiConstant}, {@link #OVERDEFINED} or {@code null} if the value is not defined yet
+     */
+    private Object valueOf(Value v) {
+        if (v == null) {
+            return OVERDEFINED;
+        }
+        if (v.isConstant()) {
+            return isTracked(v.asConstant().kind) ? v.asConstant() : OVERDEFINED;
+        }
+        if (!isTracked(v.kind) || v.isIllegal()) {
+            return OVERDEFINED;
+        }
+        if (v instanceof Phi) {
+            register((Phi) v);
+            return lattice.get(v);
+        }
+        if (v instanceof Instruction) {
+            return lattice.get(v);
+        }
+        return OVERDEFINED;
+    }
+
+    private static Object meet(Object a, Object b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null || a.equals(b)) {
+            return a;
+        }
+        return OVERDEFINED;
+    }
+
+    private void update(Value v, Object value) {
+        Object old = lattice.get(v);
+        if (value == null || old == OVERDEFINED || value.equals(old)) {
+            return;
+        }
+        // values only ever move down the lattice
+        lattice.put(v, old == null ? value : OVERDEFINED);
+        changed = true;
+    }
+
+    private Object evaluate(Instruction i) {
+        if (i instanceof Constant) {
+            return valueOf(i);
+        }
+        if (!isTracked(i.kind)) {
+            return OVERDEFINED;
+        }
+        if (i instanceof IfOp) {
+            return evaluateIfOp((IfOp) i);
+        }
+        if (i instanceof CompareOp) {
+            return evaluateCompareOp((CompareOp) i);
+        }
+        if (i instanceof ArithmeticOp || i instanceof LogicOp || i instanceof ShiftOp) {
+            return evaluateOp2((Op2) i);
+        }
+        if (i instanceof NegateOp) {
+            Object x = valueOf(((NegateOp) i).x());
+            if (!(x instanceof CiConstant)) {
+                return x;
+            }
+            CiConstant c = (CiConstant) x;
+            return i.kind == CiKind.Int ? CiConstant.forInt(-c.asInt()) : CiConstant.forLong(-c.asLong());
+        }
+        if (i instanceof Convert) {
+            return evaluateConvert((Convert) i);
+        }
+        return OVERDEFINED;
+    }
+
+    private Object evaluateOp2(Op2 op) {
+        Object x = valueOf(op.x());
+        Object y = valueOf(op.y());
+        if (x == OVERDEFINED || y == OVERDEFINED) {
+            return OVERDEFINED;
+        }
+        if (x == null || y == null) {
+            return null;
+        }
+        CiConstant cx = (CiConstant) x;
+        CiConstant cy = (CiConstant) y;
+        if (op.kind == CiKind.Int && cx.kind == CiKind.Int && cy.kind == CiKind.Int) {
+            Integer result = Canonicalizer.foldIntOp2(op.opcode, cx.asInt(), cy.asInt());
+            return result == null ? OVERDEFINED : CiConstant.forInt(result);
+        }
+        if (op.kind == CiKind.Long && cx.kind == CiKind.Long) {
+            // the shift count of a long shift is an int
+            Long result = Canonicalizer.foldLongOp2(op.opcode, cx.asLong(), cy.asLong());
+            return result == null ? OVERDEFINED : CiConstant.forLong(result);
+        }
+        return OVERDEFINED;
+    }
+
+    private Object evaluateCompareOp(CompareOp op) {
+        Object x = valueOf(op.x());
+        Object y = valueOf(op.y());
+        if (x == OVERDEFINED || y == OVERDEFINED) {
+            return OVERDEFINED;
+        }
+        if (x == null || y == null) {
+            return null;
+        }
+        if (op.opcode == LCMP) {
+            return CiConstant.forInt(Canonicalizer.foldLongCompare(((CiConstant) x).asLong(), ((CiConstant) y).asLong()));
+        }
+        return OVERDEFINED;
+    }
+
+    private Object evaluateIfOp(IfOp op) {
+        Object x = valueOf(op.x());
+        Object y = valueOf(op.y());
+        if (x == OVERDEFINED || y == OVERDEFINED) {
+            Object t = valueOf(op.trueValue());
+            // the selected value does not matter if both are the same
+            return t instanceof CiConstant && t.equals(valueOf(op.falseValue())) ? t : OVERDEFINED;
+        }
+        if (x == null || y == null) {
+            return null;
+        }
+        Boolean result = op.condition().foldCondition((CiConstant) x, (CiConstant) y, runtime);
+        if (result == null) {
+            return OVERDEFINED;
+        }
+        return valueOf(result ? op.trueValue() : op.falseValue());
+    }
+
+    private Object evaluateConvert(Convert convert) {
+        Object v = valueOf(convert.value());
+        if (!(v instanceof CiConstant)) {
+            return v;
+        }
+        CiConstant c = (CiConstant) v;
+        // Checkstyle: off
+        switch (convert.opcode) {
+            case I2B: return CiConstant.forInt((byte) c.asInt());
+            case I2S: return CiConstant.forInt((short) c.asInt());
+            case I2C: return CiConstant.forInt((char) c.asInt());
+            case I2L: return CiConstant.forLong(c.asInt());
+            case L2I: return CiConstant.forInt((int) c.asLong());
+        }
+        // Checkstyle: on
+        return OVERDEFINED;
+    }
+
+    private void transform() {
+        InstructionSubstituter subst = new InstructionSubstituter(ir);
+        for (BlockBegin block : blocks) {
+            if (!isExecutable(block)) {
+                continue;
+            }
+            for (Instruction i = block.next(); i != null && !(i instanceof BlockEnd); i = i.next()) {
+                Object value = lattice.get(i);
+                if (value instanceof CiConstant && !i.isConstant()) {
+                    Constant c = insertConstant(i, (CiConstant) value);
+                    subst.setSubst(i, c);
+                    i = c;
+                }
+            }
+        }
+        for (Phi phi : phis.keySet()) {
+            Object value = lattice.get(phi);
+            if (value instanceof CiConstant && isExecutable(phi.block())) {
+                subst.setSubst(phi, insertConstant(phi.block(), (CiConstant) value));
+            }
+        }
+        subst.finish();
+
+        if (canRemoveUnreachableBlocks()) {
+            for (BlockBegin block : blocks) {
+                if (isExecutable(block) && block.end() instanceof If) {
+                    foldBranch(block, (If) block.end());
+                }
+            }
+            for (BlockBegin block : blocks) {
+                if (!isExecutable(block)) {
+                    // block is unreachable, disconnect it from its successors
+                    for (BlockBegin succ : block.end().successors()) {
+                        succ.removePredecessor(block);
+                    }
+                    C1XMetrics.BlocksDeleted++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a new constant after the specified instruction.
+     * @return the new constant
+     */
+    private Constant insertConstant(Instruction i, CiConstant value) {
+        Constant c = new Constant(value);
+        Instruction next = i.next();
+        i.setNext(c, i.bci());
+        c.resetNext(next);
+        C1XMetrics.ConstantsPropagated++;
+        return c;
+    }
+
+    /**
+     * Unreachable blocks are only removed if none of them has an exception handler, since
+     * the states of exception handler entries are not associated with their predecessors.
+     */
+    private boolean canRemoveUnreachableBlocks() {
+        for (BlockBegin block : blocks) {
+            if (!isExecutable(block) && block.numberOfExceptionHandlers() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void foldBranch(BlockBegin block, If ifNode) {
+        Object x = valueOf(ifNode.x());
+        Object y = valueOf(ifNode.y());
+        if (x instanceof CiConstant && y instanceof CiConstant) {
+            Boolean result = ifNode.condition().foldCondition((CiConstant) x, (CiConstant) y, runtime);
+            if (result != null) {
+                Goto newGoto = new Goto(ifNode.successor(result), ifNode.stateAfter(), ifNode.isSafepointPoll());
+                ifNode.prev(block).setNext(newGoto, ifNode.bci());
+                // update block end (will remove this block from the predecessors of the other successor)
+                block.setEnd(newGoto);
+                C1XMetrics.BranchesFolded++;
+            }
+        }
+    }
 }
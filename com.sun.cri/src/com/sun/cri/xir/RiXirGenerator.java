@@ -121,6 +121,16 @@ public interface RiXirGenerator {
      */
     XirSnippet genTypeCheck(XirSite site, XirArgument object, XirArgument hub, RiType type);
 
+    /**
+     * Generates code that tests whether the {@linkplain Representation#ObjectHub hub} of
+     * an object is identical to a given hub constant. In pseudo code:
+     * <pre>
+     *     result = object.getHub() == hub ? trueValue : falseValue;
+     * </pre>
+     * This snippet should only be used when the object is guaranteed not to be null.
+     */
+    XirSnippet genMaterializeTypeCheck(XirSite site, XirArgument object, XirArgument hub, XirArgument trueValue, XirArgument falseValue, RiType type);
+
     /**
      * Gets the list of XIR templates, using the given XIR assembler to create them if
      * they haven't yet been created.
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.object;
+
+import com.sun.max.tele.*;
+import com.sun.max.tele.reference.*;
+import com.sun.max.vm.heap.gcx.*;
+
+
+/**
+ * @see AgingRegionalizedNursery
+ */
+public class TeleAgingRegionalizedNursery extends TeleTupleObject {
+
+    private TeleBaseAtomicBumpPointerAllocator allocator;
+
+    public TeleAgingRegionalizedNursery(TeleVM vm, RemoteReference reference) {
+        super(vm, reference);
+    }
+
+    @Override
+    protected boolean updateObjectCache(long epoch, StatsPrinter statsPrinter) {
+        if (!super.updateObjectCache(epoch, statsPrinter)) {
+            return false;
+        }
+        if (allocator == null) {
+            final RemoteReference nurseryAllocatorRef = fields().AgingRegionalizedNursery_allocator.readRemoteReference(reference());
+            allocator = (TeleBaseAtomicBumpPointerAllocator) objects().makeTeleObject(nurseryAllocatorRef);
+        }
+        return true;
+    }
+
+    public TeleBaseAtomicBumpPointerAllocator allocator() {
+        return allocator;
+    }
+}
@@ -46,10 +46,22 @@ import com.sun.max.vm.MaxineVM.Phase;
  */
 public final class VirtualMemory {
     private static boolean TraceAnonOperations = false;
+
+    /**
+     * Back the heap, the code cache and the GC data structures with large pages when the platform supports them.
+     */
+    public static boolean UseLargePages = false;
     static {
         VMOptions.addFieldOption("-XX:", "TraceAnonOperations", VirtualMemory.class, "TraceAnonOperations", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "UseLargePages", VirtualMemory.class,
+            "Back the heap, code cache and GC data structures with large pages if available", Phase.PRISTINE);
     }
 
+    /**
+     * Set when advising the use of large pages failed. Memory is then backed with normal pages.
+     */
+    private static boolean largePagesUnavailable;
+
     public enum Type {
         HEAP,   // for the garbage collected heap
         STACK,  // for thread stacks
@@ -69,11 +81,42 @@ public final class VirtualMemory {
      */
     public static Pointer allocate(Size size, Type type) {
         allocateMemoryTime.start();
-        final Pointer allocated = virtualMemory_allocate(size, type.ordinal());
+        Pointer allocated;
+        if (usesLargePages(type)) {
+            allocated = allocateLargePageAligned(size, type);
+            if (!allocated.isZero()) {
+                adviseLargePages(allocated, size);
+            }
+        } else {
+            allocated = virtualMemory_allocate(size, type.ordinal());
+        }
         allocateMemoryTime.stop();
         return allocated;
     }
 
+    /**
+     * Allocate virtual memory aligned to the large page size, so that it can be backed entirely by large pages.
+     * Over-allocate by one large page and release the unaligned head and tail.
+     */
+    private static Pointer allocateLargePageAligned(Size size, Type type) {
+        final Size alignment = largePageSize();
+        final Size allocatedSize = size.alignUp(Platform.platform().pageSize).asSize();
+        final Pointer unaligned = virtualMemory_allocate(allocatedSize.plus(alignment), type.ordinal());
+        if (unaligned.isZero()) {
+            return unaligned;
+        }
+        final Pointer aligned = unaligned.alignUp(alignment.toInt()).asPointer();
+        final Size head = aligned.minus(unaligned).asSize();
+        if (!head.isZero()) {
+            virtualMemory_deallocate(unaligned, head, type.ordinal());
+        }
+        final Size tail = alignment.minus(head);
+        if (!tail.isZero()) {
+            virtualMemory_deallocate(aligned.plus(allocatedSize), tail, type.ordinal());
+        }
+        return aligned;
+    }
+
     /**
      * Deallocates virtual memory of a given type.
      *
@@ -104,6 +147,9 @@ public final class VirtualMemory {
     public static boolean allocateAtFixedAddress(Address address, Size size, Type type) {
         allocateAtFixedAddressTime.start();
         final boolean allocated = virtualMemory_allocateAtFixedAddress(address, size, type.ordinal());
+        if (allocated && usesLargePages(type)) {
+            adviseLargePages(address, size);
+        }
         allocateAtFixedAddressTime.stop();
         return allocated;
     }
@@ -208,6 +254,10 @@ public final class VirtualMemory {
         }
         commitMemoryTime.start();
         final Pointer committed = virtualMemory_allocatePrivateAnon(address, size, true, false, type.ordinal());
+        // Committing re-maps the range, so the large page advice must be given again.
+        if (committed.equals(address) && usesLargePages(type)) {
+            adviseLargePages(address, size);
+        }
         commitMemoryTime.stop();
         return committed.equals(address);
     }
@@ -238,6 +288,114 @@ public final class VirtualMemory {
     @C_FUNCTION
     private static native Size virtualMemory_getPhysicalMemorySize();
 
+    /* NUMA support */
+
+    /**
+     * Return the number of NUMA nodes of the underlying platform.
+     * @return a number of nodes, 1 if the platform isn't NUMA or doesn't report its NUMA topology
+     */
+    public static int numNumaNodes() {
+        return virtualMemory_numNumaNodes();
+    }
+
+    /**
+     * Set the memory policy of a range of virtual memory so that its pages are allocated preferably on the specified NUMA node.
+     * The policy applies to pages touched after the call. It is lost when the range is uncommitted.
+     *
+     * @param address a page aligned address
+     * @param size size of the range, in bytes
+     * @param node a NUMA node
+     * @return true if the policy was set, false otherwise
+     */
+    public static boolean bindToNumaNode(Address address, Size size, int node) {
+        if (TraceAnonOperations) {
+            Log.print("node ");
+            Log.print(node);
+            Log.print(' ');
+            traceRange("bindToNumaNode", address, size);
+        }
+        return virtualMemory_bindToNumaNode(address, size, node);
+    }
+
+    /**
+     * Return the NUMA node of the processor the current thread runs on. The thread may be migrated to another node right after the call.
+     * @return a NUMA node, 0 if unknown
+     */
+    @INLINE
+    public static int currentNumaNode() {
+        return virtualMemory_currentNumaNode();
+    }
+
+    @C_FUNCTION
+    private static native int virtualMemory_numNumaNodes();
+
+    @C_FUNCTION
+    private static native boolean virtualMemory_bindToNumaNode(Address address, Size size, int node);
+
+    @C_FUNCTION
+    private static native int virtualMemory_currentNumaNode();
+
+    /* Large pages support */
+
+    /**
+     * Return the size of the large pages used to back memory if {@code -XX:+UseLargePages} is specified.
+     * @return a size in bytes, zero if large pages are not used
+     */
+    public static Size largePageSize() {
+        if (!UseLargePages || largePagesUnavailable) {
+            return Size.zero();
+        }
+        return virtualMemory_getLargePageSize();
+    }
+
+    /**
+     * Tell whether memory of the specified type is backed with large pages. Thread stacks never are.
+     */
+    private static boolean usesLargePages(Type type) {
+        return type != Type.STACK && !largePageSize().isZero();
+    }
+
+    /**
+     * Advise the underlying OS to back a range of memory with large pages. If the advice fails, large pages are given up
+     * for the rest of the run, and memory is backed with normal pages.
+     */
+    private static void adviseLargePages(Address address, Size size) {
+        if (TraceAnonOperations) {
+            traceRange("adviseLargePages", address, size);
+        }
+        if (!virtualMemory_adviseLargePages(address, size)) {
+            largePagesUnavailable = true;
+            Log.println("Warning: large pages unavailable, using normal pages");
+        }
+    }
+
+    @C_FUNCTION
+    private static native Size virtualMemory_getLargePageSize();
+
+    @C_FUNCTION
+    private static native boolean virtualMemory_adviseLargePages(Address address, Size size);
+
+    /**
+     * Release the physical memory backing a range of virtual memory back to the OS, without unmapping nor protecting the range.
+     * Unlike {@link #uncommitMemory(Address, Size, Type)}, the range stays accessible, but its content is lost.
+     *
+     * @param address page-aligned start of the range
+     * @param size size of the range, in bytes
+     * @return true if the physical memory was released
+     */
+    public static boolean discardMemory(Address address, Size size) {
+        if (address.isZero() || size.isZero()) {
+            return false;
+        }
+        if (TraceAnonOperations) {
+            traceRange("discardMemory", address, size);
+        }
+        return virtualMemory_discardMemory(address, size);
+    }
+
+    @C_FUNCTION
+    private static native boolean virtualMemory_discardMemory(Address address, Size size);
+
     /* Page protection methods */
 
     /**
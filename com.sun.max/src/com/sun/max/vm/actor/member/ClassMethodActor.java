@@ -41,6 +41,7 @@ import com.sun.max.vm.compiler.RuntimeCompiler.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.jni.*;
 import com.sun.max.vm.object.ObjectAccess;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.FatalError;
 import com.sun.max.vm.type.*;
 import com.sun.max.vm.verifier.*;
@@ -405,6 +406,94 @@ public abstract class ClassMethodActor extends MethodActor {
         return Compilations.currentTargetMethod(compiledState, null);
     }
 
+    /**
+     * Gets the profile gathered by the baseline version of this method, if it has one.
+     */
+    private MethodProfile baselineProfile() {
+        TargetMethod tm = Compilations.currentTargetMethod(compiledState, Nature.BASELINE);
+        if (tm == null || tm.profile() == null || tm.profile().rawData() == null) {
+            return null;
+        }
+        return tm.profile();
+    }
+
+    /**
+     * Gets the number of method entries and backward branches counted by the baseline version of this method.
+     * Dividing the execution count of a call site by this value gives how often the call site runs per entry or
+     * loop iteration.
+     */
+    @Override
+    public int invocationCount() {
+        MethodProfile mp = baselineProfile();
+        if (mp == null) {
+            return -1;
+        }
+        return (int) Math.min(mp.entryBackedgeExecutionCount(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the receiver types recorded by the baseline version of this method at a call site, most frequent first.
+     * No profile is returned once a guard speculating on a profiled receiver type has failed in this method, so
+     * that the method is not compiled with the same wrong speculation again.
+     */
+    @Override
+    public RiTypeProfile typeProfile(int bci) {
+        MethodProfile mp = baselineProfile();
+        if (mp == null || mp.getDeoptimizationCount(MethodProfile.TYPE_CHECKED_INLINING_VIOLATED_REASON_ID) > 0) {
+            return null;
+        }
+        Integer[] pairs = mp.getTypeProfile(bci);
+        if (pairs == null) {
+            return null;
+        }
+        int pairCount = pairs.length / 2;
+        long total = 0;
+        int known = 0;
+        for (int i = 0; i < pairCount; i++) {
+            total += pairs[i * 2 + 1];
+            if (pairs[i * 2] != MethodProfile.UNDEFINED_TYPE_ID) {
+                known++;
+            }
+        }
+        if (total <= 0) {
+            return null;
+        }
+        RiTypeProfile profile = new RiTypeProfile();
+        profile.count = (int) Math.min(total, Integer.MAX_VALUE);
+        profile.morphism = pairCount;
+        profile.types = new RiResolvedType[known];
+        profile.probabilities = new float[known];
+        int j = 0;
+        for (int i = 0; i < pairCount; i++) {
+            if (pairs[i * 2] != MethodProfile.UNDEFINED_TYPE_ID) {
+                RiResolvedType type = ClassIDManager.toClassActor(pairs[i * 2]);
+                float probability = (float) (pairs[i * 2 + 1] / (double) total);
+                // insertion sort, the profile holds only a handful of types
+                int k = j++;
+                while (k > 0 && profile.probabilities[k - 1] < probability) {
+                    profile.types[k] = profile.types[k - 1];
+                    profile.probabilities[k] = profile.probabilities[k - 1];
+                    k--;
+                }
+                profile.types[k] = type;
+                profile.probabilities[k] = probability;
+            }
+        }
+        return profile;
+    }
+
+    @Override
+    public double branchProbability(int bci) {
+        MethodProfile mp = baselineProfile();
+        return mp == null ? -1 : mp.getBranchTakenProbability(bci);
+    }
+
+    @Override
+    public double[] switchProbability(int bci) {
+        MethodProfile mp = baselineProfile();
+        return mp == null ? null : mp.getSwitchProbabilities(bci);
+    }
+
     /**
      * Records if this object returned {@code true} for a call to {@link #canBePermanentlyLinked()} during
      * boot image building.
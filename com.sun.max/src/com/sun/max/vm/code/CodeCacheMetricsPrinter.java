@@ -111,7 +111,7 @@ public final class CodeCacheMetricsPrinter {
             MethodProfile profile = targetMethod.profile();
             int invocations = 0;
             if (profile != null) {
-                invocations = MethodInstrumentation.initialEntryBackedgeCount - profile.entryBackedgeCount;
+                invocations = (int) Math.min(profile.entryBackedgeExecutionCount(), Integer.MAX_VALUE);
             }
             String type = targetMethod.getClass().getSimpleName();
             add(metrics, type, bcSize, mcSize, invocations);
@@ -1713,7 +1713,7 @@ public final class CodeEviction extends VmOperation {
             Log.print(". ");
             Log.print(tm);
             Log.print(" - invocations: ");
-            Log.println(MethodInstrumentation.initialEntryBackedgeCount - tm.profile().entryBackedgeCount);
+            Log.println(tm.profile().entryBackedgeExecutionCount());
         }
 
         @Override
@@ -358,6 +358,7 @@ public class CompilationBroker {
                 MethodInstrumentation.enable(RCT);
             }
         } else if (phase == Phase.RUNNING) {
+            WarmStartProfile.initialize();
             if (BackgroundCompilation) {
                 backgroundCompilationInitialized = true;
                 compilationThreadPool = new CompilationThreadPool();
@@ -402,7 +403,7 @@ public class CompilationBroker {
             if (mp != null) {
                 mp.incrementDeoptimizationCount(deoptReasonId);
                 if (mp.entryBackedgeCount <= 0) {
-                    mp.entryBackedgeCount = MethodInstrumentation.initialEntryBackedgeCount;
+                    mp.resetEntryBackedgeCount(MethodInstrumentation.initialEntryBackedgeCount);
                 }
             }
         }
@@ -410,6 +411,41 @@ public class CompilationBroker {
         optimizingCompiler.deoptimize(cma);
     }
 
+    /**
+     * Requests the optimized recompilation of a method whose optimized code was invalidated because a speculation
+     * failed. The compilation is queued for the compilation threads, so the requesting thread does not wait for it.
+     * Without background compilation, nothing is done here: the method is recompiled once the counter of its
+     * baseline code overflows again.
+     *
+     * @param cma the method to recompile
+     */
+    public void requestRecompilation(ClassMethodActor cma) {
+        if (!backgroundCompilationInitialized) {
+            return;
+        }
+        Compilation compilation;
+        boolean pending;
+        synchronized (cma) {
+            Object compiledState = cma.compiledState;
+            pending = compiledState instanceof Compilation;
+            if (pending) {
+                compilation = (Compilation) compiledState;
+            } else {
+                compilation = new Compilation(selectCompiler(cma, Nature.OPT, false), cma, (Compilations) compiledState, Thread.currentThread(), Nature.OPT, false);
+                cma.compiledState = compilation;
+            }
+        }
+        if (pending) {
+            if (compilation.nature == Nature.OPT) {
+                // move the pending compilation up the queue
+                compilationThreadPool.requestCompilation(compilation);
+            }
+        } else {
+            compilationThreadPool.addCompilationToQueue(compilation);
+            compilation.relinquishOwnership();
+        }
+    }
+
     /**
      * Deopt compilation, if necessary.
      * The method is only recompiled if the current target method has been invalidated, which is the normal deopt case.
@@ -592,6 +628,10 @@ public class CompilationBroker {
                             // compile VM extensions with the opt compiler (cf isHosted)
                             reason = "vm";
                             compiler = optimizingCompiler;
+                        } else if (!isDeopt && optimizingCompiler != null && WarmStartProfile.contains(cma)) {
+                            // optimized in a previous run: skip baseline compilation and profiling
+                            reason = "warm start";
+                            compiler = optimizingCompiler;
                         } else {
                             compiler = defaultCompiler;
                         }
@@ -654,53 +694,26 @@ public class CompilationBroker {
      * @param receiver the receiver object of the profiled method. This will be {@code null} if the profiled method is static.
      */
     public static void instrumentationCounterOverflow(MethodProfile mpo, Object receiver) {
-        if (mpo.compilationDisabled) {
-            mpo.entryBackedgeCount = Integer.MAX_VALUE;
-            return;
-        }
-        if (Heap.isAllocationDisabledForCurrentThread()) {
-            logCounterOverflow(mpo, "Stopped recompilation because allocation is currently disabled");
-            // We don't want to see another counter overflow in the near future
-            mpo.entryBackedgeCount = 1000;
+        if (!isRecompilationAllowed(mpo)) {
             return;
         }
-        if (!backgroundCompilationInitialized && Compilation.isCompilationRunningInCurrentThread()) {
-            logCounterOverflow(mpo, "Stopped recompilation because compilation is running in current thread");
-            // We don't want to see another counter overflow in the near future
-            mpo.entryBackedgeCount = 1000;
-            return;
-        }
-
         ClassMethodActor cma = mpo.method.classMethodActor;
         TargetMethod oldMethod = mpo.method;
-        TargetMethod newMethod = Compilations.currentTargetMethod(cma.compiledState, null);
-
-        if (oldMethod == newMethod || newMethod == null) {
-            if (!(cma.compiledState instanceof Compilation)) {
-                // There is no newer compiled version available yet that we could just patch to, so recompile
-                logCounterOverflow(mpo, "");
-                try {
-                    newMethod = vm().compilationBroker.compile(cma, Nature.OPT);
-                } catch (InternalError e) {
-                    if (VMOptions.verboseOption.verboseCompilation) {
-                        e.printStackTrace(Log.out);
-                    }
-                    // Optimization failed - stay with the baseline method. By not resetting the counter,
-                    // the next counter overflow (due to integer wrapping) will be a while away.
-                    return;
-                }
-            }
+        TargetMethod newMethod = recompile(mpo);
+        if (newMethod == null) {
+            // Optimization failed - stay with the baseline method. By not resetting the counter,
+            // the next counter overflow (due to integer wrapping) will be a while away.
+            return;
         }
 
-
-        if (oldMethod == newMethod || newMethod == null) {
+        if (oldMethod == newMethod) {
             // No compiled method available yet, maybe compilation is pending.
             // We don't want to see another counter overflow in the near future.
-            mpo.entryBackedgeCount = 1000;
+            mpo.resetEntryBackedgeCount(1000);
         } else {
             assert newMethod != null : oldMethod;
             logPatching(cma, oldMethod, newMethod);
-            mpo.entryBackedgeCount = 0;
+            mpo.resetEntryBackedgeCount(0);
 
             if (receiver != null) {
                 Address from = oldMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
@@ -735,6 +748,94 @@ public class CompilationBroker {
         }
     }
 
+    /**
+     * Handles an instrumentation counter overflow at a backward branch of a profiled method, i.e., when a
+     * baseline activation is looping. This is backedge-triggered recompilation, not on-stack replacement:
+     * the optimized version of the method is requested right away instead of upon the next entry to the method,
+     * but the looping activation itself keeps executing the baseline code. Invocations and
+     * dispatch tables are patched to the new code by the next {@linkplain #instrumentationCounterOverflow entry
+     * counter overflow}, which the counter left at zero guarantees. The counter then goes negative while the loop
+     * runs on, which {@link MethodProfile#entryBackedgeExecutionCount()} accounts for.
+     * This method must be called on the thread that overflowed the counter.
+     *
+     * @param mpo profiling object (including the method itself)
+     */
+    public static void backedgeCounterOverflow(MethodProfile mpo) {
+        if (!isRecompilationAllowed(mpo)) {
+            return;
+        }
+        TargetMethod oldMethod = mpo.method;
+        TargetMethod newMethod = recompile(mpo);
+        if (newMethod == null) {
+            return;
+        }
+        if (oldMethod == newMethod) {
+            // Compilation is pending: check again after some more iterations.
+            mpo.resetEntryBackedgeCount(1000);
+        } else {
+            // Backward branches only overflow the counter when it reaches zero, so leaving it at zero makes
+            // the next entry to the method overflow and patch callers while the loop continues undisturbed.
+            mpo.resetEntryBackedgeCount(0);
+        }
+    }
+
+    /**
+     * Determines if a counter overflow may trigger a recompilation now. If not, the counter is reset so that the
+     * next overflow is some time away.
+     */
+    private static boolean isRecompilationAllowed(MethodProfile mpo) {
+        if (mpo.compilationDisabled) {
+            mpo.resetEntryBackedgeCount(Integer.MAX_VALUE);
+            return false;
+        }
+        if (Heap.isAllocationDisabledForCurrentThread()) {
+            logCounterOverflow(mpo, "Stopped recompilation because allocation is currently disabled");
+            // We don't want to see another counter overflow in the near future
+            mpo.resetEntryBackedgeCount(1000);
+            return false;
+        }
+        if (!backgroundCompilationInitialized && Compilation.isCompilationRunningInCurrentThread()) {
+            logCounterOverflow(mpo, "Stopped recompilation because compilation is running in current thread");
+            // We don't want to see another counter overflow in the near future
+            mpo.resetEntryBackedgeCount(1000);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the optimized version of the method profiled by {@code mpo}, compiling it if it is neither available nor
+     * being compiled.
+     *
+     * @return the newest target method of the profiled method, which is {@code mpo.method} if no newer version is
+     *         available yet, or {@code null} if the optimizing compilation failed
+     */
+    private static TargetMethod recompile(MethodProfile mpo) {
+        ClassMethodActor cma = mpo.method.classMethodActor;
+        TargetMethod oldMethod = mpo.method;
+        TargetMethod newMethod = Compilations.currentTargetMethod(cma.compiledState, null);
+
+        if (oldMethod == newMethod || newMethod == null) {
+            final Object compiledState = cma.compiledState;
+            if (!(compiledState instanceof Compilation)) {
+                // There is no newer compiled version available yet that we could just patch to, so recompile
+                logCounterOverflow(mpo, "");
+                try {
+                    newMethod = vm().compilationBroker.compile(cma, Nature.OPT);
+                } catch (InternalError e) {
+                    if (VMOptions.verboseOption.verboseCompilation) {
+                        e.printStackTrace(Log.out);
+                    }
+                    return null;
+                }
+            } else if (backgroundCompilationInitialized) {
+                // The method is still hot while its compilation is pending: move it up the queue
+                vm().compilationBroker.compilationThreadPool.requestCompilation((Compilation) compiledState);
+            }
+        }
+        return newMethod == null ? oldMethod : newMethod;
+    }
+
     public static void logCounterOverflow(MethodProfile mpo, String msg) {
         if (VMOptions.verboseOption.verboseCompilation) {
             boolean lockDisabledSafepoints = Log.lock();
@@ -33,16 +33,86 @@ import com.sun.max.vm.ti.*;
 
 /**
  * This class implements a thread pool that maintains a variable number of compilation threads.
+ * <p>
+ * Pending compilations are served in priority order rather than in request order. The priority of a compilation is
+ * its <i>heat</i>: the number of times it was requested, each request decaying exponentially with age (see
+ * {@link #CompilationQueueHalfLife}). Each further profile counter overflow of a method whose compilation is still
+ * pending {@linkplain #requestCompilation(Compilation) counts as a request}, so hot methods overtake lukewarm ones.
+ * Compilations not requested anymore for {@link #CompilationQueueStaleTime} milliseconds are dropped, leaving their
+ * methods with their current code until a new request.
+ * <p>
+ * Idle compilation threads each wait on their own slot, so that a new compilation wakes up exactly one of them.
  */
 public class CompilationThreadPool {
 
     /**
-     * A queue of pending compilations.
+     * A pending compilation and its queueing state.
      */
-    private final LinkedList<Compilation> pending = new LinkedList<Compilation>();
+    private final class QueuedCompilation {
+        final Compilation compilation;
+
+        /**
+         * The time this compilation was added to the queue.
+         */
+        final long enqueueTime;
+
+        /**
+         * The heat of this compilation as of {@link #heatTime}.
+         */
+        double heat;
+
+        /**
+         * The time of the last request for this compilation.
+         */
+        long heatTime;
+
+        QueuedCompilation(Compilation compilation, long now) {
+            this.compilation = compilation;
+            this.enqueueTime = now;
+            this.heat = 1;
+            this.heatTime = now;
+        }
+
+        double heat(long now) {
+            if (halfLife <= 0) {
+                return heat;
+            }
+            return heat * Math.pow(0.5, (double) (now - heatTime) / halfLife);
+        }
+
+        void request(long now) {
+            heat = heat(now) + 1;
+            heatTime = now;
+        }
+
+        boolean isStale(long now) {
+            return staleTime > 0 && now - heatTime > staleTime;
+        }
+    }
+
+    /**
+     * The pending compilations. The queue is expected to remain short, so it is simply scanned for the hottest
+     * compilation, which lets heats decay without reordering a heap.
+     */
+    private final ArrayList<QueuedCompilation> pending = new ArrayList<QueuedCompilation>();
+
+    /**
+     * The compilation threads waiting for a compilation. Guarded by {@link #pending}.
+     */
+    private final ArrayList<CompilationThread> idleThreads = new ArrayList<CompilationThread>();
 
     private CompilationThread[] threadPool;
 
+    /**
+     * Half-life, in milliseconds, of a request for a pending compilation.
+     */
+    private final int halfLife;
+
+    /**
+     * Time, in milliseconds, after the last request for a pending compilation at which it is dropped.
+     */
+    private final int staleTime;
+
     /**
      * Default size of compilation thread pool.  
      */
@@ -50,37 +120,204 @@ public class CompilationThreadPool {
 
     private static boolean GCOnRecompilation;
 
+    /**
+     * Half-life, in milliseconds, of a request for a pending compilation.
+     */
+    private static int CompilationQueueHalfLife = 1000;
+
+    /**
+     * Time, in milliseconds, after the last request for a pending compilation at which it is dropped.
+     */
+    private static int CompilationQueueStaleTime = 10000;
+
+    private static boolean TraceCompilationQueue;
+
+    private static boolean PrintCompilationQueueStats;
+
     static {
         addFieldOption("-XX:", "GCOnRecompilation", CompilationThreadPool.class, "Force GC before every re-compilation.");
         addFieldOption("-XX:", "CTPS", CompilationThreadPool.class, "Compilation threadpool size (Default: 4)");
+        addFieldOption("-XX:", "CompilationQueueHalfLife", CompilationThreadPool.class,
+            "Half-life in milliseconds of the requests ordering the background compilation queue (0 disables decay).");
+        addFieldOption("-XX:", "CompilationQueueStaleTime", CompilationThreadPool.class,
+            "Drop background compilations not requested for this many milliseconds (0 disables dropping).");
+        addFieldOption("-XX:", "TraceCompilationQueue", CompilationThreadPool.class, "Trace the background compilation queue.");
+        addFieldOption("-XX:", "PrintCompilationQueueStats", CompilationThreadPool.class,
+            "Print background compilation queue length and wait time statistics at VM exit.");
     }
 
+    /**
+     * Queue metrics. Guarded by {@link #pending}.
+     */
+    private int enqueuedCount;
+    private int compiledCount;
+    private int droppedCount;
+    private int peakQueueLength;
+    private long totalWaitTime;
+    private long maxWaitTime;
+
     public CompilationThreadPool() {
-        threadPool = new CompilationThread[CTPS];
-        for (int i = 0; i < CTPS; i++) {
+        this(CTPS, CompilationQueueHalfLife, CompilationQueueStaleTime);
+    }
+
+    /**
+     * Creates a pool with explicit settings rather than those specified on the command line.
+     *
+     * @param numberOfThreads the number of compilation threads
+     * @param halfLife half-life, in milliseconds, of a request for a pending compilation (0 disables decay)
+     * @param staleTime time, in milliseconds, after the last request for a pending compilation at which it is dropped
+     *            (0 disables dropping)
+     */
+    public CompilationThreadPool(int numberOfThreads, int halfLife, int staleTime) {
+        this.halfLife = halfLife;
+        this.staleTime = staleTime;
+        threadPool = new CompilationThread[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
             threadPool[i] = new CompilationThread();
         }
     }
 
     public void setDaemon(boolean on) {
-        for (int i = 0; i < CTPS; i++) {
+        for (int i = 0; i < threadPool.length; i++) {
             threadPool[i].setDaemon(on);
         }
     }
 
     public void startThreads() {
-        for (int i = 0; i < CTPS; i++) {
+        for (int i = 0; i < threadPool.length; i++) {
             threadPool[i].start();
         }
+        if (PrintCompilationQueueStats) {
+            Runtime.getRuntime().addShutdownHook(new Thread("CompilationQueueStatsPrinter") {
+                @Override
+                public void run() {
+                    printStats();
+                }
+            });
+        }
     }
 
     public void addCompilationToQueue(Compilation compilation) {
+        CompilationThread idleThread = null;
         synchronized (pending) {
-            pending.add(compilation);
-            pending.notify();
+            pending.add(new QueuedCompilation(compilation, System.currentTimeMillis()));
+            enqueuedCount++;
+            if (pending.size() > peakQueueLength) {
+                peakQueueLength = pending.size();
+            }
+            if (!idleThreads.isEmpty()) {
+                idleThread = idleThreads.remove(idleThreads.size() - 1);
+            }
+        }
+        if (idleThread != null) {
+            idleThread.signal();
         }
     }
 
+    /**
+     * Records another request for a pending compilation, raising its priority and keeping it from going stale.
+     * Nothing happens if the compilation is not in the queue anymore.
+     */
+    public void requestCompilation(Compilation compilation) {
+        synchronized (pending) {
+            for (QueuedCompilation queued : pending) {
+                if (queued.compilation == compilation) {
+                    queued.request(System.currentTimeMillis());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the hottest compilation from the queue, along with the stale ones.
+     * Must be called with the {@link #pending} lock held.
+     *
+     * @param now the current time
+     * @param stale the list where to add the stale compilations
+     * @return the hottest compilation, or {@code null} if there is none
+     */
+    private QueuedCompilation poll(long now, List<Compilation> stale) {
+        QueuedCompilation hottest = null;
+        double hottestHeat = 0;
+        int i = 0;
+        while (i < pending.size()) {
+            final QueuedCompilation queued = pending.get(i);
+            if (queued.isStale(now)) {
+                stale.add(queued.compilation);
+                pending.remove(i);
+                continue;
+            }
+            final double heat = queued.heat(now);
+            if (hottest == null || heat > hottestHeat) {
+                hottest = queued;
+                hottestHeat = heat;
+            }
+            i++;
+        }
+        if (hottest != null) {
+            pending.remove(hottest);
+            final long waitTime = now - hottest.enqueueTime;
+            totalWaitTime += waitTime;
+            if (waitTime > maxWaitTime) {
+                maxWaitTime = waitTime;
+            }
+            compiledCount++;
+        }
+        return hottest;
+    }
+
+    /**
+     * Abandons stale compilations. Done without holding the {@link #pending} lock, as it takes the lock of the
+     * compiled methods.
+     */
+    private void drop(List<Compilation> stale) {
+        for (Compilation compilation : stale) {
+            if (compilation.abandon()) {
+                synchronized (pending) {
+                    droppedCount++;
+                }
+                if (TraceCompilationQueue) {
+                    boolean lockDisabledSafepoints = Log.lock();
+                    Log.print("Compilation queue: dropped stale compilation of ");
+                    Log.printMethod(compilation.classMethodActor, true);
+                    Log.unlock(lockDisabledSafepoints);
+                }
+            } else {
+                // There is no other code for the method: compile it anyway, at the lowest priority.
+                final QueuedCompilation queued = new QueuedCompilation(compilation, System.currentTimeMillis());
+                queued.heat = 0;
+                synchronized (pending) {
+                    pending.add(queued);
+                }
+            }
+        }
+    }
+
+    private void printStats() {
+        final int pendingCount;
+        synchronized (pending) {
+            pendingCount = pending.size();
+        }
+        boolean lockDisabledSafepoints = Log.lock();
+        Log.println("Compilation queue statistics:");
+        Log.print("  enqueued: ");
+        Log.println(enqueuedCount);
+        Log.print("  compiled: ");
+        Log.println(compiledCount);
+        Log.print("  dropped (stale): ");
+        Log.println(droppedCount);
+        Log.print("  pending at exit: ");
+        Log.println(pendingCount);
+        Log.print("  peak queue length: ");
+        Log.println(peakQueueLength);
+        Log.print("  average wait time (ms): ");
+        Log.println(compiledCount == 0 ? 0 : totalWaitTime / compiledCount);
+        Log.print("  maximum wait time (ms): ");
+        Log.println(maxWaitTime);
+        Log.unlock(lockDisabledSafepoints);
+    }
+
     /**
      * This class implements a daemon thread that performs compilations in the background. Depending on the compiler
      * configuration, multiple compilation threads may be working in parallel.
@@ -96,6 +333,19 @@ public class CompilationThreadPool {
          */
         Compilation compilation;
 
+        /**
+         * The slot on which this thread waits when idle, and whether it was signaled since it went idle.
+         */
+        private final Object slot = new Object();
+        private boolean signaled;
+
+        void signal() {
+            synchronized (slot) {
+                signaled = true;
+                slot.notify();
+            }
+        }
+
         /**
          * Continuously polls the compilation queue for work, performing compilations as they are removed from the
          * queue.
@@ -113,29 +363,86 @@ public class CompilationThreadPool {
             }
         }
 
+        /**
+         * Removes the hottest compilation from the queue, waiting on this thread's slot while there is none.
+         * The thread only waits once it is registered in {@link #idleThreads}, under the same lock that found the queue
+         * empty, so that it can't miss the signal of a compilation added in between.
+         * @throws InterruptedException if the thread was interrupted waiting on its slot
+         */
+        private QueuedCompilation take() throws InterruptedException {
+            final ArrayList<Compilation> stale = new ArrayList<Compilation>();
+            while (true) {
+                QueuedCompilation queued;
+                synchronized (pending) {
+                    queued = poll(System.currentTimeMillis(), stale);
+                    if (queued == null && stale.isEmpty()) {
+                        synchronized (slot) {
+                            signaled = false;
+                        }
+                        if (!idleThreads.contains(this)) {
+                            idleThreads.add(this);
+                        }
+                    }
+                }
+                if (!stale.isEmpty()) {
+                    drop(stale);
+                    stale.clear();
+                    // Dropping requeues the compilations that can't be abandoned: poll again rather than wait.
+                    continue;
+                }
+                if (queued != null) {
+                    return queued;
+                }
+                synchronized (slot) {
+                    while (!signaled) {
+                        slot.wait();
+                    }
+                }
+            }
+        }
+
         /**
          * Polls the compilation queue and performs a single compilation.
          * @throws InterruptedException if the thread was interrupted waiting on the queue
          */
         void compileOne() throws InterruptedException {
             compilation = null;
-            synchronized (pending) {
-                while (compilation == null) {
-                    compilation = pending.poll();
-                    if (compilation == null) {
-                        pending.wait();
-                    }
+            final QueuedCompilation queued = take();
+            compilation = queued.compilation;
+            if (TraceCompilationQueue) {
+                final long now = System.currentTimeMillis();
+                final int pendingCount;
+                synchronized (pending) {
+                    pendingCount = pending.size();
                 }
+                boolean lockDisabledSafepoints = Log.lock();
+                Log.print("Compilation queue: compiling ");
+                Log.printMethod(compilation.classMethodActor, false);
+                Log.print(" after ");
+                Log.print(now - queued.enqueueTime);
+                Log.print(" ms, heat ");
+                Log.print(queued.heat(now));
+                Log.print(", ");
+                Log.print(pendingCount);
+                Log.println(" pending");
+                Log.unlock(lockDisabledSafepoints);
             }
             compilation.compilingThread = Thread.currentThread();
             if (GCOnRecompilation) {
                 System.gc();
             }
-            TargetMethod tm = compilation.compile();
-            VMTI.handler().methodCompiled(tm.classMethodActor);
+            compile(compilation);
         }
     }
 
+    /**
+     * Performs a compilation removed from the queue, on the compilation thread that removed it.
+     */
+    protected void compile(Compilation compilation) {
+        TargetMethod tm = compilation.compile();
+        VMTI.handler().methodCompiled(tm.classMethodActor);
+    }
+
     private void logCompilationError(ClassMethodActor cma, Throwable t) {
         if (VMOptions.verboseOption.verboseCompilation) {
             boolean lockDisabledSafepoints = Log.lock();
@@ -146,4 +453,3 @@ public class CompilationThreadPool {
         }
     }
 }
-
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.compiler;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * Carries the outcome of warm-up over to subsequent runs of the VM. On exit, the methods that have been compiled by
+ * the optimizing compiler at runtime are saved to a file, one method per line. A subsequent run reading
+ * that file compiles these methods with the optimizing compiler upon their first compilation, instead of compiling
+ * them with the baseline compiler and waiting for their profile counters to overflow.
+ * <p>
+ * Only the selection of methods is persisted, not their code. Optimized code is recompiled in the current
+ * run, against the current class hierarchy, so the assumptions it relies on are recorded and
+ * {@linkplain com.sun.max.vm.compiler.deps.DependenciesManager validated} as for any other compilation.
+ * <p>
+ * A method is denoted by the descriptor of its holder, its name and its signature descriptor, separated by spaces,
+ * e.g. {@code Ljava/lang/String; indexOf (II)I}. These are strings the method actor already holds, so
+ * {@link #contains(ClassMethodActor)} doesn't need to format anything.
+ */
+public final class WarmStartProfile {
+
+    private WarmStartProfile() {
+    }
+
+    private static final VMStringOption warmStartProfileOption = register(new VMStringOption("-XX:WarmStartProfile=", false, null,
+        "File listing the methods to compile with the optimizing compiler upon their first compilation."), MaxineVM.Phase.STARTING);
+
+    private static final VMStringOption saveWarmStartProfileOption = register(new VMStringOption("-XX:SaveWarmStartProfile=", false, null,
+        "File to which the methods compiled by the optimizing compiler are written at VM exit, for use with -XX:WarmStartProfile."), MaxineVM.Phase.STARTING);
+
+    private static final String HEADER = "# Maxine warm start profile: methods compiled by the optimizing compiler";
+
+    /**
+     * The methods read from the {@linkplain #warmStartProfileOption profile file}, or {@code null} if there are none:
+     * the signature descriptors of the methods, by name and by holder descriptor. Never modified once set.
+     */
+    private static Map<String, Map<String, Set<String>>> methods;
+
+    /**
+     * Reads the profile file and registers the writing of the new profile at exit, as specified by the options.
+     * Called when the VM starts running.
+     */
+    static void initialize() {
+        final String in = warmStartProfileOption.getValue();
+        if (in != null) {
+            load(in);
+        }
+        final String out = saveWarmStartProfileOption.getValue();
+        if (out != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread("WarmStartProfileWriter") {
+                @Override
+                public void run() {
+                    save(out, optimizedMethods());
+                }
+            });
+        }
+    }
+
+    /**
+     * Determines whether a method should be compiled by the optimizing compiler upon its first compilation.
+     */
+    public static boolean contains(ClassMethodActor cma) {
+        final Map<String, Map<String, Set<String>>> methods = WarmStartProfile.methods;
+        if (methods == null) {
+            return false;
+        }
+        final Map<String, Set<String>> holderMethods = methods.get(cma.holder().typeDescriptor.string);
+        if (holderMethods == null) {
+            return false;
+        }
+        final Set<String> signatures = holderMethods.get(cma.name.string);
+        return signatures != null && signatures.contains(cma.descriptor().string);
+    }
+
+    /**
+     * Reads a profile file, replacing the methods of the profile read before, if any.
+     * The profile is left empty if the file can't be read.
+     */
+    public static void load(String fileName) {
+        final Map<String, Map<String, Set<String>>> result = new HashMap<String, Map<String, Set<String>>>();
+        int count = 0;
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(fileName));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() == 0 || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    final String[] parts = line.split(" ");
+                    if (parts.length != 3) {
+                        Log.println("Ignoring malformed line in warm start profile " + fileName + ": " + line);
+                        continue;
+                    }
+                    Map<String, Set<String>> holderMethods = result.get(parts[0]);
+                    if (holderMethods == null) {
+                        holderMethods = new HashMap<String, Set<String>>();
+                        result.put(parts[0], holderMethods);
+                    }
+                    Set<String> signatures = holderMethods.get(parts[1]);
+                    if (signatures == null) {
+                        signatures = new HashSet<String>();
+                        holderMethods.put(parts[1], signatures);
+                    }
+                    if (signatures.add(parts[2])) {
+                        count++;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.println("Could not read warm start profile " + fileName + ": " + e);
+            methods = null;
+            return;
+        }
+        if (VMOptions.verboseOption.verboseCompilation) {
+            Log.println("Read " + count + " methods from warm start profile " + fileName);
+        }
+        methods = result;
+    }
+
+    /**
+     * Gets the methods that have been compiled by the optimizing compiler at runtime.
+     */
+    private static List<ClassMethodActor> optimizedMethods() {
+        final List<ClassMethodActor> result = new ArrayList<ClassMethodActor>();
+        for (TargetMethod targetMethod : Code.getCodeManager().getRuntimeOptCodeRegion().copyOfTargetMethods()) {
+            final ClassMethodActor cma = targetMethod.classMethodActor();
+            if (cma != null && !targetMethod.isBaseline()) {
+                result.add(cma);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes a profile file listing the specified methods and those of the profile read before, if any, so that the
+     * methods that were not compiled in this run are kept.
+     */
+    public static void save(String fileName, Collection<ClassMethodActor> optimizedMethods) {
+        final Set<String> result = new TreeSet<String>();
+        if (methods != null) {
+            for (Map.Entry<String, Map<String, Set<String>>> holderMethods : methods.entrySet()) {
+                for (Map.Entry<String, Set<String>> signatures : holderMethods.getValue().entrySet()) {
+                    for (String signature : signatures.getValue()) {
+                        result.add(holderMethods.getKey() + ' ' + signatures.getKey() + ' ' + signature);
+                    }
+                }
+            }
+        }
+        for (ClassMethodActor cma : optimizedMethods) {
+            result.add(cma.holder().typeDescriptor.string + ' ' + cma.name.string + ' ' + cma.descriptor().string);
+        }
+        try {
+            final PrintStream out = new PrintStream(new FileOutputStream(fileName));
+            out.println(HEADER);
+            for (String method : result) {
+                out.println(method);
+            }
+            out.close();
+        } catch (IOException e) {
+            Log.println("Could not write warm start profile " + fileName + ": " + e);
+        }
+    }
+}
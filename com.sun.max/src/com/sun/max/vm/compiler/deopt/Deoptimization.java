@@ -30,6 +30,7 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.RuntimeCompiler;
 import com.sun.max.vm.compiler.WordUtil;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.compiler.target.TargetMethod.FrameAccess;
@@ -49,6 +50,7 @@ import static com.sun.max.platform.Platform.target;
 import static com.sun.max.vm.MaxineVM.vm;
 import static com.sun.max.vm.compiler.CallEntryPoint.VTABLE_ENTRY_POINT;
 import static com.sun.max.vm.compiler.target.Stub.Type.*;
+import static com.sun.max.vm.intrinsics.Infopoints.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.UNSAFE_CAST;
 import static com.sun.max.vm.stack.JVMSFrameLayout.JVMS_SLOT_SIZE;
 import static com.sun.max.vm.stack.VMFrameLayout.STACK_SLOT_SIZE;
@@ -105,11 +107,20 @@ public class Deoptimization extends VmOperation {
      */
     public static int DeoptimizeALot;
 
+    /**
+     * A VM option for the number of failed type guards in a method after which an optimized method is invalidated
+     * when one of its type guards fails.
+     */
+    public static int TypeGuardDeoptThreshold = 1;
+
     static {
         VMOptions.addFieldOption("-XX:", "UseDeopt", Deoptimization.class, "Enable deoptimization.");
         VMOptions.addFieldOption("-XX:", "DeoptimizeALot", Deoptimization.class,
                                  "Invalidate and deoptimize a selection of executing optimized methods every <n> milliseconds. " +
                                  "A value of 0 disables this mechanism.");
+        VMOptions.addFieldOption("-XX:", "TypeGuardDeoptThreshold", Deoptimization.class,
+                                 "Invalidate an optimized method when a type guard fails in a method in which at least <n> " +
+                                 "type guards have failed. A value of 0 never invalidates the method.");
     }
 
     /**
@@ -117,6 +128,11 @@ public class Deoptimization extends VmOperation {
      */
     private static StaticMethodActor MaxMiscLoweringsDeoptimizeMethodActor;
 
+    /**
+     * Method actor of the runtime call made by C1X compiled code when a type guard fails.
+     */
+    private static ClassMethodActor TypeGuardFailedMethodActor;
+
     /**
      * The set of target methods to be deoptimized.
      */
@@ -155,6 +171,84 @@ public class Deoptimization extends VmOperation {
         MaxMiscLoweringsDeoptimizeMethodActor = methodActor;
     }
 
+    @HOSTED_ONLY
+    public static void initializeTypeGuardFailedMethodActor(ClassMethodActor methodActor) {
+        TypeGuardFailedMethodActor = methodActor;
+    }
+
+    /**
+     * Finds the optimized method calling the {@linkplain #TypeGuardFailedMethodActor type guard runtime call} and,
+     * if requested, patches the return address of the runtime call so that the optimized frame is deoptimized when
+     * the call returns.
+     */
+    private static final class TypeGuardCallerFinder extends RawStackFrameVisitor {
+        final boolean patch;
+        TargetMethod tm;
+        int safepointIndex;
+
+        TypeGuardCallerFinder(boolean patch) {
+            this.patch = patch;
+        }
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            TargetMethod frameTM = current.targetMethod();
+            if (current.isTopFrame() || frameTM == null || frameTM.classMethodActor() == TypeGuardFailedMethodActor) {
+                return true;
+            }
+            tm = frameTM;
+            safepointIndex = tm.findSafepointIndex(current.ip.vmIP());
+            if (patch && tm.invalidated() == null) {
+                // an invalidated method has already had the return address patched by the invalidation
+                patchReturnAddress(current, callee, TypeGuardFailedMethodActor);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Called by the {@linkplain #TypeGuardFailedMethodActor type guard runtime call} when a guard speculating on the
+     * profiled receiver type of a call fails. The optimized frame is deoptimized when the runtime call returns,
+     * and the baseline code {@linkplain #deoptimize reexecutes} the guarded invoke.
+     * <p>
+     * The failure is recorded as a {@linkplain MethodProfile#TYPE_CHECKED_INLINING_VIOLATED_REASON_ID type checked
+     * inlining violation} in the profile of the baseline version of the method containing the call, so that the
+     * method is not speculated on again. Once {@link #TypeGuardDeoptThreshold} guards have failed in that method,
+     * the optimized method is also invalidated and its recompilation is queued by the compilation broker. Nothing is
+     * compiled by the failing thread here, which only waits for the invalidation.
+     */
+    @NEVER_INLINE
+    public static void typeGuardFailed() {
+        final TypeGuardCallerFinder finder = new TypeGuardCallerFinder(false);
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()), VMRegister.getCpuStackPointer(), VMRegister.getCpuFramePointer(), finder);
+        final TargetMethod tm = finder.tm;
+        FatalError.check(tm != null && finder.safepointIndex >= 0, "no optimized caller found for failed type guard");
+
+        CiFrame frame = tm.debugInfoAt(finder.safepointIndex, null).frame();
+        ClassMethodActor method = (ClassMethodActor) frame.method;
+        // the profile is the one the speculation was made from: the baseline code exists unless it was evicted
+        TargetMethod baseline = Compilations.currentTargetMethod(method.compiledState, RuntimeCompiler.Nature.BASELINE);
+        MethodProfile mp = baseline == null ? null : baseline.profile();
+        if (mp != null) {
+            mp.incrementDeoptimizationCount(MethodProfile.TYPE_CHECKED_INLINING_VIOLATED_REASON_ID);
+            if (UseDeopt && TypeGuardDeoptThreshold > 0 && tm.invalidated() == null &&
+                mp.getDeoptimizationCount(MethodProfile.TYPE_CHECKED_INLINING_VIOLATED_REASON_ID) >= TypeGuardDeoptThreshold) {
+                ArrayList<TargetMethod> methods = new ArrayList<TargetMethod>();
+                methods.add(tm);
+                new Deoptimization(methods).go();
+                vm().compilationBroker.requestRecompilation(tm.classMethodActor);
+            }
+        }
+
+        // Deoptimize this activation on return. Safepoints are disabled so that no invalidation
+        // of the method patches the return address between the check and the patching.
+        boolean wasDisabled = SafepointPoll.disable();
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()), VMRegister.getCpuStackPointer(), VMRegister.getCpuFramePointer(), new TypeGuardCallerFinder(true));
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
     /**
      * Mark methods for deoptimization.
      */
@@ -824,6 +918,9 @@ public class Deoptimization extends VmOperation {
                     ClassMethodActor callee = tm.callPosToCallee(callPos);
                     if (callee == MaxMiscLoweringsDeoptimizeMethodActor) {
                         reexecute = true;
+                    } else if (callee == TypeGuardFailedMethodActor) {
+                        // a failed type guard: its frame state is the one before the guarded invoke
+                        reexecute = true;
                     }
                 }
             }
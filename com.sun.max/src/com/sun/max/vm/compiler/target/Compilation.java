@@ -344,6 +344,29 @@ public class Compilation {
         return result;
     }
 
+    /**
+     * Abandons this compilation before it started, restoring the previous compilation state of the method.
+     * Threads waiting for this compilation get the newest previously compiled version of the method.
+     * A compilation can only be abandoned if such a version exists.
+     *
+     * @return {@code true} if the compilation was abandoned
+     */
+    public boolean abandon() {
+        final TargetMethod previous = prevCompilations.optimized != null ? prevCompilations.optimized : prevCompilations.baseline;
+        if (previous == null) {
+            return false;
+        }
+        synchronized (classMethodActor) {
+            if (classMethodActor.compiledState == this) {
+                classMethodActor.compiledState = prevCompilations;
+            }
+            result = previous;
+            done = true;
+            classMethodActor.notifyAll();
+        }
+        return true;
+    }
+
     /**
      * Allows a thread to relinquish ownership of a compilation
      * if another thread is to compile it.
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+
+/**
+ * A TLAB refill policy that sizes each thread's TLAB from the thread's allocation rate, so that a thread refills its TLAB
+ * about {@link #TLABTargetRefills} times between two garbage collections. Threads that allocate a lot get larger TLABs and take
+ * the slow path less often, whereas mostly idle threads get small TLABs and retain less space at GC.
+ * The space a thread allocates between two collections is averaged with an exponential decay so that the size adapts over a few GCs.
+ * The size of the next TLAB is recomputed when the thread's TLAB is reset at GC.
+ */
+public class AdaptiveTLABRefillPolicy extends SimpleTLABRefillPolicy {
+    /**
+     * Enables the adaptive TLAB refill policy.
+     */
+    public static boolean ResizeTLAB = false;
+
+    /**
+     * Number of TLAB refills a thread should do between two GCs.
+     */
+    static int TLABTargetRefills = 50;
+
+    /**
+     * Weight, in percent, of the space allocated since the last GC in the average allocation of a thread.
+     */
+    static int TLABAllocationWeight = 35;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ResizeTLAB", AdaptiveTLABRefillPolicy.class,
+            "Size each thread's TLABs from the thread's allocation rate", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABTargetRefills", AdaptiveTLABRefillPolicy.class,
+            "Number of TLAB refills a thread should do between two GCs when resizing TLABs", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABAllocationWeight", AdaptiveTLABRefillPolicy.class,
+            "Weight in percent of the last GC interval in the allocation average used to resize TLABs", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * Smallest size of an adaptive TLAB.
+     */
+    static final VMSizeOption minTlabSizeOption = register(new VMSizeOption("-XX:MinTLABSize=", Size.K.times(4),
+        "Minimum size of thread-local allocation buffers when resizing TLABs."), MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Largest size of an adaptive TLAB.
+     */
+    static final VMSizeOption maxTlabSizeOption = register(new VMSizeOption("-XX:MaxTLABSize=", Size.M,
+        "Maximum size of thread-local allocation buffers when resizing TLABs."), MaxineVM.Phase.PRISTINE);
+
+    private final Size minTlabSize;
+    private final Size maxTlabSize;
+
+    /**
+     * Size of the current TLAB.
+     */
+    private Size currentTlabSize = Size.zero();
+
+    /**
+     * Bytes allocated from TLABs since the last GC.
+     */
+    private long allocatedSinceReset;
+
+    /**
+     * Exponential average of the bytes allocated from TLABs between two GCs.
+     */
+    private long averageAllocated;
+
+    /**
+     * Create an adaptive policy.
+     * @param initialTLABSize size of the first TLAB of the thread
+     * @param maxTlabSize largest TLAB size the heap scheme supports; the effective bound is the smallest of this and {@link #maxTlabSizeOption}
+     */
+    public AdaptiveTLABRefillPolicy(Size initialTLABSize, Size maxTlabSize) {
+        super(initialTLABSize);
+        final Size maxOption = maxTlabSizeOption.getValue();
+        this.maxTlabSize = maxOption.lessThan(maxTlabSize) ? maxOption : maxTlabSize;
+        final Size minOption = minTlabSizeOption.getValue();
+        this.minTlabSize = minOption.greaterThan(this.maxTlabSize) ? this.maxTlabSize : minOption;
+        currentTlabSize = initialTLABSize;
+        averageAllocated = initialTLABSize.toLong() * TLABTargetRefills;
+    }
+
+    @Override
+    public void notifyRefill(Size tlabSize, Size leftover) {
+        retireCurrentTlab(leftover);
+        currentTlabSize = tlabSize;
+    }
+
+    private void retireCurrentTlab(Size leftover) {
+        if (leftover.lessThan(currentTlabSize)) {
+            allocatedSinceReset += currentTlabSize.minus(leftover).toLong();
+        }
+        currentTlabSize = Size.zero();
+    }
+
+    @Override
+    public void notifyReset(Size leftover) {
+        retireCurrentTlab(leftover);
+        averageAllocated = (TLABAllocationWeight * allocatedSinceReset + (100 - TLABAllocationWeight) * averageAllocated) / 100;
+        allocatedSinceReset = 0L;
+
+        Size size = Size.fromLong(averageAllocated / TLABTargetRefills).wordAligned().asSize();
+        if (size.lessThan(minTlabSize)) {
+            size = minTlabSize;
+        } else if (size.greaterThan(maxTlabSize)) {
+            size = maxTlabSize;
+        }
+        setNextTlabSize(size);
+    }
+}
@@ -0,0 +1,645 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMConfiguration.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.object.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * Writes a snapshot of the heap in the HPROF binary format understood by standard heap analysis tools.
+ *
+ * The heap is walked with {@link HeapScheme#walkHeap(CallbackCellVisitor)} at a safepoint, and records are
+ * streamed to the dump file through a direct buffer as cells are visited, so that no intermediate structure
+ * proportional to the heap is built. Heap dump segments are back-patched with their length once complete.
+ *
+ * A dump can be requested with {@link #dumpHeap(String, boolean)} (which also backs
+ * {@code HotSpotDiagnosticMXBean.dumpHeap}), or taken on the first {@link OutOfMemoryError} with
+ * {@link #HeapDumpOnOutOfMemoryError}.
+ *
+ * Classes are identified by their {@link Class} mirror, objects by their origin. Static fields are reported in the
+ * class dumps, classes as sticky roots and live threads as thread roots. References from thread stacks are not
+ * reported as roots.
+ */
+public final class HeapDumper extends CallbackCellVisitor {
+
+    private static final String DEFAULT_FILE_NAME = "maxvm.hprof";
+
+    /**
+     * Dump the heap on the first {@link OutOfMemoryError} raised.
+     */
+    public static boolean HeapDumpOnOutOfMemoryError;
+
+    /**
+     * File or directory heap dumps are written to.
+     */
+    public static String HeapDumpPath = DEFAULT_FILE_NAME;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "HeapDumpOnOutOfMemoryError", HeapDumper.class,
+            "Dump the heap in HPROF format when the first OutOfMemoryError is raised.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "HeapDumpPath", HeapDumper.class,
+            "File or directory heap dumps are written to.", MaxineVM.Phase.PRISTINE);
+    }
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Heap dump segments are closed once larger than this, well below the 4GB limit of a record length.
+     */
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Serial number of the (empty) stack trace attached to all objects.
+     */
+    private static final int STACK_TRACE_SERIAL = 1;
+
+    // Record tags
+    private static final int HPROF_UTF8 = 0x01;
+    private static final int HPROF_LOAD_CLASS = 0x02;
+    private static final int HPROF_TRACE = 0x05;
+    private static final int HPROF_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int HPROF_HEAP_DUMP_END = 0x2C;
+
+    // Heap dump sub-record tags
+    private static final int HPROF_GC_ROOT_STICKY_CLASS = 0x05;
+    private static final int HPROF_GC_ROOT_THREAD_OBJ = 0x08;
+    private static final int HPROF_GC_CLASS_DUMP = 0x20;
+    private static final int HPROF_GC_INSTANCE_DUMP = 0x21;
+    private static final int HPROF_GC_OBJ_ARRAY_DUMP = 0x22;
+    private static final int HPROF_GC_PRIM_ARRAY_DUMP = 0x23;
+
+    // Basic types
+    private static final int HPROF_NORMAL_OBJECT = 2;
+    private static final int HPROF_BOOLEAN = 4;
+    private static final int HPROF_CHAR = 5;
+    private static final int HPROF_FLOAT = 6;
+    private static final int HPROF_DOUBLE = 7;
+    private static final int HPROF_BYTE = 8;
+    private static final int HPROF_SHORT = 9;
+    private static final int HPROF_INT = 10;
+    private static final int HPROF_LONG = 11;
+
+    /**
+     * Set while a dump is being written; prevents recursive dumps, e.g. on an {@link OutOfMemoryError} raised while dumping.
+     */
+    private static volatile boolean dumping;
+
+    private static boolean dumpedOnOutOfMemoryError;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ByteBuffer patchBuffer;
+    private final int idSize;
+
+    /**
+     * Number of bytes written to the channel so far.
+     */
+    private long flushed;
+
+    /**
+     * File position of the length of the current heap dump segment, or -1 if no segment is open.
+     */
+    private long segmentLengthPosition = -1L;
+
+    private IOException ioException;
+
+    private HeapDumper(FileChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        this.patchBuffer = ByteBuffer.allocateDirect(4).order(ByteOrder.BIG_ENDIAN);
+        this.idSize = Word.size();
+    }
+
+    /**
+     * Dumps the heap to a file.
+     *
+     * @param fileName the file to write, or {@code null} to use {@link #HeapDumpPath}
+     * @param live if {@code true}, a garbage collection is run first so that the dump only has reachable objects;
+     *            {@link HeapScheme#walkHeap(CallbackCellVisitor)} finishes any lazy sweep, so dead objects left in
+     *            unswept regions aren't dumped
+     * @return the number of bytes written, or -1 if another dump is in progress
+     */
+    public static long dumpHeap(String fileName, boolean live) throws IOException {
+        synchronized (HeapDumper.class) {
+            if (dumping) {
+                return -1L;
+            }
+            dumping = true;
+        }
+        try {
+            final File file = dumpFile(fileName);
+            if (live) {
+                System.gc();
+            }
+            Log.println("Dumping heap to " + file.getPath() + " ...");
+            final long start = System.currentTimeMillis();
+            final FileOutputStream out = new FileOutputStream(file);
+            try {
+                final HeapDumper dumper = new HeapDumper(out.getChannel());
+                new HeapDumpOperation(dumper).submit();
+                if (dumper.ioException != null) {
+                    throw dumper.ioException;
+                }
+                final long bytes = dumper.flushed;
+                Log.println("Heap dump file created [" + bytes + " bytes in " + (System.currentTimeMillis() - start) + " ms]");
+                return bytes;
+            } finally {
+                out.close();
+            }
+        } finally {
+            dumping = false;
+        }
+    }
+
+    private static File dumpFile(String fileName) {
+        File file = new File(fileName != null ? fileName : HeapDumpPath);
+        if (file.isDirectory()) {
+            file = new File(file, DEFAULT_FILE_NAME);
+        }
+        return file;
+    }
+
+    /**
+     * Notification that an {@link OutOfMemoryError} is being raised. Dumps the heap the first time if
+     * {@link #HeapDumpOnOutOfMemoryError} is set. The dump's own allocations are satisfied from the immortal heap.
+     */
+    public static void notifyOutOfMemoryError() {
+        if (!HeapDumpOnOutOfMemoryError || dumpedOnOutOfMemoryError || dumping || VmThread.current().isVmOperationThread()) {
+            return;
+        }
+        dumpedOnOutOfMemoryError = true;
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            dumpHeap(null, false);
+        } catch (IOException e) {
+            Log.println("Heap dump failed: " + e);
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+    }
+
+    /**
+     * Writes the dump. Runs on the VM operation thread with all other threads stopped.
+     */
+    static final class HeapDumpOperation extends VmOperation {
+        private final HeapDumper dumper;
+
+        HeapDumpOperation(HeapDumper dumper) {
+            super("HeapDump", null, Mode.Safepoint);
+            this.dumper = dumper;
+        }
+
+        @Override
+        protected void doIt() {
+            // Class mirrors created for the dump and the buffers of the file channel are allocated in the immortal heap.
+            Heap.enableImmortalMemoryAllocation();
+            try {
+                dumper.writeDump();
+            } catch (IOException e) {
+                dumper.ioException = e;
+            } finally {
+                Heap.disableImmortalMemoryAllocation();
+            }
+        }
+    }
+
+    private void writeDump() throws IOException {
+        final long now = System.currentTimeMillis();
+        writeAscii("JAVA PROFILE 1.0.2");
+        u1(0);
+        u4(idSize);
+        u8(now);
+
+        // An empty stack trace for all the objects.
+        recordHeader(HPROF_TRACE, 12);
+        u4(STACK_TRACE_SERIAL);
+        u4(0);
+        u4(0);
+
+        final int largestClassId = ClassIDManager.largestClassId();
+        int classSerial = 1;
+        for (int id = 0; id <= largestClassId; id++) {
+            final ClassActor classActor = ClassIDManager.toClassActor(id);
+            if (classActor != null) {
+                writeClassName(classActor);
+                recordHeader(HPROF_LOAD_CLASS, 8 + 2 * idSize);
+                u4(classSerial++);
+                id(classId(classActor));
+                u4(STACK_TRACE_SERIAL);
+                id(nameId(classActor));
+                for (FieldActor fieldActor : classActor.localStaticFieldActors()) {
+                    writeUtf8(originOf(fieldActor), fieldActor.name.toString());
+                }
+                for (FieldActor fieldActor : classActor.localInstanceFieldActors()) {
+                    writeUtf8(originOf(fieldActor), fieldActor.name.toString());
+                }
+            }
+        }
+
+        for (int id = 0; id <= largestClassId; id++) {
+            final ClassActor classActor = ClassIDManager.toClassActor(id);
+            if (classActor != null) {
+                writeClassDump(classActor);
+            }
+        }
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, threadRootWriter);
+        vmConfig().heapScheme().walkHeap(this);
+        if (ioException != null) {
+            throw ioException;
+        }
+        endSegment();
+        recordHeader(HPROF_HEAP_DUMP_END, 0);
+        flush();
+    }
+
+    private final Pointer.Procedure threadRootWriter = new Pointer.Procedure() {
+        public void run(Pointer tla) {
+            final VmThread vmThread = VmThread.fromTLA(tla);
+            final Thread thread = vmThread == null ? null : vmThread.javaThread();
+            if (thread != null && ioException == null) {
+                try {
+                    subRecord(1 + idSize + 8);
+                    u1(HPROF_GC_ROOT_THREAD_OBJ);
+                    id(originOf(thread));
+                    u4(vmThread.id());
+                    u4(STACK_TRACE_SERIAL);
+                } catch (IOException e) {
+                    ioException = e;
+                }
+            }
+        }
+    };
+
+    @Override
+    protected boolean callback(Object object) {
+        try {
+            final Hub hub = ObjectAccess.readHub(object);
+            if (hub instanceof StaticHub) {
+                // Static tuples are reported as part of the class dumps.
+                return true;
+            }
+            final Pointer origin = Reference.fromJava(object).toOrigin();
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isReferenceArrayLayout()) {
+                writeObjectArray(origin, hub);
+            } else if (specificLayout.isArrayLayout()) {
+                writePrimitiveArray(origin, (ArrayLayout) specificLayout);
+            } else {
+                writeInstance(origin, hub.classActor);
+            }
+            return true;
+        } catch (IOException e) {
+            ioException = e;
+            return false;
+        }
+    }
+
+    private void writeClassDump(ClassActor classActor) throws IOException {
+        final FieldActor[] staticFields = classActor.localStaticFieldActors();
+        final FieldActor[] instanceFields = classActor.localInstanceFieldActors();
+        final Object staticTuple = classActor.staticTuple();
+        final Pointer staticOrigin = staticTuple == null ? Pointer.zero() : Reference.fromJava(staticTuple).toOrigin();
+        int staticFieldsSize = 0;
+        if (!staticOrigin.isZero()) {
+            for (FieldActor fieldActor : staticFields) {
+                staticFieldsSize += idSize + 1 + valueSize(fieldActor.kind);
+            }
+        }
+        subRecord(1 + 7 * idSize + 4 + 4 + 2 + 2 + staticFieldsSize + 2 + instanceFields.length * (idSize + 1));
+        u1(HPROF_GC_ROOT_STICKY_CLASS);
+        id(classId(classActor));
+
+        u1(HPROF_GC_CLASS_DUMP);
+        id(classId(classActor));
+        u4(STACK_TRACE_SERIAL);
+        id(classActor.superClassActor == null ? 0L : classId(classActor.superClassActor));
+        id(classLoaderId(classActor));
+        id(0L); // signers
+        id(0L); // protection domain
+        id(0L); // reserved
+        id(0L); // reserved
+        u4(classActor.isTupleClass() ? classActor.dynamicHub().tupleSize.toInt() : 0);
+        u2(0); // constant pool
+        if (staticOrigin.isZero()) {
+            u2(0);
+        } else {
+            u2(staticFields.length);
+            for (FieldActor fieldActor : staticFields) {
+                id(originOf(fieldActor));
+                u1(basicType(fieldActor.kind));
+                writeValue(staticOrigin, fieldActor.offset(), fieldActor.kind);
+            }
+        }
+        u2(instanceFields.length);
+        for (FieldActor fieldActor : instanceFields) {
+            id(originOf(fieldActor));
+            u1(basicType(fieldActor.kind));
+        }
+    }
+
+    private void writeInstance(Pointer origin, ClassActor classActor) throws IOException {
+        int fieldsSize = 0;
+        for (ClassActor c = classActor; c != null; c = c.superClassActor) {
+            for (FieldActor fieldActor : c.localInstanceFieldActors()) {
+                fieldsSize += valueSize(fieldActor.kind);
+            }
+        }
+        subRecord(1 + 2 * idSize + 8 + fieldsSize);
+        u1(HPROF_GC_INSTANCE_DUMP);
+        id(origin.toLong());
+        u4(STACK_TRACE_SERIAL);
+        id(classId(classActor));
+        u4(fieldsSize);
+        for (ClassActor c = classActor; c != null; c = c.superClassActor) {
+            for (FieldActor fieldActor : c.localInstanceFieldActors()) {
+                writeValue(origin, fieldActor.offset(), fieldActor.kind);
+            }
+        }
+    }
+
+    private void writeObjectArray(Pointer origin, Hub hub) throws IOException {
+        final int length = Layout.readArrayLength(origin);
+        subRecord(1 + 2 * idSize + 8 + (long) length * idSize);
+        u1(HPROF_GC_OBJ_ARRAY_DUMP);
+        id(origin.toLong());
+        u4(STACK_TRACE_SERIAL);
+        u4(length);
+        id(classId(hub.classActor));
+        for (int i = 0; i < length; i++) {
+            id(Layout.getReference(origin, i).toOrigin().toLong());
+        }
+    }
+
+    private void writePrimitiveArray(Pointer origin, ArrayLayout arrayLayout) throws IOException {
+        final int length = Layout.readArrayLength(origin);
+        final Kind kind = arrayLayout.elementKind();
+        final int elementSize = valueSize(kind);
+        subRecord(1 + idSize + 9 + (long) length * elementSize);
+        u1(HPROF_GC_PRIM_ARRAY_DUMP);
+        id(origin.toLong());
+        u4(STACK_TRACE_SERIAL);
+        u4(length);
+        u1(basicType(kind));
+        final int base = arrayLayout.getElementOffsetFromOrigin(0).toInt();
+        final int stride = kind.width.numberOfBytes;
+        for (int i = 0; i < length; i++) {
+            writeValue(origin, base + i * stride, kind);
+        }
+    }
+
+    private void writeValue(Pointer origin, int offset, Kind kind) throws IOException {
+        switch (kind.asEnum) {
+            case BOOLEAN:
+            case BYTE:
+                u1(origin.readByte(offset));
+                break;
+            case SHORT:
+                u2(origin.readShort(offset));
+                break;
+            case CHAR:
+                u2(origin.readChar(offset));
+                break;
+            case INT:
+                u4(origin.readInt(offset));
+                break;
+            case FLOAT:
+                u4(Float.floatToRawIntBits(origin.readFloat(offset)));
+                break;
+            case LONG:
+                u8(origin.readLong(offset));
+                break;
+            case DOUBLE:
+                u8(Double.doubleToRawLongBits(origin.readDouble(offset)));
+                break;
+            case WORD:
+                id(origin.readWord(offset).asAddress().toLong());
+                break;
+            case REFERENCE:
+                id(Reference.fromOrigin(origin).readReference(offset).toOrigin().toLong());
+                break;
+            default:
+                throw FatalError.unexpected("unexpected field kind " + kind);
+        }
+    }
+
+    private int basicType(Kind kind) {
+        switch (kind.asEnum) {
+            case BOOLEAN:
+                return HPROF_BOOLEAN;
+            case BYTE:
+                return HPROF_BYTE;
+            case SHORT:
+                return HPROF_SHORT;
+            case CHAR:
+                return HPROF_CHAR;
+            case INT:
+                return HPROF_INT;
+            case FLOAT:
+                return HPROF_FLOAT;
+            case LONG:
+                return HPROF_LONG;
+            case DOUBLE:
+                return HPROF_DOUBLE;
+            case WORD:
+                // Words are dumped as integers of the size of an identifier.
+                return idSize == 8 ? HPROF_LONG : HPROF_INT;
+            default:
+                return HPROF_NORMAL_OBJECT;
+        }
+    }
+
+    private int valueSize(Kind kind) {
+        return kind.isReference || kind.isWord ? idSize : kind.width.numberOfBytes;
+    }
+
+    private static long originOf(Object object) {
+        return Reference.fromJava(object).toOrigin().toLong();
+    }
+
+    private static long classId(ClassActor classActor) {
+        return originOf(classActor.javaClass());
+    }
+
+    /**
+     * The names of classes are identified by their class actor.
+     */
+    private static long nameId(ClassActor classActor) {
+        return originOf(classActor);
+    }
+
+    private static long classLoaderId(ClassActor classActor) {
+        final ClassLoader classLoader = classActor.classLoader;
+        return classLoader == null || classLoader == BootClassLoader.BOOT_CLASS_LOADER ? 0L : originOf(classLoader);
+    }
+
+    /**
+     * Writes the name of a class in the internal form (e.g. {@code java/lang/String} or {@code [I}) used by HPROF.
+     */
+    private void writeClassName(ClassActor classActor) throws IOException {
+        final String descriptor = classActor.typeDescriptor.toString();
+        if (descriptor.charAt(0) == 'L') {
+            writeUtf8(nameId(classActor), descriptor, 1, descriptor.length() - 1);
+        } else if (descriptor.charAt(0) == '[') {
+            writeUtf8(nameId(classActor), descriptor, 0, descriptor.length());
+        } else {
+            final String name = classActor.name.toString();
+            writeUtf8(nameId(classActor), name, 0, name.length());
+        }
+    }
+
+    private void writeUtf8(long id, String s) throws IOException {
+        writeUtf8(id, s, 0, s.length());
+    }
+
+    /**
+     * Writes a UTF8 record for characters {@code [start, end)} of a string without allocating.
+     */
+    private void writeUtf8(long id, String s, int start, int end) throws IOException {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            length += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        recordHeader(HPROF_UTF8, idSize + length);
+        id(id);
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c != 0 && c < 0x80) {
+                u1(c);
+            } else if (c < 0x800) {
+                u1(0xC0 | (c >> 6));
+                u1(0x80 | (c & 0x3F));
+            } else {
+                u1(0xE0 | (c >> 12));
+                u1(0x80 | ((c >> 6) & 0x3F));
+                u1(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            u1(s.charAt(i));
+        }
+    }
+
+    private void recordHeader(int tag, int length) throws IOException {
+        endSegment();
+        u1(tag);
+        u4(0);
+        u4(length);
+    }
+
+    /**
+     * Makes room for a heap dump sub-record of a given size in the current segment, starting a new segment if needed.
+     */
+    private void subRecord(long size) throws IOException {
+        if (segmentLengthPosition >= 0 && position() + size - (segmentLengthPosition + 4) > MAX_SEGMENT_SIZE) {
+            endSegment();
+        }
+        if (segmentLengthPosition < 0) {
+            u1(HPROF_HEAP_DUMP_SEGMENT);
+            u4(0);
+            segmentLengthPosition = position();
+            u4(0);
+        }
+    }
+
+    /**
+     * Closes the current heap dump segment, if any, by patching its length.
+     */
+    private void endSegment() throws IOException {
+        if (segmentLengthPosition < 0) {
+            return;
+        }
+        final long length = position() - (segmentLengthPosition + 4);
+        if (segmentLengthPosition >= flushed) {
+            buffer.putInt((int) (segmentLengthPosition - flushed), (int) length);
+        } else {
+            patchBuffer.clear();
+            patchBuffer.putInt((int) length);
+            patchBuffer.flip();
+            while (patchBuffer.hasRemaining()) {
+                channel.write(patchBuffer, segmentLengthPosition + 4 - patchBuffer.remaining());
+            }
+        }
+        segmentLengthPosition = -1L;
+    }
+
+    private long position() {
+        return flushed + buffer.position();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    private void u1(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    private void u2(int value) throws IOException {
+        ensure(2);
+        buffer.putShort((short) value);
+    }
+
+    private void u4(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    private void u8(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    private void id(long value) throws IOException {
+        if (idSize == 8) {
+            u8(value);
+        } else {
+            u4((int) value);
+        }
+    }
+}
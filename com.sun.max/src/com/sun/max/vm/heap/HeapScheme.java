@@ -481,7 +481,8 @@ public interface HeapScheme extends VMScheme {
 
     /**
      * Encapsulates the structure of the heap from a tool (e.g. JVMTI) that want to visit every object
-     * in the heap.
+     * in the heap. Objects found unreachable by the last collection must not be visited: a heap scheme that sweeps
+     * lazily must finish the pending sweep before walking its spaces.
      *
      * @param visitor
      */
@@ -40,6 +40,7 @@ import com.sun.max.vm.layout.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
 import com.sun.max.vm.object.*;
+import com.sun.max.vm.profilers.sampling.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.run.java.JavaRunScheme;
 import com.sun.max.vm.runtime.*;
@@ -140,6 +141,22 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
     private static final VmThreadLocal ALLOCATION_COUNTER
         = new VmThreadLocal("ALLOCATION_COUNTER", false, "Amount of memory allocated by thread", Nature.Single);
 
+    /**
+     * Thread-local used to account for the bytes allocated by a thread in retired TLAB chunks and outside of TLABs.
+     * Only TLAB refills, resets and slow-path allocations update it, which leaves the allocation fast path untouched.
+     * It only ever grows, so other threads can read it without synchronization.
+     * See {@link #getAllocatedBytes(Pointer)}.
+     */
+    private static final VmThreadLocal ALLOCATED_BYTES
+        = new VmThreadLocal("ALLOCATED_BYTES", false, "HeapSchemeWithTLAB: bytes allocated by thread outside of its current TLAB chunk", Nature.Single);
+
+    /**
+     * Thread-local holding the start of the current TLAB chunk of a thread, or zero if it has none.
+     * The bytes allocated in the current chunk are the difference between the {@link #TLAB_MARK} and this.
+     */
+    private static final VmThreadLocal TLAB_CHUNK_START
+        = new VmThreadLocal("TLAB_CHUNK_START", false, "HeapSchemeWithTLAB: start of current TLAB chunk", Nature.Single);
+
     /**
      * Thread-local used to disable allocation per thread.
      */
@@ -159,19 +176,25 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             final Pointer etla = VmThreadLocal.ETLA.load(tla);
             final Pointer tlabMark = TLAB_MARK.load(etla);
             Pointer tlabTop = TLAB_TOP.load(etla);
+            if (AllocationSampler.AllocationSampling) {
+                AllocationSampler.notifyTLABReset(etla, tlabMark);
+            }
             if (logTLAB()) {
                 logger.logReset(UnsafeCast.asVmThread(VM_THREAD.loadRef(etla).toJava()), tlabTop, tlabMark);
             }
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
             if (tlabTop.equals(Address.zero())) {
                 // TLAB's top can be null in only two cases:
                 // (1) it has never been filled, in which case it's allocation mark is null too
                 if (tlabMark.equals(Address.zero()))  {
                     // No TLABs, so nothing to reset.
+                    if (refillPolicy != null) {
+                        refillPolicy.notifyReset(Size.zero());
+                    }
                     return;
                 }
                 // (2) allocation has been disabled for the thread.
                 FatalError.check(!ALLOCATION_DISABLED.load(currentTLA()).isZero(), "inconsistent TLAB state");
-                TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
                 if (refillPolicy != null) {
                     // Go fetch the actual TLAB top in case the heap scheme needs it for its doBeforeReset handler.
                     tlabTop = refillPolicy.getSavedTlabTop().asPointer();
@@ -180,11 +203,61 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                 }
             }
             doBeforeReset(etla, tlabMark, tlabTop);
+            if (refillPolicy != null) {
+                final Size leftover = tlabTop.minus(tlabMark).asSize();
+                if (PrintTLABStats) {
+                    globalTlabStats.resetLeftover += leftover.toLong();
+                }
+                refillPolicy.notifyReset(leftover);
+            }
+            retireTLABChunk(etla, Pointer.zero());
             TLAB_TOP.store(etla, Address.zero());
             TLAB_MARK.store(etla, Address.zero());
         }
     }
 
+    /**
+     * Accounts for the bytes allocated in the current TLAB chunk before the TLAB mark is moved to a new chunk.
+     *
+     * @param etla the thread locals of the thread owning the TLAB
+     * @param newTlabMark the start of the new chunk (zero if the TLAB is being reset)
+     */
+    @INLINE
+    private static void retireTLABChunk(Pointer etla, Pointer newTlabMark) {
+        final Pointer chunkStart = TLAB_CHUNK_START.load(etla);
+        if (!chunkStart.isZero()) {
+            ALLOCATED_BYTES.store(etla, ALLOCATED_BYTES.load(etla).plus(TLAB_MARK.load(etla).minus(chunkStart)));
+        }
+        TLAB_CHUNK_START.store(etla, newTlabMark);
+    }
+
+    /**
+     * Accounts for an allocation satisfied outside of the TLAB of a thread.
+     */
+    @INLINE
+    private static void recordDirectAllocation(Pointer etla, Size size) {
+        ALLOCATED_BYTES.store(etla, ALLOCATED_BYTES.load(etla).plus(size));
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by a thread.
+     * When read by the thread itself, the value includes the bytes allocated in its current TLAB chunk and is exact.
+     * Other threads only get the bytes accounted for when the thread last went through the allocation slow path:
+     * the TLAB mark and chunk start of a running thread can't be read consistently, whereas this value never decreases.
+     *
+     * @param etla the thread locals of the thread
+     */
+    public static long getAllocatedBytes(Pointer etla) {
+        final Size allocatedBytes = ALLOCATED_BYTES.load(etla).asSize();
+        if (etla.equals(ETLA.load(currentTLA()))) {
+            final Pointer chunkStart = TLAB_CHUNK_START.load(etla);
+            if (!chunkStart.isZero()) {
+                return allocatedBytes.plus(TLAB_MARK.load(etla).minus(chunkStart)).toLong();
+            }
+        }
+        return allocatedBytes.toLong();
+    }
+
     protected abstract void tlabReset(Pointer tla);
 
     /**
@@ -219,10 +292,15 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
 
     /*
      * TLAB statistics. For now, something simple shared by all threads without synchronization.
-     * Will need to get per-thread, with statistics gathered globally at safepoint,
-     * and with more elaborated statistics (especially wrt to TLAB refills).
+     * Will need to get per-thread, with statistics gathered globally at safepoint.
      */
     static class TLABStats {
+        /**
+         * Number of buckets of the TLAB size distribution. Bucket i counts refills with a TLAB size in [2^i, 2^(i+1)[,
+         * with the last bucket counting all larger TLABs.
+         */
+        static final int NUM_SIZE_BUCKETS = 32;
+
         /**
          * Count of calls to slow path from inlined tlab allocation request.
          */
@@ -242,6 +320,45 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
          */
         volatile long leftover = 0L;
 
+        /**
+         * Count of TLAB refills.
+         */
+        volatile long refillCount = 0L;
+
+        /**
+         * Total size of the TLABs handed out by refills.
+         */
+        volatile long refilledBytes = 0L;
+
+        /**
+         * Leftover of TLABs reset by garbage collections.
+         */
+        volatile long resetLeftover = 0L;
+
+        /**
+         * Distribution of TLAB sizes at refill.
+         */
+        final long[] sizeDistribution = new long[NUM_SIZE_BUCKETS];
+
+        void recordRefill(Size tlabSize) {
+            refillCount++;
+            refilledBytes += tlabSize.toLong();
+            final int bucket = 63 - Long.numberOfLeadingZeros(tlabSize.toLong());
+            if (bucket >= 0) {
+                sizeDistribution[bucket < NUM_SIZE_BUCKETS ? bucket : NUM_SIZE_BUCKETS - 1]++;
+            }
+        }
+
+        private static void printBytes(long bytes) {
+            if (bytes > Size.K.toLong()) {
+                Log.print(Size.K.plus(bytes).unsignedShiftedRight(10).toLong());
+                Log.println(" K");
+            } else {
+                Log.print(bytes);
+                Log.println(" bytes");
+            }
+        }
+
         void printTLABStats() {
             Log.println("\n\n Summary TLAB stats");
             Log.print("   inlined allocation slow-path count: ");
@@ -251,17 +368,34 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             Log.print("   tlab overflow count               :");
             Log.println(tlabOverflowCount);
             Log.print("   leftover at TLAB refill           :");
-            if (leftover > Size.K.toLong()) {
-                Log.print(Size.K.plus(leftover).unsignedShiftedRight(10).toLong());
-                Log.println(" K");
-            } else {
-                Log.print(leftover);
-                Log.println(" bytes");
+            printBytes(leftover);
+            Log.print("   leftover at TLAB reset (GC)       :");
+            printBytes(resetLeftover);
+            Log.print("   tlab refill count                 :");
+            Log.println(refillCount);
+            Log.print("   total tlab refill size            :");
+            printBytes(refilledBytes);
+            if (refilledBytes > 0L) {
+                Log.print("   waste (% of refilled space)       :");
+                Log.println((leftover + resetLeftover) * 100 / refilledBytes);
+            }
+            if (refillCount > 0L) {
+                Log.print("   average tlab size                 :");
+                printBytes(refilledBytes / refillCount);
+                Log.println("   tlab size distribution:");
+                for (int i = 0; i < NUM_SIZE_BUCKETS; i++) {
+                    if (sizeDistribution[i] != 0L) {
+                        Log.print("     >= ");
+                        Log.print(1L << i);
+                        Log.print(" bytes: ");
+                        Log.println(sizeDistribution[i]);
+                    }
+                }
             }
         }
     }
 
-    final TLABStats globalTlabStats = new TLABStats();
+    static final TLABStats globalTlabStats = new TLABStats();
 
     @HOSTED_ONLY
     public HeapSchemeWithTLAB() {
@@ -355,6 +489,25 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         return initialTlabSize;
     }
 
+    /**
+     * Create the TLAB refill policy of a thread getting its first TLAB.
+     * The policy is {@linkplain AdaptiveTLABRefillPolicy adaptive} if {@link AdaptiveTLABRefillPolicy#ResizeTLAB} is set.
+     * @param tlabSize the size of the thread's first TLAB
+     */
+    protected TLABRefillPolicy newTLABRefillPolicy(Size tlabSize) {
+        if (AdaptiveTLABRefillPolicy.ResizeTLAB) {
+            return new AdaptiveTLABRefillPolicy(tlabSize, maxTlabSize());
+        }
+        return new SimpleTLABRefillPolicy(tlabSize);
+    }
+
+    /**
+     * Largest TLAB size the heap scheme supports when resizing TLABs. Default is no limit other than {@code -XX:MaxTLABSize}.
+     */
+    protected Size maxTlabSize() {
+        return Size.fromLong(Long.MAX_VALUE);
+    }
+
     protected void setInitialTlabSize(Size size) {
         initialTlabSize = size;
     }
@@ -377,9 +530,11 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
     public void refillTLAB(Pointer etla, Pointer tlab, Size size) {
         final Pointer tlabTop = tlab.plus(size); // top of the new TLAB
         final Pointer allocationMark = TLAB_MARK.load(etla);
+        Size leftover = Size.zero();
         if (!allocationMark.isZero()) {
             final Pointer oldTop = TLAB_TOP.load(etla);
-            globalTlabStats.leftover += oldTop.minus(allocationMark).toLong();
+            leftover = oldTop.minus(allocationMark).asSize();
+            globalTlabStats.leftover += leftover.toLong();
             // It is a refill, not an initial fill. So invoke handler.
             doBeforeTLABRefill(allocationMark, oldTop);
         } else {
@@ -387,8 +542,16 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                 "Must not refill TLAB when in custom allocator is set");
         }
 
+        retireTLABChunk(etla, tlab);
         TLAB_TOP.store(etla, tlabTop);
         TLAB_MARK.store(etla, tlab);
+        if (PrintTLABStats) {
+            globalTlabStats.recordRefill(size);
+        }
+        final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+        if (refillPolicy != null) {
+            refillPolicy.notifyRefill(size, leftover);
+        }
         if (logTLAB()) {
             VmThread vmThread = UnsafeCast.asVmThread(VM_THREAD.loadRef(etla).toJava());
             logger.logRefill(vmThread, tlabTop, tlabTop, tlab.plus(initialTlabSize), initialTlabSize.toInt());
@@ -397,6 +560,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
 
     @INLINE
     protected final void fastRefillTLAB(Pointer etla, Pointer tlab, Size size) {
+        retireTLABChunk(etla, tlab);
         TLAB_TOP.store(etla, tlab.plus(size));
         TLAB_MARK.store(etla, tlab);
     }
@@ -523,8 +687,44 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             return customAllocate(customAllocator, size);
         }
         globalTlabStats.tlabOverflowCount++;
+        if (AllocationSampler.AllocationSampling) {
+            return sampledSlowPathAllocate(size, etla, oldAllocationMark, tlabEnd);
+        }
         // This path will always be taken if TLAB allocation is not enabled.
-        return handleTLABOverflow(size, etla, oldAllocationMark, tlabEnd);
+        return overflowAllocate(size, etla, oldAllocationMark, tlabEnd);
+    }
+
+    /**
+     * Handles a TLAB overflow and accounts for the allocated cell in the {@linkplain #ALLOCATED_BYTES allocated bytes}
+     * of the thread if it was not carved out of the (possibly refilled) TLAB.
+     */
+    @INLINE
+    private Pointer overflowAllocate(Size size, final Pointer etla, final Pointer oldAllocationMark, final Pointer tlabEnd) {
+        final Pointer cell = handleTLABOverflow(size, etla, oldAllocationMark, tlabEnd);
+        if (!cell.plus(size).equals(TLAB_MARK.load(etla))) {
+            recordDirectAllocation(etla, size);
+        }
+        return cell;
+    }
+
+    /**
+     * Slow path allocation when {@linkplain AllocationSampler allocation sampling} is enabled.
+     * The sampler is notified before the allocation, as it may itself allocate to record the sample, and after it,
+     * to be given the cell of a sampled allocation.
+     */
+    @NO_SAFEPOINT_POLLS("object allocation and initialization must be atomic")
+    @NEVER_INLINE
+    private Pointer sampledSlowPathAllocate(Size size, final Pointer etla, final Pointer oldAllocationMark, final Pointer tlabEnd) {
+        final boolean sampled = AllocationSampler.beforeSlowPathAllocate(etla, oldAllocationMark, size);
+        final Pointer cell;
+        if (TLAB_MARK.load(etla).equals(oldAllocationMark) && TLAB_TOP.load(etla).equals(tlabEnd)) {
+            cell = overflowAllocate(size, etla, oldAllocationMark, tlabEnd);
+        } else {
+            // The sampler allocated and changed the TLAB: start over.
+            cell = tlabAllocate(size);
+        }
+        AllocationSampler.afterSlowPathAllocate(etla, cell, TLAB_MARK.load(etla), sampled);
+        return cell;
     }
 
     @NEVER_INLINE
@@ -625,6 +825,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
 
             TLAB_MARK_TMP.store(etla, allocationMark);
             TLAB_TOP_TMP.store(etla, tlabTop);
+            retireTLABChunk(etla, Pointer.zero());
             TLAB_MARK.store(etla, Word.zero());
             TLAB_TOP.store(etla, Word.zero());
         }
@@ -638,6 +839,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             final Pointer allocationMarkTmp = TLAB_MARK_TMP.load(etla);
             final Pointer tlabTopTmp = TLAB_TOP_TMP.load(etla);
 
+            retireTLABChunk(etla, allocationMarkTmp);
             TLAB_MARK.store(etla, allocationMarkTmp);
             TLAB_TOP.store(etla, tlabTopTmp);
             TLAB_MARK_TMP.store(etla, Word.zero());
@@ -54,8 +54,18 @@ public class SequentialHeapRootsScanner {
 
     private final VmThreadLocalsScanner tlaScanner = new VmThreadLocalsScanner();
 
+    /**
+     * Filters out GC worker threads. These are not stopped during GC (their stack reference map is therefore never prepared)
+     * and only ever refer to boot or immortal objects.
+     */
+    private static final Pointer.Predicate mutatorThreads = new Pointer.Predicate() {
+        public boolean evaluate(Pointer tla) {
+            return !VmThread.fromTLA(tla).isGCWorkerThread();
+        }
+    };
+
     public void run() {
-        VmThreadMap.ACTIVE.forAllThreadLocals(null, tlaScanner);
+        VmThreadMap.ACTIVE.forAllThreadLocals(mutatorThreads, tlaScanner);
         vmConfig().monitorScheme().scanReferences(pointerIndexVisitor);
     }
 
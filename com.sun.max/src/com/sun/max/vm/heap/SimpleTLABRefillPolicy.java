@@ -67,8 +67,15 @@ public class SimpleTLABRefillPolicy extends TLABRefillPolicy {
     public SimpleTLABRefillPolicy(Size initialTLABSize) {
         lastMark = Pointer.zero();
         allocationFailures = 0;
-        nextSize = initialTLABSize;
-        refillThreshold = initialTLABSize.dividedBy(TLAB_REFILL_RATIO);
+        setNextTlabSize(initialTLABSize);
+    }
+
+    /**
+     * Change the size of the TLAB on next refill. The refill threshold is changed accordingly.
+     */
+    protected void setNextTlabSize(Size size) {
+        nextSize = size;
+        refillThreshold = size.dividedBy(TLAB_REFILL_RATIO);
     }
 
     @Override
@@ -83,6 +83,37 @@ public class SpecialReferenceManager {
         boolean mayRelocateLiveObjects();
     }
 
+    /**
+     * Interface to a GC able to process the discovered lists in parallel.
+     */
+    public interface DiscoveredListsProcessor {
+        /**
+         * Calls {@link SpecialReferenceManager#processDiscoveredList(GC, int)} exactly once for every list index
+         * in [0, {@link SpecialReferenceManager#MAX_DISCOVERED_LISTS}[, possibly from several GC worker threads.
+         * {@link GC#isReachable(Reference)}, and {@link GC#preserve(Reference)} on reachable references, must be
+         * safe to call concurrently.
+         *
+         * @param gc interface to the GC implementation
+         */
+        void processDiscoveredLists(GC gc);
+    }
+
+    /**
+     * Maximum number of discovered lists. GC workers discover special references to the list of the same index as the worker,
+     * so there must be at least as many lists as there may be GC workers.
+     */
+    public static final int MAX_DISCOVERED_LISTS = 64;
+
+    /**
+     * Soft references are cleared once they haven't been accessed for this number of milliseconds per megabyte of free heap space.
+     * A value of 0 clears soft references as soon as their referent is unreachable.
+     */
+    static int SoftRefLRUPolicyMSPerMB = 1000;
+    static {
+        VMOptions.addFieldOption("-XX:", "SoftRefLRUPolicyMSPerMB", SpecialReferenceManager.class,
+            "Number of milliseconds per megabyte of free heap space a softly reachable object is kept alive after its last access.");
+    }
+
     /**
      * The lock object associated with managing special references. This lock must
      * be held by the GC when it is updating the list of pending special references.
@@ -101,10 +132,43 @@ public class SpecialReferenceManager {
     }
 
     /**
-     * The head of the list of discovered references.
-     * This field must only be used by the GC. Accessing it should not trigger any read/write barriers.
+     * The heads of the lists of discovered references, indexed by GC worker.
+     * References discovered sequentially go to the first list.
+     * These lists must only be used by the GC. Accessing them should not trigger any read/write barriers.
+     */
+    private static final java.lang.ref.Reference[] discoveredLists = new java.lang.ref.Reference[MAX_DISCOVERED_LISTS];
+
+    /**
+     * The discovered lists being processed by the current round of {@link #processDiscoveredSpecialReferences(GC, DiscoveredListsProcessor)}.
+     */
+    private static final java.lang.ref.Reference[] processedLists = new java.lang.ref.Reference[MAX_DISCOVERED_LISTS];
+
+    /**
+     * Per-list references whose referent must be preserved, which only the GC thread may do.
+     */
+    private static final java.lang.ref.Reference[] deferredLists = new java.lang.ref.Reference[MAX_DISCOVERED_LISTS];
+
+    /**
+     * Per-list head and tail of the references to add to the {@linkplain JLRRAlias#pending pending list}.
+     */
+    private static final java.lang.ref.Reference[] pendingHeads = new java.lang.ref.Reference[MAX_DISCOVERED_LISTS];
+    private static final java.lang.ref.Reference[] pendingTails = new java.lang.ref.Reference[MAX_DISCOVERED_LISTS];
+
+    /**
+     * Per-list counts of processed and cleared references.
+     */
+    private static final int[] numProcessed = new int[MAX_DISCOVERED_LISTS];
+    private static final int[] numCleared = new int[MAX_DISCOVERED_LISTS];
+
+    /**
+     * Whether the GC currently processing special references relocates live objects.
      */
-    private static java.lang.ref.Reference discoveredList;
+    private static boolean updateReachableReferent;
+
+    /**
+     * Soft references not accessed for more than this number of milliseconds are cleared by the current GC.
+     */
+    private static long softRefMaxInterval;
 
     /**
      * An alias type for accessing the fields in java.lang.ref.Reference without having to use reflection.
@@ -202,6 +266,25 @@ public class SpecialReferenceManager {
     @INTRINSIC(UNSAFE_CAST)
     public static native java.lang.ref.Reference asJLRR(Object o);
 
+    /**
+     * An alias type for accessing the fields in java.lang.ref.SoftReference.
+     */
+    static class JLRSRAlias {
+        /**
+         * Value of {@link SpecialReferenceManager#clock} at the last access to the referent.
+         */
+        @ALIAS(declaringClass = java.lang.ref.SoftReference.class)
+        long timestamp;
+    }
+
+    @INTRINSIC(UNSAFE_CAST)
+    static native JLRSRAlias asJLRSRAlias(Object o);
+
+    @FOLD
+    private static int discoveredOffset() {
+        return JDK.java_lang_ref_Reference.classActor().findLocalInstanceFieldActor("discovered").offset();
+    }
+
     /**
      * This method is called by the GC during heap exploration, when it finds a special
      * reference object. This method checks to see whether the object has been processed previously,
@@ -210,13 +293,26 @@ public class SpecialReferenceManager {
      * @param cell a pointer at the origin of the reference that has been discovered
      */
     public static void discoverSpecialReference(Pointer cell) {
+        discoverSpecialReference(cell, 0);
+    }
+
+    /**
+     * Same as {@link #discoverSpecialReference(Pointer)}, but adds the reference to the discovered list of the specified GC worker.
+     * GC workers may call this method concurrently for distinct lists without synchronization: the reference is atomically claimed
+     * by the first worker that links it to its list.
+     *
+     * @param cell a pointer at the origin of the reference that has been discovered
+     * @param listIndex index of the discovered list, typically the index of the GC worker that discovered the reference
+     */
+    public static void discoverSpecialReference(Pointer cell, int listIndex) {
         final Pointer origin = Layout.cellToOrigin(cell);
         java.lang.ref.Reference ref = asJLRR(Reference.fromOrigin(origin));
         JLRRAlias refAlias = asJLRRAlias(ref);
 
         if (refAlias.discovered == null) {
             // the discovered field of this object is null, queue it for later processing
-            if (ref == discoveredList) {
+            final java.lang.ref.Reference head = discoveredLists[listIndex];
+            if (ref == head) {
                 final boolean lockDisabledSafepoints = Log.lock();
                 Log.print("Reference ");
                 Log.print(ObjectAccess.readClassActor(ref).name.string);
@@ -226,12 +322,16 @@ public class SpecialReferenceManager {
                 Log.unlock(lockDisabledSafepoints);
                 FatalError.unexpected("Duplicate on discovered list");
             }
-            final Reference referent = Reference.fromJava(refAlias.referent);
-            // WATCH OUT: the following two lines will cause a write barrier to be executed. Depending on its implementation, this may
+            // Link the reference with a CAS so that a reference visited by several workers is added to a single list.
+            // The discovered field is reset before the end of the GC, so it doesn't need the write barrier.
+            if (!Reference.fromJava(ref).compareAndSwapReference(discoveredOffset(), Reference.zero(), Reference.fromJava(head)).isZero()) {
+                return;
+            }
+            // WATCH OUT: the following line will cause a write barrier to be executed. Depending on its implementation, this may
             // resulting in implicit modification to a remember set during GC.
-            refAlias.discovered = discoveredList;
-            discoveredList = ref;
+            discoveredLists[listIndex] = ref;
             if (specialReferenceLogger.enabled()) {
+                final Reference referent = Reference.fromJava(refAlias.referent);
                 specialReferenceLogger.logDiscover(cell, UnsafeCast.asHub(Layout.readHubReference(origin).toJava()).classActor, referent.toOrigin());
             }
         }
@@ -250,9 +350,22 @@ public class SpecialReferenceManager {
      * @param gc interface to the GC implementation
      */
     public static void processDiscoveredSpecialReferences(GC gc) {
-        java.lang.ref.Reference head = discoveredList;
-        java.lang.ref.Reference end = sentinel;
-        final boolean updateReachableReferent = gc.mayRelocateLiveObjects();
+        processDiscoveredSpecialReferences(gc, null);
+    }
+
+    /**
+     * Same as {@link #processDiscoveredSpecialReferences(GC)}, but lets the specified processor clear the references
+     * of the discovered lists, possibly in parallel. Referents that must be preserved (i.e., those of final and phantom references,
+     * and of soft references kept by the LRU policy) are preserved afterwards by the caller's thread, which also links the
+     * cleared references to the pending list.
+     *
+     * @param gc interface to the GC implementation
+     * @param processor the processor of the discovered lists, or {@code null} to process them sequentially
+     */
+    public static void processDiscoveredSpecialReferences(GC gc, DiscoveredListsProcessor processor) {
+        final long startTime = System.nanoTime();
+        updateReachableReferent = gc.mayRelocateLiveObjects();
+        softRefMaxInterval = softRefMaxInterval();
 
         if (specialReferenceLogger.enabled()) {
             specialReferenceLogger.logProcessDiscoveredInit(
@@ -260,83 +373,189 @@ public class SpecialReferenceManager {
                             Reference.fromJava(JDK_java_lang_ref_ReferenceQueue.ENQUEUED).toOrigin());
         }
 
-        // Process the discovered list until it is empty (new elements may be
-        // prepended while processing).
+        int totalProcessed = 0;
+        int totalCleared = 0;
+        int totalPending = 0;
+        // Process the discovered lists until they are empty (preserving referents may discover new references).
         do {
-            java.lang.ref.Reference ref = head;
-            java.lang.ref.Reference pending = JLRRAlias.pending;
-
-            while (ref != end) {
-                boolean preserved = false;
-                boolean addedToPending = false;
-                JLRRAlias refAlias = asJLRRAlias(ref);
-                final Reference referent = Reference.fromJava(refAlias.referent);
-                if (referent.isZero()) {
-                    // Do not add 'ref' to the pending list as weak references
-                    // with already null referents are not added to ReferenceQueues
-                } else if (!gc.isReachable(referent)) {
-                    if (refAlias.queue == null) {
-                        // This can only occur if there is a GC in the constructor for java.lang.ref.Reference
-                        // between the initialization of 'referent' and 'queue'.
-                        Log.println("WARNING: cannot add weak reference with null 'queue' field to pending list");
-                    } else {
-                        // Only soft and weak references have their referent cleared
-                        if (ref instanceof java.lang.ref.SoftReference || ref instanceof java.lang.ref.WeakReference) {
-                            refAlias.referent = null;
-                        } else {
-                            // The following line MUST run the mutator write barrier
-                            refAlias.referent = gc.preserve(referent).toJava();
-                            preserved = true;
-                        }
-
-                        // Add active reference whose reachability has changed to pending list
-                        if (refAlias.isActive()) {
-                            if (pending == null) {
-                                // 'ref' will be at the end of the pending list
-                                refAlias.next = ref;
-                            } else {
-                                refAlias.next = pending;
-                            }
-                            pending = ref;
-                            addedToPending = true;
-                        }
+            boolean empty = true;
+            for (int i = 0; i < MAX_DISCOVERED_LISTS; i++) {
+                processedLists[i] = discoveredLists[i];
+                discoveredLists[i] = sentinel;
+                if (processedLists[i] != sentinel) {
+                    empty = false;
+                }
+            }
+            if (empty) {
+                break;
+            }
+            if (processor == null) {
+                for (int i = 0; i < MAX_DISCOVERED_LISTS; i++) {
+                    processDiscoveredList(gc, i);
+                }
+            } else {
+                processor.processDiscoveredLists(gc);
+            }
+            for (int i = 0; i < MAX_DISCOVERED_LISTS; i++) {
+                preserveDeferredReferents(gc, i);
+                totalProcessed += numProcessed[i];
+                totalCleared += numCleared[i];
+                final java.lang.ref.Reference head = pendingHeads[i];
+                if (head != null) {
+                    if (JLRRAlias.pending != null) {
+                        asJLRRAlias(pendingTails[i]).next = JLRRAlias.pending;
                     }
-                } else if (updateReachableReferent) {
-                    // this object is reachable, however the "referent" field was not scanned.
-                    // we need to update this field manually
-                    // The following line MUST run the mutator write barrier
-                    refAlias.referent = gc.preserve(referent).toJava();
+                    JLRRAlias.pending = head;
+                    pendingHeads[i] = null;
+                    pendingTails[i] = null;
                 }
+            }
+        } while (true);
 
-                JLRRAlias r = refAlias;
-                ref = refAlias.discovered;
-                r.discovered = null;
-
-                if (specialReferenceLogger.enabled()) {
-                    final Object newReferent = r.referent;
-                    specialReferenceLogger.logProcessDiscovered(
-                        ObjectAccess.readClassActor(r),
-                        ObjectAccess.toOrigin(r),
-                        referent.toOrigin(),
-                        newReferent == null ? Pointer.zero() : ObjectAccess.toOrigin(newReferent),
-                        Reference.fromJava(r.queue).toOrigin(),
-                        preserved,
-                        updateReachableReferent,
-                        addedToPending,
-                        MaxineVM.isDebug() ? ObjectAccess.toOrigin(ref) : Pointer.zero());
+        // Advance the clock used to timestamp accesses to soft references.
+        clock = System.currentTimeMillis();
+        if (specialReferenceLogger.enabled()) {
+            for (java.lang.ref.Reference r = JLRRAlias.pending; r != null; r = asJLRRAlias(r).next) {
+                totalPending++;
+                if (asJLRRAlias(r).next == r) {
+                    break;
                 }
             }
-            JLRRAlias.pending = pending;
+            specialReferenceLogger.logProcessDiscoveredDone(totalProcessed, totalCleared, totalPending, (System.nanoTime() - startTime) / 1000);
+        }
+    }
 
-            if (head == discoveredList) {
-                // No further special references were discovered
-                discoveredList = sentinel;
-                break;
+    /**
+     * Compute the maximum time since its last access a soft reference is kept alive by the current GC.
+     * It is proportional to the heap space free at the beginning of reference processing, so that soft references are
+     * cleared more aggressively as the heap fills up.
+     */
+    private static long softRefMaxInterval() {
+        final long freeSpace = Heap.maxSizeLong() - Heap.reportUsedSpace();
+        if (freeSpace <= 0) {
+            return 0L;
+        }
+        return (freeSpace >> 20) * SoftRefLRUPolicyMSPerMB;
+    }
+
+    /**
+     * Tells whether a soft reference with an unreachable referent was accessed recently enough to be kept alive.
+     */
+    private static boolean keepSoftReference(java.lang.ref.Reference ref) {
+        return softRefMaxInterval > 0L && clock - asJLRSRAlias(ref).timestamp <= softRefMaxInterval;
+    }
+
+    /**
+     * Process one of the discovered lists detached by {@link #processDiscoveredSpecialReferences(GC, DiscoveredListsProcessor)}.
+     * References with a null or reachable referent are dropped from the list, after updating the referent if the GC relocates
+     * live objects. Weak references and soft references with an unreachable referent are cleared and added to the list's pending
+     * references. All other references are deferred until their referent is preserved by the GC thread.
+     *
+     * @param gc interface to the GC implementation
+     * @param listIndex index of the list to process
+     */
+    public static void processDiscoveredList(GC gc, int listIndex) {
+        java.lang.ref.Reference ref = processedLists[listIndex];
+        java.lang.ref.Reference deferred = sentinel;
+        int processed = 0;
+        int cleared = 0;
+        while (ref != sentinel) {
+            boolean addedToPending = false;
+            JLRRAlias refAlias = asJLRRAlias(ref);
+            final java.lang.ref.Reference next = refAlias.discovered;
+            final Reference referent = Reference.fromJava(refAlias.referent);
+            processed++;
+            if (referent.isZero()) {
+                // Do not add 'ref' to the pending list as weak references
+                // with already null referents are not added to ReferenceQueues
+            } else if (!gc.isReachable(referent)) {
+                if (refAlias.queue == null) {
+                    // This can only occur if there is a GC in the constructor for java.lang.ref.Reference
+                    // between the initialization of 'referent' and 'queue'.
+                    Log.println("WARNING: cannot add weak reference with null 'queue' field to pending list");
+                } else if (ref instanceof java.lang.ref.WeakReference || (ref instanceof java.lang.ref.SoftReference && !keepSoftReference(ref))) {
+                    // Only soft and weak references have their referent cleared
+                    refAlias.referent = null;
+                    cleared++;
+                    addedToPending = addToPending(ref, listIndex);
+                } else {
+                    // Preserving the referent may trace an arbitrary object graph, which is left to the GC thread.
+                    refAlias.discovered = deferred;
+                    deferred = ref;
+                    ref = next;
+                    continue;
+                }
+            } else if (updateReachableReferent) {
+                // this object is reachable, however the "referent" field was not scanned.
+                // we need to update this field manually
+                // The following line MUST run the mutator write barrier
+                refAlias.referent = gc.preserve(referent).toJava();
             }
+            refAlias.discovered = null;
+            logProcessDiscovered(refAlias, referent, false, addedToPending, next);
+            ref = next;
+        }
+        processedLists[listIndex] = sentinel;
+        deferredLists[listIndex] = deferred;
+        numProcessed[listIndex] = processed;
+        numCleared[listIndex] = cleared;
+    }
 
-            end = head;
-            head = discoveredList;
-        } while (true);
+    /**
+     * Preserve the referents of the references deferred by {@link #processDiscoveredList(GC, int)}.
+     */
+    private static void preserveDeferredReferents(GC gc, int listIndex) {
+        java.lang.ref.Reference ref = deferredLists[listIndex];
+        deferredLists[listIndex] = sentinel;
+        while (ref != sentinel) {
+            JLRRAlias refAlias = asJLRRAlias(ref);
+            final java.lang.ref.Reference next = refAlias.discovered;
+            final Reference referent = Reference.fromJava(refAlias.referent);
+            // The following line MUST run the mutator write barrier
+            refAlias.referent = gc.preserve(referent).toJava();
+            // Soft references kept alive by the LRU policy remain active.
+            final boolean addedToPending = !(ref instanceof java.lang.ref.SoftReference) && addToPending(ref, listIndex);
+            refAlias.discovered = null;
+            logProcessDiscovered(refAlias, referent, true, addedToPending, next);
+            ref = next;
+        }
+    }
+
+    /**
+     * Add an active reference whose reachability has changed to the pending references of a discovered list.
+     *
+     * @return true if the reference was added
+     */
+    private static boolean addToPending(java.lang.ref.Reference ref, int listIndex) {
+        JLRRAlias refAlias = asJLRRAlias(ref);
+        if (!refAlias.isActive()) {
+            return false;
+        }
+        if (pendingHeads[listIndex] == null) {
+            // 'ref' will be at the end of the pending list
+            refAlias.next = ref;
+            pendingTails[listIndex] = ref;
+        } else {
+            refAlias.next = pendingHeads[listIndex];
+        }
+        pendingHeads[listIndex] = ref;
+        return true;
+    }
+
+    private static void logProcessDiscovered(JLRRAlias r, Reference referent, boolean preserved, boolean addedToPending, java.lang.ref.Reference next) {
+        if (specialReferenceLogger.enabled()) {
+            final Object newReferent = r.referent;
+            specialReferenceLogger.logProcessDiscovered(
+                ObjectAccess.readClassActor(r),
+                ObjectAccess.toOrigin(r),
+                referent.toOrigin(),
+                newReferent == null ? Pointer.zero() : ObjectAccess.toOrigin(newReferent),
+                Reference.fromJava(r.queue).toOrigin(),
+                preserved,
+                updateReachableReferent,
+                addedToPending,
+                MaxineVM.isDebug() ? ObjectAccess.toOrigin(next) : Pointer.zero());
+        }
     }
 
     @ALIAS(declaringClassName = "java.lang.ref.Finalizer")
@@ -377,7 +596,11 @@ public class SpecialReferenceManager {
     public static void initialize(Phase phase) {
         if (phase == Phase.PRISTINE) {
             clock = System.currentTimeMillis();
-            discoveredList = sentinel;
+            for (int i = 0; i < MAX_DISCOVERED_LISTS; i++) {
+                discoveredLists[i] = sentinel;
+                processedLists[i] = sentinel;
+                deferredLists[i] = sentinel;
+            }
             JLRRAlias sentinelAlias = asJLRRAlias(sentinel);
             sentinelAlias.discovered = sentinel;
             sentinelAlias.next = sentinel;
@@ -445,6 +668,12 @@ public class SpecialReferenceManager {
                         @VMLogParam(name = "nullReferenceQueue") Pointer nullReferenceQueue,
                         @VMLogParam(name = "enqueReferenceQueue") Pointer enqueReferenceQueue);
 
+        void processDiscoveredDone(
+                        @VMLogParam(name = "numProcessed") int numProcessed,
+                        @VMLogParam(name = "numCleared") int numCleared,
+                        @VMLogParam(name = "numPending") int numPending,
+                        @VMLogParam(name = "elapsedMicros") long elapsedMicros);
+
         void processDiscovered(
                         @VMLogParam(name = "classActor") ClassActor classActor,
                         @VMLogParam(name = "rOrigin") Pointer rOrigin,
@@ -539,6 +768,19 @@ public class SpecialReferenceManager {
             Log.println(enqueReferenceQueue);
         }
 
+        @Override
+        protected void traceProcessDiscoveredDone(int numProcessed, int numCleared, int numPending, long elapsedMicros) {
+            Log.print("Processed ");
+            Log.print(numProcessed);
+            Log.print(" discovered references, cleared ");
+            Log.print(numCleared);
+            Log.print(", ");
+            Log.print(numPending);
+            Log.print(" pending, in ");
+            Log.print(elapsedMicros);
+            Log.println(" us");
+        }
+
         @Override
         protected void traceProcessDiscovered(ClassActor classActor, Pointer rOrigin, Pointer referentOrigin, Pointer newReferentOrigin, Pointer queueOrigin, int stateBools, Pointer refOrigin) {
             boolean preserved = (stateBools & PRESERVED_BIT) != 0;
@@ -593,7 +835,8 @@ public class SpecialReferenceManager {
     private static abstract class SpecialReferenceLoggerAuto extends com.sun.max.vm.log.VMLogger {
         public enum Operation {
             Discover, Enqueue, ProcessDiscovered,
-            ProcessDiscoveredInit, ProcessInspectable, RegisterFinalizee, Remove;
+            ProcessDiscoveredDone, ProcessDiscoveredInit, ProcessInspectable, RegisterFinalizee,
+            Remove;
 
             @SuppressWarnings("hiding")
             public static final Operation[] VALUES = values();
@@ -631,6 +874,12 @@ public class SpecialReferenceManager {
         protected abstract void traceProcessDiscovered(ClassActor classActor, Pointer rOrigin, Pointer referentOrigin, Pointer newReferentOrigin, Pointer queueOrigin,
                 int stateBools, Pointer refOrigin);
 
+        @INLINE
+        public final void logProcessDiscoveredDone(int numProcessed, int numCleared, int numPending, long elapsedMicros) {
+            log(Operation.ProcessDiscoveredDone.ordinal(), intArg(numProcessed), intArg(numCleared), intArg(numPending), longArg(elapsedMicros));
+        }
+        protected abstract void traceProcessDiscoveredDone(int numProcessed, int numCleared, int numPending, long elapsedMicros);
+
         @INLINE
         public final void logProcessDiscoveredInit(Pointer nullReferenceQueue, Pointer enqueReferenceQueue) {
             log(Operation.ProcessDiscoveredInit.ordinal(), nullReferenceQueue, enqueReferenceQueue);
@@ -670,19 +919,23 @@ public class SpecialReferenceManager {
                     traceProcessDiscovered(toClassActor(r, 1), toPointer(r, 2), toPointer(r, 3), toPointer(r, 4), toPointer(r, 5), toInt(r, 6), toPointer(r, 7));
                     break;
                 }
-                case 3: { //ProcessDiscoveredInit
+                case 3: { //ProcessDiscoveredDone
+                    traceProcessDiscoveredDone(toInt(r, 1), toInt(r, 2), toInt(r, 3), toLong(r, 4));
+                    break;
+                }
+                case 4: { //ProcessDiscoveredInit
                     traceProcessDiscoveredInit(toPointer(r, 1), toPointer(r, 2));
                     break;
                 }
-                case 4: { //ProcessInspectable
+                case 5: { //ProcessInspectable
                     traceProcessInspectable(toInt(r, 1), toPointer(r, 2), toWord(r, 3));
                     break;
                 }
-                case 5: { //RegisterFinalizee
+                case 6: { //RegisterFinalizee
                     traceRegisterFinalizee(toPointer(r, 1), toClassActor(r, 2));
                     break;
                 }
-                case 6: { //Remove
+                case 7: { //Remove
                     traceRemove(toClassActor(r, 1), toPointer(r, 2), toPointer(r, 3));
                     break;
                 }
@@ -65,6 +65,24 @@ public abstract class TLABRefillPolicy {
      */
     public abstract Size nextTlabSize();
 
+    /**
+     * Notification that the TLAB of the current thread was refilled.
+     * @param tlabSize size of the new TLAB
+     * @param leftover space left in the TLAB replaced by the refill
+     */
+    public void notifyRefill(Size tlabSize, Size leftover) {
+        // Default is nothing.
+    }
+
+    /**
+     * Notification that the TLAB of the thread was reset by a garbage collection.
+     * This is called by the garbage collector, which may not be running on the thread the policy belongs to, and must not allocate.
+     * @param leftover space left in the TLAB when reset
+     */
+    public void notifyReset(Size leftover) {
+        // Default is nothing.
+    }
+
     @INTRINSIC(UNSAFE_CAST)
     private static native TLABRefillPolicy asTLABRefillPolicy(Object object);
 
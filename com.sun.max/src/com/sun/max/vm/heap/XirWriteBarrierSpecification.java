@@ -63,4 +63,13 @@ public interface XirWriteBarrierSpecification extends WriteBarrierSpecification
      * @param writeBarrierSpec a bit set encoding a write barrier specification.
      */
     XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec);
+
+    XirTemplate[] NO_BARRIER_STUBS = new XirTemplate[0];
+
+    /**
+     * Return the stubs called out-of-line by the write-barriers generated by this specification.
+     * The stubs are registered with the other XIR stubs of the compiler, and must be created the first time a barrier generator requests them.
+     * This must therefore be called after all the barriers have been generated.
+     */
+    XirTemplate[] barrierStubs();
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Evacuator for an {@link AgingRegionalizedNursery}. Cells of eden and of the from-survivor space whose age is below the tenuring threshold
+ * are copied to the to-survivor space with their age incremented. Other cells, and cells that don't fit in the to-survivor space, are promoted
+ * to the card-table covered old generation, like with the {@link NoAgingNurseryEvacuator}.
+ * <p>
+ * References from the old generation or the boot heap to survivors are left on dirty cards so that the next minor collection finds them.
+ * The evacuator also keeps track of the number of bytes of survivors per age, from which the sizing policy derives the tenuring threshold of the
+ * next minor collection.
+ * <p>
+ * Evacuation is sequential when the nursery has survivor spaces. Otherwise, evacuation is the same as the {@link NoAgingNurseryEvacuator}'s,
+ * including its parallel evacuation if enabled.
+ */
+public final class AgingNurseryEvacuator extends NoAgingNurseryEvacuator {
+    public static boolean PrintTenuringDistribution = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "PrintTenuringDistribution", AgingNurseryEvacuator.class, "Print the age distribution of survivors after each minor collection", Phase.PRISTINE);
+    }
+
+    private final AgingRegionalizedNursery nursery;
+
+    /**
+     * Cells that survived this many minor collections are promoted.
+     */
+    private int tenuringThreshold;
+
+    /**
+     * Number of bytes copied to the to-survivor space during the last evacuation, indexed by age.
+     */
+    private final long[] survivorBytesPerAge = new long[AgingRegionalizedNursery.MAX_AGE + 1];
+
+    /**
+     * First cell of the to-survivor space that hasn't been scanned for references to the evacuated area yet.
+     */
+    private Pointer survivorScanMark = Pointer.zero();
+
+    public AgingNurseryEvacuator(AgingRegionalizedNursery fromSpace, HeapSpace toSpace, EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset, String name) {
+        super(fromSpace, toSpace, evacuationBufferProvider, rset, name);
+        this.nursery = fromSpace;
+    }
+
+    public int tenuringThreshold() {
+        return tenuringThreshold;
+    }
+
+    public void setTenuringThreshold(int tenuringThreshold) {
+        this.tenuringThreshold = nursery.hasSurvivorSpaces() ? tenuringThreshold : 0;
+    }
+
+    /**
+     * Number of bytes of survivors per age after the last evacuation.
+     * The array must not be modified.
+     */
+    public long[] survivorBytesPerAge() {
+        return survivorBytesPerAge;
+    }
+
+    @Override
+    boolean evacuatesInParallel() {
+        return !nursery.hasSurvivorSpaces() && super.evacuatesInParallel();
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        super.doBeforeEvacuation();
+        for (int age = 0; age < survivorBytesPerAge.length; age++) {
+            survivorBytesPerAge[age] = 0L;
+        }
+        survivorScanMark = nursery.toSurvivorTop();
+    }
+
+    @Override
+    Pointer evacuate(Pointer fromOrigin) {
+        final Pointer fromCell = Layout.originToCell(fromOrigin);
+        final int age = nursery.ageOf(fromCell);
+        if (age < tenuringThreshold) {
+            final Size size = Layout.size(fromOrigin);
+            final Pointer toCell = nursery.allocateSurvivor(size);
+            if (!toCell.isZero()) {
+                Memory.copyBytes(fromCell, toCell, size);
+                nursery.setAge(toCell, age + 1);
+                survivorBytesPerAge[age + 1] += size.toLong();
+                return toCell;
+            }
+            // The to-survivor space overflowed. Promote.
+        }
+        return super.evacuate(fromOrigin);
+    }
+
+    /**
+     * Record references from the old generation or the boot heap to cells copied to the to-survivor space in the card table.
+     * Other holders (roots, code, immortal heap, young generation) are scanned entirely at every minor collection.
+     */
+    @Override
+    void updateRSet(Pointer refHolderOrigin, int wordIndex, Reference ref) {
+        if (nursery.inSurvivorSpaces(ref.toOrigin()) && (toSpace.contains(refHolderOrigin) || Heap.bootHeapRegion.contains(refHolderOrigin))) {
+            rset.record(Reference.fromOrigin(refHolderOrigin), 0, wordIndex);
+        }
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        super.evacuateReachables();
+        // Scan the cells copied to the to-survivor space. This may promote more cells, so alternate with the scanning of promoted cells until both are exhausted.
+        Pointer end = nursery.toSurvivorTop();
+        while (survivorScanMark.lessThan(end)) {
+            evacuateRange(survivorScanMark, end);
+            survivorScanMark = end;
+            super.evacuateReachables();
+            end = nursery.toSurvivorTop();
+        }
+    }
+
+    /**
+     * Log the age distribution of the survivors of the last evacuation.
+     *
+     * @param invocationCount number of the GC operation that performed the evacuation
+     */
+    public void logTenuringDistribution(int invocationCount) {
+        final boolean lockDisabledSafepoints = Log.lock();
+        Log.print("Tenuring distribution for evacuation #");
+        Log.print(invocationCount);
+        Log.print(": survivor space size = ");
+        Log.print(nursery.survivorSpaceSize().toLong());
+        Log.print(", new tenuring threshold = ");
+        Log.println(tenuringThreshold);
+        long totalBytes = 0L;
+        for (int age = 1; age < survivorBytesPerAge.length; age++) {
+            final long bytes = survivorBytesPerAge[age];
+            if (bytes != 0L) {
+                totalBytes += bytes;
+                Log.print("  age ");
+                Log.print(age);
+                Log.print(": ");
+                Log.print(bytes);
+                Log.print(" bytes, ");
+                Log.print(totalBytes);
+                Log.println(" total");
+            }
+        }
+        Log.unlock(lockDisabledSafepoints);
+    }
+}
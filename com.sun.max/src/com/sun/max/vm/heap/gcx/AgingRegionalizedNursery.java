@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.HeapScheme.GCRequest;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * A nursery made of an eden space and two survivor spaces carved out of a single contiguous range of regions.
+ * Objects are allocated in eden. Minor collections evacuate eden and the from-survivor space: survivors younger than the
+ * tenuring threshold are copied to the to-survivor space, the others are promoted to the next generation.
+ * The two survivor spaces swap roles after every minor collection.
+ * <p>
+ * The age of an object is the number of minor collections it survived. Objects in eden have age 0. The age of objects in
+ * the survivor spaces is kept in a side table with one byte per word of survivor space, as the misc word of the object header
+ * has no spare bits.
+ * <p>
+ * Without survivor spaces (i.e., if the sizing policy gives them a zero size), the nursery behaves like a {@link NoAgingRegionalizedNursery}.
+ */
+public final class AgingRegionalizedNursery implements HeapSpace {
+    /**
+     * Maximum age recorded for an object.
+     */
+    public static final int MAX_AGE = 15;
+
+    final class NurseryRefiller extends Refiller {
+        @Override
+        public Address allocateRefill(Size requestedSize, Pointer startOfSpaceLeft, Size spaceLeft) {
+            GCRequest.setGCRequest(requestedSize);
+            if (!Heap.collectGarbage()) {
+                throw new OutOfMemoryError();
+            }
+            // We're out of safepoint. The current thread hold the refill lock and will do the refill of the allocator.
+            return Address.zero();
+        }
+
+        @Override
+        protected void doBeforeGC() {
+            // Nothing to do.
+        }
+
+        @Override
+        public Address allocateLargeRaw(Size size) {
+            FatalError.unimplemented();
+            return Address.zero();
+        }
+    }
+
+    /**
+     * A survivor space. Allocation in survivor spaces is only performed by the evacuator, which does it sequentially.
+     */
+    static final class SurvivorSpace {
+        Address start = Address.zero();
+        Address end = Address.zero();
+        /**
+         * First free byte of the survivor space. Survivors occupy the range [start, top).
+         */
+        @INSPECTED
+        Address top = Address.zero();
+
+        void initialize(Address start, Size size) {
+            this.start = start;
+            this.end = start.plus(size);
+            this.top = start;
+        }
+
+        @INLINE
+        boolean isIn(Address address) {
+            return address.greaterEqual(start) && address.lessThan(end);
+        }
+
+        Pointer allocate(Size size) {
+            final Address cell = top;
+            final Address newTop = cell.plus(size);
+            if (newTop.greaterThan(end)) {
+                return Pointer.zero();
+            }
+            top = newTop;
+            return cell.asPointer();
+        }
+
+        Size usedSpace() {
+            return top.minus(start).asSize();
+        }
+
+        void reset() {
+            if (MaxineVM.isDebug()) {
+                Memory.setWords(start.asPointer(), usedSpace().unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt(), HeapFreeChunk.deadSpaceMark());
+            }
+            top = start;
+        }
+    }
+
+    /**
+     * The heap account space for this nursery is allocated from.
+     */
+    private final HeapAccount<? extends HeapAccountOwner> heapAccount;
+
+    private final int regionTag;
+    /**
+     * List of region allocated to the nursery.
+     */
+    private HeapRegionList nurseryRegionsList;
+    /**
+     * List of regions allocated to the nursery but uncommitted.
+     */
+    private HeapRegionList uncommitedNurseryRegionsList;
+
+    /**
+     * Atomic bump pointer allocator over eden. The current bounds and size of eden are obtained from the allocator's start and end addresses.
+     */
+    @INSPECTED
+    private final AtomicBumpPointerAllocator<NurseryRefiller> allocator = new AtomicBumpPointerAllocator<NurseryRefiller>(new NurseryRefiller());
+
+    /**
+     * Survivor space holding the objects that survived the last minor collection. Evacuated by the next minor collection, along with eden.
+     */
+    @INSPECTED
+    private SurvivorSpace fromSurvivor = new SurvivorSpace();
+
+    /**
+     * Survivor space receiving the survivors of the next minor collection. Empty between collections.
+     */
+    @INSPECTED
+    private SurvivorSpace toSurvivor = new SurvivorSpace();
+
+    /**
+     * Start of the area covered by the survivor spaces.
+     */
+    private Address survivorsStart = Address.zero();
+
+    /**
+     * End of the area covered by the survivor spaces.
+     */
+    private Address survivorsEnd = Address.zero();
+
+    /**
+     * Side table recording the age of the cells of the survivor spaces. One byte per word of survivor space.
+     */
+    private Pointer ageTable = Pointer.zero();
+
+    private final SpaceBounds bounds;
+
+    public AgingRegionalizedNursery(HeapAccount<? extends HeapAccountOwner> heapAccount, int regionTag) {
+        this.heapAccount = heapAccount;
+        this.regionTag = regionTag;
+        this.bounds = new SpaceBounds() {
+            @Override
+            Address lowestAddress() {
+                return hasSurvivorSpaces() ? fromSurvivor.start : allocator.start();
+            }
+
+            @Override
+            boolean isIn(Address address) {
+                return (address.greaterEqual(allocator.start()) && address.lessThan(allocator.hardLimit())) || fromSurvivor.isIn(address);
+            }
+
+            @Override
+            boolean isContiguous() {
+                return !hasSurvivorSpaces();
+            }
+
+            @Override
+            Address highestAddress() {
+                return allocator.hardLimit();
+            }
+        };
+    }
+
+    public AgingRegionalizedNursery(HeapAccount<? extends HeapAccountOwner> heapAccount) {
+        this(heapAccount, 0);
+    }
+
+    public void initialize(GenHeapSizingPolicy genSizingPolicy) {
+        nurseryRegionsList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        uncommitedNurseryRegionsList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        if (!heapAccount.allocateContiguous(HeapRegionConstants.numberOfRegions(genSizingPolicy.maxYoungGenSize()), nurseryRegionsList, false, false, regionTag)) {
+            FatalError.unexpected("Couldn't allocate contiguous range to the nursery");
+        }
+        int regionID = nurseryRegionsList.head();
+        int numCommittedRegions = HeapRegionConstants.numberOfRegions(genSizingPolicy.initialYoungGenSize());
+        heapAccount.commit(RegionRange.from(regionID, numCommittedRegions));
+
+        int lastCommittedRegion = regionID + numCommittedRegions - 1;
+        while (nurseryRegionsList.tail() != lastCommittedRegion) {
+            uncommitedNurseryRegionsList.prepend(nurseryRegionsList.removeTail());
+        }
+        final Address start = RegionTable.theRegionTable().regionAddress(nurseryRegionsList.head());
+        final Size youngGenSize = genSizingPolicy.initialYoungGenSize();
+        final Size survivorSpaceSize = genSizingPolicy.survivorSpaceSize();
+        final Size edenSize = youngGenSize.minus(survivorSpaceSize.times(2));
+        // Survivor spaces are laid out before eden, so that eden can be resized by committing or uncommitting the regions at the end of the nursery.
+        survivorsStart = start;
+        survivorsEnd = start.plus(survivorSpaceSize.times(2));
+        fromSurvivor.initialize(survivorsStart, survivorSpaceSize);
+        toSurvivor.initialize(fromSurvivor.end, survivorSpaceSize);
+        if (hasSurvivorSpaces()) {
+            final Size ageTableSize = survivorSpaceSize.times(2).unsignedShiftedRight(Word.widthValue().log2numberOfBytes);
+            ageTable = Memory.allocate(ageTableSize);
+            if (ageTable.isZero()) {
+                FatalError.unexpected("Failed to allocate survivor age table");
+            }
+        }
+        allocator.initialize(survivorsEnd, edenSize, Size.fromInt(HeapRegionConstants.regionSizeInBytes));
+    }
+
+    /**
+     * Tells whether the nursery has survivor spaces, i.e., whether it can age objects.
+     */
+    @INLINE
+    public boolean hasSurvivorSpaces() {
+        return survivorsEnd.greaterThan(survivorsStart);
+    }
+
+    /**
+     * Size of one survivor space.
+     */
+    public Size survivorSpaceSize() {
+        return fromSurvivor.end.minus(fromSurvivor.start).asSize();
+    }
+
+    @INLINE
+    private Pointer ageEntry(Pointer cell) {
+        return ageTable.plus(cell.minus(survivorsStart).unsignedShiftedRight(Word.widthValue().log2numberOfBytes));
+    }
+
+    /**
+     * Tells whether an address is in one of the survivor spaces.
+     */
+    @INLINE
+    public boolean inSurvivorSpaces(Address address) {
+        return address.greaterEqual(survivorsStart) && address.lessThan(survivorsEnd);
+    }
+
+    /**
+     * Age of a cell of the nursery.
+     *
+     * @param cell a pointer to a cell in eden or in a survivor space
+     * @return the number of minor collections the cell survived
+     */
+    @INLINE
+    int ageOf(Pointer cell) {
+        if (inSurvivorSpaces(cell)) {
+            return ageEntry(cell).readByte(0);
+        }
+        return 0;
+    }
+
+    @INLINE
+    void setAge(Pointer cell, int age) {
+        ageEntry(cell).writeByte(0, (byte) age);
+    }
+
+    /**
+     * Allocate space in the to-survivor space.
+     *
+     * @param size number of bytes requested
+     * @return a pointer to the allocated space, or zero if the to-survivor space is full
+     */
+    Pointer allocateSurvivor(Size size) {
+        return toSurvivor.allocate(size);
+    }
+
+    /**
+     * End of the survivors copied to the to-survivor space so far.
+     */
+    Pointer toSurvivorTop() {
+        return toSurvivor.top.asPointer();
+    }
+
+    /**
+     * Number of bytes occupied by objects that survived a minor collection.
+     */
+    public Size survivorsUsedSpace() {
+        return fromSurvivor.usedSpace();
+    }
+
+    public Pointer allocate(Size size) {
+        return allocator.allocateCleared(size);
+    }
+
+    /**
+     * Grow eden by committing uncommitted regions of the nursery. Must only be called when eden is empty, i.e., right after a minor collection.
+     *
+     * @param delta number of bytes requested, rounded up to an integral number of regions
+     * @return the number of bytes eden was grown by
+     */
+    @Override
+    public Size increaseSize(Size delta) {
+        final int numRegions = Math.min(HeapRegionConstants.numberOfRegions(delta), uncommitedNurseryRegionsList.size());
+        if (numRegions == 0) {
+            return Size.zero();
+        }
+        final int firstRegion = uncommitedNurseryRegionsList.head();
+        heapAccount.commit(RegionRange.from(firstRegion, numRegions));
+        for (int i = 0; i < numRegions; i++) {
+            nurseryRegionsList.append(uncommitedNurseryRegionsList.removeHead());
+        }
+        final Size growth = Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(numRegions);
+        allocator.grow(growth);
+        return growth;
+    }
+
+    /**
+     * Shrink eden by uncommitting the regions at the end of the nursery. Must only be called when eden is empty, i.e., right after a minor collection.
+     * Eden keeps at least one region.
+     *
+     * @param delta number of bytes requested, rounded down to an integral number of regions
+     * @return the number of bytes eden was shrunk by
+     */
+    @Override
+    public Size decreaseSize(Size delta) {
+        final int numEdenRegions = nurseryRegionsList.size() - HeapRegionConstants.numberOfRegions(survivorsEnd.minus(survivorsStart).asSize());
+        final int numRegions = Math.min(delta.unsignedShiftedRight(HeapRegionConstants.log2RegionSizeInBytes).toInt(), numEdenRegions - 1);
+        if (numRegions <= 0) {
+            return Size.zero();
+        }
+        final Size shrinkage = Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(numRegions);
+        if (!allocator.shrink(shrinkage)) {
+            return Size.zero();
+        }
+        for (int i = 0; i < numRegions; i++) {
+            uncommitedNurseryRegionsList.prepend(nurseryRegionsList.removeTail());
+        }
+        heapAccount.uncommit(RegionRange.from(uncommitedNurseryRegionsList.head(), numRegions));
+        return shrinkage;
+    }
+
+    /**
+     * Size of the committed space of the nursery, i.e., eden plus the two survivor spaces.
+     */
+    public Size committedSpace() {
+        return allocator.size().plus(survivorSpaceSize().times(2));
+    }
+
+    /**
+     * Space evacuated by a minor collection, i.e., eden plus one survivor space.
+     */
+    @Override
+    public Size totalSpace() {
+        return allocator.size().plus(survivorSpaceSize());
+    }
+
+    @Override
+    public Size capacity() {
+        return Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(uncommitedNurseryRegionsList.size()).plus(allocator.size()).plus(survivorSpaceSize().times(2));
+    }
+
+    @Override
+    public Pointer allocateTLAB(Size size) {
+        final Pointer tlab = allocator.allocateRaw(size);
+        HeapFreeChunk.format(tlab, size);
+        return tlab;
+    }
+
+    public void retireTLAB(Pointer start, Size size) {
+        FatalError.check(allocator.inCurrentContiguousChunk(start), "Retired TLAB Space must be in allocating space");
+        if (!allocator.retireTop(start, size)) {
+            DarkMatter.format(start, size);
+        }
+    }
+
+    @Override
+    public boolean contains(Address address) {
+        return allocator.inCurrentContiguousChunk(address) || inSurvivorSpaces(address);
+    }
+
+    @Override
+    public void doBeforeGC() {
+        allocator.doBeforeGC();
+    }
+
+    /**
+     * Empty eden and the from-survivor space, and swap the survivor spaces.
+     */
+    @Override
+    public void doAfterGC() {
+        if (MaxineVM.isDebug()) {
+            allocator.zap();
+        }
+        allocator.reset();
+        fromSurvivor.reset();
+        final SurvivorSpace survivors = toSurvivor;
+        toSurvivor = fromSurvivor;
+        fromSurvivor = survivors;
+    }
+
+    @Override
+    public Size freeSpace() {
+        return allocator.freeSpace();
+    }
+
+    @Override
+    public Size usedSpace() {
+        return allocator.usedSpace().plus(fromSurvivor.usedSpace());
+    }
+
+    @Override
+    public void visit(CellRangeVisitor visitor) {
+        visitor.visitCells(allocator.start(), allocator.top);
+        if (fromSurvivor.top.greaterThan(fromSurvivor.start)) {
+            visitor.visitCells(fromSurvivor.start, fromSurvivor.top);
+        }
+    }
+
+    @Override
+    public SpaceBounds bounds() {
+        return bounds;
+    }
+}
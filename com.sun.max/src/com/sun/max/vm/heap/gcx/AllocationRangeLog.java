@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.layout.*;
+
+/**
+ * Log of the ranges of free space handed out to allocators during a concurrent marking cycle.
+ * Objects allocated while marking concurrently are live by construction, but aren't reached by the marker.
+ * Allocators take free space one free chunk, region, or large object at a time, so recording these ranges
+ * when the space hands them out is enough to find all the objects allocated during the cycle once allocators are retired.
+ * Ranges are stored in an array of address pairs allocated in native memory and grown as needed.
+ */
+final class AllocationRangeLog {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Native array of [start, end[ address pairs.
+     */
+    private Pointer ranges = Pointer.zero();
+
+    /**
+     * Number of ranges the {@link #ranges} array can hold.
+     */
+    private int capacity;
+
+    /**
+     * Number of ranges logged.
+     */
+    private int numRanges;
+
+    /**
+     * Indicates whether ranges are being logged.
+     */
+    private boolean enabled;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized void enable() {
+        numRanges = 0;
+        enabled = true;
+    }
+
+    synchronized void disable() {
+        numRanges = 0;
+        enabled = false;
+    }
+
+    /**
+     * Record a range of memory handed out for allocation, if logging is enabled.
+     */
+    synchronized void record(Address start, Address end) {
+        if (!enabled) {
+            return;
+        }
+        if (numRanges == capacity) {
+            final int newCapacity = capacity == 0 ? INITIAL_CAPACITY : capacity << 1;
+            final Size newSize = Size.fromInt(newCapacity << 1).shiftedLeft(Word.widthValue().log2numberOfBytes);
+            ranges = ranges.isZero() ? Memory.allocate(newSize) : Memory.reallocate(ranges, newSize);
+            capacity = newCapacity;
+        }
+        final int index = numRanges << 1;
+        ranges.setWord(index, start);
+        ranges.setWord(index + 1, end);
+        numRanges++;
+    }
+
+    /**
+     * Mark black all the objects in the logged ranges. Free chunks and dark matter are skipped.
+     * Must be called at a safepoint, once allocators have been retired so that the logged ranges are parsable.
+     *
+     * @param heapMarker the heap marker of the current concurrent marking cycle
+     */
+    void markAllocatedObjects(TricolorHeapMarker heapMarker) {
+        for (int i = 0; i < numRanges; i++) {
+            final int index = i << 1;
+            Pointer cell = ranges.getWord(index).asPointer();
+            final Pointer end = ranges.getWord(index + 1).asPointer();
+            while (cell.lessThan(end)) {
+                final Pointer origin = Layout.cellToOrigin(cell);
+                final Word hubWord = origin.getWord(Layout.hubIndex());
+                if (hubWord.isZero()) {
+                    // Unformatted space left cleared by an allocator.
+                    cell = cell.plusWords(1);
+                    continue;
+                }
+                if (HeapFreeChunk.isHeapFreeChunkOrigin(origin)) {
+                    cell = cell.plus(HeapFreeChunk.getFreechunkSize(cell));
+                    continue;
+                }
+                if (!DarkMatter.isDarkMatterHub(hubWord)) {
+                    heapMarker.markAllocatedBlack(cell);
+                }
+                cell = cell.plus(Layout.size(origin));
+            }
+        }
+    }
+}
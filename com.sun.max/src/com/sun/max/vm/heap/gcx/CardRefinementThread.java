@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Background thread refining the dirty cards of a generational heap between collections.
+ * <p>
+ * The thread periodically walks the card table and cleans the dirty cards of the old generation that hold no reference to the young generation.
+ * Cards that do are summarized with the {@linkplain CardState#REFINED_CARD refined} state. Minor collections then only scan the cards dirtied since
+ * the last refinement pass and the refined cards, instead of every card dirtied since the last collection.
+ * <p>
+ * Cards are inspected word by word rather than object by object, as the old generation may not be parsable while mutators run.
+ * A word that looks like a reference to the young generation conservatively keeps its card for the next collection.
+ * The card table is refined by steps of {@link #CardRefinementStepSize} cards, each run with safepoints disabled so that a collection never
+ * starts in the middle of a step.
+ */
+public final class CardRefinementThread extends Thread {
+    static boolean CardRefinement = false;
+    static int CardRefinementInterval = 10;
+    static int CardRefinementStepSize = 4096;
+    static boolean TraceCardRefinement = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "CardRefinement", CardRefinementThread.class,
+            "Refine dirty cards concurrently with mutators between minor collections", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CardRefinementInterval", CardRefinementThread.class,
+            "Interval in milliseconds between two card refinement passes", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CardRefinementStepSize", CardRefinementThread.class,
+            "Number of cards refined between two safepoint polls of the card refinement thread", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceCardRefinement", CardRefinementThread.class,
+            "Trace card refinement passes", Phase.PRISTINE);
+    }
+
+    /**
+     * Refines the cards of the old generation, keeping those with references to the young generation.
+     */
+    final class YoungReferenceCardRefiner extends CardTableRSet.CardRefiner {
+        EvacuatingSpace.SpaceBounds youngBounds;
+
+        @Override
+        public boolean isRefinable(Address cardStart) {
+            return oldSpace.contains(cardStart);
+        }
+
+        @Override
+        public boolean holdsReferencesOfInterest(Address start, Address end) {
+            Pointer p = start.asPointer();
+            while (p.lessThan(end)) {
+                if (youngBounds.isIn(p.getWord().asAddress())) {
+                    return true;
+                }
+                p = p.plusWords(1);
+            }
+            return false;
+        }
+    }
+
+    private final CardTableRSet cardTableRSet;
+    private final HeapSpace oldSpace;
+    private final EvacuatingSpace youngSpace;
+    private final YoungReferenceCardRefiner refiner = new YoungReferenceCardRefiner();
+
+    /**
+     * Number of dirty cards cleaned by the refinement thread since VM start.
+     */
+    private long numCleanedCards;
+
+    /**
+     * Create a card refinement thread for the specified generations.
+     *
+     * @param cardTableRSet the card table remembered set of the old generation
+     * @param oldSpace the old generation
+     * @param youngSpace the young generation
+     */
+    public CardRefinementThread(CardTableRSet cardTableRSet, HeapSpace oldSpace, EvacuatingSpace youngSpace) {
+        super(VmThread.systemThreadGroup, "Card Refinement");
+        setDaemon(true);
+        this.cardTableRSet = cardTableRSet;
+        this.oldSpace = oldSpace;
+        this.youngSpace = youngSpace;
+    }
+
+    /**
+     * Tell whether card refinement is enabled.
+     */
+    public static boolean isEnabled() {
+        return CardRefinement;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(CardRefinementInterval);
+            } catch (InterruptedException e) {
+            }
+            refine();
+        }
+    }
+
+    /**
+     * Run a refinement pass over the whole card table.
+     */
+    private void refine() {
+        final CardTable cardTable = cardTableRSet.cardTable;
+        final Size stepSize = Size.fromInt(CardRefinementStepSize).shiftedLeft(CardTableRSet.LOG2_CARD_SIZE);
+        final long numCleanedBefore = numCleanedCards;
+        Address start = cardTable.coveredAreaStart();
+        while (start.lessThan(cardTable.coveredAreaEnd())) {
+            final boolean wasDisabled = SafepointPoll.disable();
+            // The covered area and the young generation bounds may change at every collection.
+            final Address coveredAreaEnd = cardTable.coveredAreaEnd();
+            Address end = start.plus(stepSize);
+            if (end.greaterThan(coveredAreaEnd)) {
+                end = coveredAreaEnd;
+            }
+            refiner.youngBounds = youngSpace.bounds();
+            numCleanedCards += cardTableRSet.refineCards(start, end, refiner);
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            start = end;
+        }
+        if (TraceCardRefinement && numCleanedCards != numCleanedBefore) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Card refinement cleaned ");
+            Log.print(numCleanedCards - numCleanedBefore);
+            Log.print(" cards (total ");
+            Log.print(numCleanedCards);
+            Log.println(")");
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+}
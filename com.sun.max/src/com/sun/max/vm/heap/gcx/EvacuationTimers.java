@@ -24,6 +24,7 @@ package com.sun.max.vm.heap.gcx;
 
 import com.sun.max.annotate.*;
 import com.sun.max.util.timer.*;
+import com.sun.max.vm.*;
 import com.sun.max.vm.heap.*;
 
 
@@ -39,16 +40,94 @@ public final class EvacuationTimers {
         COPY,
         WEAK_REF,
         EPILOGUE;
+        public static final TIMED_OPERATION[] VALUES = values();
         public final TimerMetric timer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
     }
 
+    private static final String HZ_SUFFIX = TimerUtil.getHzSuffix(HeapScheme.GC_TIMING_CLOCK);
+
     private boolean trackTime = false;
 
+    /**
+     * Time each GC worker spent in the parallel phases of the last evacuation.
+     * Compared to the elapsed time of these phases, this tells how well minor pauses scale with the number of workers.
+     */
+    private final long[] workerTimes = new long[GCWorkerPool.MAX_WORKERS];
+
+    /**
+     * Number of workers that took part in the last evacuation.
+     */
+    private int numWorkers = 1;
+
     public EvacuationTimers() {
     }
 
     public void resetTrackTime() {
         trackTime = Heap.logGCTime();
+        for (int i = 0; i < numWorkers; i++) {
+            workerTimes[i] = 0L;
+        }
+        numWorkers = 1;
+    }
+
+    public void startWorker(int workerIndex) {
+        if (trackTime) {
+            workerTimes[workerIndex] -= HeapScheme.GC_TIMING_CLOCK.getTicks();
+        }
+    }
+
+    public void stopWorker(int workerIndex) {
+        if (trackTime) {
+            workerTimes[workerIndex] += HeapScheme.GC_TIMING_CLOCK.getTicks();
+        }
+    }
+
+    public void setNumWorkers(int numWorkers) {
+        this.numWorkers = numWorkers;
+    }
+
+    public int numWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * Time the specified worker spent in the parallel phases of the last evacuation.
+     */
+    public long workerTime(int workerIndex) {
+        return workerTimes[workerIndex];
+    }
+
+    /**
+     * Print the time spent in each operation of the last evacuation and, if it was performed by multiple workers,
+     * the time each worker spent in the parallel phases.
+     *
+     * @param invocationCount the GC invocation count
+     */
+    public void logLastEvacuationTimes(int invocationCount) {
+        final boolean lockDisabledSafepoints = Log.lock();
+        Log.print("Timings (");
+        Log.print(HZ_SUFFIX);
+        Log.print(") for evacuation #");
+        Log.print(invocationCount);
+        Log.print(":");
+        for (TIMED_OPERATION timedOp : TIMED_OPERATION.VALUES) {
+            Log.print(" ");
+            Log.print(timedOp.name());
+            Log.print("=");
+            Log.print(timedOp.timer.getLastElapsedTime());
+        }
+        Log.println();
+        if (numWorkers > 1) {
+            Log.print("  parallel phases with ");
+            Log.print(numWorkers);
+            Log.print(" workers, worker times:");
+            for (int i = 0; i < numWorkers; i++) {
+                Log.print(" ");
+                Log.print(workerTimes[i]);
+            }
+            Log.println();
+        }
+        Log.unlock(lockDisabledSafepoints);
     }
 
     @INLINE
@@ -98,7 +98,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     private void updateSpecialReference(Pointer origin) {
         if (refDiscoveryEnabled) {
-            SpecialReferenceManager.discoverSpecialReference(origin);
+            discoverSpecialReference(origin);
         } else {
             // Treat referent as strong reference.
             if (traceEvacVisitedCell()) {
@@ -112,6 +112,23 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         }
     }
 
+    /**
+     * Record a special reference found while scanning evacuated cells.
+     * Evacuators running concurrently with others must record discoveries to their own discovered list.
+     *
+     * @param origin origin of the special reference object
+     */
+    protected void discoverSpecialReference(Pointer origin) {
+        SpecialReferenceManager.discoverSpecialReference(origin);
+    }
+
+    /**
+     * Processor of the discovered special references, or null if they are processed by the evacuating thread only.
+     */
+    protected SpecialReferenceManager.DiscoveredListsProcessor discoveredListsProcessor() {
+        return null;
+    }
+
     final void enableSpecialRefDiscovery() {
         refDiscoveryEnabled = true;
     }
@@ -155,6 +172,10 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         this.timers = timers;
     }
 
+    final EvacuationTimers timers() {
+        return timers;
+    }
+
     /**
      * Set the phase logger for this evacuator.
      * HeapScheme using multiple evacuator instances might have to share a single phase logger
@@ -587,7 +608,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         currentEvacuationOperation = WEAK_REF;
         timers.start(WEAK_REF);
         disableSpecialRefDiscovery();
-        SpecialReferenceManager.processDiscoveredSpecialReferences(this);
+        SpecialReferenceManager.processDiscoveredSpecialReferences(this, discoveredListsProcessor());
         evacuateReachables();
         enableSpecialRefDiscovery();
         timers.stop(WEAK_REF);
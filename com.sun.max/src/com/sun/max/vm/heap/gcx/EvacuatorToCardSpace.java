@@ -28,6 +28,7 @@ import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.gcx.EvacuatingSpace.SpaceBounds;
 import com.sun.max.vm.heap.gcx.EvacuationTimers.TIMED_OPERATION;
 import com.sun.max.vm.heap.gcx.rset.ctbl.*;
@@ -44,7 +45,7 @@ import com.sun.max.vm.runtime.*;
  */
 public class EvacuatorToCardSpace extends Evacuator {
     @FOLD
-    private static Size evacuationBufferHeadroom() {
+    static Size evacuationBufferHeadroom() {
         return minObjectSize();
     }
 
@@ -195,6 +196,21 @@ public class EvacuatorToCardSpace extends Evacuator {
         return evacuatedBytes;
     }
 
+    /**
+     * Account for bytes evacuated on behalf of this evacuator by parallel evacuation workers.
+     */
+    final void addEvacuatedBytes(Size size) {
+        evacuatedBytes = evacuatedBytes.plus(size);
+    }
+
+    final EvacuationBufferProvider evacuationBufferProvider() {
+        return evacuationBufferProvider;
+    }
+
+    final Size minRefillThreshold() {
+        return minRefillThreshold;
+    }
+
     /**
      * Retire promotion buffer before a GC on the promotion space is performed.
      */
@@ -396,7 +412,7 @@ public class EvacuatorToCardSpace extends Evacuator {
     }
 
     @Override
-    final Pointer evacuate(Pointer fromOrigin) {
+    Pointer evacuate(Pointer fromOrigin) {
         if (MaxineVM.isDebug() && checkDarkMatterRefs) {
             DarkMatter.scanCellForDarkMatter(fromOrigin);
         }
@@ -412,8 +428,24 @@ public class EvacuatorToCardSpace extends Evacuator {
         checkDarkMatterRefs = MaxineVM.isDebug() && b;
     }
 
+    /**
+     * Hand the survivor ranges that remain to be scanned over to the specified visitor, and empty the survivor ranges queue.
+     * Used to let parallel evacuation workers scan the cells evacuated by this evacuator.
+     *
+     * @param visitor visitor of the survivor ranges
+     */
+    final void drainSurvivorRanges(CellRangeVisitor visitor) {
+        updateSurvivorRanges();
+        while (!survivorRanges.isEmpty()) {
+            final Pointer start = survivorRanges.start();
+            final Pointer end = survivorRanges.end();
+            survivorRanges.remove();
+            visitor.visitCells(start, end);
+        }
+    }
+
     @Override
-    final protected void evacuateReachables() {
+    protected void evacuateReachables() {
         updateSurvivorRanges();
         while (!survivorRanges.isEmpty()) {
             final Pointer start = survivorRanges.start();
@@ -47,8 +47,11 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     private static final OutOfMemoryError outOfMemoryError = new OutOfMemoryError();
 
     public static boolean TraceLargeObjectAllocations = false;
+    static boolean LazySweep = false;
     static {
         VMOptions.addFieldOption("-XX:", "TraceLargeObjectAllocations", FirstFitMarkSweepSpace.class, "Trace allocation of large multi-regions objects", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "LazySweep", FirstFitMarkSweepSpace.class,
+            "Sweep regions on demand after a collection instead of during it (spaces that don't need dead references zapped only)", Phase.PRISTINE);
     }
 
     /**
@@ -84,6 +87,44 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private HeapRegionList sweepList;
 
+    /**
+     * Temporary list used during compaction of this space. Holds the regions whose live objects are being evacuated.
+     */
+    private HeapRegionList compactedRegions;
+
+    /**
+     * Temporary list used during compaction of this space. Holds the regions live objects are evacuated into, in the order they were taken
+     * from {@link #allocationRegions}.
+     */
+    private HeapRegionList compactionDestinations;
+
+    /**
+     * Heap marker whose color map the regions left in {@link #sweepList} must be swept with, or null if there are no regions left to sweep.
+     * Only set when sweeping lazily, in which case the sweeper state is protected by the {@link #refillLock()}.
+     */
+    private TricolorHeapMarker lazySweepHeapMarker;
+
+    /**
+     * Whether the pending lazy sweep is precise or imprecise.
+     */
+    private boolean lazySweepImprecise;
+
+    /**
+     * Number of regions in the {@link #sweepList} when the pending lazy sweep began.
+     */
+    private int lazySweepRegions;
+
+    /**
+     * Free space reclaimed so far by the current sweep, or by the last one if no sweep is in progress.
+     */
+    private Size sweptFreeSpace = Size.zero();
+
+    /**
+     * Fraction of the space found free by the last completed sweep, or a negative value if no sweep has completed yet.
+     * Used to estimate the free space in the regions a lazy sweep hasn't reached yet.
+     */
+    private double lastSweepFreeRatio = -1.0;
+
     /**
      * Total number of regions currently allocated to this heap space.
      */
@@ -94,6 +135,11 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private int maxRegionsInSpace;
 
+    /**
+     * Number of regions the space was initially created with. The space is never shrunk below this number of regions.
+     */
+    private int minRegionsInSpace;
+
     /**
      * Total free space in allocation regions (i.e., regions in both {@link #allocationRegions} and {@link #tlabAllocationRegions} lists).
      * This doesn't count space in regions assigned to allocators (i.e., {@link #tlabAllocator} and {@link #overflowAllocator}).
@@ -113,6 +159,12 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     final BaseAtomicBumpPointerAllocator<RegionOverflowAllocatorRefiller> overflowAllocator;
 
+    /**
+     * TLAB refill allocators for each NUMA node when the heap is NUMA-aware, indexed by node.
+     * The allocator of node 0 is the {@link #tlabAllocator}. Null if the heap isn't NUMA-aware.
+     */
+    private ChunkListAllocator<RegionChunkListRefillManager>[] nodeTLABAllocators;
+
     /**
      * Pre-allocated region range iterator. Provides GC operations with allocation free  iteration over contiguous region ranges from a list.
      */
@@ -132,6 +184,11 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private Size minOverflowRefillSize;
 
+    /**
+     * Log of the free space handed out to allocators during a concurrent marking cycle.
+     */
+    private final AllocationRangeLog allocationRangeLog = new AllocationRangeLog();
+
     /**
      * Indicate whether a size is categorized as large. Request for large size must go to the large object allocator.
      * @param size size in words
@@ -144,6 +201,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     private Pointer allocateSingleRegionLargeObject(HeapRegionInfo rinfo, Pointer allocated, Size requestedSize, Size totalChunkSize) {
         final int regionID = rinfo.toRegionID();
         allocationRegions.remove(regionID);
+        allocationRangeLog.record(allocated, allocated.plus(requestedSize));
         Pointer leftover = allocated.plus(requestedSize);
         Size spaceLeft = totalChunkSize.minus(requestedSize);
         if (TraceLargeObjectAllocations) {
@@ -194,109 +252,135 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
             Log.print(numContiguousRegionNeeded);
             Log.println(" contiguous regions");
         }
-        synchronized (refillLock()) {
-            int gcCount = 0;
-            do {
-                regionInfoIterable.initialize(allocationRegions);
-                regionInfoIterable.reset();
-                if (numContiguousRegionNeeded == 1) {
-                    final int numBytesNeeded = size.toInt();
-                    // Actually, any region with a chunk large enough can do in that case.
-                    while (regionInfoIterable.hasNext()) {
-                        final HeapRegionInfo rinfo = regionInfoIterable.next();
-                        if (rinfo.isEmpty()) {
-                            allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
-                            return allocateSingleRegionLargeObject(rinfo, rinfo.regionStart().asPointer(), size, Size.fromInt(regionSizeInBytes));
-                        } else if (!rinfo.isAllocating() && rinfo.numFreeChunks() == 1 && rinfo.freeBytesInChunks() >= numBytesNeeded) {
-                            allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(rinfo.freeBytesInChunks());
-                            return allocateSingleRegionLargeObject(rinfo,  rinfo.firstFreeBytes().asPointer(), size, Size.fromInt(rinfo.freeBytesInChunks()));
-                        }
+        int gcCount = 0;
+        while (true) {
+            final Pointer cell;
+            synchronized (refillLock()) {
+                cell = tryAllocateLarge(size, tailSize, numContiguousRegionNeeded);
+            }
+            if (!cell.isZero()) {
+                return cell;
+            }
+            if (MaxineVM.isDebug()) {
+                checkForSuspisciousGC(gcCount++);
+            }
+            // Collect without holding the refill lock, so that other mutators can keep refilling
+            // their TLABs and allocating large objects until they reach the GC safepoint.
+            if (!Heap.collectGarbage()) { // Always collect for at least one region.
+                break;
+            }
+        }
+        // Not enough freed memory.
+        throw outOfMemoryError;
+    }
+
+    /**
+     * Tries to allocate a large object from the free regions, sweeping the remaining regions first if needed.
+     * Must be called with the {@link #refillLock()} held.
+     *
+     * @return the allocated cell, or zero if there is no room for the object
+     */
+    private Pointer tryAllocateLarge(Size size, Size tailSize, int numContiguousRegionNeeded) {
+        while (true) {
+            regionInfoIterable.initialize(allocationRegions);
+            regionInfoIterable.reset();
+            if (numContiguousRegionNeeded == 1) {
+                final int numBytesNeeded = size.toInt();
+                // Actually, any region with a chunk large enough can do in that case.
+                while (regionInfoIterable.hasNext()) {
+                    final HeapRegionInfo rinfo = regionInfoIterable.next();
+                    if (rinfo.isEmpty()) {
+                        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                        return allocateSingleRegionLargeObject(rinfo, rinfo.regionStart().asPointer(), size, Size.fromInt(regionSizeInBytes));
+                    } else if (!rinfo.isAllocating() && rinfo.numFreeChunks() == 1 && rinfo.freeBytesInChunks() >= numBytesNeeded) {
+                        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(rinfo.freeBytesInChunks());
+                        return allocateSingleRegionLargeObject(rinfo,  rinfo.firstFreeBytes().asPointer(), size, Size.fromInt(rinfo.freeBytesInChunks()));
                     }
-                } else {
-                    int n = 0;
-                    int firstRegion = INVALID_REGION_ID;
-                    int lastRegion = INVALID_REGION_ID;
-
-                    debug_numContiguousRegionNeeded = numContiguousRegionNeeded;
-                    debug_firstRegion = firstRegion;
-                    debug_lastRegion = lastRegion;
-
-                    while (regionInfoIterable.hasNext()) {
-                        final HeapRegionInfo rinfo = regionInfoIterable.next();
-                        if (rinfo.isEmpty()) {
-                            int rid = rinfo.toRegionID();
-                            if (n == 0) {
-                                firstRegion  = rid;
-                                lastRegion  = rid;
-                                debug_firstRegion = firstRegion;
-                                n = 1;
-                            } else if (rid == lastRegion + 1) {
-                                lastRegion = rid;
-                                debug_lastRegion = lastRegion;
-                                if (++n >= numContiguousRegionNeeded) {
-                                    // Got the number of requested contiguous regions.
-                                    // Remove them all from the list (except the tail if it leaves enough space for overflow allocation)
-                                    // and turn them into large object regions.
-                                    if (TraceLargeObjectAllocations) {
-                                        Log.print("allocate contiguous regions [");
-                                        Log.print(firstRegion);
-                                        Log.print(", ");
-                                        Log.print(lastRegion);
-                                        Log.println("]");
+                }
+            } else {
+                int n = 0;
+                int firstRegion = INVALID_REGION_ID;
+                int lastRegion = INVALID_REGION_ID;
+
+                debug_numContiguousRegionNeeded = numContiguousRegionNeeded;
+                debug_firstRegion = firstRegion;
+                debug_lastRegion = lastRegion;
+
+                while (regionInfoIterable.hasNext()) {
+                    final HeapRegionInfo rinfo = regionInfoIterable.next();
+                    if (rinfo.isEmpty()) {
+                        int rid = rinfo.toRegionID();
+                        if (n == 0) {
+                            firstRegion  = rid;
+                            lastRegion  = rid;
+                            debug_firstRegion = firstRegion;
+                            n = 1;
+                        } else if (rid == lastRegion + 1) {
+                            lastRegion = rid;
+                            debug_lastRegion = lastRegion;
+                            if (++n >= numContiguousRegionNeeded) {
+                                // Got the number of requested contiguous regions.
+                                // Remove them all from the list (except the tail if it leaves enough space for overflow allocation)
+                                // and turn them into large object regions.
+                                if (TraceLargeObjectAllocations) {
+                                    Log.print("allocate contiguous regions [");
+                                    Log.print(firstRegion);
+                                    Log.print(", ");
+                                    Log.print(lastRegion);
+                                    Log.println("]");
+                                }
+                                allocationRegions.remove(firstRegion);
+                                HeapRegionInfo firstRegionInfo = HeapRegionInfo.fromRegionID(firstRegion);
+                                LARGE_HEAD.setState(firstRegionInfo);
+                                unavailableRegions.append(firstRegion);
+                                if (n > 2) {
+                                    for (int i = firstRegion + 1; i < lastRegion; i++) {
+                                        allocationRegions.remove(i);
+                                        LARGE_BODY.setState(HeapRegionInfo.fromRegionID(i));
+                                        unavailableRegions.append(i);
                                     }
-                                    allocationRegions.remove(firstRegion);
-                                    HeapRegionInfo firstRegionInfo = HeapRegionInfo.fromRegionID(firstRegion);
-                                    LARGE_HEAD.setState(firstRegionInfo);
-                                    unavailableRegions.append(firstRegion);
-                                    if (n > 2) {
-                                        for (int i = firstRegion + 1; i < lastRegion; i++) {
-                                            allocationRegions.remove(i);
-                                            LARGE_BODY.setState(HeapRegionInfo.fromRegionID(i));
-                                            unavailableRegions.append(i);
-                                        }
+                                }
+                                HeapRegionInfo lastRegionInfo =  HeapRegionInfo.fromRegionID(lastRegion);
+                                Pointer tailEnd = lastRegionInfo.regionStart().plus(regionSizeInBytes).asPointer();
+                                Pointer tail = tailEnd.minus(tailSize);
+                                Address largeObjectCell = firstRegionInfo.regionStart();
+                                allocationRangeLog.record(largeObjectCell, largeObjectCell.plus(size));
+                                deadSpaceListener.notifySplitLive(largeObjectCell, size, tailEnd);
+
+                                if (tailSize.lessThan(minReclaimableSpace)) {
+                                    if (!tailSize.isZero()) {
+                                        DarkMatter.format(tail, tailSize);
+                                        deadSpaceListener.notifyRetireDeadSpace(tail, tailSize);
                                     }
-                                    HeapRegionInfo lastRegionInfo =  HeapRegionInfo.fromRegionID(lastRegion);
-                                    Pointer tailEnd = lastRegionInfo.regionStart().plus(regionSizeInBytes).asPointer();
-                                    Pointer tail = tailEnd.minus(tailSize);
-                                    Address largeObjectCell = firstRegionInfo.regionStart();
-                                    deadSpaceListener.notifySplitLive(largeObjectCell, size, tailEnd);
-
-                                    if (tailSize.lessThan(minReclaimableSpace)) {
-                                        if (!tailSize.isZero()) {
-                                            DarkMatter.format(tail, tailSize);
-                                            deadSpaceListener.notifyRetireDeadSpace(tail, tailSize);
-                                        }
+                                    allocationRegions.remove(lastRegion);
+                                    LARGE_FULL_TAIL.setState(lastRegionInfo);
+                                    unavailableRegions.append(lastRegion);
+                                    allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(Size.fromInt(numContiguousRegionNeeded).shiftedLeft(log2RegionSizeInBytes));
+                                } else {
+                                    // Format the tail as a free chunk.
+                                    HeapFreeChunk.format(tail, tailSize);
+                                    deadSpaceListener.notifyRetireFreeSpace(tail, tailSize);
+
+                                    LARGE_TAIL.setState(lastRegionInfo);
+                                    lastRegionInfo.setFreeChunks(tail, tailSize, 1);
+                                    if (tailSize.lessThan(minOverflowRefillSize)) {
                                         allocationRegions.remove(lastRegion);
-                                        LARGE_FULL_TAIL.setState(lastRegionInfo);
-                                        unavailableRegions.append(lastRegion);
-                                        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(Size.fromInt(numContiguousRegionNeeded).shiftedLeft(log2RegionSizeInBytes));
-                                    } else {
-                                        // Format the tail as a free chunk.
-                                        HeapFreeChunk.format(tail, tailSize);
-                                        deadSpaceListener.notifyRetireFreeSpace(tail, tailSize);
-
-                                        LARGE_TAIL.setState(lastRegionInfo);
-                                        lastRegionInfo.setFreeChunks(tail, tailSize, 1);
-                                        if (tailSize.lessThan(minOverflowRefillSize)) {
-                                            allocationRegions.remove(lastRegion);
-                                            tlabAllocationRegions.append(lastRegion);
-                                        }
-                                        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(size);
+                                        tlabAllocationRegions.append(lastRegion);
                                     }
-                                    return largeObjectCell.asPointer();
+                                    allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(size);
                                 }
-                            } else {
-                                n = 0;
+                                return largeObjectCell.asPointer();
                             }
+                        } else {
+                            n = 0;
                         }
                     }
                 }
-                if (MaxineVM.isDebug()) {
-                    checkForSuspisciousGC(gcCount++);
-                }
-            } while (Heap.collectGarbage()); // Always collect for at least one region.
-            // Not enough freed memory.
-            throw outOfMemoryError;
+            }
+            if (!sweepRemainingRegions()) {
+                return Pointer.zero();
+            }
+            // Retry with the newly swept regions before resorting to GC.
         }
     }
 
@@ -380,6 +464,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         allocationRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
         unavailableRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
         sweepList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        compactedRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        compactionDestinations = HeapRegionList.RegionListUse.OWNERSHIP.createList();
 
         maxRegionsInSpace = numberOfRegions(maxSize);
         FatalError.check(maxRegionsInSpace <= heapAccount.reserve(), "under provisioned heap account");
@@ -391,7 +477,12 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         }
 
         numRegionsInSpace = initialNumberOfRegions;
+        minRegionsInSpace = initialNumberOfRegions;
         minReclaimableSpace = Size.fromInt(freeChunkMinSizeOption.getValue());
+        if (lineMarks != null && minReclaimableSpace.lessThan(lineMarks.lineSize())) {
+            // Dead space is reclaimed in whole lines.
+            minReclaimableSpace = Size.fromInt(lineMarks.lineSize());
+        }
         overflowAllocator.refillManager().setMinRefillSize(minOverflowRefillSize);
         // Set the iterable to the list of committed regions. This is the default. Any exception to this should
         // reset to the committed region list when done.
@@ -410,6 +501,70 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         // Initialize the tlab allocator with a first region.
         tlabAllocator.initialize(regionSize, regionSize);
         overflowAllocator.initialize(Address.zero(), Size.zero(), Size.zero());
+        final int numNumaNodes = HeapRegionManager.theHeapRegionManager().numNumaNodes();
+        if (numNumaNodes > 1) {
+            initializeNodeTLABAllocators(numNumaNodes, regionSize);
+        }
+    }
+
+    /**
+     * Region provider for the TLAB allocator of a NUMA node. Refills the allocator with regions backed by the node's memory when possible.
+     */
+    private final class NodeRegionProvider implements RegionProvider {
+        final int node;
+
+        NodeRegionProvider(int node) {
+            this.node = node;
+        }
+
+        public void retireAllocatingRegion(int regionID) {
+            synchronized (refillLock()) {
+                FirstFitMarkSweepSpace.this.retireAllocatingRegion(regionID);
+            }
+        }
+
+        public int getAllocatingRegion() {
+            synchronized (refillLock()) {
+                return FirstFitMarkSweepSpace.this.getAllocatingRegion(node);
+            }
+        }
+
+        public int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
+            synchronized (refillLock()) {
+                return FirstFitMarkSweepSpace.this.getAllocatingRegion(minFreeBytes, maxFreeChunks);
+            }
+        }
+
+        public Size minRetiredFreeChunkSize() {
+            return FirstFitMarkSweepSpace.this.minRetiredFreeChunkSize();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void initializeNodeTLABAllocators(int numNumaNodes, Size regionSize) {
+        nodeTLABAllocators = new ChunkListAllocator[numNumaNodes];
+        nodeTLABAllocators[0] = tlabAllocator;
+        tlabAllocator.refillManager.setRegionProvider(new NodeRegionProvider(0));
+        for (int node = 1; node < numNumaNodes; node++) {
+            RegionChunkListRefillManager refillManager = new RegionChunkListRefillManager(tlabAllocator.refillManager.deadSpaceListener);
+            refillManager.setRegionProvider(new NodeRegionProvider(node));
+            refillManager.setRefillPolicy(minReclaimableSpace);
+            refillManager.setMinChunkSize(minReclaimableSpace);
+            ChunkListAllocator<RegionChunkListRefillManager> allocator = new ChunkListAllocator<RegionChunkListRefillManager>(refillManager);
+            allocator.initialize(regionSize, regionSize);
+            nodeTLABAllocators[node] = allocator;
+        }
+    }
+
+    /**
+     * Number of TLAB allocators of the space, one per NUMA node if the heap is NUMA-aware.
+     */
+    private int numTLABAllocators() {
+        return nodeTLABAllocators == null ? 1 : nodeTLABAllocators.length;
+    }
+
+    private ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator(int node) {
+        return nodeTLABAllocators == null ? tlabAllocator : nodeTLABAllocators[node];
     }
 
     public Pointer allocate(Size size) {
@@ -420,12 +575,21 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public Pointer allocateTLAB(Size size) {
+        if (nodeTLABAllocators != null) {
+            // Refill from the allocator of the node the allocating thread currently runs on.
+            final int node = VirtualMemory.currentNumaNode();
+            if (node > 0 && node < nodeTLABAllocators.length) {
+                return nodeTLABAllocators[node].allocateTLAB(size);
+            }
+        }
         return tlabAllocator.allocateTLAB(size);
     }
 
     public void retireTLAB(Pointer start, Size size) {
-        if (tlabAllocator.retireTop(start, size)) {
-            return;
+        for (int node = 0; node < numTLABAllocators(); node++) {
+            if (tlabAllocator(node).retireTop(start, size)) {
+                return;
+            }
         }
         if (size.lessThan(minRetiredFreeChunkSize())) {
             DarkMatter.format(start, size);
@@ -457,17 +621,92 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public Size freeSpace() {
-        return allocationRegionsFreeSpace.plus(tlabAllocator.refillManager.freeSpace().plus(tlabAllocator.freeSpace().plus(overflowAllocator.freeSpace())));
+        Size freeSpace = allocationRegionsFreeSpace.plus(overflowAllocator.freeSpace());
+        for (int node = 0; node < numTLABAllocators(); node++) {
+            final ChunkListAllocator<RegionChunkListRefillManager> allocator = tlabAllocator(node);
+            freeSpace = freeSpace.plus(allocator.refillManager.freeSpace().plus(allocator.freeSpace()));
+        }
+        return freeSpace;
+    }
+
+    /**
+     * Space committed to the space on the specified NUMA node.
+     * @param node a NUMA node
+     * @return a size in bytes
+     */
+    public Size committedSpaceOnNode(int node) {
+        final HeapRegionManager regionManager = HeapRegionManager.theHeapRegionManager();
+        int numRegions = 0;
+        for (int regionID = 0; regionManager.isValidRegionID(regionID); regionID++) {
+            if (regionManager.numaNode(regionID) == node && isInSpace(fromRegionID(regionID))) {
+                numRegions++;
+            }
+        }
+        return Size.fromInt(numRegions).shiftedLeft(log2RegionSizeInBytes);
+    }
+
+    /**
+     * Approximation of the space used on the specified NUMA node. Regions assigned to allocators are counted as fully used.
+     * @param node a NUMA node
+     * @return a size in bytes
+     */
+    public Size usedSpaceOnNode(int node) {
+        final HeapRegionManager regionManager = HeapRegionManager.theHeapRegionManager();
+        long usedBytes = 0L;
+        for (int regionID = 0; regionManager.isValidRegionID(regionID); regionID++) {
+            if (regionManager.numaNode(regionID) == node) {
+                final HeapRegionInfo regionInfo = fromRegionID(regionID);
+                if (!isInSpace(regionInfo) || regionInfo.isEmpty()) {
+                    continue;
+                }
+                usedBytes += regionInfo.hasFreeChunks() ? regionSizeInBytes - regionInfo.freeBytesInChunks() : regionSizeInBytes;
+            }
+        }
+        return Size.fromLong(usedBytes);
+    }
+
+    private boolean isInSpace(HeapRegionInfo regionInfo) {
+        return regionInfo.owner() == heapAccount.owner && regionInfo.tag == regionTag;
     }
 
     public Size usedSpace() {
         return totalSpace().minus(freeSpace());
     }
 
+    /**
+     * Estimate of the free space of the space that accounts for the space left to reclaim in the regions not yet swept by a lazy sweep.
+     * The free space of unswept regions is estimated from the proportion of free space found in the regions swept so far by the lazy sweep,
+     * or, if none were swept yet, by the last completed sweep. Unlike {@link #freeSpace()}, which only counts space already available for
+     * allocation, this is the figure to report as free space after a collection and to base heap sizing decisions on.
+     */
+    public Size estimatedFreeSpace() {
+        final Size freeSpace = freeSpace();
+        if (lazySweepHeapMarker == null) {
+            return freeSpace;
+        }
+        final int unsweptRegions = sweepList.size();
+        final int sweptRegions = lazySweepRegions - unsweptRegions;
+        final double freeRatio = sweptRegions > 0 ?
+                        (double) sweptFreeSpace.toLong() / (double) ((long) sweptRegions << log2RegionSizeInBytes) : lastSweepFreeRatio;
+        return freeSpace.plus(Size.fromLong((long) (((long) unsweptRegions << log2RegionSizeInBytes) * freeRatio)));
+    }
+
+    /**
+     * Estimate of the used space of the space. See {@link #estimatedFreeSpace()}.
+     */
+    public Size estimatedUsedSpace() {
+        return totalSpace().minus(estimatedFreeSpace());
+    }
+
     public void doBeforeGC() {
+        // Regions left unswept by the previous collection must be swept before their marks are cleared.
+        sweepRemainingRegions();
         overflowAllocator.doBeforeGC();
-        tlabAllocator.doBeforeGC();
-        FatalError.check(tlabAllocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        for (int node = 0; node < numTLABAllocators(); node++) {
+            final ChunkListAllocator<RegionChunkListRefillManager> allocator = tlabAllocator(node);
+            allocator.doBeforeGC();
+            FatalError.check(allocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        }
         // Move all regions to the sweep list. This tracks all the regions used by the space.
         sweepList.appendAndClear(unavailableRegions);
         sweepList.appendAndClear(allocationRegions);
@@ -490,13 +729,133 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
             sweepList.checkIsAddressOrdered();
         }
         allocationRegionsFreeSpace = Size.zero();
+        sweptFreeSpace = Size.zero();
         csrIsLiveMultiRegionObjectTail = false;
+        final Size sweptSpace = Size.fromInt(sweepList.size()).shiftedLeft(log2RegionSizeInBytes);
         heapMarker.sweep(this, doImprecise);
         FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
+        recordSweepFreeRatio(sweptSpace);
+    }
+
+    private void recordSweepFreeRatio(Size sweptSpace) {
+        if (!sweptSpace.isZero()) {
+            lastSweepFreeRatio = (double) sweptFreeSpace.toLong() / (double) sweptSpace.toLong();
+        }
+    }
+
+    /**
+     * Account for free space reclaimed by sweeping.
+     */
+    private void reclaimedBySweep(int numBytes) {
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(numBytes);
+        sweptFreeSpace = sweptFreeSpace.plus(numBytes);
+    }
+
+    /**
+     * Indicates whether this space defers sweeping to after the collection.
+     * Spaces that must zap dead references (e.g., because an imprecise remembered set may be scanned before regions are swept)
+     * always sweep during the collection. So does the first collection, whose sweep provides the free space ratio
+     * the {@linkplain #estimatedFreeSpace() free space estimates} of later lazy sweeps start from.
+     */
+    public boolean sweepsLazily() {
+        return LazySweep && !zapDeadReferences && lastSweepFreeRatio >= 0.0;
+    }
+
+    /**
+     * Prepare the space for sweeping its regions lazily with the specified heap marker.
+     * All regions of the space are left unswept. Regions are then swept in address order, on demand, when the space
+     * runs out of swept regions to satisfy allocation requests, and in any case before the next collection.
+     *
+     * @param heapMarker heap marker that marked the space
+     * @param doImprecise whether to do precise or imprecise sweeping
+     */
+    public void beginLazySweep(TricolorHeapMarker heapMarker, boolean doImprecise) {
+        if (MaxineVM.isDebug()) {
+            sweepList.checkIsAddressOrdered();
+        }
+        allocationRegionsFreeSpace = Size.zero();
+        sweptFreeSpace = Size.zero();
+        lazySweepRegions = sweepList.size();
+        csrIsLiveMultiRegionObjectTail = false;
+        regionInfoIterable.initialize(sweepList);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            regionInfo.setUnswept(true);
+        }
+        lazySweepHeapMarker = heapMarker;
+        lazySweepImprecise = doImprecise;
+    }
+
+    /**
+     * Sweep the next unswept region, if any. Must be called with the {@link #refillLock()} held.
+     * @return true if a region was swept, false if there were no region left to sweep.
+     */
+    private boolean sweepNextRegionLazily() {
+        if (lazySweepHeapMarker == null) {
+            return false;
+        }
+        // Sweeping must not be interrupted by a GC, which would otherwise find the sweeper in an inconsistent state.
+        final boolean wasDisabled = SafepointPoll.disable();
+        if (!lazySweepHeapMarker.sweepNextRegion(this, lazySweepImprecise)) {
+            lazySweepHeapMarker = null;
+            FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
+            recordSweepFreeRatio(Size.fromInt(lazySweepRegions).shiftedLeft(log2RegionSizeInBytes));
+        }
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+        return true;
+    }
+
+    /**
+     * Sweep all the regions left unswept by the last collection.
+     * Must be called either with the {@link #refillLock()} held, or during a collection.
+     * @return true if some regions were swept
+     */
+    private boolean sweepRemainingRegions() {
+        if (lazySweepHeapMarker == null) {
+            return false;
+        }
+        while (sweepNextRegionLazily()) {
+        }
+        return true;
+    }
+
+    /**
+     * Sweep all the regions left unswept by the last collection. Must not be called during a collection.
+     */
+    public void completeLazySweep() {
+        synchronized (refillLock()) {
+            sweepRemainingRegions();
+        }
+    }
+
+    /**
+     * Sweep the regions left unswept by the last collection until the space has more than the specified amount of free space,
+     * or no regions are left to sweep. Must not be called during a collection.
+     *
+     * @param minFreeSpace the amount of free space to exceed
+     * @return the free space of the space
+     */
+    public Size sweepLazilyUntil(Size minFreeSpace) {
+        synchronized (refillLock()) {
+            while (freeSpace().lessEqual(minFreeSpace) && sweepNextRegionLazily()) {
+            }
+            return freeSpace();
+        }
+    }
+
+    /**
+     * Indicates whether regions left unswept by the last collection remain to be swept.
+     */
+    public boolean hasUnsweptRegions() {
+        return lazySweepHeapMarker != null;
     }
 
     private HeapRegionInfo nextRegionToSweep() {
-        return RegionTable.theRegionTable().regionInfo(sweepList.removeHead());
+        final HeapRegionInfo regionInfo = RegionTable.theRegionTable().regionInfo(sweepList.removeHead());
+        regionInfo.setUnswept(false);
+        return regionInfo;
     }
 
     @Override
@@ -574,7 +933,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                     EMPTY_REGION.setState(csrInfo);
                     HeapFreeChunk.format(csrInfo.regionStart(), regionSizeInBytes);
                     allocationRegions.append(csrInfo.toRegionID());
-                    allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(regionSizeInBytes);
+                    reclaimedBySweep(regionSizeInBytes);
                     if (TraceSweep) {
                         traceSweptRegion();
                     }
@@ -609,7 +968,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                     EMPTY_REGION.setState(csrInfo);
                     HeapFreeChunk.format(csrInfo.regionStart(), regionSizeInBytes);
                     allocationRegions.append(csrInfo.toRegionID());
-                    allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(regionSizeInBytes);
+                    reclaimedBySweep(regionSizeInBytes);
                 } else {
                     if (csrIsLiveMultiRegionObjectTail) {
                         LARGE_TAIL.setState(csrInfo);
@@ -617,7 +976,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                     } else {
                         FREE_CHUNKS_REGION.setState(csrInfo);
                     }
-                    allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(csrFreeBytes);
+                    reclaimedBySweep(csrFreeBytes);
                     if (csrFreeChunks == 1 && minOverflowRefillSize.lessEqual(csrFreeBytes)) {
                         csrInfo.setFreeChunks(HeapFreeChunk.fromHeapFreeChunk(csrHead), csrFreeBytes,  csrFreeChunks);
                         allocationRegions.append(csrInfo.toRegionID());
@@ -641,7 +1000,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
             EMPTY_REGION.setState(rinfo);
             HeapFreeChunk.format(rinfo.regionStart(), regionSizeInBytes);
             rinfo.resetOccupancy();
-            allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(regionSizeInBytes);
+            reclaimedBySweep(regionSizeInBytes);
             allocationRegions.append(rinfo.toRegionID());
         }
         // Done with sweeping now. Clean state of the sweeper, especially those holding address of free
@@ -663,17 +1022,76 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         if (numRegions == 0) {
             numRegions = 1;
         }
-        int allocated = heapAccount.allocate(numRegions, allocationRegions, false, true, true, regionTag);
-        return Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        if (numRegions > maxRegionsInSpace - numRegionsInSpace) {
+            numRegions = maxRegionsInSpace - numRegionsInSpace;
+        }
+        // Re-commit first the regions this space previously uncommitted.
+        int recommitted = 0;
+        final HeapRegionList uncommittedRegions = heapAccount.uncommittedRegions();
+        int regionID = uncommittedRegions.head();
+        while (recommitted < numRegions && regionID != INVALID_REGION_ID) {
+            final int nextRegionID = uncommittedRegions.next(regionID);
+            final HeapRegionInfo rinfo = HeapRegionInfo.fromRegionID(regionID);
+            if (rinfo.tag == regionTag) {
+                heapAccount.commit(regionID);
+                EMPTY_REGION.setState(rinfo);
+                allocationRegions.append(regionID);
+                recommitted++;
+            }
+            regionID = nextRegionID;
+        }
+        int allocated = recommitted;
+        if (recommitted < numRegions) {
+            allocated += heapAccount.allocate(numRegions - recommitted, allocationRegions, false, true, true, regionTag);
+        }
+        final Size growth = Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        numRegionsInSpace += allocated;
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(growth);
+        return growth;
     }
 
+    /**
+     * Uncommit empty allocation regions, starting from the tail of the allocation region list, until either the requested amount of space
+     * is released, or the space reaches its initial number of regions. Must be called during GC, or with the {@link #refillLock()} held.
+     */
     @Override
     public Size decreaseSize(Size delta) {
-        // TODO
-        return Size.zero();
+        final int numRegions = delta.roundedUpBy(regionSizeInBytes).unsignedShiftedRight(log2RegionSizeInBytes).toInt();
+        int uncommitted = 0;
+        int regionID = allocationRegions.tail();
+        while (uncommitted < numRegions && numRegionsInSpace > minRegionsInSpace && regionID != INVALID_REGION_ID) {
+            final int prevRegionID = allocationRegions.prev(regionID);
+            if (HeapRegionInfo.fromRegionID(regionID).isEmpty()) {
+                allocationRegions.remove(regionID);
+                heapAccount.uncommit(regionID);
+                numRegionsInSpace--;
+                uncommitted++;
+            }
+            regionID = prevRegionID;
+        }
+        final Size shrinkage = Size.fromInt(uncommitted).shiftedLeft(log2RegionSizeInBytes);
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(shrinkage);
+        return shrinkage;
+    }
+
+    /**
+     * Uncommit empty allocation regions of the space outside of a collection, e.g., when the heap is idle.
+     *
+     * @param delta amount of space to release
+     * @return the amount of space effectively uncommitted
+     */
+    public Size uncommitEmptyRegions(Size delta) {
+        synchronized (refillLock()) {
+            final boolean wasDisabled = SafepointPoll.disable();
+            final Size shrinkage = decreaseSize(delta);
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            return shrinkage;
+        }
     }
 
-    private void iterateRegions(CellRangeVisitor visitor) {
+    void iterateRegions(CellRangeVisitor visitor) {
         final RegionTable regionTable = RegionTable.theRegionTable();
         regionsRangeIterable.initialize(heapAccount.committedRegions());
         if (regionTag == 0) {
@@ -692,8 +1110,12 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     @Override
     public void visit(CellRangeVisitor visitor) {
+        // Don't let visitors come across dead objects in unswept regions.
+        sweepRemainingRegions();
         // Make allocating regions iterable first.
-        tlabAllocator.unsafeMakeParsable();
+        for (int node = 0; node < numTLABAllocators(); node++) {
+            tlabAllocator(node).unsafeMakeParsable();
+        }
         overflowAllocator.unsafeMakeParsable();
         regionsRangeIterable.addMatchingFlags(Flag.IS_ALLOCATING);
         iterateRegions(visitor);
@@ -703,7 +1125,9 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     private void verifyHeapRegionsBalance() {
         int balance = 0;
-        balance += tlabAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        for (int node = 0; node < numTLABAllocators(); node++) {
+            balance += tlabAllocator(node).refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        }
         // balance += currentOverflowAllocatingRegion == INVALID_REGION_ID ? 0 : 1;
         balance += overflowAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
 
@@ -715,6 +1139,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     @Override
     public void verify(AfterMarkSweepVerifier verifier) {
+        sweepRemainingRegions();
         verifyHeapRegionsBalance();
         tlabAllocationRegions.checkIsAddressOrdered();
         allocationRegions.checkIsAddressOrdered();
@@ -734,34 +1159,303 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public int getAllocatingRegion() {
-        final int regionID = tlabAllocationRegionList().removeHead();
+        int regionID = tlabAllocationRegionList().removeHead();
+        while (regionID == INVALID_REGION_ID && sweepNextRegionLazily()) {
+            regionID = tlabAllocationRegionList().removeHead();
+        }
         if (regionID != INVALID_REGION_ID) {
             final HeapRegionInfo regionInfo = fromRegionID(regionID);
             final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
             allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(numFreeBytes);
+            recordAllocatingRegion(regionInfo);
         }
         return regionID;
     }
 
-    public int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
-        final int minFreeSpace = minFreeBytes.toInt();
+    /**
+     * Obtain a region for the TLAB allocator of a NUMA node, preferably backed by the node's memory.
+     * Falls back to any region with free space if the node has none.
+     *
+     * @param node a NUMA node
+     * @return a region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if free space is exhausted.
+     */
+    int getAllocatingRegion(int node) {
+        final HeapRegionManager regionManager = HeapRegionManager.theHeapRegionManager();
+        regionInfoIterable.initialize(tlabAllocationRegionList());
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            final int regionID = regionInfo.toRegionID();
+            if (regionManager.numaNode(regionID) == node) {
+                final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
+                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(numFreeBytes);
+                regionInfoIterable.remove();
+                recordAllocatingRegion(regionInfo);
+                return regionID;
+            }
+        }
+        return getAllocatingRegion();
+    }
+
+    /**
+     * Log the free space of a region handed out to an allocator if a concurrent marking cycle is in progress.
+     */
+    private void recordAllocatingRegion(HeapRegionInfo regionInfo) {
+        if (!allocationRangeLog.isEnabled()) {
+            return;
+        }
+        if (regionInfo.isEmpty()) {
+            final Address regionStart = regionInfo.regionStart();
+            allocationRangeLog.record(regionStart, regionStart.plus(regionSizeInBytes));
+        } else if (regionInfo.hasFreeChunks()) {
+            Address chunk = regionInfo.firstFreeBytes();
+            while (!chunk.isZero()) {
+                allocationRangeLog.record(chunk, chunk.plus(HeapFreeChunk.getFreechunkSize(chunk)));
+                chunk = HeapFreeChunk.getFreeChunkNext(chunk);
+            }
+        }
+    }
+
+    /**
+     * Prepare the space for a concurrent marking cycle and start marking with the specified heap marker. Must be called at a safepoint.
+     * Regions left unswept are swept before their marks are cleared, and allocators are retired so that all the space they allocate from
+     * until the end of the cycle is handed out by the space, which logs it.
+     *
+     * @param heapMarker the heap marker tracing the space concurrently
+     */
+    public void beginConcurrentMarking(TricolorHeapMarker heapMarker) {
+        sweepRemainingRegions();
+        overflowAllocator.doBeforeGC();
+        for (int node = 0; node < numTLABAllocators(); node++) {
+            tlabAllocator(node).doBeforeGC();
+        }
+        allocationRangeLog.enable();
+        regionsRangeIterable.reset();
+        heapMarker.beginConcurrentMarking(regionsRangeIterable);
+    }
+
+    /**
+     * Mark black the objects allocated during the current concurrent marking cycle and stop logging allocations.
+     * Must be called at the end of the cycle, after {@link #doBeforeGC()} retired the allocators.
+     *
+     * @param heapMarker the heap marker that traced the space concurrently
+     */
+    public void markAllocatedObjects(TricolorHeapMarker heapMarker) {
+        allocationRangeLog.markAllocatedObjects(heapMarker);
+        allocationRangeLog.disable();
+    }
+
+    /**
+     * Stop logging allocations of an aborted concurrent marking cycle.
+     */
+    public void abortConcurrentMarking() {
+        allocationRangeLog.disable();
+    }
+
+    /**
+     * Compact the most fragmented regions of the space if the fragmentation of its free space is at least the specified threshold.
+     * The live objects of the selected regions are evacuated into empty regions of the space, and the selected regions are then
+     * returned to the space as empty regions.
+     * Must be called during a collection, once the space is swept and while the marks left by the heap marker of the compactor are still valid.
+     *
+     * @param compactor the evacuator of the live objects of the compacted regions
+     * @param statistics statistics used to estimate fragmentation and select the most fragmented regions
+     * @param candidates array used to hold the candidate regions for compaction. Its length bounds the number of regions compacted.
+     * @param fragmentationThreshold percentage of the free space broken into multiple chunks per region beyond which compaction takes place
+     * @param gcOperation the current GC operation
+     * @return the number of regions compacted
+     */
+    public int compact(RegionCompactingEvacuator compactor, HeapRegionStatistics statistics, int [] candidates, int fragmentationThreshold, GCOperation gcOperation) {
+        FatalError.check(lazySweepHeapMarker == null && sweepList.isEmpty(), "Space must be swept before compaction");
+        statistics.clear();
+        statistics.doStats(allocationRegions);
+        statistics.doStats(tlabAllocationRegions);
+        if (statistics.fragmentationPercentage() < fragmentationThreshold) {
+            return 0;
+        }
+        final int numCandidates = statistics.selectMostFragmentedRegions(tlabAllocationRegions, candidates);
+        return compactCandidates(compactor, candidates, numCandidates, gcOperation);
+    }
+
+    /**
+     * Evacuate the live objects of the sparsest regions of the space, i.e., those with the fewest marked lines, into empty regions of the space.
+     * This is the opportunistic defragmentation of an Immix-style mark-region collector.
+     * Must be called during a collection, once the space is swept with {@linkplain #setLineMarks(LineMarkTable) line marks},
+     * and while the marks left by the heap marker of the compactor are still valid.
+     *
+     * @param compactor the evacuator of the live objects of the evacuated regions
+     * @param candidates array used to hold the candidate regions for evacuation. Its length bounds the number of regions evacuated.
+     * @param sparseThreshold percentage of marked lines in a region below which the region is a candidate for evacuation
+     * @param gcOperation the current GC operation
+     * @return the number of regions evacuated
+     */
+    public int evacuateSparseRegions(RegionCompactingEvacuator compactor, int [] candidates, int sparseThreshold, GCOperation gcOperation) {
+        FatalError.check(lazySweepHeapMarker == null && sweepList.isEmpty(), "Space must be swept before evacuation");
+        FatalError.check(lineMarks != null, "Space must be swept with line marks");
+        final int maxMarkedLines = (lineMarks.linesPerRegion() * sparseThreshold) / 100;
+        int numCandidates = selectSparseRegions(tlabAllocationRegions, candidates, 0, maxMarkedLines);
+        numCandidates = selectSparseRegions(allocationRegions, candidates, numCandidates, maxMarkedLines);
+        return compactCandidates(compactor, candidates, numCandidates, gcOperation);
+    }
+
+    /**
+     * Add the regions of a list with at most the specified number of marked lines to an array of candidates kept sorted by increasing number of marked lines.
+     * Only partially free, non-large regions are considered.
+     *
+     * @return the number of candidates in the array
+     */
+    private int selectSparseRegions(HeapRegionList regionList, int [] selected, int numSelected, int maxMarkedLines) {
+        regionInfoIterable.initialize(regionList);
+        regionInfoIterable.reset();
+        while (regionInfoIterable.hasNext()) {
+            final HeapRegionInfo rinfo = regionInfoIterable.next();
+            if (!FREE_CHUNKS_REGION.isInState(rinfo)) {
+                continue;
+            }
+            final int numMarkedLines = lineMarks.numMarkedLines(rinfo.toRegionID());
+            if (numMarkedLines > maxMarkedLines) {
+                continue;
+            }
+            // Insertion sort into the (short) array of selected regions.
+            int i = numSelected < selected.length ? numSelected++ : selected.length;
+            while (i > 0 && numMarkedLines < lineMarks.numMarkedLines(selected[i - 1])) {
+                if (i < selected.length) {
+                    selected[i] = selected[i - 1];
+                }
+                i--;
+            }
+            if (i < selected.length) {
+                selected[i] = rinfo.toRegionID();
+            }
+        }
+        return numSelected;
+    }
+
+    /**
+     * Evacuate the live objects of candidate regions into empty regions of the space, as many as the empty regions of the space can accommodate,
+     * then return the evacuated regions to the space as empty regions.
+     *
+     * @return the number of regions evacuated
+     */
+    private int compactCandidates(RegionCompactingEvacuator compactor, int [] candidates, int numCandidates, GCOperation gcOperation) {
+        int numEmptyRegions = 0;
         regionInfoIterable.initialize(allocationRegions);
         regionInfoIterable.reset();
         for (HeapRegionInfo regionInfo : regionInfoIterable) {
             if (regionInfo.isEmpty()) {
-                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
-            } else if (regionInfo.freeBytesInChunks() >= minFreeSpace && regionInfo.numFreeChunks() == maxFreeChunks) {
-                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
+                numEmptyRegions++;
+            }
+        }
+        // Evacuated objects may not pack the destination regions perfectly, so be conservative and
+        // only compact as many regions as twice their live data plus an extra region can fit in the empty regions.
+        final long availableSpace = (long) numEmptyRegions << log2RegionSizeInBytes;
+        long requiredSpace = regionSizeInBytes;
+        int numCompacted = 0;
+        while (numCompacted < numCandidates) {
+            final HeapRegionInfo regionInfo = fromRegionID(candidates[numCompacted]);
+            requiredSpace += 2L * (regionSizeInBytes - regionInfo.freeBytesInChunks());
+            if (requiredSpace > availableSpace) {
+                break;
+            }
+            numCompacted++;
+        }
+        if (numCompacted == 0) {
+            return 0;
+        }
+        for (int i = 0; i < numCompacted; i++) {
+            final int regionID = candidates[i];
+            final HeapRegionInfo regionInfo = fromRegionID(regionID);
+            if (tlabAllocationRegions.contains(regionID)) {
+                tlabAllocationRegions.remove(regionID);
             } else {
-                continue;
+                allocationRegions.remove(regionID);
+            }
+            allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
+            // Empty state identifies the evacuated area to the compactor.
+            EMPTY_REGION.setState(regionInfo);
+            compactedRegions.append(regionID);
+        }
+        compactor.setGCOperation(gcOperation);
+        compactor.evacuate(Heap.logGCPhases());
+        compactor.setGCOperation(null);
+
+        while (!compactedRegions.isEmpty()) {
+            final HeapRegionInfo regionInfo = fromRegionID(compactedRegions.removeHead());
+            HeapFreeChunk.format(regionInfo.regionStart(), regionSizeInBytes);
+            regionInfo.resetOccupancy();
+            allocationRegions.append(regionInfo.toRegionID());
+            allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(regionSizeInBytes);
+        }
+        while (!compactionDestinations.isEmpty()) {
+            final HeapRegionInfo regionInfo = fromRegionID(compactionDestinations.removeHead());
+            if (regionInfo.numFreeChunks() == 0) {
+                FULL_REGION.setState(regionInfo);
+                unavailableRegions.append(regionInfo.toRegionID());
+            } else {
+                FREE_CHUNKS_REGION.setState(regionInfo);
+                allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(regionInfo.freeBytesInChunks());
+                if (minOverflowRefillSize.lessEqual(regionInfo.freeBytesInChunks())) {
+                    allocationRegions.append(regionInfo.toRegionID());
+                } else {
+                    tlabAllocationRegions.append(regionInfo.toRegionID());
+                }
+            }
+        }
+        // Keep allocating from the lowest addresses first.
+        allocationRegions.sort();
+        tlabAllocationRegions.sort();
+        unavailableRegions.sort();
+        return numCompacted;
+    }
+
+    /**
+     * Take an empty region from the allocation regions to evacuate objects of compacted regions into.
+     * @return the identifier of an empty region, or {@link HeapRegionConstants#INVALID_REGION_ID} if there are none left
+     */
+    int takeCompactionDestination() {
+        regionInfoIterable.initialize(allocationRegions);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            if (regionInfo.isEmpty()) {
+                regionInfoIterable.remove();
+                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                ALLOCATING_REGION.setState(regionInfo);
+                final int regionID = regionInfo.toRegionID();
+                compactionDestinations.append(regionID);
+                return regionID;
             }
-            // Found a refill.
-            regionInfoIterable.remove();
-            return  regionInfo.toRegionID();
         }
         return INVALID_REGION_ID;
     }
 
+    /**
+     * Return the destination region taken after the specified one during the current compaction.
+     */
+    int nextCompactionDestination(int regionID) {
+        return compactionDestinations.next(regionID);
+    }
+
+    public int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
+        final int minFreeSpace = minFreeBytes.toInt();
+        do {
+            regionInfoIterable.initialize(allocationRegions);
+            regionInfoIterable.reset();
+            for (HeapRegionInfo regionInfo : regionInfoIterable) {
+                if (regionInfo.isEmpty()) {
+                    allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                } else if (regionInfo.freeBytesInChunks() >= minFreeSpace && regionInfo.numFreeChunks() == maxFreeChunks) {
+                    allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
+                } else {
+                    continue;
+                }
+                // Found a refill.
+                regionInfoIterable.remove();
+                recordAllocatingRegion(regionInfo);
+                return  regionInfo.toRegionID();
+            }
+        } while (sweepNextRegionLazily());
+        return INVALID_REGION_ID;
+    }
+
 
     public Size minRetiredFreeChunkSize() {
         return minReclaimableSpace;
@@ -49,6 +49,22 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
      */
     final Size unitSize;
 
+    /**
+     * Ratio of the size of eden to the size of one survivor space of the young generation. Zero if the young generation has no survivor spaces.
+     */
+    final int survivorRatio;
+
+    /**
+     * Upper bound of the tenuring threshold.
+     */
+    final int maxTenuringThreshold;
+
+    /**
+     * Percentage of a survivor space that survivors should occupy after a minor collection.
+     * The tenuring threshold is lowered when this occupancy is exceeded.
+     */
+    final int targetSurvivorPercentage;
+
     private int numberOfUnits(Size size) {
         return size.alignUp(unitSize.toInt()).unsignedShiftedRight(log2Alignment).toInt();
     }
@@ -68,12 +84,22 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
     }
 
     protected FixedRatioGenHeapSizingPolicy(int youngGenFixedHeapPercentage, int log2Alignment) {
+        this(youngGenFixedHeapPercentage, log2Alignment, 0, 0, 0);
+    }
+
+    protected FixedRatioGenHeapSizingPolicy(int youngGenFixedHeapPercentage, int log2Alignment, int survivorRatio, int maxTenuringThreshold, int targetSurvivorPercentage) {
         // Run validation of heap sizing parameters.
         FatalError.check(youngGenFixedHeapPercentage > 0 && youngGenFixedHeapPercentage <= 100, "Not a valid percentage of heap size");
         FatalError.check(log2Alignment > 0 && log2Alignment < Word.widthValue().numberOfBits, "Not a valid log2 alignment");
+        FatalError.check(survivorRatio >= 0, "Not a valid survivor ratio");
+        FatalError.check(maxTenuringThreshold >= 0 && maxTenuringThreshold <= AgingRegionalizedNursery.MAX_AGE, "Not a valid tenuring threshold");
+        FatalError.check(survivorRatio == 0 || (targetSurvivorPercentage > 0 && targetSurvivorPercentage <= 100), "Not a valid percentage of survivor space");
         this.youngGenFixedHeapPercentage = youngGenFixedHeapPercentage;
         this.log2Alignment = log2Alignment;
         this.unitSize = Size.fromInt(1).shiftedLeft(log2Alignment);
+        this.survivorRatio = survivorRatio;
+        this.maxTenuringThreshold = survivorRatio == 0 ? 0 : maxTenuringThreshold;
+        this.targetSurvivorPercentage = targetSurvivorPercentage;
     }
 
     public FixedRatioGenHeapSizingPolicy(Size initHeapSize, Size maxHeapSize, int youngGenFixedHeapPercentage, int log2Alignment) {
@@ -82,6 +108,20 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
         this.initHeapSize = alignUp(initHeapSize);
     }
 
+    /**
+     * Creates a fixed ratio sizing policy for a young generation with an eden space and two survivor spaces.
+     *
+     * @param survivorRatio ratio of eden size to the size of one survivor space. Zero for no survivor spaces.
+     * @param maxTenuringThreshold maximum number of minor collections an object can survive before being promoted
+     * @param targetSurvivorPercentage desired occupancy of a survivor space after a minor collection, as a percentage of its size
+     */
+    public FixedRatioGenHeapSizingPolicy(Size initHeapSize, Size maxHeapSize, int youngGenFixedHeapPercentage, int log2Alignment,
+                    int survivorRatio, int maxTenuringThreshold, int targetSurvivorPercentage) {
+        this(youngGenFixedHeapPercentage, log2Alignment, survivorRatio, maxTenuringThreshold, targetSurvivorPercentage);
+        this.maxHeapSize = alignUp(maxHeapSize);
+        this.initHeapSize = alignUp(initHeapSize);
+    }
+
     /* (non-Javadoc)
      * @see com.sun.max.vm.heap.gcx.GenHeapSizingPolicy#initialYoungGenSize()
      */
@@ -113,4 +153,51 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
     public Size maxOldGenSize() {
         return maxHeapSize.minus(initialYoungGenSize());
     }
+
+    /* (non-Javadoc)
+     * @see com.sun.max.vm.heap.gcx.GenHeapSizingPolicy#survivorSpaceSize()
+     */
+    @Override
+    public Size survivorSpaceSize() {
+        if (maxTenuringThreshold == 0) {
+            return Size.zero();
+        }
+        // The young generation comprises eden and two survivor spaces, eden being survivorRatio times larger than a survivor space.
+        return initialYoungGenSize().dividedBy(survivorRatio + 2).alignDown(Word.size());
+    }
+
+    /* (non-Javadoc)
+     * @see com.sun.max.vm.heap.gcx.GenHeapSizingPolicy#maxTenuringThreshold()
+     */
+    @Override
+    public int maxTenuringThreshold() {
+        return maxTenuringThreshold;
+    }
+
+    /**
+     * Select the lowest age such that the survivors of that age or younger exceed the target occupancy of a survivor space.
+     * If survivors occupy less than the target, the maximum tenuring threshold is used.
+     */
+    @Override
+    public int tenuringThreshold(long[] survivorBytesPerAge) {
+        final long desiredSurvivorBytes = survivorSpaceSize().toLong() / 100 * targetSurvivorPercentage;
+        long totalBytes = 0L;
+        int age = 1;
+        while (age < maxTenuringThreshold) {
+            totalBytes += survivorBytesPerAge[age];
+            if (totalBytes > desiredSurvivorBytes) {
+                break;
+            }
+            age++;
+        }
+        return age > maxTenuringThreshold ? maxTenuringThreshold : age;
+    }
+
+    /**
+     * The young generation keeps a fixed ratio of the heap size.
+     */
+    @Override
+    public Size youngGenSizeAfterMinorCollection(Size youngGenSize, long pauseTime, long mutatorTime) {
+        return youngGenSize;
+    }
 }
@@ -240,6 +240,18 @@ class FixedSizeRegionAllocator {
      */
     private int highestAllocated;
 
+    /**
+     * Number of NUMA nodes the backing storage is spread over. One if the allocator isn't NUMA-aware.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private int numNumaNodes = 1;
+
+    /**
+     * Log 2 of the number of contiguous regions assigned to the same NUMA node. Nodes are assigned stripes of regions round-robin.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private int log2NumaStripeRegions;
+
     FixedSizeRegionAllocator(String name) {
         backingStorage = new MemoryRegion(name);
         allocated = new RegionBitSet();
@@ -280,6 +292,50 @@ class FixedSizeRegionAllocator {
         }
     }
 
+    /**
+     * Spread the backing storage over NUMA nodes. Regions are assigned to nodes round-robin, by stripes of contiguous regions.
+     * Regions are bound to their node when committed.
+     *
+     * @param numNodes number of NUMA nodes
+     * @param log2StripeRegions log 2 of the number of contiguous regions in a stripe
+     */
+    void enableNUMA(int numNodes, int log2StripeRegions) {
+        numNumaNodes = numNodes;
+        log2NumaStripeRegions = log2StripeRegions;
+    }
+
+    int numNumaNodes() {
+        return numNumaNodes;
+    }
+
+    /**
+     * NUMA node a region is assigned to.
+     * @param regionId a region identifier
+     * @return a NUMA node, always 0 if the allocator isn't NUMA-aware
+     */
+    int numaNode(int regionId) {
+        return numNumaNodes == 1 ? 0 : (regionId >> log2NumaStripeRegions) % numNumaNodes;
+    }
+
+    /**
+     * Bind the memory of a range of regions to the regions' NUMA nodes.
+     */
+    private void bindToNumaNodes(int firstRegionId, int numRegions) {
+        final int end = firstRegionId + numRegions;
+        int regionId = firstRegionId;
+        while (regionId < end) {
+            // End of the stripe the region belongs to.
+            int stripeEnd = ((regionId >> log2NumaStripeRegions) + 1) << log2NumaStripeRegions;
+            if (stripeEnd > end) {
+                stripeEnd = end;
+            }
+            final Size size = Size.fromInt(stripeEnd - regionId).shiftedLeft(log2RegionSizeInBytes);
+            // Failing to bind only affects locality, not correctness.
+            VirtualMemory.bindToNumaNode(regionStart(regionId), size, numaNode(regionId));
+            regionId = stripeEnd;
+        }
+    }
+
     boolean contains(Address address) {
         return backingStorage.contains(address);
     }
@@ -416,6 +472,9 @@ class FixedSizeRegionAllocator {
         // Should we try to commit only uncommitted sub-range ?
         final Size size = Size.fromInt(numRegions).shiftedLeft(log2RegionSizeInBytes);
         if (VirtualMemory.commitMemory(regionStart(firstRegionId), size, VirtualMemory.Type.HEAP)) {
+            if (numNumaNodes > 1) {
+                bindToNumaNodes(firstRegionId, numRegions);
+            }
             committed.set(firstRegionId, firstRegionId + numRegions);
             committedSize += numRegions;
             return true;
@@ -67,14 +67,18 @@ final class ForwardScanState extends ColorMapScanState implements SpecialReferen
      * @param rightmostBitmapWordIndex
      */
     void visitGreyObjects(int rightmostBitmapWordIndex) {
-        final Pointer colorMapBase = heapMarker.base.asPointer();
         int bitmapWordIndex = heapMarker.bitmapWordIndex(finger);
         if (MaxineVM.isDebug()) {
             debugRightmostBitmapWordIndex = rightmostBitmapWordIndex;
             debugBitmapWordIndex = bitmapWordIndex;
         }
         visitGreyObjects(bitmapWordIndex, rightmostBitmapWordIndex);
-         // There might be some objects left in the marking stack. Drain it.
+        drainMarkingStack();
+    }
+
+    private void drainMarkingStack() {
+        final Pointer colorMapBase = heapMarker.base.asPointer();
+        // There might be some objects left in the marking stack. Drain it.
         // Before draining, advance the finger to the next mark bitmap word boundary to force all white references from drained cells that point to objects
         // with mark in the current mark word to be pushed up on the marking stack and processed during the drainage.
         Address fingerBeforeDraining = finger;
@@ -170,6 +174,24 @@ final class ForwardScanState extends ColorMapScanState implements SpecialReferen
         }
     }
 
+    /**
+     * Visit a bounded number of grey objects located between the finger and the rightmost marked position.
+     * Used to trace the heap in small increments when marking concurrently with mutators.
+     *
+     * @param maxVisitedCells maximum number of grey objects to visit
+     * @return true if there are no grey objects left, false otherwise
+     */
+    boolean visitGreyObjectsIncrementally(int maxVisitedCells) {
+        final int rightmostBitmapWordIndex = rightmostBitmapWordIndex();
+        if (visitGreyObjects(heapMarker.bitmapWordIndex(finger), rightmostBitmapWordIndex, maxVisitedCells) == 0) {
+            // The finger is on the last visited object. Objects behind it marked grey are all on the marking stack.
+            heapMarker.markingStack.drain();
+            return false;
+        }
+        drainMarkingStack();
+        return rightmostBitmapWordIndex() <= rightmostBitmapWordIndex;
+    }
+
     public void visitGreyObjects() {
         int rightmostBitmapWordIndex = rightmostBitmapWordIndex();
         do {
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+/**
+ * A unit of garbage collection work that can be run concurrently by all the workers of a {@link GCWorkerPool}.
+ * The task is run once by each worker, the {@link com.sun.max.vm.runtime.VmOperationThread} acting as worker 0.
+ * Workers are identified by an index in [0, {@link GCWorkerPool#numWorkers()}[ which tasks typically use to select per-worker
+ * state. A task must not allocate heap memory nor use any monitor.
+ */
+public abstract class GCTask {
+    /**
+     * Name of the task. For tracing purposes.
+     */
+    final String name;
+
+    protected GCTask(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Called on the VM operation thread before workers are dispatched to the task.
+     *
+     * @param numWorkers number of workers that will run the task
+     */
+    protected void prepare(int numWorkers) {
+    }
+
+    /**
+     * Run the task on behalf of the specified worker.
+     *
+     * @param workerIndex index of the worker running the task
+     */
+    protected abstract void run(int workerIndex);
+
+    /**
+     * Called on the VM operation thread once all workers are done with the task.
+     */
+    protected void complete() {
+    }
+
+    /**
+     * Tells whether some worker has work that idle workers could steal.
+     * Used by {@link GCWorkerPool#offerTermination(GCTask)} to decide whether a worker should resume stealing.
+     */
+    protected boolean hasStealableWork() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A pool of GC worker threads that helps the {@link VmOperationThread} with the parallel phases of a garbage collection.
+ * <p>
+ * The pool comprises {@code -XX:ParallelGCThreads} - 1 daemon threads started when the VM reaches the {@link Phase#RUNNING} phase.
+ * Until then, tasks are run by the VM operation thread alone.
+ * Workers are allocated in immortal memory, switch their own allocation to immortal memory and mark themselves as
+ * {@linkplain VmThread#isGCWorkerThread() GC workers} before parking on the pool's lock. {@link GCOperation}s never freeze GC workers, and their stacks aren't scanned
+ * for roots. A worker must therefore never allocate nor refer to objects that may move.
+ * <p>
+ * A {@link GCTask} is run by {@linkplain #execute(GCTask) submitting} it to the pool from the VM operation thread,
+ * which then takes part in the task as worker 0 and returns once all workers are done with the task.
+ * With a single worker (the default), tasks run sequentially on the VM operation thread.
+ */
+public final class GCWorkerPool {
+    /**
+     * Upper bound on the number of workers of the pool.
+     */
+    public static final int MAX_WORKERS = 64;
+
+    static int ParallelGCThreads = 1;
+    static boolean TraceGCWorkers = false;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ParallelGCThreads", GCWorkerPool.class,
+            "Number of threads used for parallel garbage collection, including the VM operation thread (max " + MAX_WORKERS + "). 1 disables parallel GC.",
+            Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceGCWorkers", GCWorkerPool.class, "Trace dispatching of GC tasks to GC worker threads.", Phase.PRISTINE);
+    }
+
+    /**
+     * Daemon thread running GC tasks on behalf of a {@link GCWorkerPool}.
+     */
+    static final class GCWorkerThread extends Thread {
+        private final GCWorkerPool pool;
+        private final int workerIndex;
+
+        GCWorkerThread(GCWorkerPool pool, int workerIndex) {
+            super(VmThread.systemThreadGroup, "GC Worker " + workerIndex);
+            this.pool = pool;
+            this.workerIndex = workerIndex;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            // Once flagged as a GC worker, this thread isn't stopped by GC operations anymore, so it may run while
+            // the heap is being collected: anything it allocates from now on, e.g., while inflating the pool's lock,
+            // must come from immortal memory. Allocation is never switched back as the worker never leaves the pool.
+            Heap.enableImmortalMemoryAllocation();
+            VmThread.current().setAsGCWorkerThread();
+            pool.runWorker(workerIndex);
+        }
+    }
+
+    /**
+     * Lock used to dispatch tasks to parked workers and to wait for their completion.
+     */
+    private final Object lock = JavaMonitorManager.newVmLock("GC_WORKERS_LOCK");
+
+    /**
+     * Number of workers requested, including the VM operation thread.
+     */
+    private int requestedWorkers = 1;
+
+    /**
+     * Number of workers taking part in tasks, including the VM operation thread. One until worker threads are started.
+     */
+    private int numWorkers = 1;
+
+    /**
+     * Number of worker threads started and parked on the lock.
+     */
+    private int parkedWorkers;
+
+    /**
+     * Task being run. Only valid while the pool is {@linkplain #execute(GCTask) executing} a task.
+     */
+    private GCTask currentTask;
+
+    /**
+     * Incremented each time a new task is dispatched, so that woken up workers can tell a new task from a spurious wake up.
+     */
+    private int taskEpoch;
+
+    /**
+     * Number of worker threads still running the current task.
+     */
+    private int busyWorkers;
+
+    /**
+     * Number of workers that have {@linkplain #offerTermination(GCTask) offered termination} of the current task.
+     */
+    private volatile int idleWorkers;
+
+    @FOLD
+    private static int idleWorkersOffset() {
+        return ClassActor.fromJava(GCWorkerPool.class).findLocalInstanceFieldActor("idleWorkers").offset();
+    }
+
+    @HOSTED_ONLY
+    public GCWorkerPool() {
+    }
+
+    public void initialize(MaxineVM.Phase phase) {
+        if (phase == Phase.PRISTINE) {
+            requestedWorkers = ParallelGCThreads < 1 ? 1 : (ParallelGCThreads > MAX_WORKERS ? MAX_WORKERS : ParallelGCThreads);
+        } else if (phase == Phase.RUNNING) {
+            startWorkers();
+        }
+    }
+
+    /**
+     * Number of workers taking part in a task, including the VM operation thread.
+     */
+    @INLINE
+    public int numWorkers() {
+        return numWorkers;
+    }
+
+    @INLINE
+    public boolean isParallel() {
+        return numWorkers > 1;
+    }
+
+    private void startWorkers() {
+        if (requestedWorkers == 1) {
+            return;
+        }
+        try {
+            // Workers' thread objects must never move: their stacks are never scanned for roots.
+            Heap.enableImmortalMemoryAllocation();
+            for (int i = 1; i < requestedWorkers; i++) {
+                new GCWorkerThread(this, i).start();
+            }
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+        // Wait for all workers to be parked, i.e., to be past any allocation.
+        synchronized (lock) {
+            while (parkedWorkers < requestedWorkers - 1) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                }
+            }
+            numWorkers = requestedWorkers;
+        }
+        if (TraceGCWorkers) {
+            Log.print("Started ");
+            Log.print(numWorkers - 1);
+            Log.println(" GC worker threads");
+        }
+    }
+
+    /**
+     * Main loop of a worker thread.
+     */
+    private void runWorker(int workerIndex) {
+        int lastEpoch;
+        synchronized (lock) {
+            lastEpoch = taskEpoch;
+            parkedWorkers++;
+            lock.notifyAll();
+        }
+        while (true) {
+            GCTask task;
+            synchronized (lock) {
+                while (taskEpoch == lastEpoch) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+                lastEpoch = taskEpoch;
+                task = currentTask;
+            }
+            task.run(workerIndex);
+            synchronized (lock) {
+                busyWorkers--;
+                if (busyWorkers == 0) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a task with all the workers of the pool. Must be called by the VM operation thread.
+     * Returns when every worker has completed the task.
+     *
+     * @param task the task to run
+     */
+    public void execute(GCTask task) {
+        FatalError.check(VmThread.current().isVmOperationThread(), "GC tasks must be submitted by the VM operation thread");
+        if (TraceGCWorkers) {
+            Log.print("BEGIN: GC task ");
+            Log.println(task.name);
+        }
+        idleWorkers = 0;
+        task.prepare(numWorkers);
+        if (numWorkers == 1) {
+            task.run(0);
+        } else {
+            synchronized (lock) {
+                currentTask = task;
+                busyWorkers = numWorkers - 1;
+                taskEpoch++;
+                lock.notifyAll();
+            }
+            task.run(0);
+            synchronized (lock) {
+                while (busyWorkers > 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+                currentTask = null;
+            }
+        }
+        task.complete();
+        if (TraceGCWorkers) {
+            Log.print("END: GC task ");
+            Log.println(task.name);
+        }
+    }
+
+    /**
+     * Termination protocol for tasks that balance their load by stealing work from each other.
+     * A worker that runs out of work offers to terminate. It then waits until either all workers have offered
+     * termination, in which case the task is complete, or the task reports that there is work left to steal,
+     * in which case the worker withdraws its offer and returns to stealing.
+     *
+     * @param task the task the current worker runs
+     * @return true if all workers are out of work, false if the caller should try to steal work again
+     */
+    public boolean offerTermination(GCTask task) {
+        if (numWorkers == 1) {
+            return true;
+        }
+        final Reference self = Reference.fromJava(this);
+        int idle;
+        do {
+            idle = idleWorkers;
+        } while (self.compareAndSwapInt(idleWorkersOffset(), idle, idle + 1) != idle);
+
+        int spins = 0;
+        while (true) {
+            if (idleWorkers == numWorkers) {
+                return true;
+            }
+            if (task.hasStealableWork()) {
+                do {
+                    idle = idleWorkers;
+                } while (self.compareAndSwapInt(idleWorkersOffset(), idle, idle - 1) != idle);
+                return false;
+            }
+            if (++spins > 64) {
+                spins = 0;
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -52,4 +52,37 @@ public interface GenHeapSizingPolicy {
      */
     Size maxOldGenSize();
 
+    /**
+     * Size of each of the two survivor spaces of the young generation. Zero if the young generation has no survivor spaces,
+     * in which case all the survivors of a minor collection are promoted to the old generation.
+     * @return aligned size.
+     */
+    Size survivorSpaceSize();
+
+    /**
+     * Maximum number of minor collections an object may survive in the young generation before being promoted to the old generation.
+     * This is also the tenuring threshold used for the first minor collection.
+     */
+    int maxTenuringThreshold();
+
+    /**
+     * Compute the tenuring threshold for the next minor collection based on the occupancy of the survivor space after the last minor collection.
+     * Objects that survived at least this many minor collections are promoted at the next minor collection.
+     *
+     * @param survivorBytesPerAge number of bytes of survivors in the survivor space, indexed by age
+     * @return a tenuring threshold between 0 and {@link #maxTenuringThreshold()}
+     */
+    int tenuringThreshold(long[] survivorBytesPerAge);
+
+    /**
+     * Compute the size the young generation should have after a minor collection, based on the duration of the pause
+     * and of the mutator phase that preceded it. The size of the survivor spaces doesn't change, only that of eden.
+     *
+     * @param youngGenSize current size of the young generation
+     * @param pauseTime duration of the nursery evacuation, in nanoseconds
+     * @param mutatorTime time elapsed between the end of the previous collection and the start of this one, in nanoseconds,
+     *            or a negative value if there was no previous collection
+     * @return aligned size between the initial size of the survivor spaces plus a minimum eden and {@link #maxYoungGenSize()}
+     */
+    Size youngGenSizeAfterMinorCollection(Size youngGenSize, long pauseTime, long mutatorTime);
 }
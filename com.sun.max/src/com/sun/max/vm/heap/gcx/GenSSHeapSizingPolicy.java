@@ -260,6 +260,32 @@ public final class GenSSHeapSizingPolicy implements GenHeapSizingPolicy {
         return maxHeapOldGenSize;
     }
 
+    /**
+     * The nursery doesn't age objects: all survivors of a minor collection are promoted.
+     */
+    @Override
+    public Size survivorSpaceSize() {
+        return Size.zero();
+    }
+
+    @Override
+    public int maxTenuringThreshold() {
+        return 0;
+    }
+
+    @Override
+    public int tenuringThreshold(long[] survivorBytesPerAge) {
+        return 0;
+    }
+
+    /**
+     * The young generation is only resized after full collections.
+     */
+    @Override
+    public Size youngGenSizeAfterMinorCollection(Size youngGenSize, long pauseTime, long mutatorTime) {
+        return youngGenSize;
+    }
+
     public Size heapSize() {
         return heapSize;
     }
@@ -167,6 +167,12 @@ public class HeapRegionInfo {
      */
     private int liveData;
 
+    /**
+     * Indicates that the region was marked by the last collection but hasn't been swept yet.
+     * The occupancy and free chunks information of an unswept region are stale and must not be used for allocation.
+     */
+    private boolean unswept;
+
     /**
      * Owner of the region described by {@link HeapRegionInfo} instance.
      */
@@ -204,6 +210,14 @@ public class HeapRegionInfo {
         return IS_TAIL.isSet(flags);
     }
 
+    public final boolean isUnswept() {
+        return unswept;
+    }
+
+    final void setUnswept(boolean unswept) {
+        this.unswept = unswept;
+    }
+
     HeapRegionInfo() {
         // Not a class one can allocate. Allocation is the responsibility of the region table.
     }
@@ -243,6 +257,9 @@ public class HeapRegionInfo {
         Log.print(liveBytes());
         Log.print(" owner: ");
         Log.print(Reference.fromJava(owner).toOrigin());
+        if (unswept) {
+            Log.print(" unswept");
+        }
         Log.print(" #free chunks: ");
         Log.print(numFreeChunks);
         if (numFreeChunks > 0) {
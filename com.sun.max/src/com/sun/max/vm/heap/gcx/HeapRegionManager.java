@@ -45,6 +45,15 @@ import com.sun.max.vm.type.*;
  * regions.
  */
 public final class HeapRegionManager implements HeapAccountOwner {
+    static boolean UseNUMA = false;
+    static int NUMAStripeRegions = 1;
+    static {
+        VMOptions.addFieldOption("-XX:", "UseNUMA", HeapRegionManager.class,
+            "Spread heap regions over NUMA nodes and bind their memory to their node", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "NUMAStripeRegions", HeapRegionManager.class,
+            "Number of contiguous heap regions assigned to the same NUMA node (rounded down to a power of 2)", MaxineVM.Phase.PRISTINE);
+    }
+
     /**
      * The single instance of the heap region manager.
      */
@@ -147,6 +156,22 @@ public final class HeapRegionManager implements HeapAccountOwner {
         return regionAllocator.isValidRegionId(regionID);
     }
 
+    /**
+     * Number of NUMA nodes heap regions are spread over. One if the heap isn't NUMA-aware.
+     */
+    public int numNumaNodes() {
+        return regionAllocator.numNumaNodes();
+    }
+
+    /**
+     * NUMA node whose memory backs the specified region.
+     * @param regionID a region identifier
+     * @return a NUMA node, always 0 if the heap isn't NUMA-aware
+     */
+    public int numaNode(int regionID) {
+        return regionAllocator.numaNode(regionID);
+    }
+
     private HeapRegionManager() {
         regionAllocator = new FixedSizeRegionAllocator("Heap Backing Storage");
         managerHeapAccount = new HeapAccount<HeapRegionManager>(this);
@@ -207,7 +232,7 @@ public final class HeapRegionManager implements HeapAccountOwner {
         // (in particular, very large heap command large region size).
         HeapRegionConstants.initializeConstants(heapSpaceSize);
         // Adjust reserved space to region boundaries.
-        final Address startOfManagedSpace = reservedSpace.alignUp(regionSizeInBytes);
+        Address startOfManagedSpace = reservedSpace.alignUp(regionSizeInBytes);
         final Address endOfManagedSpace = startOfManagedSpace.plus(heapSpaceSize).alignUp(regionSizeInBytes);
         final int numHeapRegions = endOfManagedSpace.minus(startOfManagedSpace).asSize().unsignedShiftedRight(log2RegionSizeInBytes).toInt();
         // Always count 10K of extra space for the odd objects
@@ -231,6 +256,14 @@ public final class HeapRegionManager implements HeapAccountOwner {
         // Final count of space needed for the VM startup heap: add the Empty region table plus empty region lists plus 1
         final Size bootHeapSize = extraSpace.plus(tupleSize(RegionTable.class).plus(Layout.getArraySize(Kind.INT, 0).times(2)).plus(perRegionSpaceRequirement * numTotalRegions)).alignUp(regionSizeInBytes);
         final Size managedSpaceSize = Size.fromInt(numTotalRegions).shiftedLeft(log2RegionSizeInBytes);
+        final Size largePageSize = VirtualMemory.largePageSize();
+        if (largePageSize.greaterThan(regionSizeInBytes)) {
+            // Start the managed space on a large page boundary if the reserved space allows it, so that committed runs of regions can be backed by large pages.
+            final Address largePageAlignedStart = reservedSpace.alignUp(largePageSize.toInt());
+            if (largePageAlignedStart.plus(managedSpaceSize).lessEqual(endOfReservedSpace)) {
+                startOfManagedSpace = largePageAlignedStart;
+            }
+        }
         FatalError.check(startOfManagedSpace.plus(managedSpaceSize).lessEqual(endOfReservedSpace),
                         "Not enough reserved space to initialize managed space");
 
@@ -259,6 +292,13 @@ public final class HeapRegionManager implements HeapAccountOwner {
             heapScheme.enableCustomAllocation(Reference.fromJava(managerAllocator).toOrigin());
             // Record initial space usage.
             regionAllocator.initialize(startOfManagedSpace, numTotalRegions, initialNumRegions);
+            if (UseNUMA) {
+                final int numNumaNodes = VirtualMemory.numNumaNodes();
+                if (numNumaNodes > 1) {
+                    final int stripeRegions = NUMAStripeRegions < 1 ? 1 : NUMAStripeRegions;
+                    regionAllocator.enableNUMA(numNumaNodes, Integer.numberOfTrailingZeros(Integer.highestOneBit(stripeRegions)));
+                }
+            }
             RegionTable.initialize(regionInfoClass, regionAllocator.bounds(), numTotalRegions);
             // Allocate the backing storage for the region lists.
             HeapRegionList.initializeListStorage(numTotalRegions);
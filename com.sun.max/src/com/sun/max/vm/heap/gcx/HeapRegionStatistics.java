@@ -22,6 +22,9 @@
  */
 package com.sun.max.vm.heap.gcx;
 
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionState.*;
+
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.runtime.*;
@@ -54,6 +57,16 @@ public final class HeapRegionStatistics {
      */
     final int [] regionsFragmentation;
 
+    /**
+     * Total free space in the regions added to the statistics, including empty regions.
+     */
+    private long totalFreeBytes;
+
+    /**
+     * Free space in the regions added to the statistics that is broken into more than one free chunk.
+     */
+    private long fragmentedFreeBytes;
+
     /**
      * Private region info iterator.
      */
@@ -81,13 +94,15 @@ public final class HeapRegionStatistics {
     }
 
     public void clear() {
-        for (int i = log2MinFragmentSize; i <= log2MinFragmentSize; i++) {
+        for (int i = 0; i <= log2LargestChunkSize; i++) {
             fragmentSizes[i] = 0;
             freeSpaceSizes[i] = 0;
         }
         for (int i = 0; i < regionsFragmentation.length; i++) {
             regionsFragmentation[i] = 0;
         }
+        totalFreeBytes = 0L;
+        fragmentedFreeBytes = 0L;
     }
 
     /**
@@ -101,8 +116,13 @@ public final class HeapRegionStatistics {
         regionsFragmentation[rinfo.numFreeChunks()]++;
         if (rinfo.hasFreeChunks()) {
             freeSpaceSizes[sizeBin(rinfo.freeBytesInChunks())]++;
+            totalFreeBytes += rinfo.freeBytesInChunks();
+            if (rinfo.numFreeChunks() > 1) {
+                fragmentedFreeBytes += rinfo.freeBytesInChunks();
+            }
         } else if (rinfo.isEmpty()) {
             freeSpaceSizes[log2LargestChunkSize]++;
+            totalFreeBytes += regionSizeInBytes;
         } else {
             freeSpaceSizes[0]++;
         }
@@ -143,6 +163,57 @@ public final class HeapRegionStatistics {
         doFullStats(heapAccount.committedRegions());
     }
 
+    /**
+     * Percentage of the free space of the regions added to the statistics that is broken into more than one free chunk per region.
+     * @return a percentage between 0 and 100
+     */
+    public int fragmentationPercentage() {
+        if (totalFreeBytes == 0L) {
+            return 0;
+        }
+        return (int) ((fragmentedFreeBytes * 100L) / totalFreeBytes);
+    }
+
+    /**
+     * Select the most fragmented regions of a list, i.e., the regions with the largest number of free chunks.
+     * Only regions with free chunks and no part of a large object are considered. Ties are broken in favor of the regions
+     * with the most free space, i.e., those with the least live data to evacuate.
+     *
+     * @param regionList the list of regions to select from
+     * @param selected array where the identifiers of the selected regions are stored, most fragmented first
+     * @return the number of regions selected, at most the length of the selected array
+     */
+    public int selectMostFragmentedRegions(HeapRegionList regionList, int [] selected) {
+        int numSelected = 0;
+        regionInfoIterable.initialize(regionList);
+        regionInfoIterable.reset();
+        while (regionInfoIterable.hasNext()) {
+            final HeapRegionInfo rinfo = regionInfoIterable.next();
+            if (!FREE_CHUNKS_REGION.isInState(rinfo) || rinfo.numFreeChunks() < 2) {
+                continue;
+            }
+            // Insertion sort into the (short) array of selected regions.
+            int i = numSelected < selected.length ? numSelected++ : selected.length;
+            while (i > 0 && moreFragmented(rinfo, HeapRegionInfo.fromRegionID(selected[i - 1]))) {
+                if (i < selected.length) {
+                    selected[i] = selected[i - 1];
+                }
+                i--;
+            }
+            if (i < selected.length) {
+                selected[i] = rinfo.toRegionID();
+            }
+        }
+        return numSelected;
+    }
+
+    private static boolean moreFragmented(HeapRegionInfo rinfo1, HeapRegionInfo rinfo2) {
+        if (rinfo1.numFreeChunks() == rinfo2.numFreeChunks()) {
+            return rinfo1.freeBytesInChunks() > rinfo2.freeBytesInChunks();
+        }
+        return rinfo1.numFreeChunks() > rinfo2.numFreeChunks();
+    }
+
     public void dump() {
         Log.println("[ min, max ]      :  # fragments         # regions");
         for (int i = log2MinFragmentSize; i < log2LargestChunkSize; i++) {
@@ -153,6 +224,7 @@ public final class HeapRegionStatistics {
         }
         Log.print("empty regions ("); Log.print(1 << log2LargestChunkSize); Log.print(") : ");  Log.println(freeSpaceSizes[log2LargestChunkSize]);
         Log.print("full regions : ");  Log.println(freeSpaceSizes[0]);
+        Log.print("fragmented free space : "); Log.print(fragmentationPercentage()); Log.println("%");
         Log.println(" # fragments             : # regions");
         for (int i = 0; i < regionsFragmentation.length; i++) {
             int numRegions = regionsFragmentation[i];
@@ -100,6 +100,12 @@ public abstract class HeapRegionSweeper extends Sweeper {
      */
     final DeadSpaceListener deadSpaceListener;
 
+    /**
+     * Line marks of the swept regions, or null if dead space is reclaimed at object granularity.
+     * When set, the lines of live objects are marked and only whole free lines are reclaimed. This requires a precise sweep.
+     */
+    LineMarkTable lineMarks;
+
     boolean traceGap;
 
     protected HeapRegionSweeper(boolean zapDeadReferences, DeadSpaceListener deadSpaceListener) {
@@ -111,6 +117,14 @@ public abstract class HeapRegionSweeper extends Sweeper {
         return csrLiveBytes;
     }
 
+    /**
+     * Reclaim dead space in whole lines of the specified line mark table instead of at object granularity.
+     * Must be set before the sweeper's minimum reclaimable space is computed.
+     */
+    public final void setLineMarks(LineMarkTable lineMarks) {
+        this.lineMarks = lineMarks;
+    }
+
     @Override
     public final Size minReclaimableSpace() {
         return minReclaimableSpace;
@@ -152,6 +166,12 @@ public abstract class HeapRegionSweeper extends Sweeper {
         }
         HeapRegionState.EMPTY_REGION.setState(csrInfo);
         csrInfo.resetOccupancy();
+        if (lineMarks != null) {
+            lineMarks.clearRegion(rinfo.toRegionID());
+            if (csrIsLiveMultiRegionObjectTail && csrLastLiveAddress.greaterThan(regionStart)) {
+                lineMarks.mark(regionStart, csrLastLiveAddress);
+            }
+        }
     }
 
     final void recordFreeSpace(Address chunk, Size chunkSize) {
@@ -166,7 +186,49 @@ public abstract class HeapRegionSweeper extends Sweeper {
         csrFreeBytes += chunkSize.toInt();
     }
 
+    /**
+     * Record the free lines of a dead space. Lines shared with live data are left out, and the dead space left out at both ends is
+     * formatted as dark matter, so that the heap stays parsable.
+     * Each end is widened by a full extra line if it would otherwise leave too little space to format.
+     */
+    private void recordFreeLines(Address start, Address end) {
+        final int lineSize = lineMarks.lineSize();
+        final Size minDarkMatterSize = DarkMatter.minSize();
+        Address holeStart = lineMarks.alignUp(start);
+        if (!holeStart.equals(start) && holeStart.minus(start).lessThan(minDarkMatterSize)) {
+            holeStart = holeStart.plus(lineSize);
+        }
+        Address holeEnd = lineMarks.alignDown(end);
+        if (!holeEnd.equals(end) && end.minus(holeEnd).lessThan(minDarkMatterSize)) {
+            holeEnd = holeEnd.minus(lineSize);
+        }
+        if (holeEnd.lessEqual(holeStart) || holeEnd.minus(holeStart).lessThan(minReclaimableSpace)) {
+            if (zapDeadReferences) {
+                DarkMatter.format(start, end);
+            }
+            if (MaxineVM.isDebug()) {
+                logger.logDeadSpace(start, end.minus(start).asSize());
+            }
+            return;
+        }
+        if (holeStart.greaterThan(start)) {
+            DarkMatter.format(start, holeStart);
+        }
+        if (holeEnd.lessThan(end)) {
+            DarkMatter.format(holeEnd, end);
+        }
+        final Size holeSize = holeEnd.minus(holeStart).asSize();
+        if (MaxineVM.isDebug()) {
+            logger.logFreeSpace(holeStart, holeSize);
+        }
+        recordFreeSpace(holeStart, holeSize);
+    }
+
     private void recordIfReclaimable(Address address, Size size) {
+        if (lineMarks != null) {
+            recordFreeLines(address, address.plus(size));
+            return;
+        }
         if (size.greaterEqual(minReclaimableSpace)) {
             if (MaxineVM.isDebug()) {
                 logger.logFreeSpace(address, size);
@@ -256,6 +318,10 @@ public abstract class HeapRegionSweeper extends Sweeper {
     public void processDeadSpace(Address freeChunk, Size size) {
         assert freeChunk.plus(size).lessEqual(endOfSweepingRegion());
         csrLastLiveAddress = freeChunk.plus(size);
+        if (lineMarks != null) {
+            recordFreeLines(freeChunk, csrLastLiveAddress);
+            return;
+        }
         if (MaxineVM.isDebug()) {
             logger.logFreeSpace(freeChunk, size);
         }
@@ -273,6 +339,10 @@ public abstract class HeapRegionSweeper extends Sweeper {
         final Size numLiveBytes = Layout.size(Layout.cellToOrigin(liveObject));
         csrLastLiveAddress = liveObject.plus(numLiveBytes);
         csrLiveBytes += numLiveBytes.toInt();
+        if (lineMarks != null) {
+            // Only mark lines of the current sweeping region: those of the tail of a large object are marked when its tail region is swept.
+            lineMarks.mark(liveObject, csrLastLiveAddress.lessThan(csrEnd) ? csrLastLiveAddress : csrEnd);
+        }
         return csrLastLiveAddress.asPointer();
     }
 }
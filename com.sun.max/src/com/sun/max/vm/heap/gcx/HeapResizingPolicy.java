@@ -22,11 +22,39 @@
  */
 package com.sun.max.vm.heap.gcx;
 
+import static com.sun.max.vm.VMOptions.*;
+
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
 
-
+/**
+ * Heap resizing policy driven by heap occupancy and by the time spent in GC.
+ * <p>
+ * After a collection, the heap is grown if the free space left is below {@link #minFreeSpaceRatioForExpansion} percent of the heap,
+ * or if the time spent in GC since the last resizing decision exceeds {@link #MaxGCTimePercent} percent of the elapsed time.
+ * It is shrunk if the free space left is above {@link #maxFreeSpaceRatioForShrinking} percent of the heap and GC time is within its goal.
+ * The heap doesn't grow past the soft maximum heap size, unless the free space left after a collection is critically low,
+ * and is shrunk back toward it when possible.
+ * <p>
+ * A heap that hasn't been collected for {@link #HeapUncommitDelay} milliseconds is also shrunk by a {@link HeapUncommitThread}, so that
+ * memory committed at peak load is eventually returned to the operating system once the load drops.
+ */
 public class HeapResizingPolicy {
+    static int MaxGCTimePercent = 5;
+    static int HeapUncommitDelay = 0;
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxGCTimePercent", HeapResizingPolicy.class,
+            "Percentage of time spent in GC above which the heap is grown rather than shrunk.", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "HeapUncommitDelay", HeapResizingPolicy.class,
+            "Delay in milliseconds without GC after which free heap memory is uncommitted (0 disables idle uncommit).", Phase.PRISTINE);
+    }
+
+    private static final VMSizeOption softMaxHeapSizeOption =
+        register(new VMSizeOption("-XX:SoftMaxHeapSize=", Size.zero(),
+            "Heap size the heap resizing policy tries not to exceed. Defaults to the maximum heap size."), Phase.PRISTINE);
+
     /**
      * Percentage of free space below which heap should be expanded.
      */
@@ -36,6 +64,122 @@ public class HeapResizingPolicy {
      */
     final int maxFreeSpaceRatioForShrinking = 70;
 
+    /**
+     * Time spent in GC, in milliseconds, since the last resizing decision.
+     */
+    private long gcTimeSinceLastResizing;
+
+    /**
+     * Time of the last resizing decision, or 0 if none was taken yet.
+     */
+    private long lastResizingTime;
+
+    /**
+     * Time the last collection completed, or 0 if there was no collection yet.
+     */
+    private volatile long lastCollectionTime;
+
+    /**
+     * The soft maximum heap size.
+     */
+    public static Size softMaxHeapSize() {
+        final Size softMaxHeapSize = softMaxHeapSizeOption.getValue();
+        if (softMaxHeapSize.isZero() || softMaxHeapSize.greaterThan(Heap.maxSize())) {
+            return Heap.maxSize();
+        }
+        return softMaxHeapSize;
+    }
+
+    /**
+     * Tell whether memory of a heap left idle is uncommitted.
+     */
+    public static boolean uncommitsIdleHeap() {
+        return HeapUncommitDelay > 0;
+    }
+
+    /**
+     * Delay in milliseconds without GC after which the heap is considered idle.
+     */
+    public static int uncommitDelay() {
+        return HeapUncommitDelay;
+    }
+
+    /**
+     * Record the completion of a collection.
+     *
+     * @param gcTime time spent in the collection, in milliseconds
+     */
+    public void recordCollection(long gcTime) {
+        gcTimeSinceLastResizing += gcTime;
+        lastCollectionTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Time the last collection completed, or 0 if there was no collection yet.
+     */
+    public long lastCollectionTime() {
+        return lastCollectionTime;
+    }
+
+    /**
+     * Compute by how much a heap space should be resized after a collection.
+     *
+     * @param spaceLeftAfterGC free space in the heap space after the collection
+     * @param totalSpace current size of the heap space
+     * @param capacity maximum size of the heap space
+     * @return a positive number of bytes to grow the heap space by, a negative number of bytes to shrink it by, or zero
+     */
+    public long sizeChange(Size spaceLeftAfterGC, Size totalSpace, Size capacity) {
+        final long now = System.currentTimeMillis();
+        final long elapsed = now - lastResizingTime;
+        final boolean gcTimeAboveGoal = lastResizingTime != 0L && elapsed > 0L && gcTimeSinceLastResizing * 100 > elapsed * MaxGCTimePercent;
+        lastResizingTime = now;
+        gcTimeSinceLastResizing = 0L;
+
+        final long total = totalSpace.toLong();
+        final long free = spaceLeftAfterGC.toLong();
+        final long used = total - free;
+        final long softMax = Math.min(capacity.toLong(), softMaxHeapSize().toLong());
+        final long minFree = (total * minFreeSpaceRatioForExpansion) / 100;
+
+        if (free < minFree || gcTimeAboveGoal) {
+            // Past the soft maximum, only grow if free space is critically low.
+            final long limit = free < minFree / 4 ? capacity.toLong() : softMax;
+            if (total < limit) {
+                // Use current occupancy to compute heap growth.
+                long minDesiredCapacity = (used * 100) / (100 - minFreeSpaceRatioForExpansion);
+                if (minDesiredCapacity <= total) {
+                    // Occupancy is fine, but collections are too frequent: grow by a quarter.
+                    minDesiredCapacity = total + total / 4;
+                }
+                return Math.min(minDesiredCapacity, limit) - total;
+            }
+            return 0L;
+        }
+        long maxDesiredCapacity = total;
+        if (free > (total * maxFreeSpaceRatioForShrinking) / 100) {
+            maxDesiredCapacity = (used * 100) / (100 - maxFreeSpaceRatioForShrinking);
+        }
+        if (maxDesiredCapacity > softMax) {
+            maxDesiredCapacity = softMax;
+        }
+        return maxDesiredCapacity - total;
+    }
+
+    /**
+     * Compute by how much an idle heap space should shrink, i.e., how much of its free space exceeds {@link #minFreeSpaceRatioForExpansion}.
+     *
+     * @param freeSpace free space in the heap space
+     * @param totalSpace current size of the heap space
+     * @return a number of bytes
+     */
+    public Size idleShrinkage(Size freeSpace, Size totalSpace) {
+        final long total = totalSpace.toLong();
+        final long used = total - freeSpace.toLong();
+        final long desiredCapacity = (used * 100) / (100 - minFreeSpaceRatioForExpansion);
+        return desiredCapacity < total ? Size.fromLong(total - desiredCapacity) : Size.zero();
+    }
+
     /**
      * Resize the heap according to policy.
      *
@@ -44,14 +188,9 @@ public class HeapResizingPolicy {
      * @return true if the heap was resized
      */
     public boolean resizeAfterCollection(Size spaceLeftAfterGC, ResizableSpace heapSpace) {
-        Size totalSpace = heapSpace.totalSpace();
-        Size min = Size.fromLong((totalSpace.toLong() * minFreeSpaceRatioForExpansion) / 100);
-        Size spaceUsedAfterGC = totalSpace.minus(spaceLeftAfterGC);
-
-        if (spaceLeftAfterGC.lessThan(min) && totalSpace.lessThan(heapSpace.capacity())) {
-            // Use current occupancy to compute heap growth.
-            Size minDesiredCapacity =  Size.fromLong((spaceUsedAfterGC.toLong() * 100) / (100 - minFreeSpaceRatioForExpansion));
-            Size growth = minDesiredCapacity.minus(totalSpace);
+        final long sizeChange = sizeChange(spaceLeftAfterGC, heapSpace.totalSpace(), heapSpace.capacity());
+        if (sizeChange > 0L) {
+            final Size growth = Size.fromLong(sizeChange);
             // Resize take care of rounding up to alignment constraints.
             Size actualGrowth = heapSpace.increaseSize(growth);
             if (MaxineVM.isDebug()) {
@@ -63,11 +202,8 @@ public class HeapResizingPolicy {
             }
             return !actualGrowth.isZero();
         }
-        Size max = Size.fromLong((totalSpace.toLong() * maxFreeSpaceRatioForShrinking) / 100);
-        if (spaceLeftAfterGC.greaterThan(max)) {
-            Size maxDesiredCapacity =  Size.fromLong((spaceUsedAfterGC.toLong() * 100) / (100 - maxFreeSpaceRatioForShrinking));
-            Size shrinkage = totalSpace.minus(maxDesiredCapacity);
-            return !heapSpace.decreaseSize(shrinkage).isZero();
+        if (sizeChange < 0L) {
+            return !heapSpace.decreaseSize(Size.fromLong(-sizeChange)).isZero();
         }
         return false;
     }
@@ -29,7 +29,9 @@ import com.sun.max.util.timer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
 import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
 
 /**
  * Adaptor for factoring a number of common boiler plate for HeapScheme implemented with components of the gcx package.
@@ -145,4 +147,50 @@ public abstract class HeapSchemeWithTLABAdaptor extends HeapSchemeWithTLAB {
     public final boolean supportsPadding() {
         return false;
     }
+
+    /**
+     * Adapts a {@link CallbackCellVisitor} to the cell ranges of the heap spaces, skipping free chunks and dark matter.
+     */
+    static final class WalkHeapRangeVisitor implements CellRangeVisitor {
+        CallbackCellVisitor cellVisitor;
+        boolean aborted;
+
+        @Override
+        public void visitCells(Address start, Address end) {
+            Pointer cell = start.asPointer();
+            while (!aborted && cell.lessThan(end)) {
+                final Pointer origin = Layout.cellToOrigin(cell);
+                if (HeapFreeChunk.isHeapFreeChunkOrigin(origin)) {
+                    cell = cell.plus(HeapFreeChunk.getFreechunkSize(cell));
+                } else if (DarkMatter.isDarkMatterHub(Layout.readHubReferenceAsWord(origin))) {
+                    cell = cell.plus(Layout.size(origin));
+                } else {
+                    final Pointer next = cellVisitor.visitCell(cell);
+                    if (next.isZero()) {
+                        aborted = true;
+                    }
+                    cell = next;
+                }
+            }
+        }
+    }
+
+    private final WalkHeapRangeVisitor walkHeapRangeVisitor = new WalkHeapRangeVisitor();
+
+    /**
+     * Visits the cell ranges of the heap spaces of the scheme. Called at a safepoint, with all TLABs made parsable.
+     */
+    protected void visitHeapSpaces(CellRangeVisitor visitor) {
+    }
+
+    @Override
+    public void walkHeap(CallbackCellVisitor visitor) {
+        ImmortalHeap.visitCells(visitor);
+        Heap.bootHeapRegion.visitCells(visitor);
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+        walkHeapRangeVisitor.cellVisitor = visitor;
+        walkHeapRangeVisitor.aborted = false;
+        visitHeapSpaces(walkHeapRangeVisitor);
+        walkHeapRangeVisitor.cellVisitor = null;
+    }
 }
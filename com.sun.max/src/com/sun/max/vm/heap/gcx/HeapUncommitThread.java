@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMConfiguration.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Background thread returning the free memory of an idle heap to the operating system.
+ * <p>
+ * The thread periodically checks the time elapsed since the last collection. Once the heap has not been collected for
+ * {@linkplain HeapResizingPolicy#uncommitDelay() the uncommit delay}, it asks the heap scheme to
+ * {@linkplain HeapScheme#decreaseMemory(Size) decrease its memory} by the {@linkplain HeapResizingPolicy#idleShrinkage(Size, Size) idle shrinkage}
+ * of the heap. The heap is shrunk at most once per idle period.
+ */
+public final class HeapUncommitThread extends Thread {
+    private final HeapResizingPolicy resizingPolicy;
+
+    /**
+     * Create a thread uncommitting the memory of the heap when idle.
+     *
+     * @param resizingPolicy the resizing policy of the heap, which keeps track of the time of the last collection
+     */
+    public HeapUncommitThread(HeapResizingPolicy resizingPolicy) {
+        super(VmThread.systemThreadGroup, "Heap Uncommit");
+        setDaemon(true);
+        this.resizingPolicy = resizingPolicy;
+    }
+
+    @Override
+    public void run() {
+        final long startTime = System.currentTimeMillis();
+        final int delay = HeapResizingPolicy.uncommitDelay();
+        // Time of the collection that started the last idle period the heap was shrunk for.
+        long lastShrunkIdlePeriod = 0L;
+        while (true) {
+            try {
+                Thread.sleep(Math.max(delay / 4, 1));
+            } catch (InterruptedException e) {
+            }
+            final long idlePeriodStart = Math.max(resizingPolicy.lastCollectionTime(), startTime);
+            if (idlePeriodStart == lastShrunkIdlePeriod || System.currentTimeMillis() - idlePeriodStart < delay) {
+                continue;
+            }
+            lastShrunkIdlePeriod = idlePeriodStart;
+            final Size freeSpace = Size.fromLong(Heap.reportFreeSpace());
+            final Size shrinkage = resizingPolicy.idleShrinkage(freeSpace, freeSpace.plus(Heap.reportUsedSpace()));
+            if (!shrinkage.isZero()) {
+                vmConfig().heapScheme().decreaseMemory(shrinkage);
+            }
+        }
+    }
+}
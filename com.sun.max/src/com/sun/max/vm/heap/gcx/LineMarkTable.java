@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Table of line marks for a heap made of regions divided into fixed-size lines, as used by Immix-style mark-region collectors.
+ * Each line of the covered area is associated with one byte of the table, which is non-zero if the line holds live data.
+ * The table lives outside of the heap, next to the color map of the heap marker, and is only valid from the sweep of a region to
+ * the end of the collection that swept it.
+ * <p>
+ * A {@link HeapRegionSweeper} set with a line mark table marks the lines of every live object it encounters, and only reclaims dead space
+ * in whole lines. Allocators therefore bump-allocate into runs of free lines, and the number of marked lines of a region tells
+ * how sparse the region is.
+ */
+public final class LineMarkTable {
+    /**
+     * Memory holding the table.
+     */
+    @INSPECTED
+    public final MemoryRegion memory;
+
+    /**
+     * Start of the area covered by the table.
+     */
+    private Address coveredAreaStart;
+
+    private int log2LineSize;
+
+    private int log2LinesPerRegion;
+
+    @HOSTED_ONLY
+    public LineMarkTable() {
+        memory = new MemoryRegion("Line Marks");
+    }
+
+    /**
+     * Amount of memory needed by a table covering an area of the specified size.
+     *
+     * @param coveredAreaSize size of the area covered by the table
+     * @param lineSize size of a line, in bytes
+     */
+    public static Size memoryRequirement(Size coveredAreaSize, int lineSize) {
+        return coveredAreaSize.unsignedShiftedRight(Integer.numberOfTrailingZeros(lineSize)).wordAligned().asSize();
+    }
+
+    /**
+     * Initialize the table.
+     *
+     * @param coveredAreaStart start of the area covered by the table. Must be region-aligned.
+     * @param coveredAreaSize size of the area covered by the table
+     * @param lineSize size of a line, in bytes. Must be a power of two dividing the region size.
+     * @param storage memory reserved for the table, at least {@link #memoryRequirement(Size, int)} bytes
+     */
+    public void initialize(Address coveredAreaStart, Size coveredAreaSize, int lineSize, Address storage) {
+        FatalError.check(Integer.bitCount(lineSize) == 1 && lineSize >= Word.size() && lineSize <= regionSizeInBytes, "Invalid line size");
+        this.coveredAreaStart = coveredAreaStart;
+        this.log2LineSize = Integer.numberOfTrailingZeros(lineSize);
+        this.log2LinesPerRegion = log2RegionSizeInBytes - log2LineSize;
+        memory.setStart(storage);
+        memory.setSize(memoryRequirement(coveredAreaSize, lineSize));
+    }
+
+    @INLINE
+    public int lineSize() {
+        return 1 << log2LineSize;
+    }
+
+    @INLINE
+    private int lineIndex(Address address) {
+        return address.minus(coveredAreaStart).unsignedShiftedRight(log2LineSize).toInt();
+    }
+
+    /**
+     * Round the specified address up to the start of a line.
+     */
+    @INLINE
+    public Address alignUp(Address address) {
+        return address.alignUp(lineSize());
+    }
+
+    /**
+     * Round the specified address down to the start of a line.
+     */
+    @INLINE
+    public Address alignDown(Address address) {
+        return address.alignDown(lineSize());
+    }
+
+    /**
+     * Mark all the lines overlapping the specified range of addresses.
+     *
+     * @param start start of the range
+     * @param end end of the range (exclusive)
+     */
+    public void mark(Address start, Address end) {
+        final int lastLine = lineIndex(end.minus(1));
+        for (int line = lineIndex(start); line <= lastLine; line++) {
+            memory.start().asPointer().setByte(line, (byte) 1);
+        }
+    }
+
+    /**
+     * Clear the marks of all the lines of a region.
+     */
+    public void clearRegion(int regionID) {
+        final int linesPerRegion = 1 << log2LinesPerRegion;
+        Memory.clearBytes(memory.start().asPointer().plus(regionID << log2LinesPerRegion), linesPerRegion);
+    }
+
+    /**
+     * Number of marked lines in a region.
+     */
+    public int numMarkedLines(int regionID) {
+        final int firstLine = regionID << log2LinesPerRegion;
+        final int endLine = firstLine + (1 << log2LinesPerRegion);
+        int count = 0;
+        for (int line = firstLine; line < endLine; line++) {
+            if (memory.start().asPointer().getByte(line) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of lines per region.
+     */
+    public int linesPerRegion() {
+        return 1 << log2LinesPerRegion;
+    }
+}
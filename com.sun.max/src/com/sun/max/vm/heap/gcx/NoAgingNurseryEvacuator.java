@@ -113,12 +113,48 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
     private final DirtyCardEvacuationClosure heapSpaceDirtyCardClosure;
     private final BootRegionDirtyCardEvacuationClosure bootRegionDirtyCardClosure;
 
+    /**
+     * Task evacuating the nursery with multiple GC workers, if parallel evacuation is enabled.
+     */
+    private ParallelEvacuationTask parallelEvacuationTask;
+
+    /**
+     * Set when dirty cards were scanned in parallel and the parallel evacuation of the cells they refer to is pending.
+     */
+    private boolean parallelEvacuationPending;
+
+    /**
+     * Task processing the discovered special references with multiple GC workers, if parallel evacuation is enabled.
+     */
+    private ParallelReferenceProcessingTask parallelReferenceProcessingTask;
+
     public NoAgingNurseryEvacuator(EvacuatingSpace fromSpace, HeapSpace toSpace, EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset, String name) {
         super(fromSpace, toSpace, evacuationBufferProvider, rset, name);
         this.heapSpaceDirtyCardClosure = new DirtyCardEvacuationClosure();
         this.bootRegionDirtyCardClosure = new BootRegionDirtyCardEvacuationClosure();
     }
 
+    /**
+     * Enable evacuation of the dirty cards' referents and of the transitive closure of survivors with the workers of the specified pool.
+     * Roots are still evacuated by the VM operation thread. Evacuation remains sequential as long as the pool has a single worker.
+     *
+     * @param workerPool the pool of GC workers
+     */
+    @HOSTED_ONLY
+    public void enableParallelEvacuation(GCWorkerPool workerPool) {
+        parallelEvacuationTask = new ParallelEvacuationTask(this, workerPool);
+        parallelReferenceProcessingTask = new ParallelReferenceProcessingTask(workerPool);
+    }
+
+    boolean evacuatesInParallel() {
+        return parallelEvacuationTask != null && parallelEvacuationTask.workerPool.isParallel();
+    }
+
+    @Override
+    protected SpecialReferenceManager.DiscoveredListsProcessor discoveredListsProcessor() {
+        return evacuatesInParallel() ? parallelReferenceProcessingTask : null;
+    }
+
     @Override
     public void setGCOperation(GCOperation gcOperation) {
         super.setGCOperation(gcOperation);
@@ -143,11 +179,25 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
         if (traceDirtyCardWalk()) {
             CardTableRSet.setTraceCardTableRSet(true);
         }
-        toSpace.visit(heapSpaceDirtyCardClosure);
+        if (evacuatesInParallel()) {
+            parallelEvacuationTask.scanDirtyCards(toSpace);
+            parallelEvacuationPending = true;
+        } else {
+            toSpace.visit(heapSpaceDirtyCardClosure);
+        }
         if (traceDirtyCardWalk()) {
             CardTableRSet.setTraceCardTableRSet(traceRSet);
         }
     }
 
+    @Override
+    protected void evacuateReachables() {
+        if (parallelEvacuationPending) {
+            parallelEvacuationPending = false;
+            parallelEvacuationTask.evacuateReachables();
+        }
+        super.evacuateReachables();
+    }
+
 }
 
@@ -0,0 +1,844 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapFreeChunk.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * Parallel evacuation of a young generation to a card-table covered old generation on behalf of an {@link EvacuatorToCardSpace}.
+ * <p>
+ * The owning evacuator first evacuates the cells directly reachable from roots sequentially. The task then runs in two phases:
+ * <ol>
+ * <li>Card scanning. The old generation is divided into chunks of cards that workers claim with an atomic counter.
+ * Workers clean the dirty cards of their chunks and push on their {@link WorkStealingDeque} the locations of the references
+ * to the evacuated area the cards hold. No cell is evacuated during this phase, so the old generation stays parsable while workers walk it.</li>
+ * <li>Evacuation. Workers evacuate the cells referenced from the locations collected by the first phase and from the survivors of the
+ * owning evacuator. Each worker copies cells to its own evacuation buffer and installs the forwarding reference with a compare-and-swap
+ * of the hub word. The loser of a race undoes its copy and uses the winner's. The winner pushes the copy on its deque for scanning.
+ * Idle workers steal from others, and cells that don't fit in a worker's deque overflow to a shared stack.</li>
+ * </ol>
+ * Entries of the deques are either cells to scan, or reference locations tagged with {@link #SLOT_TAG}.
+ * <p>
+ * Only worker 0, i.e., the VM operation thread, calls the owner's {@link EvacuationBufferProvider} and the old generation's allocator, as
+ * these may take monitors. Worker 0 fills a list of chunks of the old generation before the evacuation phase, and workers refill
+ * their evacuation buffer by popping a chunk off that list with a compare-and-swap. A worker that finds the list empty, or that needs
+ * to evacuate a cell too large for an evacuation buffer, posts a request to worker 0 and waits for it to be served.
+ * <p>
+ * A chunk is owned by a single worker from the time the worker obtains it until the end of the evacuation, when worker 0 retires
+ * what's left of it. Workers only update the entries of the {@link CardFirstObjectTable} of cards starting in chunks they own,
+ * so these updates need no synchronization. For the same reason, workers don't return the leftover of an evacuation buffer to the
+ * provider when refilling, but format it as a free chunk that worker 0 retires when the task completes.
+ */
+final class ParallelEvacuationTask extends GCTask {
+    /**
+     * Capacity, in number of entries, of each worker's deque.
+     */
+    private static final int DEQUE_CAPACITY = 8 * 1024;
+
+    /**
+     * Number of entries a worker moves from the shared stack to its deque at once.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private static final int INITIAL_SHARED_STACK_CAPACITY = 16 * 1024;
+
+    /**
+     * Log 2 of the number of cards in the chunks of old generation workers claim during card scanning.
+     */
+    private static final int LOG2_CARDS_PER_CHUNK = 7;
+
+    private static final int LOG2_CHUNK_SIZE = CardTableRSet.LOG2_CARD_SIZE + LOG2_CARDS_PER_CHUNK;
+
+    /**
+     * Tag distinguishing the location of a reference from a cell in the workers' deques.
+     */
+    private static final int SLOT_TAG = 1;
+
+    /**
+     * Number of words per entry of the table of old generation ranges: start, end, and index of the first chunk of the range.
+     */
+    private static final int RANGE_ENTRY_WORDS = 3;
+
+    /**
+     * Visitor of the dirty cards of the old generation. Collects the locations of references to the evacuated area.
+     */
+    final class DirtyCardScanner extends PointerIndexVisitor implements OverlappingCellVisitor {
+        private final Worker worker;
+
+        DirtyCardScanner(Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            if (worker.inEvacuatedArea(pointer.getReference(wordIndex).toOrigin())) {
+                push(worker, pointer.plusWords(wordIndex).or(SLOT_TAG));
+            }
+        }
+
+        @Override
+        public Pointer visitCell(Pointer cell, Address start, Address end) {
+            if (cell.equals(owner.ptop)) {
+                // Skip the allocating area of the owner's evacuation buffer.
+                return owner.pend;
+            }
+            final Pointer origin = Layout.cellToOrigin(cell);
+            if (origin.plusWords(Layout.hubIndex()).greaterEqual(start)) {
+                visit(origin, Layout.hubIndex());
+            }
+            final Hub hub = UnsafeCast.asHub(origin.getReference(Layout.hubIndex()));
+            if (hub == heapFreeChunkHub()) {
+                return cell.plus(toHeapFreeChunk(origin).size);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                // As for the sequential evacuator, visit all the references of the tuple since the write barrier dirties
+                // the card holding the tuple's header.
+                hub.visitMappedReferences(origin, this);
+                if (hub.isJLRReference) {
+                    worker.discoverSpecialReference(origin);
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            if (specificLayout.isReferenceArrayLayout()) {
+                final int endOfArrayIndex = Layout.readArrayLength(origin) + Layout.firstElementIndex();
+                final Address firstElementAddr = origin.plusWords(Layout.firstElementIndex());
+                final Address endOfArrayAddr = origin.plusWords(endOfArrayIndex);
+                final int firstIndex = start.greaterThan(firstElementAddr) ? start.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : Layout.firstElementIndex();
+                final int endIndex = endOfArrayAddr.greaterThan(end) ? end.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : endOfArrayIndex;
+                for (int index = firstIndex; index < endIndex; index++) {
+                    visit(origin, index);
+                }
+            } else if (specificLayout.isHybridLayout()) {
+                hub.visitMappedReferences(origin, this);
+            }
+            return cell.plus(Layout.size(origin));
+        }
+    }
+
+    /**
+     * State of an evacuation worker. A worker evacuates cells to its own evacuation buffer.
+     */
+    final class Worker extends Evacuator {
+        final WorkStealingDeque deque = new WorkStealingDeque();
+        /**
+         * Index of the worker, also used as the index of its list of discovered special references.
+         */
+        final int index;
+        final DirtyCardScanner dirtyCardScanner = new DirtyCardScanner(this);
+
+        private EvacuatingSpace.SpaceBounds evacuatedAreaBounds;
+
+        /**
+         * Allocation hand and end of the worker's evacuation buffer.
+         */
+        private Pointer ptop = Pointer.zero();
+        private Pointer pend = Pointer.zero();
+        private Address pnextChunk = Address.zero();
+
+        /**
+         * List of the leftovers of the evacuation buffers the worker refilled, formatted as free chunks.
+         */
+        private Address retiredChunks = Address.zero();
+
+        /**
+         * Request posted to worker 0, one of {@link #NO_REQUEST}, {@link #REFILL_REQUEST} or {@link #ALLOCATE_REQUEST}.
+         * Reset to {@link #NO_REQUEST} by worker 0 once it has set {@link #grant}.
+         */
+        private volatile int request;
+        private Size requestedSize = Size.zero();
+
+        /**
+         * Answer of worker 0 to the last request: a list of chunks for a refill request, a cell for an allocation request.
+         */
+        private Address grant = Address.zero();
+
+        /**
+         * Whether the last allocated cell is in the evacuation buffer (as opposed to being allocated directly in the old generation).
+         */
+        private boolean lastAllocationInBuffer;
+
+        private Size evacuatedBytes = Size.zero();
+
+        /**
+         * Index of the old generation range holding the last chunk of cards the worker claimed.
+         */
+        int rangeIndex;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        void reset(EvacuatingSpace.SpaceBounds bounds) {
+            evacuatedAreaBounds = bounds;
+            evacuatedBytes = Size.zero();
+            rangeIndex = 0;
+            setDetailLogger(owner.detailLogger);
+        }
+
+        @INLINE
+        @Override
+        boolean inEvacuatedArea(Pointer origin) {
+            return evacuatedAreaBounds.isIn(origin);
+        }
+
+        @Override
+        protected void discoverSpecialReference(Pointer origin) {
+            SpecialReferenceManager.discoverSpecialReference(origin, index);
+        }
+
+        /**
+         * Format what's left of the evacuation buffer so that the old generation stays parsable.
+         */
+        private void retireLeftover() {
+            final Pointer limit = pend.plus(EvacuatorToCardSpace.evacuationBufferHeadroom());
+            if (ptop.isZero() || !ptop.lessThan(limit)) {
+                return;
+            }
+            cfoTable.set(ptop, limit);
+            final Size size = limit.minus(ptop).asSize();
+            if (size.lessThan(HeapFreeChunk.heapFreeChunkHeaderSize())) {
+                DarkMatter.format(ptop, limit);
+            } else {
+                HeapFreeChunk.format(ptop, size, retiredChunks);
+                retiredChunks = ptop;
+            }
+        }
+
+        private void refill() {
+            retireLeftover();
+            Address chunk = pnextChunk;
+            if (chunk.isZero()) {
+                chunk = popPromotionChunk();
+                if (chunk.isZero()) {
+                    chunk = index == 0 ? refillFromProvider() : post(this, REFILL_REQUEST, Size.zero());
+                    pnextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
+                }
+                // The next field of a chunk popped off the shared list is meaningless.
+            } else {
+                pnextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
+            }
+            final Size chunkSize = HeapFreeChunk.getFreechunkSize(chunk);
+            rset.notifyRefill(chunk, chunkSize);
+            ptop = chunk.asPointer();
+            pend = chunk.plus(chunkSize.minus(EvacuatorToCardSpace.evacuationBufferHeadroom())).asPointer();
+        }
+
+        private Pointer allocate(Size size) {
+            Pointer cell = ptop;
+            Pointer newTop = cell.plus(size);
+            while (newTop.greaterThan(pend)) {
+                if (size.greaterEqual(owner.minRefillThreshold())) {
+                    cell = index == 0 ? owner.toSpace.allocate(size).asPointer() : post(this, ALLOCATE_REQUEST, size).asPointer();
+                    lastAllocationInBuffer = false;
+                    return cell;
+                }
+                if (!ptop.isZero() && newTop.equals(pend.plus(EvacuatorToCardSpace.evacuationBufferHeadroom()))) {
+                    // Exact fit, headroom included.
+                    break;
+                }
+                refill();
+                cell = ptop;
+                newTop = cell.plus(size);
+            }
+            ptop = newTop;
+            cfoTable.set(cell, newTop);
+            lastAllocationInBuffer = true;
+            return cell;
+        }
+
+        /**
+         * Undo the allocation of a cell that lost the race to evacuate a cell.
+         */
+        private void undoAllocation(Pointer cell, Size size) {
+            if (lastAllocationInBuffer && cell.plus(size).equals(ptop)) {
+                ptop = cell;
+            } else {
+                DarkMatter.format(cell, size);
+                rset.notifyRetireDeadSpace(cell, size);
+            }
+        }
+
+        private Size cellSize(Pointer origin, Hub hub) {
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                return hub.tupleSize;
+            }
+            final int length = Layout.readArrayLength(origin);
+            if (specificLayout.isHybridLayout()) {
+                return Layout.hybridLayout().getArraySize(length);
+            }
+            return Layout.getArraySize(hub.classActor.componentClassActor().kind, length);
+        }
+
+        @Override
+        Pointer evacuate(Pointer fromOrigin) {
+            final Reference hubRef = Layout.readHubReference(fromOrigin);
+            if (hubRef.isMarked()) {
+                // Already evacuated by another worker.
+                return hubRef.unmarked().toOrigin();
+            }
+            // The size must be computed from the hub read above, as the hub word may be overwritten with a forwarding reference at any time.
+            final Size size = cellSize(fromOrigin, UnsafeCast.asHub(hubRef.toJava()));
+            final Pointer toCell = allocate(size);
+            Memory.copyBytes(Layout.originToCell(fromOrigin), toCell, size);
+            final Pointer toOrigin = Layout.cellToOrigin(toCell);
+            final Reference witness = Layout.compareAndSwapForwardRef(fromOrigin, hubRef, Reference.fromOrigin(toOrigin));
+            if (witness.toOrigin().equals(hubRef.toOrigin())) {
+                evacuatedBytes = evacuatedBytes.plus(size);
+                push(this, toCell);
+                return toOrigin;
+            }
+            undoAllocation(toCell, size);
+            return witness.unmarked().toOrigin();
+        }
+
+        void process(Pointer entry) {
+            if (entry.and(SLOT_TAG).isNotZero()) {
+                updateEvacuatedRef(entry.minus(SLOT_TAG), 0);
+            } else {
+                scanCellForEvacuatees(entry);
+            }
+        }
+
+        void drain() {
+            Pointer entry = deque.pop();
+            while (!entry.isZero()) {
+                if (index == 0 && pendingRequests != 0) {
+                    serveRequests();
+                }
+                process(entry);
+                entry = deque.pop();
+            }
+        }
+
+        /**
+         * Return what's left of the worker's evacuation buffers to the provider.
+         */
+        void retireEvacuationBuffer() {
+            final EvacuationBufferProvider provider = owner.evacuationBufferProvider();
+            if (!ptop.isZero()) {
+                final Pointer limit = pend.plus(EvacuatorToCardSpace.evacuationBufferHeadroom());
+                if (ptop.lessThan(limit)) {
+                    cfoTable.set(ptop, limit);
+                    provider.retireEvacuationBuffer(ptop, limit);
+                }
+            }
+            retireChunks(pnextChunk);
+            Address chunk = retiredChunks;
+            while (!chunk.isZero()) {
+                final Address next = HeapFreeChunk.getFreeChunkNext(chunk);
+                provider.retireEvacuationBuffer(chunk, chunk.plus(HeapFreeChunk.getFreechunkSize(chunk)));
+                chunk = next;
+            }
+            ptop = Pointer.zero();
+            pend = Pointer.zero();
+            pnextChunk = Address.zero();
+            retiredChunks = Address.zero();
+        }
+
+        // Workers only evacuate cells on behalf of the task. The owning evacuator drives the evacuation.
+
+        @Override
+        protected void evacuateReachables() {
+        }
+
+        @Override
+        protected void doBeforeEvacuation() {
+        }
+
+        @Override
+        protected void doAfterEvacuation() {
+        }
+    }
+
+    /**
+     * Collects the survivors of the owning evacuator into the shared stack.
+     */
+    final class SurvivorRangeCollector implements CellRangeVisitor {
+        @Override
+        public void visitCells(Address start, Address end) {
+            Pointer cell = start.asPointer();
+            while (cell.lessThan(end)) {
+                final Pointer origin = Layout.cellToOrigin(cell);
+                if (HeapFreeChunk.isHeapFreeChunkOrigin(origin)) {
+                    cell = cell.plus(toHeapFreeChunk(origin).size);
+                } else {
+                    pushShared(cell);
+                    cell = cell.plus(Layout.size(origin));
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the ranges of the old generation into the range table.
+     */
+    final class OldGenRangeCollector implements CellRangeVisitor {
+        @Override
+        public void visitCells(Address start, Address end) {
+            addRange(start, end);
+        }
+    }
+
+    final EvacuatorToCardSpace owner;
+    final GCWorkerPool workerPool;
+    final CardTableRSet rset;
+    final CardFirstObjectTable cfoTable;
+    private final Worker[] workers;
+    private final SurvivorRangeCollector survivorRangeCollector = new SurvivorRangeCollector();
+    private final OldGenRangeCollector oldGenRangeCollector = new OldGenRangeCollector();
+    private int numWorkers;
+    private int numInitializedDeques;
+
+    /**
+     * Indicates whether the task is in its card scanning phase.
+     */
+    private boolean scanningCards;
+
+    /**
+     * Table of the ranges of the old generation to scan for dirty cards. Allocated outside of the heap.
+     */
+    private Pointer ranges = Pointer.zero();
+    private int rangesCapacity;
+    private int numRanges;
+    private int numChunks;
+    private volatile int nextChunk;
+
+    /**
+     * Stack of entries shared by all workers. Holds the survivors of the owning evacuator, and the entries overflowing from workers' deques.
+     * Allocated outside of the heap, and protected by {@link #sharedStackLock}.
+     */
+    private Pointer sharedStack = Pointer.zero();
+    private int sharedStackCapacity;
+    private volatile int sharedStackTop;
+    private volatile int sharedStackLock;
+
+    private static final int NO_REQUEST = 0;
+    private static final int REFILL_REQUEST = 1;
+    private static final int ALLOCATE_REQUEST = 2;
+
+    /**
+     * Number of requests posted to worker 0 and not served yet.
+     */
+    private volatile int pendingRequests;
+
+    /**
+     * Head of the list of chunks of the old generation workers refill their evacuation buffer from, linked through their next field.
+     * Only worker 0 pushes chunks on the list, and chunks popped off the list are never pushed back, so popping with a
+     * compare-and-swap of the head is immune to ABA.
+     */
+    private volatile Address promotionChunks = Address.zero();
+
+    @FOLD
+    private static int sharedStackLockOffset() {
+        return ClassActor.fromJava(ParallelEvacuationTask.class).findLocalInstanceFieldActor("sharedStackLock").offset();
+    }
+
+    @FOLD
+    private static int pendingRequestsOffset() {
+        return ClassActor.fromJava(ParallelEvacuationTask.class).findLocalInstanceFieldActor("pendingRequests").offset();
+    }
+
+    @FOLD
+    private static int promotionChunksOffset() {
+        return ClassActor.fromJava(ParallelEvacuationTask.class).findLocalInstanceFieldActor("promotionChunks").offset();
+    }
+
+    @FOLD
+    private static int nextChunkOffset() {
+        return ClassActor.fromJava(ParallelEvacuationTask.class).findLocalInstanceFieldActor("nextChunk").offset();
+    }
+
+    @HOSTED_ONLY
+    ParallelEvacuationTask(EvacuatorToCardSpace owner, GCWorkerPool workerPool) {
+        super("Parallel Evacuation");
+        this.owner = owner;
+        this.workerPool = workerPool;
+        this.rset = owner.rset;
+        this.cfoTable = owner.cfoTable;
+        workers = new Worker[GCWorkerPool.MAX_WORKERS];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    @INLINE
+    private void lock(int lockOffset) {
+        final Reference self = Reference.fromJava(this);
+        while (self.compareAndSwapInt(lockOffset, 0, 1) != 0) {
+            Thread.yield();
+        }
+    }
+
+    @INLINE
+    private void unlock(int lockOffset) {
+        Reference.fromJava(this).writeInt(lockOffset, 0);
+    }
+
+    private void addPendingRequests(int delta) {
+        final Reference self = Reference.fromJava(this);
+        int pending;
+        do {
+            pending = pendingRequests;
+        } while (self.compareAndSwapInt(pendingRequestsOffset(), pending, pending + delta) != pending);
+    }
+
+    /**
+     * Post a request to worker 0 and wait for it to be served.
+     * @return the chunk list or the cell granted by worker 0
+     */
+    private Address post(Worker worker, int kind, Size size) {
+        worker.requestedSize = size;
+        worker.request = kind;
+        addPendingRequests(1);
+        while (worker.request != NO_REQUEST) {
+            Thread.yield();
+        }
+        return worker.grant;
+    }
+
+    /**
+     * Serve the requests posted by other workers. Called by worker 0 only.
+     */
+    private void serveRequests() {
+        for (int i = 1; i < numWorkers; i++) {
+            final Worker worker = workers[i];
+            final int kind = worker.request;
+            if (kind == NO_REQUEST) {
+                continue;
+            }
+            if (kind == REFILL_REQUEST) {
+                worker.grant = refillFromProvider();
+                // Keep the shared list stocked so that other workers don't have to come back.
+                pushPromotionChunks(refillFromProvider());
+            } else {
+                worker.grant = owner.toSpace.allocate(worker.requestedSize);
+            }
+            addPendingRequests(-1);
+            worker.request = NO_REQUEST;
+        }
+    }
+
+    /**
+     * Get a list of chunks from the owner's evacuation buffer provider. Called by worker 0 only.
+     */
+    private Address refillFromProvider() {
+        final Address chunk = owner.evacuationBufferProvider().refillEvacuationBuffer();
+        FatalError.check(!chunk.isZero(), "refill request should always succeed");
+        return chunk;
+    }
+
+    /**
+     * Push each chunk of a list on the shared list of promotion chunks. Called by worker 0 only.
+     */
+    private void pushPromotionChunks(Address chunks) {
+        final Pointer self = Reference.fromJava(this).toOrigin();
+        Address chunk = chunks;
+        while (!chunk.isZero()) {
+            final Address next = HeapFreeChunk.getFreeChunkNext(chunk);
+            Address head;
+            do {
+                head = promotionChunks;
+                HeapFreeChunk.setFreeChunkNext(chunk, head);
+            } while (self.compareAndSwapWord(promotionChunksOffset(), head, chunk) != head);
+            chunk = next;
+        }
+    }
+
+    /**
+     * Pop a chunk off the shared list of promotion chunks.
+     * @return a chunk, or zero if the list is empty
+     */
+    private Address popPromotionChunk() {
+        final Pointer self = Reference.fromJava(this).toOrigin();
+        Address head;
+        do {
+            head = promotionChunks;
+            if (head.isZero()) {
+                return head;
+            }
+            // The next field read here may be overwritten by a worker that popped the chunk concurrently, in which case the swap fails.
+        } while (self.compareAndSwapWord(promotionChunksOffset(), head, HeapFreeChunk.getFreeChunkNext(head)) != head);
+        return head;
+    }
+
+    /**
+     * Retire to the owner's evacuation buffer provider a list of chunks that haven't been allocated into.
+     */
+    private void retireChunks(Address chunks) {
+        final EvacuationBufferProvider provider = owner.evacuationBufferProvider();
+        Address chunk = chunks;
+        while (!chunk.isZero()) {
+            final Address next = HeapFreeChunk.getFreeChunkNext(chunk);
+            final Address end = chunk.plus(HeapFreeChunk.getFreechunkSize(chunk));
+            cfoTable.set(chunk, end);
+            provider.retireEvacuationBuffer(chunk, end);
+            chunk = next;
+        }
+    }
+
+    private void growSharedStack() {
+        final int newCapacity = sharedStackCapacity == 0 ? INITIAL_SHARED_STACK_CAPACITY : sharedStackCapacity << 1;
+        final Size size = Size.fromInt(newCapacity).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        final Pointer newStack = sharedStack.isZero() ? Memory.allocate(size) : Memory.reallocate(sharedStack, size);
+        if (newStack.isZero()) {
+            FatalError.unexpected("Failed to grow parallel evacuation stack");
+        }
+        sharedStack = newStack;
+        sharedStackCapacity = newCapacity;
+    }
+
+    private void pushShared(Pointer entry) {
+        lock(sharedStackLockOffset());
+        if (sharedStackTop == sharedStackCapacity) {
+            growSharedStack();
+        }
+        sharedStack.setWord(sharedStackTop, entry);
+        sharedStackTop = sharedStackTop + 1;
+        unlock(sharedStackLockOffset());
+    }
+
+    @INLINE
+    private void push(Worker worker, Pointer entry) {
+        if (!worker.deque.push(entry)) {
+            pushShared(entry);
+        }
+    }
+
+    /**
+     * Move a batch of entries from the shared stack to a worker's deque.
+     * @return true if some entries were moved
+     */
+    private boolean refillFromShared(Worker worker) {
+        if (sharedStackTop == 0) {
+            return false;
+        }
+        lock(sharedStackLockOffset());
+        int top = sharedStackTop;
+        final int end = top > BATCH_SIZE ? top - BATCH_SIZE : 0;
+        while (top > end && worker.deque.push(sharedStack.getWord(top - 1).asPointer())) {
+            top--;
+        }
+        final boolean refilled = top != sharedStackTop;
+        sharedStackTop = top;
+        unlock(sharedStackLockOffset());
+        return refilled;
+    }
+
+    /**
+     * Steal an entry from another worker. Victims are tried in turn, starting with the worker next to the thief.
+     */
+    private Pointer steal(int thiefIndex) {
+        for (int i = 1; i < numWorkers; i++) {
+            final Pointer entry = workers[(thiefIndex + i) % numWorkers].deque.steal();
+            if (!entry.isZero()) {
+                return entry;
+            }
+        }
+        return Pointer.zero();
+    }
+
+    private void addRange(Address start, Address end) {
+        if (numRanges == rangesCapacity) {
+            final int newCapacity = rangesCapacity == 0 ? 64 : rangesCapacity << 1;
+            final Size size = Size.fromInt(newCapacity * RANGE_ENTRY_WORDS).shiftedLeft(Word.widthValue().log2numberOfBytes);
+            final Pointer newRanges = ranges.isZero() ? Memory.allocate(size) : Memory.reallocate(ranges, size);
+            if (newRanges.isZero()) {
+                FatalError.unexpected("Failed to grow parallel evacuation range table");
+            }
+            ranges = newRanges;
+            rangesCapacity = newCapacity;
+        }
+        final int entry = numRanges * RANGE_ENTRY_WORDS;
+        ranges.setWord(entry, start);
+        ranges.setWord(entry + 1, end);
+        ranges.setWord(entry + 2, Address.fromInt(numChunks));
+        numRanges++;
+        numChunks += (int) ((end.minus(start).toLong() + (1L << LOG2_CHUNK_SIZE) - 1) >>> LOG2_CHUNK_SIZE);
+    }
+
+    @INLINE
+    private Address rangeStart(int rangeIndex) {
+        return ranges.getWord(rangeIndex * RANGE_ENTRY_WORDS).asAddress();
+    }
+
+    @INLINE
+    private Address rangeEnd(int rangeIndex) {
+        return ranges.getWord(rangeIndex * RANGE_ENTRY_WORDS + 1).asAddress();
+    }
+
+    @INLINE
+    private int rangeFirstChunk(int rangeIndex) {
+        return ranges.getWord(rangeIndex * RANGE_ENTRY_WORDS + 2).asAddress().toInt();
+    }
+
+    /**
+     * Claim the next chunk of cards to scan.
+     * @return the index of the claimed chunk, or -1 if all chunks have been claimed
+     */
+    private int claimChunk() {
+        final Reference self = Reference.fromJava(this);
+        int chunk;
+        do {
+            chunk = nextChunk;
+            if (chunk >= numChunks) {
+                return -1;
+            }
+        } while (self.compareAndSwapInt(nextChunkOffset(), chunk, chunk + 1) != chunk);
+        return chunk;
+    }
+
+    private void scanCards(Worker worker) {
+        int chunk = claimChunk();
+        while (chunk >= 0) {
+            // Chunks are claimed in increasing order, so the range holding the chunk is at or after the worker's current range.
+            while (worker.rangeIndex + 1 < numRanges && rangeFirstChunk(worker.rangeIndex + 1) <= chunk) {
+                worker.rangeIndex++;
+            }
+            final Address start = rangeStart(worker.rangeIndex).plus((long) (chunk - rangeFirstChunk(worker.rangeIndex)) << LOG2_CHUNK_SIZE);
+            Address end = start.plus(1 << LOG2_CHUNK_SIZE);
+            if (end.greaterThan(rangeEnd(worker.rangeIndex))) {
+                end = rangeEnd(worker.rangeIndex);
+            }
+            rset.cleanAndVisitCards(start, end, worker.dirtyCardScanner);
+            chunk = claimChunk();
+        }
+    }
+
+    private void evacuate(int workerIndex) {
+        final Worker worker = workers[workerIndex];
+        while (true) {
+            if (workerIndex == 0 && pendingRequests != 0) {
+                serveRequests();
+            }
+            worker.drain();
+            if (refillFromShared(worker)) {
+                continue;
+            }
+            final Pointer entry = steal(workerIndex);
+            if (!entry.isZero()) {
+                worker.process(entry);
+                continue;
+            }
+            if (workerPool.offerTermination(this)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Clean the dirty cards of the specified old generation space and collect the references to the evacuated area they hold.
+     * Must be called before {@link #evacuateReachables()}.
+     *
+     * @param oldSpace the space covered by the card table
+     */
+    void scanDirtyCards(HeapSpace oldSpace) {
+        numRanges = 0;
+        numChunks = 0;
+        nextChunk = 0;
+        oldSpace.visit(oldGenRangeCollector);
+        scanningCards = true;
+        workerPool.execute(this);
+        scanningCards = false;
+    }
+
+    /**
+     * Evacuate all the cells reachable from the references collected by {@link #scanDirtyCards(HeapSpace)} and from the survivors of the owner.
+     */
+    void evacuateReachables() {
+        owner.drainSurvivorRanges(survivorRangeCollector);
+        workerPool.execute(this);
+    }
+
+    @Override
+    protected void prepare(int numWorkers) {
+        // Deques are allocated on first use, as the number of workers isn't known before worker threads are started.
+        while (numInitializedDeques < numWorkers) {
+            workers[numInitializedDeques++].deque.initialize(DEQUE_CAPACITY);
+        }
+        this.numWorkers = numWorkers;
+        if (scanningCards) {
+            final EvacuatingSpace.SpaceBounds bounds = owner.fromSpace.bounds();
+            for (int i = 0; i < numWorkers; i++) {
+                workers[i].reset(bounds);
+            }
+        } else if (numWorkers > 1) {
+            for (int i = 0; i < numWorkers; i++) {
+                pushPromotionChunks(refillFromProvider());
+            }
+        }
+    }
+
+    @Override
+    protected void run(int workerIndex) {
+        final EvacuationTimers timers = owner.timers();
+        timers.startWorker(workerIndex);
+        if (scanningCards) {
+            scanCards(workers[workerIndex]);
+        } else {
+            evacuate(workerIndex);
+        }
+        timers.stopWorker(workerIndex);
+    }
+
+    @Override
+    protected boolean hasStealableWork() {
+        // Requests posted to worker 0 must get it out of the termination protocol.
+        if (sharedStackTop > 0 || pendingRequests > 0) {
+            return true;
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            if (!workers[i].deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void complete() {
+        if (scanningCards) {
+            return;
+        }
+        FatalError.check(sharedStackTop == 0 && pendingRequests == 0, "Parallel evacuation stack must be empty after evacuation");
+        retireChunks(promotionChunks);
+        promotionChunks = Address.zero();
+        for (int i = 0; i < numWorkers; i++) {
+            final Worker worker = workers[i];
+            FatalError.check(worker.deque.isEmpty(), "Parallel evacuation deques must be empty after evacuation");
+            worker.retireEvacuationBuffer();
+            owner.addEvacuatedBytes(worker.evacuatedBytes);
+            worker.evacuatedBytes = Size.zero();
+        }
+        owner.timers().setNumWorkers(numWorkers);
+    }
+}
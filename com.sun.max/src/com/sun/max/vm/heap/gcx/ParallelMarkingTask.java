@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Parallel tracing of the objects marked grey by the root scan of a {@link TricolorHeapMarker}.
+ * <p>
+ * Grey objects left by root marking are first collected by the VM operation thread into a shared stack and turned black.
+ * Workers then trace the heap depth-first: each reference to a white object is atomically marked black
+ * and the object pushed on the worker's {@link WorkStealingDeque}. Since an object can only be turned black once, every live object
+ * is visited exactly once. Workers that run out of work take batches of cells from the shared stack, steal from other workers,
+ * and eventually {@linkplain GCWorkerPool#offerTermination(GCTask) offer termination}. Cells that don't fit in a worker's deque overflow to the shared stack,
+ * which grows as needed.
+ * <p>
+ * Workers never set grey marks. Thus, once the task completes, the color map only holds white and black marks,
+ * and the heap marker can proceed with the sequential phases of marking (e.g., special reference processing) with its finger
+ * and rightmost positions set to the rightmost marked object.
+ */
+final class ParallelMarkingTask extends GCTask {
+    /**
+     * Capacity, in number of cells, of each worker's deque.
+     */
+    private static final int DEQUE_CAPACITY = 8 * 1024;
+
+    /**
+     * Number of cells a worker moves from the shared stack to its deque at once.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private static final int INITIAL_SHARED_STACK_CAPACITY = 16 * 1024;
+
+    /**
+     * State of a marking worker.
+     */
+    final class Worker extends PointerIndexVisitor {
+        final WorkStealingDeque deque = new WorkStealingDeque();
+        /**
+         * Index of the worker, also used as the index of its list of discovered special references.
+         */
+        final int index;
+        /**
+         * Rightmost object this worker has marked.
+         */
+        Address rightmost;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        @INLINE
+        private void markObject(Pointer cell) {
+            if (heapMarker.isCovered(cell) && heapMarker.markBlackIfWhiteAtomic(cell)) {
+                if (cell.greaterThan(rightmost)) {
+                    rightmost = cell;
+                }
+                if (!deque.push(cell)) {
+                    pushShared(cell);
+                }
+            }
+        }
+
+        @INLINE
+        private void markRef(Reference ref) {
+            markObject(Layout.originToCell(ref.toOrigin()));
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            markRef(pointer.getReference(wordIndex));
+        }
+
+        void visitCell(Pointer cell) {
+            if (MaxineVM.isDebug() && Heap.logAllGC()) {
+                TricolorHeapMarker.printVisitedCell(cell, "Visiting black cell ");
+            }
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Reference hubRef = Layout.readHubReference(origin);
+            markRef(hubRef);
+            final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+            if (MaxineVM.isDebug()) {
+                heapMarker.checkGreyCellHub(origin, hub);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+                if (hub.isJLRReference) {
+                    SpecialReferenceManager.discoverSpecialReference(cell, index);
+                }
+            } else if (specificLayout.isReferenceArrayLayout()) {
+                final int length = Layout.readArrayLength(origin);
+                for (int index = 0; index < length; index++) {
+                    markRef(Layout.getReference(origin, index));
+                }
+            } else if (specificLayout.isHybridLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+            }
+        }
+
+        void drain() {
+            Pointer cell = deque.pop();
+            while (!cell.isZero()) {
+                visitCell(cell);
+                cell = deque.pop();
+            }
+        }
+    }
+
+    final TricolorHeapMarker heapMarker;
+    final GCWorkerPool workerPool;
+    private final Worker[] workers;
+    private int numWorkers;
+    private int numInitializedDeques;
+
+    /**
+     * Stack of cells shared by all workers. Holds the grey objects left by root marking, and the cells overflowing from workers' deques.
+     * Allocated outside of the heap, and protected by {@link #sharedStackLock}.
+     */
+    private Pointer sharedStack = Pointer.zero();
+    private int sharedStackCapacity;
+    private volatile int sharedStackTop;
+    private volatile int sharedStackLock;
+
+    @FOLD
+    private static int sharedStackLockOffset() {
+        return ClassActor.fromJava(ParallelMarkingTask.class).findLocalInstanceFieldActor("sharedStackLock").offset();
+    }
+
+    @HOSTED_ONLY
+    ParallelMarkingTask(TricolorHeapMarker heapMarker, GCWorkerPool workerPool) {
+        super("Parallel Marking");
+        this.heapMarker = heapMarker;
+        this.workerPool = workerPool;
+        workers = new Worker[GCWorkerPool.MAX_WORKERS];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    @INLINE
+    private void lock(int lockOffset) {
+        final Reference self = Reference.fromJava(this);
+        while (self.compareAndSwapInt(lockOffset, 0, 1) != 0) {
+            Thread.yield();
+        }
+    }
+
+    @INLINE
+    private void unlock(int lockOffset) {
+        Reference.fromJava(this).writeInt(lockOffset, 0);
+    }
+
+    private void growSharedStack() {
+        final int newCapacity = sharedStackCapacity == 0 ? INITIAL_SHARED_STACK_CAPACITY : sharedStackCapacity << 1;
+        final Size size = Size.fromInt(newCapacity).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        final Pointer newStack = sharedStack.isZero() ? Memory.allocate(size) : Memory.reallocate(sharedStack, size);
+        if (newStack.isZero()) {
+            FatalError.unexpected("Failed to grow parallel marking stack");
+        }
+        sharedStack = newStack;
+        sharedStackCapacity = newCapacity;
+    }
+
+    private void pushShared(Pointer cell) {
+        lock(sharedStackLockOffset());
+        if (sharedStackTop == sharedStackCapacity) {
+            growSharedStack();
+        }
+        sharedStack.setWord(sharedStackTop, cell);
+        sharedStackTop = sharedStackTop + 1;
+        unlock(sharedStackLockOffset());
+    }
+
+    /**
+     * Move a batch of cells from the shared stack to a worker's deque.
+     * @return true if some cells were moved
+     */
+    private boolean refillFromShared(Worker worker) {
+        if (sharedStackTop == 0) {
+            return false;
+        }
+        lock(sharedStackLockOffset());
+        int top = sharedStackTop;
+        final int end = top > BATCH_SIZE ? top - BATCH_SIZE : 0;
+        while (top > end && worker.deque.push(sharedStack.getWord(top - 1).asPointer())) {
+            top--;
+        }
+        final boolean refilled = top != sharedStackTop;
+        sharedStackTop = top;
+        unlock(sharedStackLockOffset());
+        return refilled;
+    }
+
+    /**
+     * Steal a cell from another worker. Victims are tried in turn, starting with the worker next to the thief.
+     */
+    private Pointer steal(int thiefIndex) {
+        for (int i = 1; i < numWorkers; i++) {
+            final Pointer cell = workers[(thiefIndex + i) % numWorkers].deque.steal();
+            if (!cell.isZero()) {
+                return cell;
+            }
+        }
+        return Pointer.zero();
+    }
+
+    /**
+     * Collect into the shared stack the grey objects in the specified range of the color map, and turn them black.
+     * This runs on the VM operation thread only, before any worker starts.
+     */
+    private void collectGreyObjects(Address leftmost, Address rightmost) {
+        final Pointer colorMapBase = heapMarker.base.asPointer();
+        int bitmapWordIndex = heapMarker.bitmapWordIndex(leftmost);
+        final int rightmostBitmapWordIndex = heapMarker.bitmapWordIndex(rightmost);
+        while (bitmapWordIndex <= rightmostBitmapWordIndex) {
+            final long bitmapWord = colorMapBase.getLong(bitmapWordIndex);
+            if (bitmapWord != 0L) {
+                // As for the sequential scan, the grey bit of the lowest grey mark is cleared before looking for the next one,
+                // so that the grey bit of a grey object is never mistaken for the black bit of another.
+                final long greyMarksInWord = bitmapWord & (bitmapWord >>> 1);
+                int bitIndexOfGreyCell = -1;
+                if (greyMarksInWord != 0L) {
+                    bitIndexOfGreyCell = (bitmapWordIndex << Word.widthValue().log2numberOfBits) + Pointer.fromLong(greyMarksInWord).leastSignificantBitSet();
+                } else if ((bitmapWord >>> TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD) == 1L && (colorMapBase.getLong(bitmapWordIndex + 1) & 1L) != 0L) {
+                    bitIndexOfGreyCell = (bitmapWordIndex << Word.widthValue().log2numberOfBits) + TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD;
+                }
+                if (bitIndexOfGreyCell >= 0) {
+                    final Pointer cell = heapMarker.addressOf(bitIndexOfGreyCell).asPointer();
+                    heapMarker.markBlackFromGrey(cell);
+                    pushShared(cell);
+                    continue;
+                }
+            }
+            bitmapWordIndex++;
+        }
+    }
+
+    /**
+     * Trace all objects reachable from the grey objects marked by the root scan.
+     *
+     * @param leftmost leftmost grey object
+     * @param rightmost rightmost grey object
+     * @return the rightmost object marked black
+     */
+    Address markFromGreyRoots(Address leftmost, Address rightmost) {
+        Address rightmostMarked = rightmost;
+        if (leftmost.lessThan(heapMarker.coveredAreaEnd)) {
+            if (rightmost.lessThan(leftmost)) {
+                rightmost = leftmost;
+                rightmostMarked = leftmost;
+            }
+            collectGreyObjects(leftmost, rightmost);
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].rightmost = rightmostMarked;
+            }
+            workerPool.execute(this);
+            for (int i = 0; i < numWorkers; i++) {
+                if (workers[i].rightmost.greaterThan(rightmostMarked)) {
+                    rightmostMarked = workers[i].rightmost;
+                }
+            }
+        }
+        return rightmostMarked;
+    }
+
+    @Override
+    protected void prepare(int numWorkers) {
+        // Deques are allocated on first use, as the number of workers isn't known before worker threads are started.
+        while (numInitializedDeques < numWorkers) {
+            workers[numInitializedDeques++].deque.initialize(DEQUE_CAPACITY);
+        }
+        this.numWorkers = numWorkers;
+    }
+
+    @Override
+    protected void run(int workerIndex) {
+        final Worker worker = workers[workerIndex];
+        while (true) {
+            worker.drain();
+            if (refillFromShared(worker)) {
+                continue;
+            }
+            final Pointer cell = steal(workerIndex);
+            if (!cell.isZero()) {
+                worker.visitCell(cell);
+                continue;
+            }
+            if (workerPool.offerTermination(this)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected boolean hasStealableWork() {
+        if (sharedStackTop > 0) {
+            return true;
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            if (!workers[i].deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void complete() {
+        FatalError.check(sharedStackTop == 0, "Parallel marking stack must be empty after marking");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.SpecialReferenceManager.GC;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Parallel processing of the lists of special references discovered by the workers of a {@link GCWorkerPool}.
+ * Workers claim discovered lists in turn and clear them with {@link SpecialReferenceManager#processDiscoveredList(GC, int)}.
+ * Referents that must be preserved are left to the VM operation thread once the task completes.
+ */
+final class ParallelReferenceProcessingTask extends GCTask implements SpecialReferenceManager.DiscoveredListsProcessor {
+    final GCWorkerPool workerPool;
+
+    private GC gc;
+
+    /**
+     * Index of the next discovered list to claim.
+     */
+    private volatile int nextList;
+
+    @FOLD
+    private static int nextListOffset() {
+        return ClassActor.fromJava(ParallelReferenceProcessingTask.class).findLocalInstanceFieldActor("nextList").offset();
+    }
+
+    @HOSTED_ONLY
+    ParallelReferenceProcessingTask(GCWorkerPool workerPool) {
+        super("Parallel Reference Processing");
+        this.workerPool = workerPool;
+    }
+
+    public void processDiscoveredLists(GC gc) {
+        this.gc = gc;
+        workerPool.execute(this);
+        this.gc = null;
+    }
+
+    /**
+     * Claim the next discovered list to process.
+     * @return the index of the claimed list, or -1 if all lists have been claimed
+     */
+    private int claimList() {
+        final Reference self = Reference.fromJava(this);
+        int list;
+        do {
+            list = nextList;
+            if (list >= SpecialReferenceManager.MAX_DISCOVERED_LISTS) {
+                return -1;
+            }
+        } while (self.compareAndSwapInt(nextListOffset(), list, list + 1) != list);
+        return list;
+    }
+
+    @Override
+    protected void prepare(int numWorkers) {
+        nextList = 0;
+    }
+
+    @Override
+    protected void run(int workerIndex) {
+        int list = claimList();
+        while (list >= 0) {
+            SpecialReferenceManager.processDiscoveredList(gc, list);
+            list = claimList();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Generational heap sizing policy driven by a pause time goal and a throughput goal.
+ * <p>
+ * The initial and maximum sizes of the generations, as well as the size of the survivor spaces, are those of a {@link FixedRatioGenHeapSizingPolicy}.
+ * After every minor collection, eden is resized based on decaying averages of the recent minor pause durations and of the mutator
+ * phases between them:
+ * <ul>
+ * <li>if the average pause exceeds the pause time goal ({@link #MaxGCPauseMillis}), eden is shrunk in proportion, since the
+ * amount of live data a minor collection evacuates, and hence its pause, tends to grow with eden;</li>
+ * <li>otherwise, if the fraction of time spent in minor collections exceeds the throughput goal ({@link HeapResizingPolicy#MaxGCTimePercent}),
+ * eden is grown to make minor collections less frequent, as long as the projected pause stays within the goal.</li>
+ * </ul>
+ * Eden is never shrunk to less than half or grown to more than twice its size in a single step, and always stays within
+ * {@link #minYoungGenSize()} and {@link #maxYoungGenSize()}.
+ * A collection with no preceding mutator phase to measure (i.e., the first one) isn't sampled, since the fraction of time
+ * spent in GC would then appear to be 100%.
+ * <p>
+ * The generational semi-space heap scheme doesn't use this policy: it re-derives the young generation size from a fixed
+ * share of the heap on every full collection, which would undo any resizing done after minor collections.
+ */
+public class PauseTimeGoalGenHeapSizingPolicy extends FixedRatioGenHeapSizingPolicy {
+    /**
+     * Pause time goal for minor collections, in milliseconds. Zero disables the policy.
+     */
+    static int MaxGCPauseMillis = 0;
+
+    static boolean TraceGenHeapSizing = false;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxGCPauseMillis", PauseTimeGoalGenHeapSizingPolicy.class,
+            "Pause time goal for minor collections, in milliseconds. The young generation is resized to meet it (0 keeps a fixed young generation size).", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceGenHeapSizing", PauseTimeGoalGenHeapSizingPolicy.class,
+            "Trace young generation resizing decisions of the pause time goal policy.", Phase.PRISTINE);
+    }
+
+    /**
+     * Weight, in percent, of the most recent sample in the decaying averages.
+     */
+    private static final int SAMPLE_WEIGHT = 30;
+
+    /**
+     * Percentage of the pause time goal the projected pause must stay under for eden to grow.
+     */
+    private static final int GROWTH_PAUSE_HEADROOM_PERCENT = 90;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Tells whether a pause time goal was specified on the command line.
+     */
+    public static boolean hasPauseTimeGoal() {
+        return MaxGCPauseMillis > 0;
+    }
+
+    private final long pauseTimeGoal;
+
+    private final int gcTimePercentGoal;
+
+    /**
+     * Tells whether the decaying averages hold at least one sample.
+     */
+    private boolean sampled;
+
+    /**
+     * Decaying average of the minor collection pauses, in nanoseconds.
+     */
+    private long averagePause;
+
+    /**
+     * Decaying average of the mutator phases between collections, in nanoseconds.
+     */
+    private long averageMutatorTime;
+
+    public PauseTimeGoalGenHeapSizingPolicy(Size initHeapSize, Size maxHeapSize, int youngGenFixedHeapPercentage, int log2Alignment,
+                    int survivorRatio, int maxTenuringThreshold, int targetSurvivorPercentage) {
+        this(initHeapSize, maxHeapSize, youngGenFixedHeapPercentage, log2Alignment, survivorRatio, maxTenuringThreshold, targetSurvivorPercentage,
+                        MaxGCPauseMillis, HeapResizingPolicy.MaxGCTimePercent);
+    }
+
+    /**
+     * Creates a policy with explicit goals rather than those specified on the command line.
+     *
+     * @param pauseTimeGoalMillis pause time goal for minor collections, in milliseconds
+     * @param gcTimePercentGoal maximum percentage of time to spend in minor collections
+     */
+    public PauseTimeGoalGenHeapSizingPolicy(Size initHeapSize, Size maxHeapSize, int youngGenFixedHeapPercentage, int log2Alignment,
+                    int survivorRatio, int maxTenuringThreshold, int targetSurvivorPercentage, int pauseTimeGoalMillis, int gcTimePercentGoal) {
+        super(initHeapSize, maxHeapSize, youngGenFixedHeapPercentage, log2Alignment, survivorRatio, maxTenuringThreshold, targetSurvivorPercentage);
+        FatalError.check(pauseTimeGoalMillis > 0, "Not a valid pause time goal");
+        FatalError.check(gcTimePercentGoal > 0 && gcTimePercentGoal <= 100, "Not a valid percentage of GC time");
+        this.pauseTimeGoal = pauseTimeGoalMillis * NANOS_PER_MILLI;
+        this.gcTimePercentGoal = gcTimePercentGoal;
+    }
+
+    /**
+     * Smallest size of the young generation: the survivor spaces plus one unit of eden.
+     */
+    public Size minYoungGenSize() {
+        return alignUp(survivorSpaceSize().times(2).plus(unitSize));
+    }
+
+    private static long decayingAverage(long average, long sample) {
+        return (average * (100 - SAMPLE_WEIGHT) + sample * SAMPLE_WEIGHT) / 100;
+    }
+
+    @Override
+    public Size youngGenSizeAfterMinorCollection(Size youngGenSize, long pauseTime, long mutatorTime) {
+        if (mutatorTime < 0L) {
+            return youngGenSize;
+        }
+        if (!sampled) {
+            averagePause = pauseTime;
+            averageMutatorTime = mutatorTime;
+            sampled = true;
+        } else {
+            averagePause = decayingAverage(averagePause, pauseTime);
+            averageMutatorTime = decayingAverage(averageMutatorTime, mutatorTime);
+        }
+        final long survivorsSize = survivorSpaceSize().times(2).toLong();
+        final long edenSize = youngGenSize.toLong() - survivorsSize;
+        final long totalTime = averagePause + averageMutatorTime;
+        final int gcTimePercent = totalTime == 0L ? 0 : (int) ((averagePause * 100) / totalTime);
+
+        long desiredEdenSize = edenSize;
+        String reason = "goals met";
+        if (averagePause > pauseTimeGoal) {
+            desiredEdenSize = Math.max(edenSize / 2, (long) (edenSize * ((double) pauseTimeGoal / averagePause)));
+            reason = "pause time above goal";
+        } else if (gcTimePercent > gcTimePercentGoal) {
+            final long pauseLimit = (pauseTimeGoal * GROWTH_PAUSE_HEADROOM_PERCENT) / 100;
+            if (averagePause < pauseLimit) {
+                final double growth = Math.min(2.0, Math.min((double) gcTimePercent / gcTimePercentGoal, (double) pauseLimit / averagePause));
+                desiredEdenSize = (long) (edenSize * growth);
+                reason = "GC time above goal";
+            } else {
+                reason = "GC time above goal, no pause time headroom";
+            }
+        }
+
+        Size newYoungGenSize = alignUp(Size.fromLong(desiredEdenSize + survivorsSize));
+        if (newYoungGenSize.lessThan(minYoungGenSize())) {
+            newYoungGenSize = minYoungGenSize();
+        } else if (newYoungGenSize.greaterThan(maxYoungGenSize())) {
+            newYoungGenSize = maxYoungGenSize();
+        }
+        if (TraceGenHeapSizing) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Young gen sizing: pause ");
+            Log.print(pauseTime / 1000L);
+            Log.print("us (avg ");
+            Log.print(averagePause / 1000L);
+            Log.print("us, goal ");
+            Log.print(MaxGCPauseMillis);
+            Log.print("ms), GC time ");
+            Log.print(gcTimePercent);
+            Log.print("% (goal ");
+            Log.print(gcTimePercentGoal);
+            Log.print("%): ");
+            Log.print(reason);
+            Log.print(", young gen ");
+            Log.print(youngGenSize.toLong() / Size.K.toLong());
+            Log.print("K -> ");
+            Log.print(newYoungGenSize.toLong() / Size.K.toLong());
+            Log.println("K");
+            Log.unlock(lockDisabledSafepoints);
+        }
+        return newYoungGenSize;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionInfo.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Evacuator compacting the live objects of a set of fragmented regions of a {@link FirstFitMarkSweepSpace} into empty regions of the same space.
+ * Compaction takes place at the end of a mark-sweep collection, once the space is swept and while the marks of the heap marker are still valid.
+ * The regions being compacted are set to the {@link HeapRegionState#EMPTY_REGION} state for the duration of the evacuation, which is how the
+ * evacuator tells evacuated cells from others. References to evacuated cells are found by scanning the roots and all the iterable regions of the space.
+ * Evacuated cells are bump-allocated in empty regions taken from the space and are marked black with the heap marker, so that the heap can be
+ * verified after compaction as after any other mark-sweep collection.
+ */
+public final class RegionCompactingEvacuator extends Evacuator implements CellRangeVisitor {
+    /**
+     * The space whose regions are compacted.
+     */
+    private final FirstFitMarkSweepSpace<? extends HeapAccountOwner> space;
+
+    /**
+     * The heap marker that marked the space.
+     */
+    private final TricolorHeapMarker heapMarker;
+
+    /**
+     * Region evacuated cells are currently allocated into.
+     */
+    private int destination = INVALID_REGION_ID;
+
+    /**
+     * Allocation mark in the current destination region.
+     */
+    private Pointer top = Pointer.zero();
+
+    /**
+     * End of the current destination region.
+     */
+    private Pointer end = Pointer.zero();
+
+    /**
+     * Destination region holding the next evacuated cell to scan.
+     */
+    private int scanRegion = INVALID_REGION_ID;
+
+    /**
+     * Next evacuated cell to scan.
+     */
+    private Pointer scanMark = Pointer.zero();
+
+    @HOSTED_ONLY
+    public RegionCompactingEvacuator(FirstFitMarkSweepSpace<? extends HeapAccountOwner> space, TricolorHeapMarker heapMarker) {
+        this.space = space;
+        this.heapMarker = heapMarker;
+    }
+
+    @Override
+    boolean inEvacuatedArea(Pointer origin) {
+        return HeapRegionManager.theHeapRegionManager().contains(origin) && fromAddress(origin).isEmpty();
+    }
+
+    /**
+     * Format the space left in the current destination region as a free chunk if large enough, as dark matter otherwise.
+     */
+    private void retireDestination() {
+        final HeapRegionInfo rinfo = fromRegionID(destination);
+        final Size spaceLeft = end.minus(top).asSize();
+        if (spaceLeft.greaterEqual(space.minReclaimableSpace())) {
+            HeapFreeChunk.format(top, spaceLeft);
+            rinfo.setFreeChunks(top, spaceLeft, 1);
+        } else {
+            if (!spaceLeft.isZero()) {
+                DarkMatter.format(top, spaceLeft);
+            }
+            rinfo.resetOccupancy();
+        }
+    }
+
+    /**
+     * Retire the current destination region, if any, and take a new one from the space.
+     */
+    private void nextDestination() {
+        if (destination != INVALID_REGION_ID) {
+            retireDestination();
+        }
+        destination = space.takeCompactionDestination();
+        FatalError.check(destination != INVALID_REGION_ID, "Not enough empty regions to compact into");
+        top = fromRegionID(destination).regionStart().asPointer();
+        end = top.plus(regionSizeInBytes);
+        if (scanRegion == INVALID_REGION_ID) {
+            scanRegion = destination;
+            scanMark = top;
+        }
+    }
+
+    @Override
+    Pointer evacuate(Pointer fromOrigin) {
+        final Pointer fromCell = Layout.originToCell(fromOrigin);
+        final Size size = Layout.size(fromOrigin);
+        if (top.plus(size).greaterThan(end)) {
+            nextDestination();
+        }
+        final Pointer toCell = top;
+        top = top.plus(size);
+        Memory.copyBytes(fromCell, toCell, size);
+        heapMarker.markBlackIfWhiteAtomic(toCell);
+        return Layout.cellToOrigin(toCell);
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        // Marking already processed the special references of the space: referents of evacuated references are live.
+        disableSpecialRefDiscovery();
+        destination = INVALID_REGION_ID;
+        top = Pointer.zero();
+        end = Pointer.zero();
+        scanRegion = INVALID_REGION_ID;
+        scanMark = Pointer.zero();
+    }
+
+    @Override
+    protected void evacuateFromRSets() {
+        // There is no remembered set: scan all the live cells of the space outside of the evacuated area.
+        space.iterateRegions(this);
+    }
+
+    public void visitCells(Address start, Address end) {
+        evacuateRange(start.asPointer(), end.asPointer());
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        // Cheney-style scan of the destination regions, in the order they were taken.
+        while (scanRegion != INVALID_REGION_ID) {
+            final Pointer scanEnd = scanRegion == destination ? top : fromRegionID(scanRegion).regionStart().asPointer().plus(regionSizeInBytes);
+            if (scanMark.lessThan(scanEnd)) {
+                evacuateRange(scanMark, scanEnd);
+                scanMark = scanEnd;
+            } else if (scanRegion != destination) {
+                scanRegion = space.nextCompactionDestination(scanRegion);
+                scanMark = fromRegionID(scanRegion).regionStart().asPointer();
+            } else {
+                break;
+            }
+        }
+    }
+
+    @Override
+    protected void doAfterEvacuation() {
+        if (destination != INVALID_REGION_ID) {
+            retireDestination();
+        }
+        enableSpecialRefDiscovery();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.thread.VmThreadLocal.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.thread.VmThreadLocal.Nature;
+
+/**
+ * Snapshot-at-the-beginning (SATB) queues for concurrent marking.
+ * <p>
+ * While {@linkplain #isActive() active}, the pre-write barrier of the heap scheme enqueues the reference about to be overwritten
+ * by a reference store. References are logged in per-thread buffers allocated in native memory. A buffer is a header word linking
+ * it to the next buffer, followed by {@link #SATBBufferSize} entries filled from the end of the buffer toward its header.
+ * The {@link #SATB_INDEX} thread local holds the offset of the last filled entry. It is zero when the thread has no buffer, so that the
+ * fast path of the barrier only needs to test a single thread local before storing an entry.
+ * Full buffers are pushed onto a lock-free list of completed buffers, which the concurrent marker drains.
+ * Partial buffers are drained during the remark pause, when all mutator threads are stopped.
+ * <p>
+ * Entries are stored as raw addresses: the queues are only active while objects never move, i.e., between the initial mark and
+ * the remark pauses of a concurrent marking cycle. Any stop-the-world collection taking place in between aborts the cycle and
+ * {@linkplain #deactivate(Pointer.Procedure) discards} the queues.
+ */
+public final class SATBQueueSet {
+    static int SATBBufferSize = 1024;
+    static {
+        VMOptions.addFieldOption("-XX:", "SATBBufferSize", SATBQueueSet.class, "Number of entries of per-thread SATB buffers", Phase.PRISTINE);
+    }
+
+    /**
+     * Thread local holding the address of the thread's current SATB buffer, zero if the thread has none.
+     */
+    private static final VmThreadLocal SATB_BUFFER = new VmThreadLocal("SATB_BUFFER", false, "SATBQueueSet: current SATB buffer, zero if none", Nature.Single);
+
+    /**
+     * Thread local holding the offset to the last filled entry of the thread's current SATB buffer, zero if the thread has no buffer.
+     */
+    private static final VmThreadLocal SATB_INDEX = new VmThreadLocal("SATB_INDEX", false, "SATBQueueSet: offset to last filled SATB entry, zero if no buffer", Nature.Single);
+
+    /**
+     * Non-zero when reference stores must be logged. Read by the pre-write barriers, including those emitted in compiled code.
+     */
+    private volatile int active;
+
+    /**
+     * Head of the list of completed buffers. Mutators push their full buffers with a CAS. The marker takes the whole list at once.
+     */
+    private volatile Address completedBuffers = Address.zero();
+
+    /**
+     * Size in bytes of a buffer, including its header.
+     */
+    private Size bufferSize;
+
+    @HOSTED_ONLY
+    public SATBQueueSet() {
+    }
+
+    public void initialize(MaxineVM.Phase phase) {
+        if (phase == Phase.PRISTINE) {
+            final int numEntries = SATBBufferSize < 16 ? 16 : SATBBufferSize;
+            bufferSize = Size.fromInt(numEntries + 1).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        }
+    }
+
+    @FOLD
+    public static int activeOffset() {
+        return ClassActor.fromJava(SATBQueueSet.class).findLocalInstanceFieldActor("active").offset();
+    }
+
+    @FOLD
+    private static int completedBuffersOffset() {
+        return ClassActor.fromJava(SATBQueueSet.class).findLocalInstanceFieldActor("completedBuffers").offset();
+    }
+
+    @FOLD
+    private static int firstEntryOffset() {
+        return Word.size();
+    }
+
+    @INLINE
+    public boolean isActive() {
+        return active != 0;
+    }
+
+    /**
+     * Log a reference about to be overwritten by the current thread.
+     * @param ref a non-null reference
+     */
+    @INLINE
+    public void enqueue(Reference ref) {
+        final Pointer etla = ETLA.load(VmThread.currentTLA());
+        final int index = SATB_INDEX.load(etla).toInt();
+        if (index > firstEntryOffset()) {
+            final int newIndex = index - Word.size();
+            SATB_BUFFER.load(etla).writeWord(newIndex, ref.toOrigin());
+            SATB_INDEX.store(etla, Address.fromInt(newIndex));
+            return;
+        }
+        enqueueSlowPath(etla, ref);
+    }
+
+    /**
+     * Complete the thread's current buffer, if any, and log the reference in a new buffer.
+     */
+    @NEVER_INLINE
+    private void enqueueSlowPath(Pointer etla, Reference ref) {
+        final Pointer buffer = SATB_BUFFER.load(etla);
+        if (!buffer.isZero()) {
+            pushCompletedBuffer(buffer);
+        }
+        final Pointer newBuffer = Memory.allocate(bufferSize);
+        if (newBuffer.isZero()) {
+            FatalError.unexpected("Failed to allocate SATB buffer");
+        }
+        final int newIndex = bufferSize.toInt() - Word.size();
+        newBuffer.writeWord(newIndex, ref.toOrigin());
+        SATB_BUFFER.store(etla, newBuffer);
+        SATB_INDEX.store(etla, Address.fromInt(newIndex));
+    }
+
+    private void pushCompletedBuffer(Pointer buffer) {
+        final Pointer self = Reference.fromJava(this).toOrigin();
+        Address head;
+        do {
+            head = completedBuffers;
+            buffer.setWord(head);
+        } while (self.compareAndSwapWord(completedBuffersOffset(), head, buffer) != head);
+    }
+
+    private Address takeCompletedBuffers() {
+        final Pointer self = Reference.fromJava(this).toOrigin();
+        Address head;
+        do {
+            head = completedBuffers;
+            if (head.isZero()) {
+                return head;
+            }
+        } while (self.compareAndSwapWord(completedBuffersOffset(), head, Address.zero()) != head);
+        return head;
+    }
+
+    /**
+     * Visit the entries of a buffer, starting from the specified offset, then free the buffer.
+     */
+    private void drainBuffer(Pointer buffer, int index, Pointer.Procedure entryVisitor) {
+        final int end = bufferSize.toInt();
+        if (entryVisitor != null) {
+            while (index < end) {
+                entryVisitor.run(buffer.readWord(index).asPointer());
+                index += Word.size();
+            }
+        }
+        Memory.deallocate(buffer);
+    }
+
+    /**
+     * Visit the origin of every reference logged in completed buffers, and free these buffers.
+     * Called by the concurrent marker while mutators are running.
+     *
+     * @param entryVisitor procedure applied to the origin of each logged reference
+     * @return true if some buffers were drained
+     */
+    public boolean drainCompletedBuffers(Pointer.Procedure entryVisitor) {
+        Address buffer = takeCompletedBuffers();
+        if (buffer.isZero()) {
+            return false;
+        }
+        do {
+            final Address next = buffer.asPointer().getWord().asAddress();
+            drainBuffer(buffer.asPointer(), firstEntryOffset(), entryVisitor);
+            buffer = next;
+        } while (!buffer.isZero());
+        return true;
+    }
+
+    /**
+     * Procedure applied to each thread at a safepoint to drain its partial buffer.
+     */
+    private final class ThreadBufferDrainer implements Pointer.Procedure {
+        Pointer.Procedure entryVisitor;
+
+        public void run(Pointer tla) {
+            drainThreadBuffer(ETLA.load(tla), entryVisitor);
+        }
+    }
+
+    private final ThreadBufferDrainer threadBufferDrainer = new ThreadBufferDrainer();
+
+    private void drainThreadBuffer(Pointer etla, Pointer.Procedure entryVisitor) {
+        final Pointer buffer = SATB_BUFFER.load(etla);
+        if (!buffer.isZero()) {
+            drainBuffer(buffer, SATB_INDEX.load(etla).toInt(), entryVisitor);
+            SATB_BUFFER.store(etla, Address.zero());
+            SATB_INDEX.store(etla, Address.zero());
+        }
+    }
+
+    /**
+     * Start logging references overwritten by reference stores. Must be called at a safepoint.
+     * Entries logged after the queues were last deactivated, e.g., by threads stopped in the barrier's slow path at the time,
+     * are stale and discarded.
+     */
+    public void activate() {
+        deactivate(null);
+        active = 1;
+    }
+
+    /**
+     * Stop logging references and drain all the buffers. Must be called at a safepoint, when mutator threads are stopped.
+     *
+     * @param entryVisitor procedure applied to the origin of each logged reference, or null to discard the logged references
+     */
+    public void deactivate(Pointer.Procedure entryVisitor) {
+        active = 0;
+        drainCompletedBuffers(entryVisitor);
+        threadBufferDrainer.entryVisitor = entryVisitor;
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, threadBufferDrainer);
+        threadBufferDrainer.entryVisitor = null;
+    }
+
+    /**
+     * Hand over the buffer of the current thread to the marker. Called when the thread detaches from the VM.
+     */
+    public void flushCurrentThread() {
+        final Pointer etla = ETLA.load(VmThread.currentTLA());
+        final Pointer buffer = SATB_BUFFER.load(etla);
+        if (buffer.isZero()) {
+            return;
+        }
+        final int index = SATB_INDEX.load(etla).toInt();
+        SATB_BUFFER.store(etla, Address.zero());
+        SATB_INDEX.store(etla, Address.zero());
+        // Only full buffers go on the completed list. Fill the free entries of a partial buffer with null references, which the marker ignores.
+        Memory.clearWords(buffer.plus(firstEntryOffset()), (index - firstEntryOffset()) >> Word.widthValue().log2numberOfBytes);
+        pushCompletedBuffer(buffer);
+    }
+}
@@ -335,6 +335,12 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
 
     MARK_PHASE markPhase = MARK_PHASE.DONE;
 
+    /**
+     * Indicates whether the referents of special references are traced as strong references instead of being discovered.
+     * Set while marking concurrently, as mutators may update discovered special references before they are processed.
+     */
+    boolean strongReferents;
+
 
     private static String colorName(long color) {
         return COLOR_NAMES[(int) color & 0x3];
@@ -743,6 +749,28 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markBlackFromGrey(bitIndex);
     }
 
+    /**
+     * Atomically mark black a white object. Used when multiple GC workers mark concurrently.
+     * Only the first bit of the color is set, so the color never needs to be updated across two words.
+     *
+     * @param cell address of an object in the covered area
+     * @return true if the object was white and the caller turned it black, false otherwise
+     */
+    final boolean markBlackIfWhiteAtomic(Pointer cell) {
+        final int bitIndex = bitIndexOf(cell);
+        final Pointer bitmapWordPointer = base.asPointer().plus(bitmapWordIndex(bitIndex) << Word.widthValue().log2numberOfBytes);
+        final long bitmask = bitmaskFor(bitIndex);
+        long bitmapWord;
+        do {
+            bitmapWord = bitmapWordPointer.getLong(0);
+            if ((bitmapWord & bitmask) != 0L) {
+                return false;
+            }
+        } while (bitmapWordPointer.compareAndSwapLong(0, bitmapWord, bitmapWord | bitmask) != bitmapWord);
+        traceBlackMark(cell, bitIndex);
+        return true;
+    }
+
     final boolean isGrey(int bitIndex) {
         int bitIndexInWord = bitIndexInWord(bitIndex);
         if (bitIndexInWord == LAST_BIT_INDEX_IN_WORD) {
@@ -986,7 +1014,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
             if (specificLayout.isTupleLayout()) {
                 TupleReferenceMap.visitReferences(hub, origin, this);
                 if (hub.isJLRReference) {
-                    SpecialReferenceManager.discoverSpecialReference(cell);
+                    if (heapMarker.strongReferents) {
+                        visit(origin, SpecialReferenceManager.referentIndex());
+                    } else {
+                        SpecialReferenceManager.discoverSpecialReference(cell);
+                    }
                 }
             } else if (specificLayout.isHybridLayout()) {
                 TupleReferenceMap.visitReferences(hub, origin, this);
@@ -1143,6 +1175,10 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
             if (specificLayout.isTupleLayout()) {
                 TupleReferenceMap.visitReferences(hub, origin, this);
                 if (hub.isJLRReference) {
+                    if (heapMarker.strongReferents) {
+                        visit(origin, SpecialReferenceManager.referentIndex());
+                        return cell.plus(hub.tupleSize);
+                    }
                     // The marking stack might have overflow before reaching this point, and doing so, it
                     // might have already register this reference to the SpecialReferenceManager
                     // (e.g., if using deep mark stack flush).
@@ -1194,6 +1230,18 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
          * @param rightmostBitmapWordIndex
          */
         protected final void visitGreyObjects(int bitmapWordIndex, int rightmostBitmapWordIndex) {
+            visitGreyObjects(bitmapWordIndex, rightmostBitmapWordIndex, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Visit grey objects whose mark is within the specified range of words of the color map, up to a maximum number of objects.
+         *
+         * @param bitmapWordIndex
+         * @param rightmostBitmapWordIndex
+         * @param maxVisitedCells maximum number of grey objects to visit
+         * @return the number of objects left to visit before reaching the maximum, zero if the scan stopped because the maximum was reached
+         */
+        protected final int visitGreyObjects(int bitmapWordIndex, int rightmostBitmapWordIndex, int maxVisitedCells) {
             final Pointer colorMapBase = heapMarker.base.asPointer();
             while (bitmapWordIndex <= rightmostBitmapWordIndex) {
                 long bitmapWord = colorMapBase.getLong(bitmapWordIndex);
@@ -1211,6 +1259,9 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
                         final int bitIndexInWord = Pointer.fromLong(greyMarksInWord).leastSignificantBitSet();
                         final int bitIndexOfGreyCell = (bitmapWordIndex << Word.widthValue().log2numberOfBits) + bitIndexInWord;
                         final Pointer p = markAndVisitCell(heapMarker.addressOf(bitIndexOfGreyCell).asPointer());
+                        if (--maxVisitedCells == 0) {
+                            return 0;
+                        }
                         // Get bitmap word index at the end of the object. This may avoid reading multiple mark bitmap words
                         // when marking objects crossing multiple mark bitmap words.
                         bitmapWordIndex = heapMarker.bitmapWordIndex(p);
@@ -1222,6 +1273,9 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
                             // it is a grey object.
                             final int bitIndexOfGreyCell = (bitmapWordIndex << Word.widthValue().log2numberOfBits) + TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD;
                             final Pointer p = markAndVisitCell(heapMarker.addressOf(bitIndexOfGreyCell).asPointer());
+                            if (--maxVisitedCells == 0) {
+                                return 0;
+                            }
                             bitmapWordIndex = heapMarker.bitmapWordIndex(p);
                             continue;
                         }
@@ -1229,6 +1283,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
                 }
                 bitmapWordIndex++;
             }
+            return maxVisitedCells;
         }
 
         void printState() {
@@ -1469,6 +1524,48 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         overflowScanState.recoverFromOverflow();
     }
 
+    /**
+     * Task tracing the heap with the workers of a {@link GCWorkerPool}, or null if marking is sequential.
+     */
+    private ParallelMarkingTask parallelMarkingTask;
+
+    /**
+     * Task processing the discovered special references with the workers of the parallel marking's pool, or null if marking is sequential.
+     */
+    private ParallelReferenceProcessingTask parallelReferenceProcessingTask;
+
+    /**
+     * Enable parallel marking. Objects marked grey by root marking will be traced with the workers of the specified pool
+     * whenever it has more than one worker.
+     *
+     * @param workerPool a pool of GC workers
+     */
+    @HOSTED_ONLY
+    public void enableParallelMarking(GCWorkerPool workerPool) {
+        parallelMarkingTask = new ParallelMarkingTask(this, workerPool);
+        parallelReferenceProcessingTask = new ParallelReferenceProcessingTask(workerPool);
+    }
+
+    private boolean useParallelMarking() {
+        return parallelMarkingTask != null && parallelMarkingTask.workerPool.isParallel();
+    }
+
+    private SpecialReferenceManager.DiscoveredListsProcessor discoveredListsProcessor() {
+        return useParallelMarking() ? parallelReferenceProcessingTask : null;
+    }
+
+    /**
+     * Visit all objects marked grey during root marking with multiple workers.
+     * Once done, there is no grey objects left, and the forward scan state is positioned on the rightmost marked object
+     * so that subsequent sequential phases only visit objects newly marked grey.
+     */
+    private void visitGreyObjectsAfterRootMarkingInParallel() {
+        initAfterRootMarking();
+        final Address rightmost = parallelMarkingTask.markFromGreyRoots(rootCellVisitor.leftmost, rootCellVisitor.rightmost);
+        forwardScanState.finger = rightmost;
+        forwardScanState.rightmost = rightmost;
+    }
+
     private void initAfterRootMarking() {
         forwardScanState.rightmost = rootCellVisitor.rightmost;
         forwardScanState.finger = rootCellVisitor.leftmost;
@@ -1635,18 +1732,34 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
      * This can server region-based heap as well as contiguous heap, wherein a single region is passed in this case.
      */
     public void sweep(HeapRegionSweeper regionsSweeper, boolean doImprecise) {
-        final Address endOfRightmostLiveObject = endOfCell(forwardScanState.rightmost);
-        do {
-            assert regionsSweeper.hasNextSweepingRegion();
-            regionsSweeper.beginSweep();
-            if (doImprecise) {
-                impreciseRegionSweep(regionsSweeper);
-            } else {
-                preciseRegionSweep(regionsSweeper);
-            }
-            regionsSweeper.endSweep();
-        } while (regionsSweeper.endOfSweepingRegion().lessThan(endOfRightmostLiveObject));
+        while (sweepNextRegion(regionsSweeper, doImprecise)) {
+        }
+    }
+
+    /**
+     * Sweep the next region of a heap region sweeper.
+     * Regions are swept in address order, the same way as with {@link #sweep(HeapRegionSweeper, boolean)}, but one at a time.
+     * This allows regions to be swept lazily, outside of the collection that marked them, as long as the color map is left untouched
+     * until all regions are swept.
+     *
+     * @param regionsSweeper the sweeper to notify of dead space in the region
+     * @param doImprecise whether to do precise or imprecise sweeping
+     * @return true if some regions are left to sweep, false if the sweeper {@linkplain HeapRegionSweeper#reachedRightmostLiveRegion() reached the rightmost live region}
+     */
+    public boolean sweepNextRegion(HeapRegionSweeper regionsSweeper, boolean doImprecise) {
+        assert regionsSweeper.hasNextSweepingRegion();
+        regionsSweeper.beginSweep();
+        if (doImprecise) {
+            impreciseRegionSweep(regionsSweeper);
+        } else {
+            preciseRegionSweep(regionsSweeper);
+        }
+        regionsSweeper.endSweep();
+        if (regionsSweeper.endOfSweepingRegion().lessThan(endOfCell(forwardScanState.rightmost))) {
+            return true;
+        }
         regionsSweeper.reachedRightmostLiveRegion();
+        return false;
     }
 
     /**
@@ -1789,7 +1902,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
         startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking();
+        if (useParallelMarking()) {
+            visitGreyObjectsAfterRootMarkingInParallel();
+        } else {
+            visitGreyObjectsAfterRootMarking();
+        }
         stopTimer(heapMarkingTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1805,7 +1922,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.SPECIAL_REF;
         markPhase.traceBegin(traceGCPhases);
         startTimer(weakRefTimer);
-        SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
+        SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState, discoveredListsProcessor());
         visitGreyObjects();
         stopTimer(weakRefTimer);
         markPhase.traceEnd(traceGCPhases);
@@ -1835,7 +1952,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
         startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking(regionsRanges);
+        if (useParallelMarking()) {
+            visitGreyObjectsAfterRootMarkingInParallel();
+        } else {
+            visitGreyObjectsAfterRootMarking(regionsRanges);
+        }
         stopTimer(heapMarkingTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1897,7 +2018,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.SPECIAL_REF;
         markPhase.traceBegin(traceGCPhases);
         startTimer(weakRefTimer);
-        SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
+        SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState, discoveredListsProcessor());
         // Note: the VISIT_GREY_FORWARD has already visited the whole heap, so any additional grey reference added by the special reference
         // manager are on the marking stack. Draining that stack may nevertheless add new grey reference after the finger, so we still
         // need to iterate over the region ranges past the finger, hence the reset.
@@ -1909,6 +2030,99 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.DONE;
     }
 
+    /**
+     * Start a concurrent marking cycle. Must be called at a safepoint.
+     * The color map is cleared, roots are marked grey, and the forward scan is positioned on the leftmost grey object.
+     * The heap is then traced {@linkplain #markConcurrently(int) incrementally} while mutators run, and marking is
+     * {@linkplain #finishConcurrentMarking() completed} at a second safepoint.
+     * Referents of special references are traced as strong references until then.
+     *
+     * @param regionsRanges enumerate ranges of heap regions holding objects to trace
+     */
+    public void beginConcurrentMarking(HeapRegionRangeIterable regionsRanges) {
+        traceGCTimes = Heap.logGCTime();
+        markingStack.reset();
+        clearColorMap();
+        overflowScanState.setHeapRegionsRanges(regionsRanges);
+        strongReferents = true;
+        markRoots();
+        initAfterRootMarking();
+        currentScanState = forwardScanState;
+        overflowScanState.markingStackFlusher().setScanState(currentScanState);
+        markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
+    }
+
+    /**
+     * Visit a bounded number of grey objects of the current concurrent marking cycle.
+     * Must be called with safepoints disabled, so that the marking state is consistent whenever the caller is stopped at a safepoint.
+     *
+     * @param maxVisitedCells maximum number of grey objects to visit
+     * @return true if there are no grey objects left, false otherwise
+     */
+    public boolean markConcurrently(int maxVisitedCells) {
+        return forwardScanState.visitGreyObjectsIncrementally(maxVisitedCells);
+    }
+
+    /**
+     * Procedure marking grey the objects whose origin was logged by the SATB pre-write barrier.
+     */
+    final class SATBEntryMarker implements Pointer.Procedure {
+        public void run(Pointer origin) {
+            if (!origin.isZero()) {
+                forwardScanState.visit(Reference.fromOrigin(origin));
+            }
+        }
+    }
+
+    public final Pointer.Procedure satbEntryMarker = new SATBEntryMarker();
+
+    /**
+     * Mark black an object allocated since the beginning of the current concurrent marking cycle.
+     * Such objects only refer to objects live at the beginning of the cycle or allocated since, so they don't need to be traced.
+     *
+     * @param cell an object allocated during the current concurrent marking cycle
+     */
+    public void markAllocatedBlack(Pointer cell) {
+        final int bitIndex = bitIndexOf(cell);
+        if (isWhite(bitIndex)) {
+            markGrey(bitIndex);
+            markBlackFromGrey(bitIndex);
+            traceBlackMark(cell, bitIndex);
+            if (cell.greaterThan(forwardScanState.rightmost)) {
+                forwardScanState.rightmost = cell;
+            }
+        }
+    }
+
+    /**
+     * Complete the current concurrent marking cycle. Must be called at a safepoint, once the references logged by the SATB pre-write barrier
+     * were {@linkplain #satbEntryMarker marked grey} and objects allocated during the cycle {@linkplain #markAllocatedBlack(Pointer) marked black}.
+     * There is no special reference to process, as their referents were traced as strong references.
+     */
+    public void finishConcurrentMarking() {
+        final boolean traceGCPhases = Heap.logGCPhases();
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(heapMarkingTimer);
+        visitGreyObjects();
+        stopTimer(heapMarkingTimer);
+        markPhase.traceEnd(traceGCPhases);
+        FatalError.check(markingStack.isEmpty(), "Marking Stack must be empty after visiting grey objects.");
+        if (VerifyAfterMarking) {
+            verifyHasNoGreyMarks(coveredAreaStart, forwardScanState.endOfRightmostVisitedObject());
+        }
+        strongReferents = false;
+        markPhase = MARK_PHASE.DONE;
+    }
+
+    /**
+     * Abort the current concurrent marking cycle, if any. The color map is left in an undefined state.
+     */
+    public void abortConcurrentMarking() {
+        markingStack.reset();
+        strongReferents = false;
+        markPhase = MARK_PHASE.DONE;
+    }
+
     /**
      * Contiguous region of memory used by the heap marker for the color map.
      * @return a non-null {@link MemoryRegion}
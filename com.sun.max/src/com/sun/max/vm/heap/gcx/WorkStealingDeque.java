@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Fixed-size work stealing deque of cell pointers, after Arora, Blumofe and Plaxton.
+ * The owner of the deque pushes and pops cells at the bottom end without synchronization in the common case,
+ * whereas other workers steal cells from the top end with a compare-and-swap of the {@link #age} word.
+ * The age word packs the top index with a tag bumped every time the deque is emptied to avoid ABA problems.
+ * <p>
+ * The backing storage is allocated outside of the heap, like the {@link MarkingStack}'s.
+ */
+final class WorkStealingDeque {
+    /**
+     * Index of the next free slot. Only updated by the owner.
+     */
+    private volatile int bottom;
+
+    /**
+     * Tag (high 32 bits) and top index (low 32 bits) of the deque.
+     */
+    private volatile long age;
+
+    private Address base;
+    private int capacity;
+
+    @FOLD
+    private static int ageOffset() {
+        return ClassActor.fromJava(WorkStealingDeque.class).findLocalInstanceFieldActor("age").offset();
+    }
+
+    @HOSTED_ONLY
+    WorkStealingDeque() {
+    }
+
+    void initialize(int capacity) {
+        final Size size = Size.fromInt(capacity).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        base = Memory.allocate(size);
+        if (base.isZero()) {
+            FatalError.unexpected("Failed to allocate work stealing deque");
+        }
+        this.capacity = capacity;
+        bottom = 0;
+        age = 0L;
+    }
+
+    @INLINE
+    private static int top(long age) {
+        return (int) age;
+    }
+
+    @INLINE
+    private static long tag(long age) {
+        return age >>> 32;
+    }
+
+    @INLINE
+    private static long makeAge(long tag, int top) {
+        return (tag << 32) | (top & 0xFFFFFFFFL);
+    }
+
+    int size() {
+        final int size = bottom - top(age);
+        return size < 0 ? 0 : size;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Push a cell at the bottom of the deque. Must only be called by the owner of the deque.
+     *
+     * @param cell a pointer to a cell
+     * @return false if the deque is full, true otherwise
+     */
+    boolean push(Pointer cell) {
+        final int b = bottom;
+        if (b == capacity) {
+            // Out of room at the bottom. The caller handles the overflow.
+            return false;
+        }
+        base.asPointer().setWord(b, cell);
+        // Make sure the cell is visible before the new bottom.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        bottom = b + 1;
+        return true;
+    }
+
+    /**
+     * Pop a cell from the bottom of the deque. Must only be called by the owner of the deque.
+     *
+     * @return a pointer to a cell, or zero if the deque is empty
+     */
+    Pointer pop() {
+        int b = bottom;
+        if (b == 0) {
+            return Pointer.zero();
+        }
+        b--;
+        bottom = b;
+        // The new bottom must be visible to thieves before reading age.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        final Pointer cell = base.asPointer().getWord(b).asPointer();
+        final long oldAge = age;
+        final int t = top(oldAge);
+        if (b > t) {
+            return cell;
+        }
+        // At most one entry left: race with thieves for it, and reset the deque whatever the outcome.
+        bottom = 0;
+        final long newAge = makeAge(tag(oldAge) + 1, 0);
+        if (b == t) {
+            if (Reference.fromJava(this).compareAndSwapLong(ageOffset(), oldAge, newAge) == oldAge) {
+                return cell;
+            }
+        }
+        age = newAge;
+        return Pointer.zero();
+    }
+
+    /**
+     * Steal a cell from the top of the deque. May be called by any worker.
+     *
+     * @return a pointer to a cell, or zero if the deque was empty or the steal lost a race
+     */
+    Pointer steal() {
+        final long oldAge = age;
+        final int t = top(oldAge);
+        MemoryBarriers.barrier(MemoryBarriers.LOAD_LOAD);
+        if (bottom <= t) {
+            return Pointer.zero();
+        }
+        final Pointer cell = base.asPointer().getWord(t).asPointer();
+        final long newAge = makeAge(tag(oldAge), t + 1);
+        if (Reference.fromJava(this).compareAndSwapLong(ageOffset(), oldAge, newAge) == oldAge) {
+            return cell;
+        }
+        return Pointer.zero();
+    }
+}
@@ -22,6 +22,7 @@
  */
 package com.sun.max.vm.heap.gcx.gen.mse;
 import static com.sun.max.vm.VMConfiguration.*;
+import static com.sun.max.vm.heap.gcx.EvacuationTimers.TIMED_OPERATION.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.heap.gcx.gen.mse.GenMSEHeapScheme.GenMSEHeapRegionTag.*;
@@ -38,6 +39,7 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.debug.*;
 import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.heap.gcx.rset.*;
 import com.sun.max.vm.heap.gcx.rset.ctbl.*;
@@ -57,9 +59,20 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     static int YoungGenHeapPercent = 30;
     static Size ELABSize = Size.K.times(64);
+    /**
+     * Knobs for aging objects in survivor spaces of the young generation.
+     */
+    static boolean UseSurvivorSpaces = false;
+    static int SurvivorRatio = 8;
+    static int MaxTenuringThreshold = AgingRegionalizedNursery.MAX_AGE;
+    static int TargetSurvivorRatio = 50;
     static {
         VMOptions.addFieldOption("-XX:", "YoungGenHeapPercent", GenMSEHeapScheme.class, "Fixed percentage of heap size that must be used by young gen", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "ELABSize", GenMSEHeapScheme.class, "Size of evacuation buffers for young gen evacuation to old gen", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "UseSurvivorSpaces", GenMSEHeapScheme.class, "Age young objects in survivor spaces before promoting them to old gen", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "SurvivorRatio", GenMSEHeapScheme.class, "Ratio of eden size to the size of one survivor space", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MaxTenuringThreshold", GenMSEHeapScheme.class, "Maximum number of minor collections a young object survives before promotion", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TargetSurvivorRatio", GenMSEHeapScheme.class, "Desired percentage of survivor space used after a minor collection", Phase.PRISTINE);
     }
 
     public enum GenMSEHeapRegionTag {
@@ -82,7 +95,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      * Young generation.
      */
     @INSPECTED
-    private final NoAgingRegionalizedNursery youngSpace;
+    private final AgingRegionalizedNursery youngSpace;
     /**
      * Tenured generation.
      */
@@ -102,7 +115,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     /**
      * Implementation of young space evacuation. Used by minor collection operations.
      */
-    private final NoAgingNurseryEvacuator youngSpaceEvacuator;
+    private final AgingNurseryEvacuator youngSpaceEvacuator;
 
     /**
      * Operation to submit to the {@link VmOperationThread} to perform a generational collection.
@@ -114,6 +127,15 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     private final TricolorHeapMarker heapMarker;
 
+    /**
+     * Workers helping with the parallel phases of a collection.
+     */
+    private final GCWorkerPool gcWorkerPool;
+
+    private final EvacuationTimers evacTimers = new EvacuationTimers();
+
+    private final DebugHeap.DetailLogger detailLogger = new DebugHeap.DetailLogger();
+
     /**
      * Support for heap verification.
      */
@@ -124,8 +146,10 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     public GenMSEHeapScheme() {
         heapAccount = new HeapAccount<GenMSEHeapScheme>(this);
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
+        gcWorkerPool = new GCWorkerPool();
+        heapMarker.enableParallelMarking(gcWorkerPool);
         cardTableRSet = new CardTableRSet();
-        youngSpace = new NoAgingRegionalizedNursery(heapAccount, YOUNG.tag());
+        youngSpace = new AgingRegionalizedNursery(heapAccount, YOUNG.tag());
 
         final ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator =
             new ChunkListAllocator<RegionChunkListRefillManager>(new RegionChunkListRefillManager(cardTableRSet));
@@ -133,7 +157,12 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             new CardSpaceAllocator<RegionOverflowAllocatorRefiller>(new RegionOverflowAllocatorRefiller(cardTableRSet), cardTableRSet);
 
         oldSpace = new FirstFitMarkSweepSpace<GenMSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, true, cardTableRSet, OLD.tag());
-        youngSpaceEvacuator = new NoAgingNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet, "Young");
+        youngSpaceEvacuator = new AgingNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet, "Young");
+        youngSpaceEvacuator.enableParallelEvacuation(gcWorkerPool);
+        youngSpaceEvacuator.setTimers(evacTimers);
+        if (MaxineVM.isDebug()) {
+            youngSpaceEvacuator.setDetailLogger(detailLogger);
+        }
         noYoungReferencesVerifier = new NoEvacuatedSpaceReferenceVerifier(cardTableRSet, youngSpace);
         fotVerifier = new FOTVerifier(cardTableRSet);
         genCollection = new GenCollection();
@@ -143,6 +172,10 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
         cardTableRSet.initialize(phase);
+        gcWorkerPool.initialize(phase);
+        if (phase == MaxineVM.Phase.RUNNING && CardRefinementThread.isEnabled()) {
+            new CardRefinementThread(cardTableRSet, oldSpace, youngSpace).start();
+        }
     }
 
     /**
@@ -232,7 +265,13 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                 MaxineVM.reportPristineMemoryFailure("reserved space leftover", "deallocate", leftoverSize);
             }
 
-            heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes);
+            if (PauseTimeGoalGenHeapSizingPolicy.hasPauseTimeGoal()) {
+                heapResizingPolicy = new PauseTimeGoalGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes,
+                                UseSurvivorSpaces ? SurvivorRatio : 0, MaxTenuringThreshold, TargetSurvivorRatio);
+            } else {
+                heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes,
+                                UseSurvivorSpaces ? SurvivorRatio : 0, MaxTenuringThreshold, TargetSurvivorRatio);
+            }
             if (!heapAccount().open(numberOfRegions(applicationHeapMaxSize))) {
                 FatalError.unexpected("Failed to create application heap");
             }
@@ -243,6 +282,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // worst case evacuation and the number of fragments of old space available for allocation.
             // Same with the lab size. In non parallel evacuators, this should be all the space available for allocation in a region.
             youngSpaceEvacuator.initialize(1000, false, oldSpace.minReclaimableSpace(), false);
+            youngSpaceEvacuator.setTenuringThreshold(heapResizingPolicy.maxTenuringThreshold());
 
             if (HeapRangeDumper.DumpOnError) {
                 MemoryRegion dumpingCoverage = new MemoryRegion();
@@ -281,6 +321,10 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     final class GenCollection extends GCOperation {
         HeapRegionRangeIterable regionsRangeIterable;
         int fullCollectionCount = 0;
+        /**
+         * Time the last collection completed, as given by {@link System#nanoTime()}. Zero before the first collection.
+         */
+        long lastCollectionEndTime = 0L;
         GenCollection() {
             super("GenCollection");
             regionsRangeIterable = new HeapRegionRangeIterable();
@@ -290,8 +334,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // 1. offset table is correctly setup
             // 2. there are no pointer from old to young.
             // 3. cards are all cleaned (except for those holding special references, which may have been dirtied during reference discovery)
+            // References from old to survivors are legitimate when the young generation ages objects, so 2 and 3 only hold without survivor spaces.
             oldSpace.visit(fotVerifier);
-            oldSpace.visit(noYoungReferencesVerifier);
+            if (!youngSpace.hasSurvivorSpaces()) {
+                oldSpace.visit(noYoungReferencesVerifier);
+            }
         }
 
         /**
@@ -312,8 +359,34 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
         }
 
+        /**
+         * Resize the young generation as directed by the heap sizing policy. Eden is empty at this point.
+         * The young generation is never grown past what the old generation can take in the worst case evacuation.
+         */
+        private void resizeYoungGen(long startTime, long evacuationTime) {
+            final long mutatorTime = lastCollectionEndTime == 0L ? -1L : startTime - lastCollectionEndTime;
+            final Size youngGenSize = youngSpace.committedSpace();
+            final Size newYoungGenSize = heapResizingPolicy.youngGenSizeAfterMinorCollection(youngGenSize, evacuationTime, mutatorTime);
+            if (newYoungGenSize.greaterThan(youngGenSize)) {
+                final Size freeSpace = oldSpace.freeSpace();
+                final Size worstCaseEvac = youngSpace.totalSpace();
+                Size growth = newYoungGenSize.minus(youngGenSize);
+                if (freeSpace.lessEqual(worstCaseEvac)) {
+                    growth = Size.zero();
+                } else if (growth.greaterThan(freeSpace.minus(worstCaseEvac))) {
+                    growth = freeSpace.minus(worstCaseEvac).alignDown(regionSizeInBytes);
+                }
+                if (!growth.isZero()) {
+                    youngSpace.increaseSize(growth);
+                }
+            } else if (newYoungGenSize.lessThan(youngGenSize)) {
+                youngSpace.decreaseSize(youngGenSize.minus(newYoungGenSize));
+            }
+        }
+
         @Override
         protected void collect(int invocationCount) {
+            final long startTime = System.nanoTime();
             // Collector proceeds as follows:
             // 1. evacuate nursery
             // 2. if old gen free space smaller than worst case evacuation (WCE) , do a full collection
@@ -329,11 +402,25 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             if (Heap.verbose()) {
                 Log.println("--Begin nursery evacuation");
             }
+            evacTimers.resetTrackTime();
+            evacTimers.start(TOTAL);
             youngSpaceEvacuator.setGCOperation(this);
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+            final long evacuationStartTime = System.nanoTime();
             youngSpaceEvacuator.evacuate(Heap.logGCPhases());
+            final long evacuationTime = System.nanoTime() - evacuationStartTime;
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
             youngSpaceEvacuator.setGCOperation(null);
+            evacTimers.stop(TOTAL);
+            if (Heap.logGCTime()) {
+                evacTimers.logLastEvacuationTimes(invocationCount);
+            }
+            if (youngSpace.hasSurvivorSpaces()) {
+                youngSpaceEvacuator.setTenuringThreshold(heapResizingPolicy.tenuringThreshold(youngSpaceEvacuator.survivorBytesPerAge()));
+                if (AgingNurseryEvacuator.PrintTenuringDistribution) {
+                    youngSpaceEvacuator.logTenuringDistribution(invocationCount);
+                }
+            }
             if (Heap.verbose()) {
                 Log.println("--End nursery evacuation");
             }
@@ -361,8 +448,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                     FatalError.unimplemented();
                 }
             }
+            // The pause time goal only concerns minor collections: size the young generation to the nursery evacuation time alone.
+            resizeYoungGen(startTime, evacuationTime);
             final GCRequest gcRequest = callingThread().gcRequest;
             gcRequest.lastInvocationCount = invocationCount;
+            lastCollectionEndTime = System.nanoTime();
         }
     }
 
@@ -387,6 +477,12 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         return oldSpace.usedSpace().plus(youngSpace.usedSpace());
     }
 
+    @Override
+    protected void visitHeapSpaces(CellRangeVisitor visitor) {
+        youngSpace.visit(visitor);
+        oldSpace.visit(visitor);
+    }
+
     @Override
     public boolean pin(Object object) {
         return false;
@@ -444,7 +540,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -495,6 +591,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
     }
 
+    @HOSTED_ONLY
+    public XirTemplate[] barrierStubs() {
+        return XirWriteBarrierSpecification.NO_BARRIER_STUBS;
+    }
+
     @Override
     public PhaseLogger phaseLogger() {
         return HeapSchemeLoggerAdaptor.phaseLogger;
@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap.gcx.immix;
+
+import static com.sun.max.vm.VMConfiguration.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
+
+import java.lang.management.*;
+
+import com.sun.management.GarbageCollectorMXBean;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.platform.*;
+import com.sun.max.program.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.util.timer.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.code.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.*;
+import com.sun.max.vm.heap.gcx.rset.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.management.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Region-based, Immix-style mark-region heap scheme.
+ * <p>
+ * Regions are divided into lines of {@code -XX:ImmixLineSize} bytes. The heap is traced with a {@link TricolorHeapMarker}, then swept
+ * precisely: the lines of live objects are marked in a {@link LineMarkTable} kept alongside the color map, and only runs of whole free lines are
+ * reclaimed. These runs are handed to TLABs as free chunks, so that mutators bump-allocate into free lines.
+ * Once the heap is swept, the regions with the fewest marked lines are opportunistically evacuated into empty regions, which keeps fragmentation
+ * in check without ever compacting the whole heap.
+ */
+public final class ImmixHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner {
+    private static final int WORDS_COVERED_PER_BIT = 1;
+    static int ImmixLineSize = 256;
+    static boolean ImmixDefragmentation = true;
+    static int ImmixSparseRegionPercent = 25;
+    static int ImmixMaxEvacuatedRegions = 8;
+    static {
+        VMOptions.addFieldOption("-XX:", "ImmixLineSize", ImmixHeapScheme.class, "Size in bytes of the lines regions are divided into (a power of two)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ImmixDefragmentation", ImmixHeapScheme.class, "Evacuate the sparsest regions after sweeping", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ImmixSparseRegionPercent", ImmixHeapScheme.class,
+            "Percentage of marked lines below which a region is a candidate for evacuation", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ImmixMaxEvacuatedRegions", ImmixHeapScheme.class, "Maximum number of regions evacuated per GC", Phase.PRISTINE);
+    }
+
+    /**
+     * Marking algorithm used to trace the heap.
+     */
+    private final TricolorHeapMarker heapMarker;
+
+    /**
+     * Workers helping with the parallel phases of a collection.
+     */
+    private final GCWorkerPool gcWorkerPool;
+
+    /**
+     * Line marks of the heap regions, set when the space is swept.
+     */
+    private final LineMarkTable lineMarks;
+
+    /**
+     * Space where objects are allocated from. Swept with {@link #lineMarks}, so that it only reclaims free lines.
+     */
+    private final FirstFitMarkSweepSpace<ImmixHeapScheme> immixSpace;
+
+    /**
+     * Evacuator of the live objects of the sparsest regions.
+     */
+    private final RegionCompactingEvacuator defragmenter;
+
+    /**
+     * Array holding the regions selected for evacuation. Allocated at heap initialization if defragmentation is enabled.
+     */
+    private int [] evacuationCandidates;
+
+    private final AtomicPinCounter pinnedCounter = MaxineVM.isDebug() ? new AtomicPinCounter() : null;
+
+    final ImmixCollection collect = new ImmixCollection();
+
+    /**
+     * An instance of an after mark sweep verifier to use for heap verification after a collection.
+     */
+    final AfterMarkSweepVerifier afterGCVerifier;
+
+    private final EvacuationTimers evacTimers = new EvacuationTimers();
+
+    private final Evacuator.PhaseLogger phaseLogger = new Evacuator.PhaseLogger();
+
+    @HOSTED_ONLY
+    public ImmixHeapScheme() {
+        super();
+        final HeapAccount<ImmixHeapScheme> heapAccount = new HeapAccount<ImmixHeapScheme>(this);
+        final ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator =
+            new ChunkListAllocator<RegionChunkListRefillManager>(new RegionChunkListRefillManager());
+        final AtomicBumpPointerAllocator<RegionOverflowAllocatorRefiller> overflowAllocator =
+            new AtomicBumpPointerAllocator<RegionOverflowAllocatorRefiller>(new RegionOverflowAllocatorRefiller());
+        immixSpace = new FirstFitMarkSweepSpace<ImmixHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, false, NullDeadSpaceListener.nullDeadSpaceListener(), 0);
+        lineMarks = new LineMarkTable();
+        immixSpace.setLineMarks(lineMarks);
+        heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
+        gcWorkerPool = new GCWorkerPool();
+        heapMarker.enableParallelMarking(gcWorkerPool);
+        defragmenter = new RegionCompactingEvacuator(immixSpace, heapMarker);
+        defragmenter.setTimers(evacTimers);
+        defragmenter.setPhaseLogger(phaseLogger);
+        afterGCVerifier = new AfterMarkSweepVerifier(heapMarker, immixSpace, AfterMarkSweepBootHeapVerifier.makeVerifier(heapMarker, this));
+        pinningSupportFlags = PIN_SUPPORT_FLAG.makePinSupportFlags(true, false, true);
+    }
+
+    @Override
+    public void initialize(MaxineVM.Phase phase) {
+        super.initialize(phase);
+        gcWorkerPool.initialize(phase);
+        if (phase == Phase.RUNNING && HeapResizingPolicy.uncommitsIdleHeap()) {
+            new HeapUncommitThread(collect.heapResizingPolicy).start();
+        }
+    }
+
+    /**
+     * Allocate memory for both the heap and the GC's data structures (mark bitmaps, line marks, marking stacks, etc.).
+     */
+    @Override
+    protected void allocateHeapAndGCStorage() {
+        final Size reservedSpace = Size.K.times(reservedVirtualSpaceKB());
+        final Size initSize = Heap.initialSize();
+        final Size maxSize = Heap.maxSize();
+        final int pageSize = Platform.platform().pageSize;
+
+        // Verify that the constraint of the heap scheme are met:
+        FatalError.check(Heap.bootHeapRegion.start() == Heap.startOfReservedVirtualSpace(),
+            "Boot heap region must be mapped at start of reserved virtual space");
+
+        final Address endOfCodeRegion = Code.getCodeManager().getRuntimeOptCodeRegion().end();
+        final Address endOfReservedSpace = Heap.bootHeapRegion.start().plus(reservedSpace);
+
+        // Initialize the heap region manager.
+        final Address  firstUnusedByteAddress = endOfCodeRegion;
+        theHeapRegionManager().initialize(firstUnusedByteAddress, endOfReservedSpace, maxSize, HeapRegionInfo.class, 0);
+        // All reserved space (but the one used by the heap region manager) is now uncommitted.
+        FatalError.check(HeapRegionConstants.log2RegionSizeInBytes >= heapMarker.log2BitmapWord, "Region size too small for heap marker");
+
+        try {
+            enableCustomAllocation(theHeapRegionManager().allocator());
+            final MemoryRegion heapBounds = theHeapRegionManager().bounds();
+            final Size applicationHeapMaxSize = heapBounds.size().minus(theHeapRegionManager().size());
+
+            // Compute space needed by the heap marker and the line marks. Both are proportional to the size of the traced space.
+            final Size heapMarkerDatasize = heapMarker.memoryRequirement(heapBounds.size());
+            final Size lineMarksDataSize = LineMarkTable.memoryRequirement(heapBounds.size(), ImmixLineSize);
+
+            // Heap Marker Data are allocated at end of the space reserved to the heap regions, followed by the line marks.
+            final Address heapMarkerDataStart = heapBounds.end().roundedUpBy(pageSize);
+            final Address lineMarksDataStart = heapMarkerDataStart.plus(heapMarkerDatasize).roundedUpBy(pageSize);
+            // Address to the first reserved byte unused by the heap scheme.
+            final Address unusedReservedSpaceStart = lineMarksDataStart.plus(lineMarksDataSize).roundedUpBy(pageSize);
+
+            if (!unusedReservedSpaceStart.greaterThan(Heap.startOfReservedVirtualSpace())) {
+                MaxineVM.reportPristineMemoryFailure("heap marker data", "reserve", heapMarkerDatasize);
+            }
+
+            if (!immixSpace.heapAccount().open(HeapRegionConstants.numberOfRegions(applicationHeapMaxSize))) {
+                FatalError.unexpected("Failed to create application heap");
+            }
+
+            // The line size must be known before the space is initialized, as it bounds the minimum reclaimable space.
+            if (!VirtualMemory.commitMemory(lineMarksDataStart, lineMarksDataSize,  VirtualMemory.Type.DATA)) {
+                MaxineVM.reportPristineMemoryFailure("lineMarksDataStart", "commit", lineMarksDataSize);
+            }
+            lineMarks.initialize(heapBounds.start(), heapBounds.size(), ImmixLineSize, lineMarksDataStart);
+
+            immixSpace.initialize(initSize, applicationHeapMaxSize);
+            if (!VirtualMemory.commitMemory(heapMarkerDataStart, heapMarkerDatasize,  VirtualMemory.Type.DATA)) {
+                MaxineVM.reportPristineMemoryFailure("heapMarkerDataStart", "commit", heapMarkerDatasize);
+            }
+            heapMarker.initialize(heapBounds.start(), heapBounds.end(), heapMarkerDataStart, heapMarkerDatasize);
+
+            if (defragments()) {
+                evacuationCandidates = new int[ImmixMaxEvacuatedRegions];
+            }
+            // Free leftover of reserved space we will not be using.
+            Size leftoverSize = endOfReservedSpace.minus(unusedReservedSpaceStart).asSize();
+            if (VirtualMemory.deallocate(unusedReservedSpaceStart, leftoverSize, VirtualMemory.Type.DATA).isZero()) {
+                MaxineVM.reportPristineMemoryFailure("reserved space leftover", "deallocate", leftoverSize);
+            }
+            //  Make the heap (and mark bitmap) inspectable
+            HeapScheme.Inspect.init(false);
+            HeapScheme.Inspect.notifyHeapRegions(heapBounds, heapMarker.memory(), lineMarks.memory);
+        } finally {
+            disableCustomAllocation();
+        }
+        theHeapRegionManager().checkOutgoingReferences();
+    }
+
+    /**
+     * Indicates whether the sparsest regions are evacuated after sweeping.
+     */
+    @INLINE
+    private static boolean defragments() {
+        return ImmixDefragmentation && ImmixMaxEvacuatedRegions > 0;
+    }
+
+    private static final class ImmixGCRequest extends GCRequest {
+        protected ImmixGCRequest(VmThread thread) {
+            super(thread);
+        }
+    }
+
+    public GCRequest createThreadLocalGCRequest(VmThread vmThread) {
+        return new ImmixGCRequest(vmThread);
+    }
+
+    public boolean collectGarbage() {
+        final GCRequest gcRequest = VmThread.current().gcRequest;
+        final Size usedSpaceBefore = immixSpace.usedSpace();
+        collect.submit();
+        if (gcRequest.explicit) {
+            return true;
+        }
+        return usedSpaceBefore.minus(immixSpace.usedSpace()).greaterThan(gcRequest.requestedBytes);
+    }
+
+    public boolean contains(Address address) {
+        return  theHeapRegionManager().contains(address);
+    }
+
+    public Size reportFreeSpace() {
+        return immixSpace.freeSpace();
+    }
+
+    public Size reportUsedSpace() {
+        return immixSpace.usedSpace();
+    }
+
+    @Override
+    protected void visitHeapSpaces(CellRangeVisitor visitor) {
+        immixSpace.visit(visitor);
+    }
+
+    @Override
+    public boolean decreaseMemory(Size amount) {
+        HeapScheme.Inspect.notifyDecreaseMemoryRequested(amount);
+        return !immixSpace.uncommitEmptyRegions(amount).isZero();
+    }
+
+    @Override
+    public GarbageCollectorMXBean getGarbageCollectorMXBean() {
+        return new ImmixGarbageCollectorMXBean();
+    }
+
+    private final class ImmixGarbageCollectorMXBean extends HeapSchemeAdaptor.GarbageCollectorMXBeanAdaptor {
+        private ImmixGarbageCollectorMXBean() {
+            super("Immix");
+            add(new ImmixMemoryPoolMXBean("Immix Heap", this));
+        }
+    }
+
+    private final class ImmixMemoryPoolMXBean extends MemoryPoolMXBeanAdaptor {
+        ImmixMemoryPoolMXBean(String name, MemoryManagerMXBean manager) {
+            super(MemoryType.HEAP, new MemoryRegion(name), manager);
+        }
+
+        @Override
+        public MemoryUsage getUsage() {
+            return new MemoryUsage(-1, immixSpace.usedSpace().toLong(), immixSpace.totalSpace().toLong(), immixSpace.capacity().toLong());
+        }
+    }
+
+    @INLINE
+    public boolean pin(Object object) {
+        if (defragments()) {
+            // Objects of sparse regions may be evacuated.
+            return false;
+        }
+        // Objects never relocate. So this is always safe.
+        if (MaxineVM.isDebug()) {
+            pinnedCounter.increment();
+        }
+        return true;
+    }
+
+    @INLINE
+    public void unpin(Object object) {
+        if (MaxineVM.isDebug()) {
+            pinnedCounter.decrement();
+        }
+    }
+
+    @INLINE
+    public void writeBarrier(Reference from, Reference to) {
+    }
+
+    /**
+     * Class implementing the garbage collection routine.
+     * This is the {@link VmOperationThread}'s entry point to garbage collection.
+     */
+    final class ImmixCollection extends GCOperation {
+        ImmixCollection() {
+            super("ImmixCollection");
+        }
+
+        private final TimerMetric reclaimTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
+        private final TimerMetric defragTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
+        private final TimerMetric totalPauseTime = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
+
+        private boolean traceGCTimes = false;
+
+        private HeapResizingPolicy heapResizingPolicy = new HeapResizingPolicy();
+
+        private void startTimer(Timer timer) {
+            if (traceGCTimes) {
+                timer.start();
+            }
+        }
+        private void stopTimer(Timer timer) {
+            if (traceGCTimes) {
+                timer.stop();
+            }
+        }
+
+        private void reportLastGCTimes() {
+            final boolean lockDisabledSafepoints = Log.lock();
+            heapMarker.reportLastElapsedTimes();
+            Log.print(", sweeping=");
+            Log.print(reclaimTimer.getLastElapsedTime());
+            if (defragments()) {
+                Log.print(", defragmenting=");
+                Log.print(defragTimer.getLastElapsedTime());
+            }
+            Log.print(", total=");
+            Log.println(totalPauseTime.getLastElapsedTime());
+            Log.unlock(lockDisabledSafepoints);
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            final long startTime = System.currentTimeMillis();
+            final boolean traceGCPhases = Heap.logGCPhases();
+            traceGCTimes = Heap.logGCTime();
+            startTimer(totalPauseTime);
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+
+            vmConfig().monitorScheme().beforeGarbageCollection();
+            immixSpace.doBeforeGC();
+            collectionCount++;
+
+            theHeapRegionManager().checkOutgoingReferences();
+
+            immixSpace.mark(heapMarker);
+
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
+            if (traceGCPhases) {
+                Log.println("BEGIN: Sweeping");
+            }
+            startTimer(reclaimTimer);
+            // Line marking requires a precise sweep. Line marks are only valid until the end of the collection, so sweeping is never lazy.
+            immixSpace.sweep(heapMarker, false);
+            stopTimer(reclaimTimer);
+            if (traceGCPhases) {
+                Log.println("END: Sweeping");
+            }
+
+            if (defragments()) {
+                if (traceGCPhases) {
+                    Log.println("BEGIN: Defragmenting");
+                }
+                startTimer(defragTimer);
+                final int numEvacuated = immixSpace.evacuateSparseRegions(defragmenter, evacuationCandidates, ImmixSparseRegionPercent, this);
+                stopTimer(defragTimer);
+                if (traceGCPhases) {
+                    Log.print("END: Defragmenting, evacuated regions: ");
+                    Log.println(numEvacuated);
+                }
+            }
+            Size freeSpaceAfterGC = immixSpace.freeSpace();
+
+            if (VerifyAfterGC) {
+                afterGCVerifier.run();
+            }
+            vmConfig().monitorScheme().afterGarbageCollection();
+
+            heapResizingPolicy.recordCollection(System.currentTimeMillis() - startTime);
+            heapResizingPolicy.resizeAfterCollection(freeSpaceAfterGC, immixSpace);
+            immixSpace.doAfterGC();
+
+            final GCRequest gcRequest = callingThread().gcRequest;
+            gcRequest.lastInvocationCount = invocationCount;
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
+            stopTimer(totalPauseTime);
+
+            if (traceGCTimes) {
+                reportLastGCTimes();
+            }
+        }
+    }
+
+    private Size setNextTLABChunk(Pointer chunk) {
+        if (MaxineVM.isDebug()) {
+            FatalError.check(!chunk.isZero(), "TLAB chunk must not be null");
+            FatalError.check(HeapFreeChunk.getFreechunkSize(chunk).greaterEqual(immixSpace.minReclaimableSpace()), "TLAB chunk must be greater than min reclaimable space");
+        }
+        Size chunkSize =  HeapFreeChunk.getFreechunkSize(chunk);
+        Address nextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
+        Size effectiveSize = chunkSize.minus(tlabHeadroom());
+        // Zap chunk data to leave allocation area clean.
+        Memory.clearWords(chunk, effectiveSize.unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt());
+        chunk.plus(effectiveSize).setWord(nextChunk);
+        return effectiveSize;
+    }
+
+    @INLINE
+    private Size setNextTLABChunk(Pointer etla, Pointer nextChunk) {
+        Size nextChunkEffectiveSize = setNextTLABChunk(nextChunk);
+        fastRefillTLAB(etla, nextChunk, nextChunkEffectiveSize);
+        return nextChunkEffectiveSize;
+    }
+
+    /**
+     * Check if moving to the next run of free lines of the TLAB may satisfy the allocation request. If not, allocate directly from the space,
+     * otherwise, refill the TLAB with the next run of free lines and allocate from it.
+     *
+     * @param etla Pointer to enabled VMThreadLocals
+     * @param tlabMark current mark of the TLAB
+     * @param tlabHardLimit soft end of the current TLAB
+     * @param chunk next chunk of this TLAB
+     * @param size requested amount of memory
+     * @return a pointer to the allocated memory
+     */
+    private Pointer changeTLABChunkOrAllocate(Pointer etla, Pointer tlabMark, Pointer tlabHardLimit, Pointer chunk, Size size) {
+        Size chunkSize =  HeapFreeChunk.getFreechunkSize(chunk);
+        if (size.greaterThan(chunkSize.minus(minObjectSize())))  {
+            // Don't bother with searching another run of free lines that fits. Allocate directly in the heap.
+            return immixSpace.allocate(size);
+        }
+        Address nextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
+        // We will not reuse the leftover, turn it into dark matter.
+        DarkMatter.format(tlabMark, tlabHardLimit);
+        Size effectiveSize = chunkSize.minus(tlabHeadroom());
+        // Zap chunk data to leave allocation area clean.
+        Memory.clearWords(chunk, effectiveSize.unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt());
+        chunk.plus(effectiveSize).setWord(nextChunk);
+        fastRefillTLAB(etla, chunk, effectiveSize);
+        return tlabAllocate(size);
+    }
+
+    /**
+     * Allocate a chunk of memory of the specified size and refill a thread's TLAB with it.
+     * @param etla the thread whose TLAB will be refilled
+     * @param tlabSize the size of the chunk of memory used to refill the TLAB
+     */
+    private void allocateAndRefillTLAB(Pointer etla, Size tlabSize) {
+        Pointer tlab = immixSpace.allocateTLAB(tlabSize);
+        Size effectiveSize = setNextTLABChunk(tlab);
+        refillTLAB(etla, tlab, effectiveSize);
+    }
+
+    @Override
+    protected Pointer customAllocate(Pointer customAllocator, Size size) {
+        return BaseAtomicBumpPointerAllocator.asBumpPointerAllocator(Reference.fromOrigin(Layout.cellToOrigin(customAllocator)).toJava()).allocateCleared(size);
+    }
+
+    @Override
+    @NEVER_INLINE
+    protected Pointer handleTLABOverflow(Size size, Pointer etla, Pointer tlabMark, Pointer tlabEnd) {
+        final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+        if (refillPolicy == null) {
+            // No policy yet for the current thread. This must be the first time this thread uses a TLAB (it does not have one yet).
+            ProgramError.check(tlabMark.isZero(), "thread must not have a TLAB yet");
+            if (!usesTLAB()) {
+                // We're not using TLAB. So let's assign the never refill tlab policy.
+                TLABRefillPolicy.setForCurrentThread(etla, NEVER_REFILL_TLAB);
+                return immixSpace.allocate(size);
+            }
+            // Allocate an initial TLAB and a refill policy. For simplicity, this one is allocated from the TLAB (see comment below).
+            final Size tlabSize = initialTlabSize();
+            allocateAndRefillTLAB(etla, tlabSize);
+            // The TLAB is refilled, and no-one except the current thread can use it. So the tlab allocation is going to succeed here.
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
+            // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
+            // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
+            return tlabAllocate(size);
+        }
+        final Size nextTLABSize = refillPolicy.nextTlabSize();
+        if (size.greaterThan(nextTLABSize)) {
+            // This couldn't be allocated in a TLAB, so go directly to direct allocation routine.
+            return immixSpace.allocate(size);
+        }
+        // TLAB may have been wiped out by a previous direct allocation routine.
+        if (!tlabEnd.isZero()) {
+            final Pointer hardLimit = tlabEnd.plus(tlabHeadroom());
+            final Pointer nextChunk = tlabEnd.getWord().asPointer();
+
+            final Pointer cell = tlabMark;
+            if (cell.plus(size).equals(hardLimit)) {
+                // Can actually fit the object in space left.
+                // zero-fill the headroom we left.
+                Memory.clearWords(tlabEnd, tlabHeadroomNumWords());
+                if (nextChunk.isZero()) {
+                    // Zero-out TLAB top and mark.
+                    fastRefillTLAB(etla, Pointer.zero(), Size.zero());
+                } else {
+                    // TLAB has another run of free lines. Set it.
+                    setNextTLABChunk(etla, nextChunk);
+                }
+                return cell;
+            } else if (!(cell.equals(hardLimit) || nextChunk.isZero())) {
+                // We have another run of free lines, and we're not to limit yet. So we may move to it to satisfy the request.
+                return changeTLABChunkOrAllocate(etla, tlabMark, hardLimit, nextChunk, size);
+            }
+
+            if (!refillPolicy.shouldRefill(size, tlabMark)) {
+                // Size would fit in a new tlab, but the policy says we shouldn't refill the tlab yet, so allocate directly in the heap.
+                return immixSpace.allocate(size);
+            }
+        }
+        // Refill TLAB and allocate (we know the request can be satisfied with a fresh TLAB and will therefore succeed).
+        allocateAndRefillTLAB(etla, nextTLABSize);
+        return tlabAllocate(size);
+    }
+
+    @Override
+    public HeapAccount<ImmixHeapScheme> heapAccount() {
+        return immixSpace.heapAccount();
+    }
+
+    @Override
+    public PhaseLogger phaseLogger() {
+        return HeapSchemeLoggerAdaptor.phaseLogger;
+    }
+
+    @Override
+    public TimeLogger timeLogger() {
+        return HeapSchemeLoggerAdaptor.timeLogger;
+    }
+}
@@ -26,19 +26,30 @@ import static com.sun.max.vm.VMConfiguration.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
+import java.lang.management.*;
+
+import com.sun.cri.ci.CiAddress.Scale;
+import com.sun.cri.ci.*;
+import com.sun.cri.xir.*;
+import com.sun.cri.xir.CiXirAssembler.XirLabel;
+import com.sun.cri.xir.CiXirAssembler.XirOperand;
+import com.sun.management.GarbageCollectorMXBean;
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.platform.*;
 import com.sun.max.program.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.util.*;
 import com.sun.max.util.timer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.debug.*;
 import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.heap.gcx.rset.*;
 import com.sun.max.vm.layout.*;
+import com.sun.max.vm.management.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.thread.*;
@@ -46,23 +57,74 @@ import com.sun.max.vm.thread.*;
 /**
  * Region-based Mark Sweep + Evacuation-based defragmentation Heap Scheme.
  * Used for testing region-based support.
+ * <p>
+ * With {@code -XX:+ConcurrentMarking}, the heap is also traced concurrently with mutators once its occupancy reaches
+ * {@code -XX:ConcurrentMarkingOccupancyPercent}. A concurrent marking cycle only stops mutators for an initial-mark pause,
+ * which marks the roots, and a remark pause, which completes marking and reclaims space.
+ * In between, a marker thread traces the heap incrementally while a snapshot-at-the-beginning (SATB) pre-write barrier logs the references
+ * overwritten by mutators in {@link SATBQueueSet per-thread buffers}. Objects allocated during the cycle are considered live.
+ * A stop-the-world collection requested during a cycle aborts it.
+ * <p>
+ * The SATB barriers are only compiled into images built with the {@value #SATB_BARRIERS_PROPERTY} system property set,
+ * so that images that never mark concurrently don't pay for them. {@code -XX:+ConcurrentMarking} is ignored by other images.
  */
-public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner {
+public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner, XirWriteBarrierSpecification {
     private static final int WORDS_COVERED_PER_BIT = 1;
     static boolean DumpFragStatsAfterGC = false;
     static boolean DumpFragStatsAtGCFailure = false;
     static boolean DoImpreciseSweep = false;
+    static boolean CompactFragmentedRegions = false;
+    static int CompactionFragmentationThreshold = 50;
+    static int MaxCompactedRegions = 8;
+    static boolean ConcurrentMarking = false;
+    static int ConcurrentMarkingOccupancyPercent = 45;
+    static int ConcurrentMarkingStepSize = 1024;
+    static int ConcurrentMarkingPollInterval = 10;
+
+    /**
+     * Image build time property enabling the SATB pre-write barriers needed by {@code -XX:+ConcurrentMarking}.
+     */
+    private static final String SATB_BARRIERS_PROPERTY = "max.heap.mse.satb";
+
+    /**
+     * Whether the image is built with SATB pre-write barriers.
+     */
+    static final boolean SATBBarriers = System.getProperty(SATB_BARRIERS_PROPERTY) != null;
+
     static {
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAfterGC", MSEHeapScheme.class, "Dump region fragmentation stats after GC", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAtGCFailure", MSEHeapScheme.class, "Dump region fragmentation when GC failed to reclaim enough space", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DoImpreciseSweep", MSEHeapScheme.class, "Control whether to do precise or imprecise sweep", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactFragmentedRegions", MSEHeapScheme.class,
+            "Evacuate the live objects of the most fragmented regions into empty regions after sweeping (precise sweep only)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactionFragmentationThreshold", MSEHeapScheme.class,
+            "Percentage of free space broken into multiple chunks per region beyond which fragmented regions are compacted", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MaxCompactedRegions", MSEHeapScheme.class, "Maximum number of regions compacted per GC", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarking", MSEHeapScheme.class,
+            "Trace the heap concurrently with mutators, stopping them only for initial-mark and remark pauses", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkingOccupancyPercent", MSEHeapScheme.class,
+            "Percentage of the heap in use beyond which a concurrent marking cycle is started", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkingStepSize", MSEHeapScheme.class,
+            "Number of objects traced by the concurrent marker between two safepoint polls", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkingPollInterval", MSEHeapScheme.class,
+            "Interval in milliseconds at which the concurrent marker checks heap occupancy", Phase.PRISTINE);
     }
 
+    /**
+     * Runtime entry called by the out-of-line part of the SATB pre-write barriers emitted in XIR templates.
+     */
+    private static final CriticalMethod satbEnqueueMethod = new CriticalMethod(MSEHeapScheme.class, "satbEnqueue", null);
+
     /**
      * Marking algorithm used to trace the heap.
      */
     private final TricolorHeapMarker heapMarker;
 
+    /**
+     * Workers helping with the parallel phases of a collection.
+     */
+    private final GCWorkerPool gcWorkerPool;
+
     /**
      * Space where objects are allocated from by default.
      */
@@ -72,6 +134,27 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     final MarkSweepCollection collect = new MarkSweepCollection();
 
+    final InitialMark initialMark = new InitialMark();
+
+    final Remark remark = new Remark();
+
+    /**
+     * Queues of the references logged by the SATB pre-write barrier during a concurrent marking cycle.
+     */
+    private final SATBQueueSet satbQueues;
+
+    /**
+     * Indicates whether a concurrent marking cycle is in progress, i.e., between the initial-mark pause and either the remark pause or
+     * a stop-the-world collection aborting it. Only updated by the VM operation thread.
+     */
+    private volatile boolean concurrentMarkingInProgress;
+
+    /**
+     * Stub called out-of-line by the SATB pre-write barriers of XIR templates. Built with the first barrier.
+     */
+    @HOSTED_ONLY
+    private XirTemplate satbEnqueueStub;
+
     /**
      * An instance of an after mark sweep verifier to use for heap verification after a mark sweep.
      * @see Sweeper
@@ -80,6 +163,22 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     private HeapRegionStatistics fragmentationStats;
 
+    /**
+     * Evacuator of the live objects of the regions selected for compaction.
+     */
+    private final RegionCompactingEvacuator compactor;
+
+    /**
+     * Array holding the regions selected for compaction. Allocated at heap initialization if compaction is enabled.
+     */
+    private int [] compactionCandidates;
+
+    private final EvacuationTimers evacTimers = new EvacuationTimers();
+
+    private final Evacuator.PhaseLogger phaseLogger = new Evacuator.PhaseLogger();
+
+    private final DebugHeap.DetailLogger detailLogger = new DebugHeap.DetailLogger();
+
     /**
      * The application heap. Currently, where all dynamic allocation takes place.
      */
@@ -95,6 +194,15 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             new AtomicBumpPointerAllocator<RegionOverflowAllocatorRefiller>(new RegionOverflowAllocatorRefiller());
         markSweepSpace = new FirstFitMarkSweepSpace<MSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, false, NullDeadSpaceListener.nullDeadSpaceListener(), 0);
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
+        gcWorkerPool = new GCWorkerPool();
+        heapMarker.enableParallelMarking(gcWorkerPool);
+        satbQueues = new SATBQueueSet();
+        compactor = new RegionCompactingEvacuator(markSweepSpace, heapMarker);
+        compactor.setTimers(evacTimers);
+        compactor.setPhaseLogger(phaseLogger);
+        if (MaxineVM.isDebug()) {
+            compactor.setDetailLogger(detailLogger);
+        }
         afterGCVerifier = new AfterMarkSweepVerifier(heapMarker, markSweepSpace, AfterMarkSweepBootHeapVerifier.makeVerifier(heapMarker, this));
         pinningSupportFlags = PIN_SUPPORT_FLAG.makePinSupportFlags(true, false, true);
     }
@@ -102,6 +210,18 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     @Override
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
+        gcWorkerPool.initialize(phase);
+        satbQueues.initialize(phase);
+        if (phase == Phase.RUNNING && ConcurrentMarking) {
+            if (SATBBarriers) {
+                new ConcurrentMarkerThread().start();
+            } else {
+                Log.println("WARNING: -XX:+ConcurrentMarking ignored: image built without SATB barriers (see " + SATB_BARRIERS_PROPERTY + ")");
+            }
+        }
+        if (phase == Phase.RUNNING && HeapResizingPolicy.uncommitsIdleHeap()) {
+            new HeapUncommitThread(collect.heapResizingPolicy).start();
+        }
     }
 
     /**
@@ -155,9 +275,12 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             }
             heapMarker.initialize(heapBounds.start(), heapBounds.end(), heapMarkerDataStart, heapMarkerDatasize);
 
-            if (DumpFragStatsAfterGC || DumpFragStatsAtGCFailure) {
+            if (DumpFragStatsAfterGC || DumpFragStatsAtGCFailure || compacts()) {
                 fragmentationStats = new HeapRegionStatistics(markSweepSpace.minReclaimableSpace());
             }
+            if (compacts()) {
+                compactionCandidates = new int[MaxCompactedRegions];
+            }
             // Free leftover of reserved space we will not be using.
             Size leftoverSize = endOfReservedSpace.minus(unusedReservedSpaceStart).asSize();
             if (VirtualMemory.deallocate(unusedReservedSpaceStart, leftoverSize, VirtualMemory.Type.DATA).isZero()) {
@@ -173,8 +296,18 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         theHeapRegionManager().checkOutgoingReferences();
     }
 
+    /**
+     * Indicates whether fragmented regions are compacted after sweeping.
+     * Compaction relies on a precise sweep for the regions it scans for references to compacted objects to be free of dead objects.
+     */
+    @INLINE
+    private static boolean compacts() {
+        return CompactFragmentedRegions && !DoImpreciseSweep && MaxCompactedRegions > 0;
+    }
+
     private void reportFragmentationStats(boolean reclaimedEnoughSpace) {
         if (DumpFragStatsAfterGC || (!reclaimedEnoughSpace && DumpFragStatsAtGCFailure)) {
+            markSweepSpace.completeLazySweep();
             fragmentationStats.reportStats(heapAccount());
         }
     }
@@ -221,6 +354,14 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             return true;
         }
         collect.submit();
+        if (markSweepSpace.hasUnsweptRegions()) {
+            // Sweep lazily until the space has reclaimed enough to be back under its occupancy before the collection,
+            // so that a lazy sweep reports success in the same cases an eager sweep would.
+            final Size totalSpace = markSweepSpace.totalSpace();
+            if (totalSpace.greaterThan(usedSpaceBefore)) {
+                markSweepSpace.sweepLazilyUntil(totalSpace.minus(usedSpaceBefore));
+            }
+        }
         if (MaxineVM.isDebug()) {
             usedSpaceAfterLastGC = markSweepSpace.usedSpace().toLong();
         }
@@ -234,15 +375,69 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     }
 
     public Size reportFreeSpace() {
-        return markSweepSpace.freeSpace();
+        return markSweepSpace.estimatedFreeSpace();
     }
 
     public Size reportUsedSpace() {
-        return markSweepSpace.usedSpace();
+        return markSweepSpace.estimatedUsedSpace();
+    }
+
+    @Override
+    protected void visitHeapSpaces(CellRangeVisitor visitor) {
+        markSweepSpace.visit(visitor);
+    }
+
+    @Override
+    public boolean decreaseMemory(Size amount) {
+        HeapScheme.Inspect.notifyDecreaseMemoryRequested(amount);
+        return !markSweepSpace.uncommitEmptyRegions(amount).isZero();
+    }
+
+    @Override
+    public GarbageCollectorMXBean getGarbageCollectorMXBean() {
+        return new MSEGarbageCollectorMXBean();
+    }
+
+    private final class MSEGarbageCollectorMXBean extends HeapSchemeAdaptor.GarbageCollectorMXBeanAdaptor {
+        private MSEGarbageCollectorMXBean() {
+            super("MSE");
+            final int numNumaNodes = theHeapRegionManager().numNumaNodes();
+            if (numNumaNodes == 1) {
+                add(new MSEMemoryPoolMXBean("MSE Heap", 0, this));
+            } else {
+                for (int node = 0; node < numNumaNodes; node++) {
+                    add(new MSEMemoryPoolMXBean("MSE Heap node " + node, node, this));
+                }
+            }
+        }
+    }
+
+    /**
+     * Memory pool reporting the occupancy of the heap on a NUMA node, or of the whole heap if it isn't NUMA-aware.
+     */
+    private final class MSEMemoryPoolMXBean extends MemoryPoolMXBeanAdaptor {
+        private final int node;
+
+        MSEMemoryPoolMXBean(String name, int node, MemoryManagerMXBean manager) {
+            super(MemoryType.HEAP, new MemoryRegion(name), manager);
+            this.node = node;
+        }
+
+        @Override
+        public MemoryUsage getUsage() {
+            if (theHeapRegionManager().numNumaNodes() == 1) {
+                return new MemoryUsage(-1, markSweepSpace.estimatedUsedSpace().toLong(), markSweepSpace.totalSpace().toLong(), markSweepSpace.capacity().toLong());
+            }
+            return new MemoryUsage(-1, markSweepSpace.usedSpaceOnNode(node).toLong(), markSweepSpace.committedSpaceOnNode(node).toLong(), -1);
+        }
     }
 
     @INLINE
     public boolean pin(Object object) {
+        if (compacts()) {
+            // Objects may be relocated by compaction.
+            return false;
+        }
         // Objects never relocate. So this is always safe.
         if (MaxineVM.isDebug()) {
             pinnedCounter.increment();
@@ -261,6 +456,236 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     public void writeBarrier(Reference from, Reference to) {
     }
 
+    @INLINE
+    @Override
+    public boolean needsBarrier(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        return SATBBarriers && writeBarrierSpec.isSet(WriteBarrierSpec.PRE_WRITE);
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref, Offset offset, Reference value) {
+        if (SATBBarriers && satbQueues.isActive()) {
+            final Reference previous = ref.readReference(offset);
+            if (!previous.isZero()) {
+                satbQueues.enqueue(previous);
+            }
+        }
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref,  int displacement, int index, Reference value) {
+        if (SATBBarriers && satbQueues.isActive()) {
+            final Reference previous = ref.getReference(displacement, index);
+            if (!previous.isZero()) {
+                satbQueues.enqueue(previous);
+            }
+        }
+    }
+
+    /**
+     * Log a reference about to be overwritten. Called by the out-of-line part of the SATB pre-write barriers emitted in XIR templates,
+     * which already checked that the reference is non-null and that the barrier is active.
+     *
+     * @param previous the reference about to be overwritten
+     */
+    public static void satbEnqueue(Object previous) {
+        final MSEHeapScheme heapScheme = (MSEHeapScheme) vmConfig().heapScheme();
+        heapScheme.satbQueues.enqueue(Reference.fromJava(previous));
+    }
+
+    @HOSTED_ONLY
+    private XirTemplate satbEnqueueStub(CiXirAssembler asm) {
+        if (satbEnqueueStub == null) {
+            final CiXirAssembler stubAsm = asm.copy();
+            stubAsm.restart(CiKind.Void);
+            final XirOperand previous = stubAsm.createInputParameter("previous", CiKind.Object);
+            stubAsm.callRuntime(satbEnqueueMethod.classMethodActor, null, previous);
+            satbEnqueueStub = stubAsm.finishStub("stub-satbEnqueue");
+        }
+        return satbEnqueueStub;
+    }
+
+    /**
+     * Generate a SATB pre-write barrier. The barrier only tests whether the SATB queues are active in line. The overwritten reference
+     * is loaded and logged out-of-line.
+     *
+     * @param asm the assembler
+     * @param cell the cell holding the reference about to be overwritten
+     * @param offsetOrIndex a field offset if {@code isArray} is false, an element index otherwise
+     * @param isArray whether the cell is a reference array
+     */
+    @HOSTED_ONLY
+    private void genSATBPreWriteBarrier(CiXirAssembler asm, XirOperand cell, XirOperand offsetOrIndex, boolean isArray) {
+        final XirTemplate stub = satbEnqueueStub(asm);
+        final XirOperand active = asm.createTemp("satbActive", CiKind.Int);
+        final XirOperand previous = asm.createTemp("previous", CiKind.Object);
+        final XirLabel done = asm.createInlineLabel("satbDone");
+        final XirLabel log = asm.createOutOfLineLabel("satbLog");
+        asm.pload(CiKind.Int, active, asm.o(satbQueues), asm.i(SATBQueueSet.activeOffset()), false);
+        asm.jneq(log, active, asm.i(0));
+        asm.bindInline(done);
+
+        asm.bindOutOfLine(log);
+        if (isArray) {
+            final int disp = Layout.referenceArrayLayout().getElementOffsetFromOrigin(0).toInt();
+            asm.pload(CiKind.Object, previous, cell, offsetOrIndex, disp, Scale.fromInt(Word.size()), false);
+        } else {
+            asm.pload(CiKind.Object, previous, cell, offsetOrIndex, false);
+        }
+        asm.jeq(done, previous, asm.o(null));
+        asm.callStub(stub, null, previous);
+        asm.jmp(done);
+    }
+
+    @HOSTED_ONLY
+    public XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        if (!SATBBarriers) {
+            return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+        }
+        if (writeBarrierSpec.equals(TUPLE_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    genSATBPreWriteBarrier(asm, operands[0], operands[1], false);
+                }
+            };
+        } else if (writeBarrierSpec.equals(ARRAY_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    genSATBPreWriteBarrier(asm, operands[0], operands[1], true);
+                }
+            };
+        }
+        return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+    }
+
+    @HOSTED_ONLY
+    public XirTemplate[] barrierStubs() {
+        return satbEnqueueStub == null ? XirWriteBarrierSpecification.NO_BARRIER_STUBS : new XirTemplate[] {satbEnqueueStub};
+    }
+
+    @Override
+    public void notifyCurrentThreadDetach() {
+        satbQueues.flushCurrentThread();
+        super.notifyCurrentThreadDetach();
+    }
+
+    /**
+     * Abort the current concurrent marking cycle. Called by the VM operation thread when a stop-the-world collection takes place during a cycle.
+     */
+    private void abortConcurrentMarking() {
+        satbQueues.deactivate(null);
+        heapMarker.abortConcurrentMarking();
+        markSweepSpace.abortConcurrentMarking();
+        concurrentMarkingInProgress = false;
+        if (Heap.logGCPhases()) {
+            Log.println("Concurrent marking aborted");
+        }
+    }
+
+    /**
+     * Indicates whether heap occupancy calls for a new concurrent marking cycle.
+     */
+    private boolean shouldStartConcurrentMarking() {
+        final long capacity = markSweepSpace.totalSpace().toLong();
+        return capacity > 0L && markSweepSpace.estimatedUsedSpace().toLong() * 100L >= capacity * ConcurrentMarkingOccupancyPercent;
+    }
+
+    /**
+     * Run a concurrent marking cycle from the initial-mark pause to the remark pause, unless the cycle is aborted in between.
+     * Tracing is done in steps of {@link #ConcurrentMarkingStepSize} objects, each run with safepoints disabled so that pauses
+     * always find the marking state consistent.
+     */
+    private void runConcurrentMarkingCycle() {
+        initialMark.submit();
+        while (true) {
+            final boolean wasDisabled = SafepointPoll.disable();
+            if (!concurrentMarkingInProgress) {
+                // Aborted by a stop-the-world collection.
+                if (!wasDisabled) {
+                    SafepointPoll.enable();
+                }
+                return;
+            }
+            satbQueues.drainCompletedBuffers(heapMarker.satbEntryMarker);
+            final boolean done = heapMarker.markConcurrently(ConcurrentMarkingStepSize);
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            if (done) {
+                break;
+            }
+        }
+        remark.submit();
+    }
+
+    /**
+     * Daemon thread starting concurrent marking cycles when heap occupancy is high enough, and tracing the heap during these cycles.
+     * The thread is stopped by GC operations like any mutator thread.
+     */
+    final class ConcurrentMarkerThread extends Thread {
+        ConcurrentMarkerThread() {
+            super(VmThread.systemThreadGroup, "Concurrent Marker");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(ConcurrentMarkingPollInterval);
+                } catch (InterruptedException e) {
+                }
+                if (shouldStartConcurrentMarking()) {
+                    runConcurrentMarkingCycle();
+                }
+            }
+        }
+    }
+
+    /**
+     * Initial-mark pause of a concurrent marking cycle. Marks the roots grey and activates the SATB pre-write barrier.
+     */
+    final class InitialMark extends GCOperation {
+        InitialMark() {
+            super("InitialMark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            if (concurrentMarkingInProgress) {
+                return;
+            }
+            // Retire TLABs so that all allocations of the cycle are from free space handed out, and logged, by the mark-sweep space.
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+            theHeapRegionManager().checkOutgoingReferences();
+            markSweepSpace.beginConcurrentMarking(heapMarker);
+            satbQueues.activate();
+            concurrentMarkingInProgress = true;
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
+        }
+    }
+
+    /**
+     * Remark pause of a concurrent marking cycle. Completes marking and reclaims space the same way as a stop-the-world collection.
+     */
+    final class Remark extends GCOperation {
+        Remark() {
+            super("Remark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            if (concurrentMarkingInProgress) {
+                collect.remark();
+            }
+        }
+    }
+
     /**
      * Class implementing the garbage collection routine.
      * This is the {@link VmOperationThread}'s entry point to garbage collection.
@@ -271,6 +696,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         }
 
         private final TimerMetric reclaimTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
+        private final TimerMetric compactTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
         private final TimerMetric totalPauseTime = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
 
         private boolean traceGCTimes = false;
@@ -291,6 +717,10 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             heapMarker.reportLastElapsedTimes();
             Log.print(", sweeping=");
             Log.print(reclaimTimer.getLastElapsedTime());
+            if (compacts()) {
+                Log.print(", compacting=");
+                Log.print(compactTimer.getLastElapsedTime());
+            }
             Log.print(", total=");
             Log.println(totalPauseTime.getLastElapsedTime());
             Log.unlock(lockDisabledSafepoints);
@@ -301,6 +731,10 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             heapMarker.reportTotalElapsedTimes();
             Log.print(", sweeping=");
             Log.print(reclaimTimer.getElapsedTime());
+            if (compacts()) {
+                Log.print(", compacting=");
+                Log.print(compactTimer.getElapsedTime());
+            }
             Log.print(", total=");
             Log.println(totalPauseTime.getElapsedTime());
             Log.unlock(lockDisabledSafepoints);
@@ -310,10 +744,13 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
         @Override
         protected void collect(int invocationCount) {
-            final boolean traceGCPhases = Heap.logGCPhases();
+            final long startTime = System.currentTimeMillis();
             traceGCTimes = Heap.logGCTime();
             startTimer(totalPauseTime);
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+            if (concurrentMarkingInProgress) {
+                abortConcurrentMarking();
+            }
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
 
@@ -325,35 +762,101 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
             markSweepSpace.mark(heapMarker);
 
+            reclaim(startTime);
+
+            final GCRequest gcRequest = callingThread().gcRequest;
+            gcRequest.lastInvocationCount = invocationCount;
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
+            stopTimer(totalPauseTime);
+
+            if (traceGCTimes) {
+                reportLastGCTimes();
+            }
+        }
+
+        /**
+         * Complete the current concurrent marking cycle and reclaim space. Called from the remark pause.
+         */
+        void remark() {
+            final long startTime = System.currentTimeMillis();
+            traceGCTimes = Heap.logGCTime();
+            startTimer(totalPauseTime);
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+
+            vmConfig().monitorScheme().beforeGarbageCollection();
+            // Mark grey the references logged since the marker last drained the SATB queues.
+            satbQueues.deactivate(heapMarker.satbEntryMarker);
+            markSweepSpace.doBeforeGC();
+            collectionCount++;
+            concurrentMarkingInProgress = false;
+
+            theHeapRegionManager().checkOutgoingReferences();
+
+            markSweepSpace.markAllocatedObjects(heapMarker);
+            heapMarker.finishConcurrentMarking();
+
+            reclaim(startTime);
+
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
+            stopTimer(totalPauseTime);
+
+            if (traceGCTimes) {
+                reportLastGCTimes();
+            }
+        }
+
+        /**
+         * Sweep, and compact if enabled, the mark-sweep space once marking is complete, then resize the heap.
+         *
+         * @param startTime time the pause started at, in milliseconds
+         */
+        private void reclaim(long startTime) {
+            final boolean traceGCPhases = Heap.logGCPhases();
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
 
             if (traceGCPhases) {
                 Log.println("BEGIN: Sweeping");
             }
             startTimer(reclaimTimer);
-            markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
-            Size freeSpaceAfterGC = markSweepSpace.freeSpace();
+            // Compaction needs all the regions swept to find the most fragmented ones.
+            final boolean sweepLazily = markSweepSpace.sweepsLazily() && !compacts();
+            if (sweepLazily) {
+                // Regions are swept on demand once mutators resume.
+                markSweepSpace.beginLazySweep(heapMarker, DoImpreciseSweep);
+            } else {
+                markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
+            }
             stopTimer(reclaimTimer);
             if (traceGCPhases) {
                 Log.println("END: Sweeping");
             }
 
+            if (compacts()) {
+                if (traceGCPhases) {
+                    Log.println("BEGIN: Compacting");
+                }
+                startTimer(compactTimer);
+                markSweepSpace.compact(compactor, fragmentationStats, compactionCandidates, CompactionFragmentationThreshold, this);
+                stopTimer(compactTimer);
+                if (traceGCPhases) {
+                    Log.println("END: Compacting");
+                }
+            }
+            // With sweeping pending, the space reclaimed by the collection is only known for the regions swept on demand so far
+            // (none at this point), so the heap is sized on an estimate. Shrinking only uncommits empty allocation regions,
+            // so it never touches regions left to the lazy sweep.
+            Size freeSpaceAfterGC = sweepLazily ? markSweepSpace.estimatedFreeSpace() : markSweepSpace.freeSpace();
+
             if (VerifyAfterGC) {
                 afterGCVerifier.run();
             }
             vmConfig().monitorScheme().afterGarbageCollection();
 
+            heapResizingPolicy.recordCollection(System.currentTimeMillis() - startTime);
             heapResizingPolicy.resizeAfterCollection(freeSpaceAfterGC, markSweepSpace);
             markSweepSpace.doAfterGC();
-
-            final GCRequest gcRequest = callingThread().gcRequest;
-            gcRequest.lastInvocationCount = invocationCount;
-            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
-            stopTimer(totalPauseTime);
-
-            if (traceGCTimes) {
-                reportLastGCTimes();
-            }
         }
     }
 
@@ -449,7 +952,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -503,7 +1006,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     @Override
     public PhaseLogger phaseLogger() {
-        return HeapSchemeLoggerAdaptor.phaseLogger;
+        return phaseLogger;
     }
 
     @Override
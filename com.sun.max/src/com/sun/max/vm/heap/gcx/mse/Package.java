@@ -25,6 +25,7 @@ package com.sun.max.vm.heap.gcx.mse;
 import com.sun.max.config.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.*;
 
 /**
  * Simple Mark-Sweep. Just for testing marking algorithm.
@@ -32,6 +33,8 @@ import com.sun.max.vm.heap.*;
 public class Package extends BootImagePackage {
     public Package() {
         registerScheme(HeapScheme.class, MSEHeapScheme.class);
+        registerThreadLocal(SATBQueueSet.class, "SATB_BUFFER");
+        registerThreadLocal(SATBQueueSet.class, "SATB_INDEX");
     }
 
     @Override
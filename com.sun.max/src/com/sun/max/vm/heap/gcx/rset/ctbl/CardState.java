@@ -27,7 +27,12 @@ package com.sun.max.vm.heap.gcx.rset.ctbl;
  */
 public enum CardState {
     CLEAN_CARD(0xff),
-    DIRTY_CARD(0);
+    DIRTY_CARD(0),
+    /**
+     * A dirty card that was refined between collections and found to hold references of interest to the next collection.
+     * Collections treat refined cards as dirty cards.
+     */
+    REFINED_CARD(1);
 
     final byte value;
 
@@ -24,6 +24,7 @@ import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
 
 import java.util.*;
 
+import com.oracle.max.cri.intrinsics.*;
 import com.sun.cri.ci.CiAddress.Scale;
 import com.sun.cri.ci.*;
 import com.sun.cri.xir.*;
@@ -375,11 +376,14 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         abstract public void visitCards(Address start, Address end);
     }
 
+    /**
+     * Clean the dirty and {@linkplain CardState#REFINED_CARD refined} cards of the specified range and visit the ranges of heap they cover.
+     */
     public void cleanAndVisitCards(Address start, Address end, CardRangeVisitor cardRangeVisitor) {
         final int endOfRange = cardTable.tableEntryIndex(end);
-        int startCardIndex = cardTable.first(cardTable.tableEntryIndex(start), endOfRange, CardState.DIRTY_CARD);
+        int startCardIndex = cardTable.firstNot(cardTable.tableEntryIndex(start), endOfRange, CardState.CLEAN_CARD);
         while (startCardIndex < endOfRange) {
-            int endCardIndex = cardTable.firstNot(startCardIndex + 1, endOfRange, CardState.DIRTY_CARD);
+            int endCardIndex = cardTable.first(startCardIndex + 1, endOfRange, CardState.CLEAN_CARD);
             if (traceCardTableRSet()) {
                 traceVisitedCard(startCardIndex, endCardIndex, CardState.DIRTY_CARD);
             }
@@ -388,8 +392,58 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
             if (++endCardIndex >= endOfRange) {
                 return;
             }
-            startCardIndex = cardTable.first(endCardIndex, endOfRange, CardState.DIRTY_CARD);
+            startCardIndex = cardTable.firstNot(endCardIndex, endOfRange, CardState.CLEAN_CARD);
+        }
+    }
+
+    /**
+     * Logic deciding whether a dirty card holds references a collection is interested in (e.g., references to the young generation).
+     * A card refiner may run concurrently with mutators, so it must not rely on the parsability of the cards it inspects.
+     */
+    public static abstract class CardRefiner {
+        /**
+         * Tell whether the card starting at the specified address can be refined.
+         */
+        public abstract boolean isRefinable(Address cardStart);
+
+        /**
+         * Tell whether the specified range of heap holds references of interest.
+         */
+        public abstract boolean holdsReferencesOfInterest(Address start, Address end);
+    }
+
+    /**
+     * Refine the dirty cards of the specified range concurrently with mutators. Each refinable dirty card is cleaned, then inspected
+     * by the refiner, and set to {@link CardState#REFINED_CARD} if it holds references of interest. Cards that hold none are left clean,
+     * so the next collection doesn't have to scan them.
+     * <p>
+     * A card is cleaned before being inspected, with a store-load barrier in between. A mutator that stores a reference in the card
+     * after the inspection started also dirties the card after the store, so the card is either re-dirtied or the inspection sees the reference.
+     * Setting a card re-dirtied in between to the refined state is harmless as both states are scanned by collections.
+     *
+     * @param start start of the range of heap whose cards are refined
+     * @param end end of the range of heap whose cards are refined
+     * @param refiner the logic telling whether cards hold references of interest
+     * @return the number of dirty cards refined that were left clean
+     */
+    public int refineCards(Address start, Address end, CardRefiner refiner) {
+        final int endOfRange = cardTable.tableEntryIndex(end);
+        int numCleaned = 0;
+        int cardIndex = cardTable.first(cardTable.tableEntryIndex(start), endOfRange, CardState.DIRTY_CARD);
+        while (cardIndex < endOfRange) {
+            final Address cardStart = cardTable.rangeStart(cardIndex);
+            if (refiner.isRefinable(cardStart)) {
+                cardTable.unsafeSet(cardIndex, CardState.CLEAN_CARD.value);
+                MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+                if (refiner.holdsReferencesOfInterest(cardStart, cardStart.plus(CARD_SIZE))) {
+                    cardTable.unsafeSet(cardIndex, CardState.REFINED_CARD.value);
+                } else {
+                    numCleaned++;
+                }
+            }
+            cardIndex = cardTable.first(cardIndex + 1, endOfRange, CardState.DIRTY_CARD);
         }
+        return numCleaned;
     }
 
     /**
@@ -400,9 +454,9 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
      */
     public void cleanAndVisitCards(Address start, Address end, OverlappingCellVisitor cellVisitor) {
         final int endOfRange = cardTable.tableEntryIndex(end);
-        int startCardIndex = cardTable.first(cardTable.tableEntryIndex(start), endOfRange, CardState.DIRTY_CARD);
+        int startCardIndex = cardTable.firstNot(cardTable.tableEntryIndex(start), endOfRange, CardState.CLEAN_CARD);
         while (startCardIndex < endOfRange) {
-            int endCardIndex = cardTable.firstNot(startCardIndex + 1, endOfRange, CardState.DIRTY_CARD);
+            int endCardIndex = cardTable.first(startCardIndex + 1, endOfRange, CardState.CLEAN_CARD);
             if (traceCardTableRSet()) {
                 traceVisitedCard(startCardIndex, endCardIndex, CardState.DIRTY_CARD);
             }
@@ -411,7 +465,7 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
             if (++endCardIndex >= endOfRange) {
                 return;
             }
-            startCardIndex = cardTable.first(endCardIndex, endOfRange, CardState.DIRTY_CARD);
+            startCardIndex = cardTable.firstNot(endCardIndex, endOfRange, CardState.CLEAN_CARD);
         }
     }
 
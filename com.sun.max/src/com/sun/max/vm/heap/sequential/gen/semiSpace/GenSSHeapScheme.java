@@ -420,6 +420,10 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
      */
     private long lastFullGCTime = 0L;
 
+    /**
+     * Pool of GC worker threads used to scan the dirty cards of the old generation and evacuate the young generation in parallel.
+     */
+    private final GCWorkerPool gcWorkerPool;
 
     @HOSTED_ONLY
     public GenSSHeapScheme() {
@@ -432,6 +436,8 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         youngSpace = new ContiguousAllocatingSpace<AtomicBumpPointerAllocator<YoungSpaceRefiller>>(nurseryAllocator, "Young Generation");
         oldSpace = new ContiguousSemiSpace<CardSpaceAllocator<OldSpaceRefiller>>(tenuredAllocator, "Old Generation");
         youngSpaceEvacuator = new NoAgingNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet, "Young");
+        gcWorkerPool = new GCWorkerPool();
+        youngSpaceEvacuator.enableParallelEvacuation(gcWorkerPool);
         oldSpaceEvacuator = new  EvacuatorToCardSpace(oldSpace.fromSpace, oldSpace, this, cardTableRSet, "Old");
         noFromSpaceReferencesVerifiers = new NoEvacuatedSpaceReferenceVerifier(cardTableRSet, youngSpace);
         fotVerifier = new FOTVerifier(cardTableRSet);
@@ -452,6 +458,7 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
         cardTableRSet.initialize(phase);
+        gcWorkerPool.initialize(phase);
         if (MaxineVM.isHosted() && phase == BOOTSTRAPPING) {
             // Make sure the DarkMatter logger has its options checked at boot image generation time.
             DarkMatter.initialize();
@@ -459,6 +466,9 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         if (phase == PRISTINE) {
             lastFullGCTime = System.currentTimeMillis();
         }
+        if (phase == RUNNING && CardRefinementThread.isEnabled()) {
+            new CardRefinementThread(cardTableRSet, oldSpace, youngSpace).start();
+        }
         if (phase == TERMINATING) {
             if (Heap.logGCTime()) {
                 timeLogger.logPhaseTimes(-1,
@@ -1003,6 +1013,12 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         refillTLAB(etla, tlab, effectiveSize);
     }
 
+    @Override
+    protected Size maxTlabSize() {
+        // The initial TLAB size was bounded by the large object size threshold.
+        return initialTlabSize();
+    }
+
     @NEVER_INLINE
     @Override
     protected Pointer handleTLABOverflow(Size size, Pointer etla, Pointer tlabMark, Pointer tlabEnd) {
@@ -1021,7 +1037,7 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -1093,6 +1109,11 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
     }
 
+    @HOSTED_ONLY
+    public XirTemplate[] barrierStubs() {
+        return XirWriteBarrierSpecification.NO_BARRIER_STUBS;
+    }
+
     @Override
     public GarbageCollectorMXBean getGarbageCollectorMXBean() {
         return new GenSSGarbageCollectorMXBean();
@@ -42,6 +42,7 @@ import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.Heap.GCCallbackPhase;
 import com.sun.max.vm.heap.debug.*;
+import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.*;
@@ -173,6 +174,11 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
 
     private long lastGCTime;
 
+    /**
+     * Keeps track of time spent in GC and of the time of the last GC, so that memory of an idle heap can be returned to the OS.
+     */
+    private final HeapResizingPolicy resizingPolicy = new HeapResizingPolicy();
+
     /**
      * Procedure used to verify a reference.
      */
@@ -236,6 +242,10 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 this.growPolicy = new DoubleGrowPolicy();
             }
             increaseGrowPolicy = new LinearGrowPolicy();
+        } else if (phase == MaxineVM.Phase.RUNNING) {
+            if (HeapResizingPolicy.uncommitsIdleHeap()) {
+                new HeapUncommitThread(resizingPolicy).start();
+            }
         } else if (phase == MaxineVM.Phase.TERMINATING) {
             if (Heap.logGCTime()) {
                 timeLogger.logPhaseTimes(-1,
@@ -438,6 +448,7 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
 
                 lastGCTime = System.currentTimeMillis();
                 accumulatedGCTime += lastGCTime - startGCTime;
+                resizingPolicy.recordCollection(lastGCTime - startGCTime);
                 if (Heap.verbose()) {
                     Log.print("--During GC   time: ");
                     Log.print(lastGCTime - startGCTime);
@@ -654,7 +665,13 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
             Log.print("Visit Region: To Space");
             Log.println();
         }
-        while (cell.isNotZero() && cell.lessThan(allocationMark()) && cell.getWord().isNotZero()) {
+        final Pointer end = allocationMark().asPointer();
+        while (cell.isNotZero() && cell.lessThan(end)) {
+            if (cell.getWord().isZero()) {
+                // Unused end of a TLAB: TLABs are zeroed when handed out, so skip to the next object.
+                cell = cell.plus(Word.size());
+                continue;
+            }
             cell = DebugHeap.checkDebugCellTag(start, cell);
             cell = visitor.visitCell(cell);
         }
@@ -699,7 +716,10 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
             // It is important to know now that we can allocate both spaces of the new size
             // and, if we cannot, to leave things as they are, so that the VM can continue
             // using the safety zone and perhaps then free enough space to continue.
-            final Size size = Size.min(growPolicy.growth(fromSpace.size()), Heap.maxSize().dividedBy(2));
+            // Stop at the soft maximum heap size first. Growing past it is left to allocation failures that happen once there.
+            final Size softMaxSpaceSize = HeapResizingPolicy.softMaxHeapSize().dividedBy(2);
+            final Size maxSpaceSize = fromSpace.size().lessThan(softMaxSpaceSize) ? softMaxSpaceSize : Heap.maxSize().dividedBy(2);
+            final Size size = Size.min(growPolicy.growth(fromSpace.size()), maxSpaceSize);
             if (preGc && Heap.verbose()) {
                 Log.print("...new heap size: ");
                 Log.println(size.toLong());
@@ -866,6 +886,12 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
      *         will have been reserved immediately before the allocated cell.
      *
      */
+    @Override
+    protected Size maxTlabSize() {
+        // The safety zone at the end of to-space is sized for TLABs no larger than the initial size.
+        return initialTlabSize();
+    }
+
     @Override
     @NEVER_INLINE
     @NO_SAFEPOINT_POLLS("heap up to allocation mark must be verifiable if debug tagging")
@@ -886,7 +912,7 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -1118,6 +1144,15 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 logSpaces();
                 result = true;
             }
+            // Whether the spaces could be shrunk or not, return to the OS the physical memory of the empty from-space
+            // and of the unallocated part of the to-space. The pages are faulted back in when next allocated into.
+            final Address pageAlignedMark = allocationMark().alignUp(Platform.platform().pageSize);
+            if (VirtualMemory.discardMemory(fromSpace.start(), fromSpace.size())) {
+                result = true;
+            }
+            if (pageAlignedMark.lessThan(toSpace.end()) && VirtualMemory.discardMemory(pageAlignedMark, toSpace.end().minus(pageAlignedMark).asSize())) {
+                result = true;
+            }
         }
     }
 
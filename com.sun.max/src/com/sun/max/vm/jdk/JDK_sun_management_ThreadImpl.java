@@ -24,6 +24,7 @@
 package com.sun.max.vm.jdk;
 
 import com.sun.max.annotate.*;
+import com.sun.max.vm.management.*;
 
 /**
  * Method substitutions for sun.management.ThreadImpl.
@@ -35,4 +36,41 @@ final class JDK_sun_management_ThreadImpl {
     public boolean isCurrentThreadCpuTimeSupported() {
         return false; //TODO
     }
+
+    @SUBSTITUTE(optional = true)
+    public boolean isThreadAllocatedMemorySupported() {
+        return ThreadManagement.isThreadAllocatedMemorySupported();
+    }
+
+    @SUBSTITUTE(optional = true)
+    public boolean isThreadAllocatedMemoryEnabled() {
+        return ThreadManagement.isThreadAllocatedMemorySupported() && ThreadManagement.isThreadAllocatedMemoryEnabled();
+    }
+
+    @SUBSTITUTE(optional = true)
+    public void setThreadAllocatedMemoryEnabled(boolean enable) {
+        if (!ThreadManagement.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocated memory measurement is not supported.");
+        }
+        ThreadManagement.setThreadAllocatedMemoryEnabled(enable);
+    }
+
+    /**
+     * Backs {@code getThreadAllocatedBytes(long)} in JDK versions that query a single thread directly.
+     * An id of zero denotes the current thread.
+     */
+    @SUBSTITUTE(optional = true)
+    private static long getThreadAllocatedMemory0(long id) {
+        final long[] result = new long[1];
+        ThreadManagement.getThreadAllocatedBytes(new long[] {id == 0 ? Thread.currentThread().getId() : id}, result);
+        return result[0];
+    }
+
+    /**
+     * Backs {@code getThreadAllocatedBytes(long[])}.
+     */
+    @SUBSTITUTE(optional = true)
+    private static void getThreadAllocatedMemory1(long[] ids, long[] result) {
+        ThreadManagement.getThreadAllocatedBytes(ids, result);
+    }
 }
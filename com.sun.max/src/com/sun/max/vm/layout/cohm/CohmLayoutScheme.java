@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.layout.cohm;
+
+import com.sun.max.vm.layout.ohm.*;
+
+/**
+ * {@link OhmLayoutScheme OHM} layout scheme that packs the fields of subclasses into the alignment padding of their superclass.
+ * Only tuple fields are packed: the object header is the OHM one.
+ *
+ * @see com.sun.max.vm.layout.cohm
+ */
+public class CohmLayoutScheme extends OhmLayoutScheme {
+
+    public CohmLayoutScheme() {
+        super(new CohmTupleLayout());
+    }
+
+}
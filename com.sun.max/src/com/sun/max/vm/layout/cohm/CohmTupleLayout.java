@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.layout.cohm;
+
+import com.sun.max.lang.*;
+import com.sun.max.platform.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.layout.ohm.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * An {@link OhmTupleLayout} that starts laying out the fields of a class at the end of the fields of its superclass
+ * instead of at the superclass' aligned tuple size, filling the gap with the narrowest fields first.
+ * All fields remain naturally aligned, and the tuple size remains aligned.
+ */
+public final class CohmTupleLayout extends OhmTupleLayout {
+
+    private final int nAlignmentBytes = Platform.target().arch.isARM() ? 2 * Word.size() : Word.size();
+
+    /**
+     * Gets the offset past the last instance field of a class and of all its super classes.
+     */
+    private int instanceFieldsEnd(ClassActor classActor) {
+        int end = headerSize();
+        for (ClassActor c = classActor; c != null; c = c.superClassActor) {
+            for (FieldActor fieldActor : c.localInstanceFieldActors()) {
+                end = Math.max(end, fieldActor.offset() + fieldActor.kind.width.numberOfBytes);
+            }
+        }
+        return end;
+    }
+
+    private static FieldActor findUnassigned(FieldActor[] fieldActors, int nBytes) {
+        for (FieldActor fieldActor : fieldActors) {
+            if (fieldActor.offset() == INVALID_OFFSET && fieldActor.kind.width.numberOfBytes == nBytes) {
+                return fieldActor;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Size layoutFields(ClassActor superClassActor, FieldActor[] fieldActors) {
+        setInvalidOffsets(fieldActors);
+        int offset;
+        if (superClassActor == null || superClassActor.typeDescriptor == JavaTypeDescriptor.OBJECT || superClassActor.typeDescriptor == JavaTypeDescriptor.HYBRID) {
+            offset = headerSize();
+        } else {
+            offset = instanceFieldsEnd(superClassActor);
+        }
+        // Fill the padding after the superclass fields with the widest fields that are naturally aligned at the current offset.
+        while (offset % nAlignmentBytes != 0) {
+            FieldActor fieldActor = null;
+            for (int scale = nAlignmentBytes >> 1; scale >= 1 && fieldActor == null; scale >>= 1) {
+                if (offset % scale == 0) {
+                    fieldActor = findUnassigned(fieldActors, scale);
+                }
+            }
+            if (fieldActor == null) {
+                offset = Ints.roundUp(offset, nAlignmentBytes);
+                break;
+            }
+            fieldActor.setOffset(offset);
+            offset += fieldActor.kind.width.numberOfBytes;
+        }
+        // From an aligned offset, decreasing field widths keep all fields naturally aligned.
+        for (int scale = 8; scale >= 1; scale >>= 1) {
+            for (FieldActor fieldActor : fieldActors) {
+                if (fieldActor.offset() == INVALID_OFFSET && fieldActor.kind.width.numberOfBytes == scale) {
+                    fieldActor.setOffset(offset);
+                    offset += scale;
+                }
+            }
+        }
+        assert hasValidOffsets(fieldActors);
+        return Size.fromInt(Ints.roundUp(offset, nAlignmentBytes));
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+/**
+ * This package implements an Origin-Header-Mixed object layout with packed tuple fields (COHM, for compact OHM).
+ * <p>
+ * Headers, arrays and hybrids are laid out exactly as in the {@linkplain com.sun.max.vm.layout.ohm OHM} layout:
+ * the object header is not compressed.
+ * Tuples differ in that the instance fields of a class are not laid out past the word-aligned size of its
+ * superclass: narrow fields of a subclass are first packed into the alignment padding that trails the
+ * superclass fields. For example, with an 8-byte header word, an object of class {@code B} below takes
+ * 24 bytes instead of 32:
+ *
+ * <pre>
+ *     class A { int a; }
+ *     class B extends A { int b; }
+ *
+ *     OHM:  | hub | misc | a | pad | b | pad |
+ *     COHM: | hub | misc | a | b |
+ * </pre>
+ *
+ * This reduces the footprint of heaps dominated by small objects from deep class hierarchies without
+ * changing the header format, so compilers, garbage collectors and the Inspector need no special support:
+ * they all use the field offsets recorded in field actors.
+ */
+package com.sun.max.vm.layout.cohm;
@@ -33,8 +33,15 @@ import com.sun.max.vm.layout.*;
 public class OhmLayoutScheme extends LayoutScheme {
 
     public OhmLayoutScheme() {
+        this(new OhmTupleLayout());
+    }
+
+    /**
+     * Creates an OHM layout scheme with a specific layout of tuples. Hybrids always use the default {@link OhmTupleLayout}.
+     */
+    protected OhmLayoutScheme(OhmTupleLayout tupleLayout) {
         super(new OhmGeneralLayout(),
-              new OhmTupleLayout(),
+              tupleLayout,
               new OhmHybridLayout(),
               new OhmArrayLayout(null),
               new OhmArrayLayout(BYTE),
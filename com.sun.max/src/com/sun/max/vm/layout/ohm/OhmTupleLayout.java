@@ -33,8 +33,11 @@ import com.sun.max.vm.type.*;
 import com.sun.max.vm.value.*;
 
 /**
+ * Tuple layout of the OHM layout scheme. The header words are followed by the instance fields. The fields of a class
+ * start at the word-aligned tuple size of its superclass. Narrow fields fill an unaligned start, and the remaining
+ * fields are laid out widest first. The tuple size is word-aligned.
  */
-public final class OhmTupleLayout extends OhmGeneralLayout implements TupleLayout {
+public class OhmTupleLayout extends OhmGeneralLayout implements TupleLayout {
 
     public Layout.Category category() {
         return Layout.Category.TUPLE;
@@ -75,16 +78,16 @@ public final class OhmTupleLayout extends OhmGeneralLayout implements TupleLayou
         return fieldActor.offset();
     }
 
-    private static final int INVALID_OFFSET = -1;
+    protected static final int INVALID_OFFSET = -1;
 
-    private static boolean setInvalidOffsets(FieldActor[] fieldActors) {
+    protected static boolean setInvalidOffsets(FieldActor[] fieldActors) {
         for (FieldActor fieldActor : fieldActors) {
             fieldActor.setOffset(INVALID_OFFSET);
         }
         return true;
     }
 
-    private static boolean hasValidOffsets(FieldActor[] fieldActors) {
+    protected static boolean hasValidOffsets(FieldActor[] fieldActors) {
         for (FieldActor fieldActor : fieldActors) {
             if (fieldActor.offset() == INVALID_OFFSET) {
                 return false;
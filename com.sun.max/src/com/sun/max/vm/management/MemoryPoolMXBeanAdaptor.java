@@ -46,6 +46,7 @@ public class MemoryPoolMXBeanAdaptor implements MemoryPoolMXBean {
     public MemoryPoolMXBeanAdaptor(MemoryType type, MemoryRegion region, MemoryManagerMXBean manager) {
         this.type = type;
         this.region = region;
+        this.manager = manager;
     }
 
     public MemoryUsage getCollectionUsage() {
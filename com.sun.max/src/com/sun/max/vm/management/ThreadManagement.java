@@ -22,11 +22,14 @@
  */
 package com.sun.max.vm.management;
 
+import static com.sun.max.vm.VMConfiguration.*;
+
 import java.lang.management.*;
 import java.lang.reflect.*;
 import java.util.*;
 
 import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.*;
 import com.sun.max.vm.jdk.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
@@ -43,6 +46,8 @@ public class ThreadManagement {
      */
     private static Constructor<?> threadInfoConstructor;
 
+    private static boolean threadAllocatedMemoryEnabled = true;
+
     public static Thread[] getThreads() {
         return VmThreadMap.getThreads(false);
     }
@@ -77,6 +82,62 @@ public class ThreadManagement {
         return false;
     }
 
+    /**
+     * Per-thread allocated bytes are only available with heap schemes that maintain them, i.e., those using TLABs.
+     */
+    public static boolean isThreadAllocatedMemorySupported() {
+        return vmConfig().heapScheme() instanceof HeapSchemeWithTLAB;
+    }
+
+    public static boolean isThreadAllocatedMemoryEnabled() {
+        return threadAllocatedMemoryEnabled;
+    }
+
+    /**
+     * The allocated bytes are maintained at nearly no cost whether or not their reporting is enabled,
+     * so this only controls what {@link #getThreadAllocatedBytes(long[], long[])} reports.
+     */
+    public static boolean setThreadAllocatedMemoryEnabled(boolean enable) {
+        threadAllocatedMemoryEnabled = enable;
+        return true;
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by each of the specified threads.
+     *
+     * @param ids the ids of the threads
+     * @param result the array where to store the allocated bytes for each thread, or -1 if the thread is not alive
+     *            or allocated memory measurement is not supported or not enabled
+     */
+    public static void getThreadAllocatedBytes(long[] ids, long[] result) {
+        Arrays.fill(result, 0, ids.length, -1L);
+        if (!threadAllocatedMemoryEnabled || !isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        final AllocatedBytesProcedure proc = new AllocatedBytesProcedure(ids, result);
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, proc);
+        }
+    }
+
+    static class AllocatedBytesProcedure implements Pointer.Procedure {
+        private final long[] ids;
+        private final long[] result;
+        AllocatedBytesProcedure(long[] ids, long[] result) {
+            this.ids = ids;
+            this.result = result;
+        }
+        public void run(Pointer tla) {
+            final Thread t = VmThread.fromTLA(tla).javaThread();
+            final long id = t.getId();
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    result[i] = HeapSchemeWithTLAB.getAllocatedBytes(VmThreadLocal.ETLA.load(tla));
+                }
+            }
+        }
+    }
+
     public static void getThreadInfo(long[] ids, int maxDepth, ThreadInfo[] result) {
         // The ids are java.lang.Thread ids from getId()
         // maxDepth is -1 when the entire stack is requested, not MAX_VALUE as in API call (see sun.management.ThreadImpl)
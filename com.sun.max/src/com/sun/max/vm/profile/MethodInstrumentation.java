@@ -87,9 +87,16 @@ public class MethodInstrumentation {
         incrementProfileCounterAtIndex(mpo, mpoIndex);
     }
 
+    /**
+     * Records a backward branch. Only the transition of the counter to zero is an overflow here, so that a loop
+     * running on after an overflow, or in a method whose entry counter already overflowed, does not keep calling
+     * into the {@link CompilationBroker}.
+     */
     @INLINE
     public static void recordBackwardBranch(MethodProfile mpo) {
-        mpo.entryBackedgeCount--;
+        if (--mpo.entryBackedgeCount == 0) {
+            CompilationBroker.backedgeCounterOverflow(mpo);
+        }
     }
 
     @INLINE
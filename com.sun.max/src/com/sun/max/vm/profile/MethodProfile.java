@@ -72,6 +72,12 @@ public class MethodProfile {
     public static final int DEOPTIMIZATION_REASONS_NUM           = 14;
     public static final int UNDEFINED_DEOPTIMIZATION_REASON_ID   = -1;
 
+    /**
+     * Reason identifier recorded when a guard protecting code inlined for a profiled receiver type fails.
+     * The value is the ordinal Graal uses for the same reason, so both compilers read the same counter.
+     */
+    public static final int TYPE_CHECKED_INLINING_VIOLATED_REASON_ID = 6;
+
     public static final int UNDEFINED_TYPE_ID                    = ClassIDManager.NULL_CLASS_ID;
     public static final int UNDEFINED_METHOD_ID                  = -1;
 
@@ -90,6 +96,36 @@ public class MethodProfile {
      */
     public int entryBackedgeCount;
 
+    /**
+     * The value {@link #entryBackedgeCount} was last {@linkplain #resetEntryBackedgeCount(int) reset} to.
+     */
+    private int entryBackedgeCountStart;
+
+    /**
+     * The number of entries and backward branches counted before the last {@linkplain #resetEntryBackedgeCount(int) reset}
+     * of {@link #entryBackedgeCount}.
+     */
+    private long entryBackedgeCountBeforeReset;
+
+    /**
+     * Sets the {@linkplain #entryBackedgeCount entry and backward branch counter} to a new value, keeping the count of
+     * entries and backward branches seen so far.
+     * Code that sets the counter to postpone or to trigger the next counter overflow must use this method, so that
+     * {@link #entryBackedgeExecutionCount()} isn't skewed by the new value.
+     */
+    public void resetEntryBackedgeCount(int value) {
+        entryBackedgeCountBeforeReset = entryBackedgeExecutionCount();
+        entryBackedgeCountStart = value;
+        entryBackedgeCount = value;
+    }
+
+    /**
+     * Gets the number of entries and backward branches counted by this profile since it was created.
+     */
+    public long entryBackedgeExecutionCount() {
+        return entryBackedgeCountBeforeReset + ((long) entryBackedgeCountStart - entryBackedgeCount);
+    }
+
     /**
      * Records actual counts of a count entry.
      */
@@ -585,6 +621,7 @@ public class MethodProfile {
         public static final byte UNDEFINED_POS = -1;
 
         public void addEntryBackedgeCounter(int initialValue) {
+            mpo.entryBackedgeCountStart = initialValue;
             mpo.entryBackedgeCount = initialValue;
         }
 
@@ -0,0 +1,773 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.profilers.sampling;
+
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
+import static com.sun.max.vm.thread.VmThreadLocal.*;
+
+import java.util.*;
+
+import sun.misc.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.thread.VmThreadLocal.Nature;
+
+/**
+ * Low-overhead allocation sampler, cheap enough to be left on in production.
+ *
+ * Instead of instrumenting every allocation, each thread counts down a number of allocated bytes drawn from an
+ * exponential distribution whose mean is {@link #AllocationSamplingInterval}. The count down is only charged on
+ * the TLAB-refill slow path of {@link HeapSchemeWithTLAB}, with the bytes allocated in the TLAB since the previous
+ * slow path: the inline allocation path is left untouched. When the count down expires, the allocation that took
+ * the slow path is sampled: the calling thread records the allocation size and a shallow stack trace into its own
+ * {@link SampleBuffer}, and the type of the allocated object is filled in once its hub has been installed, that is
+ * on the next slow path of the thread or when its TLAB is reset by a garbage collection, whichever comes first.
+ *
+ * Sample buffers are single-producer single-consumer rings: the owning thread is the only one publishing samples,
+ * the sampler thread is the only one consuming them, so recording a sample takes no lock. Samples are dropped
+ * if the ring is full. The sampler thread periodically drains all the rings into a histogram of sampled
+ * allocations by type, size and allocation site, which is dumped when the VM receives a SIGQUIT (after the thread
+ * dump), periodically with {@link #AllocationSamplingDumpInterval}, and at VM termination.
+ */
+public final class AllocationSampler extends Thread implements SignalHandler {
+
+    /**
+     * Enables allocation sampling.
+     */
+    public static boolean AllocationSampling;
+
+    /**
+     * Mean number of bytes allocated by a thread between two samples.
+     */
+    public static Size AllocationSamplingInterval = Size.K.times(512);
+
+    /**
+     * Maximum number of frames recorded for a sample.
+     */
+    public static int AllocationSamplingStackDepth = 8;
+
+    /**
+     * Number of samples a thread can buffer before the sampler thread drains them.
+     */
+    public static int AllocationSamplingBufferSize = 128;
+
+    /**
+     * Period in milliseconds between two drains of the thread's sample buffers.
+     */
+    public static int AllocationSamplingDrainInterval = 100;
+
+    /**
+     * Period in seconds between two dumps of the allocation histogram. Zero implies only dump on VM termination.
+     */
+    public static int AllocationSamplingDumpInterval;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "AllocationSampling", AllocationSampler.class,
+            "Sample allocations and report a histogram of sampled allocations by type, size and allocation site.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "AllocationSamplingInterval", AllocationSampler.class,
+            "Mean number of bytes allocated by a thread between two allocation samples.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "AllocationSamplingStackDepth", AllocationSampler.class,
+            "Maximum number of frames recorded for an allocation sample.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "AllocationSamplingBufferSize", AllocationSampler.class,
+            "Number of allocation samples a thread can buffer before they are aggregated.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "AllocationSamplingDrainInterval", AllocationSampler.class,
+            "Period in milliseconds between two aggregations of the allocation samples.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "AllocationSamplingDumpInterval", AllocationSampler.class,
+            "Period in seconds between two dumps of the allocation samples, 0 to only dump them at VM termination.", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * Thread local holding the thread's sample buffer.
+     */
+    private static final VmThreadLocal ALLOCATION_SAMPLES = new VmThreadLocal("ALLOCATION_SAMPLES", true, "Allocation sample buffer of the thread", Nature.Single);
+
+    /**
+     * Place holder installed in {@link #ALLOCATION_SAMPLES} while a thread's buffer is being allocated, and for threads
+     * that must not be sampled. Prevents the slow path allocations done on behalf of the sampler from recursing into it.
+     */
+    private static final SampleBuffer NO_SAMPLING = new SampleBuffer();
+
+    /**
+     * Number of buckets of the size histograms. Bucket {@code i} counts sizes in {@code [2^i, 2^(i+1))}.
+     */
+    private static final int SIZE_BUCKETS = 32;
+
+    /**
+     * The sampler thread, non-null once allocation sampling has started.
+     */
+    private static volatile AllocationSampler theSampler;
+
+    /**
+     * Head of the list of all the sample buffers that haven't been retired yet.
+     */
+    private static SampleBuffer buffers;
+
+    private static final Object buffersLock = new Object();
+
+    /**
+     * Number of times the histogram has been dumped.
+     */
+    private static volatile int dumpCount;
+
+    /**
+     * Holders of the methods on the allocation path, whose frames are not recorded.
+     */
+    private static final ClassActor heapSchemeActor = ClassActor.fromJava(HeapScheme.class);
+    private static final ClassActor heapActor = ClassActor.fromJava(Heap.class);
+    private static final ClassActor snippetsActor = ClassActor.fromJava(Snippets.class);
+    private static final ClassActor samplerActor = ClassActor.fromJava(AllocationSampler.class);
+
+    /**
+     * Holders of compiler runtime entry points on the allocation path, whose frames are not recorded either.
+     */
+    private static ClassActor[] runtimeAllocatorActors = {};
+
+    /**
+     * Registers a holder of compiler runtime entry points that allocate on behalf of compiled code, so that samples are
+     * attributed to the compiled code rather than to the entry point.
+     */
+    @HOSTED_ONLY
+    public static void registerRuntimeAllocator(Class<?> holder) {
+        final ClassActor[] actors = Arrays.copyOf(runtimeAllocatorActors, runtimeAllocatorActors.length + 1);
+        actors[runtimeAllocatorActors.length] = ClassActor.fromJava(holder);
+        runtimeAllocatorActors = actors;
+    }
+
+    /**
+     * Per-thread sampling state and ring of samples. All the fields but {@link #tail} are only written by the owning thread.
+     */
+    static final class SampleBuffer extends StackTraceVisitor {
+        final VmThread owner;
+        final VmStackFrameWalker stackFrameWalker;
+
+        /**
+         * Remaining number of bytes to allocate before the next sample.
+         */
+        long countDown;
+
+        /**
+         * Allocation mark of the thread's TLAB up to which allocated bytes have been charged to {@link #countDown}.
+         */
+        Address chargedMark = Address.zero();
+
+        /**
+         * Cell of the sampled allocation whose type is not yet recorded, or zero.
+         */
+        Pointer pendingCell = Pointer.zero();
+
+        /**
+         * State of the random generator of sampling intervals.
+         */
+        long seed;
+
+        final ClassActor[] types;
+        final long[] sizes;
+        final int[] depths;
+        final ClassMethodActor[] methods;
+        final int[] lineNumbers;
+
+        /**
+         * Index of the next sample to publish.
+         */
+        volatile int head;
+
+        /**
+         * Index of the next sample to consume.
+         */
+        volatile int tail;
+
+        /**
+         * Number of samples dropped because the ring was full.
+         */
+        volatile int dropped;
+
+        /**
+         * Slot being filled by the stack walk.
+         */
+        private int recordingSlot;
+        private int recordingDepth;
+        private boolean reachedAllocationSite;
+
+        SampleBuffer next;
+
+        private SampleBuffer() {
+            super(null);
+            owner = null;
+            stackFrameWalker = null;
+            types = null;
+            sizes = null;
+            depths = null;
+            methods = null;
+            lineNumbers = null;
+        }
+
+        SampleBuffer(VmThread owner, int capacity, int maxDepth) {
+            super(null);
+            this.owner = owner;
+            this.stackFrameWalker = new VmStackFrameWalker(owner.tla());
+            types = new ClassActor[capacity];
+            sizes = new long[capacity];
+            depths = new int[capacity];
+            methods = new ClassMethodActor[capacity * maxDepth];
+            lineNumbers = new int[capacity * maxDepth];
+            seed = System.nanoTime() ^ (owner.id() * 0x9E3779B97F4A7C15L);
+            if (seed == 0L) {
+                seed = 1L;
+            }
+            countDown = nextInterval();
+        }
+
+        /**
+         * Draws the number of bytes to allocate before the next sample from an exponential distribution, which
+         * makes the samples a Poisson process over the allocated bytes and avoids strobing with allocation patterns.
+         */
+        long nextInterval() {
+            // xorshift64*
+            seed ^= seed >>> 12;
+            seed ^= seed << 25;
+            seed ^= seed >>> 27;
+            final long r = seed * 0x2545F4914F6CDD1DL;
+            // uniform in (0, 1]
+            final double u = ((r >>> 11) + 1) * (1.0 / (1L << 53));
+            final double mean = AllocationSamplingInterval.toLong();
+            return Math.max(1L, (long) Math.min(-Math.log(u) * mean, mean * 64));
+        }
+
+        boolean isFull() {
+            return head - tail >= types.length;
+        }
+
+        @Override
+        public boolean add(ClassMethodActor method, int sourceLineNumber) {
+            if (!reachedAllocationSite) {
+                if (isAllocatorFrame(method.holder())) {
+                    return true;
+                }
+                reachedAllocationSite = true;
+            }
+            final int maxDepth = methods.length / types.length;
+            final int index = recordingSlot * maxDepth + recordingDepth;
+            methods[index] = method;
+            lineNumbers[index] = sourceLineNumber;
+            recordingDepth++;
+            return recordingDepth < maxDepth;
+        }
+
+        @Override
+        public void clear() {
+            recordingDepth = 0;
+        }
+    }
+
+    private static boolean isAllocatorFrame(ClassActor holder) {
+        if (holder == heapActor || holder == snippetsActor || holder == samplerActor || heapSchemeActor.isAssignableFrom(holder)) {
+            return true;
+        }
+        for (ClassActor actor : runtimeAllocatorActors) {
+            if (holder == actor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Histogram entry for a type and allocation site.
+     */
+    private static final class SiteKey {
+        final ClassActor type;
+        final ClassMethodActor[] methods;
+        final int[] lineNumbers;
+        final int hashCode;
+
+        SiteKey(ClassActor type, ClassMethodActor[] methods, int[] lineNumbers) {
+            this.type = type;
+            this.methods = methods;
+            this.lineNumbers = lineNumbers;
+            this.hashCode = System.identityHashCode(type) ^ Arrays.hashCode(methods) * 31 ^ Arrays.hashCode(lineNumbers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other instanceof SiteKey) {
+                final SiteKey key = (SiteKey) other;
+                return type == key.type && Arrays.equals(methods, key.methods) && Arrays.equals(lineNumbers, key.lineNumbers);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Aggregated counts for a type or an allocation site.
+     */
+    private static final class Counts {
+        long samples;
+        long sampledBytes;
+        /**
+         * Estimate of the bytes allocated, each sample being weighted by the inverse of its probability of being sampled.
+         */
+        double estimatedBytes;
+        final long[] sizeHistogram;
+
+        Counts(boolean withSizeHistogram) {
+            sizeHistogram = withSizeHistogram ? new long[SIZE_BUCKETS] : null;
+        }
+
+        void add(long size) {
+            samples++;
+            sampledBytes += size;
+            final double mean = AllocationSamplingInterval.toLong();
+            estimatedBytes += size / (1.0 - Math.exp(-size / mean));
+            if (sizeHistogram != null) {
+                sizeHistogram[Math.min(SIZE_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1L, size)))]++;
+            }
+        }
+    }
+
+    private final Map<ClassActor, Counts> typeHistogram = new HashMap<ClassActor, Counts>();
+    private final Map<SiteKey, Counts> siteHistogram = new HashMap<SiteKey, Counts>();
+    private long totalSamples;
+    private long droppedSamples;
+
+    /**
+     * Set by {@link #handle(Signal)} to have the sampler thread dump the histogram.
+     */
+    private volatile boolean dumpRequested;
+
+    /**
+     * Handler of SIGQUIT installed before the sampler's, i.e., the thread dump.
+     */
+    private SignalHandler previousQuitHandler;
+
+    private AllocationSampler() {
+        super(VmThread.systemThreadGroup, "AllocationSampler");
+        setDaemon(true);
+    }
+
+    /**
+     * Starts allocation sampling if {@link #AllocationSampling} is set.
+     */
+    public static void startSampling() {
+        if (AllocationSampling && theSampler == null) {
+            final AllocationSampler sampler = new AllocationSampler();
+            theSampler = sampler;
+            sampler.previousQuitHandler = Signal.handle(new Signal("QUIT"), sampler);
+            sampler.start();
+        }
+    }
+
+    @INLINE
+    public static boolean isSampling() {
+        return theSampler != null;
+    }
+
+    @Override
+    public void run() {
+        // The sampler doesn't sample its own allocations.
+        ALLOCATION_SAMPLES.store(ETLA.load(VmThread.currentTLA()), Reference.fromJava(NO_SAMPLING));
+        long lastDump = System.currentTimeMillis();
+        while (true) {
+            try {
+                Thread.sleep(AllocationSamplingDrainInterval);
+            } catch (InterruptedException e) {
+                // A dump was requested.
+            }
+            final long now = System.currentTimeMillis();
+            if (dumpRequested || (AllocationSamplingDumpInterval > 0 && now - lastDump >= AllocationSamplingDumpInterval * 1000L)) {
+                dumpRequested = false;
+                dump();
+                lastDump = now;
+            } else {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Handles SIGQUIT by chaining to the previous handler, then waking up the sampler thread to dump the histogram.
+     * Dumping isn't done on the signal dispatcher thread so that a large histogram doesn't delay other signals.
+     */
+    public void handle(Signal signal) {
+        final SignalHandler previous = previousQuitHandler;
+        if (previous != null && previous != SignalHandler.SIG_DFL && previous != SignalHandler.SIG_IGN) {
+            previous.handle(signal);
+        }
+        dumpRequested = true;
+        interrupt();
+    }
+
+    @INTRINSIC(UNSAFE_CAST)
+    private static native SampleBuffer asSampleBuffer(Object object);
+
+    @INLINE
+    private static SampleBuffer getBuffer(Pointer etla) {
+        final Reference reference = ALLOCATION_SAMPLES.loadRef(etla);
+        if (reference.isZero()) {
+            return null;
+        }
+        return asSampleBuffer(reference.toJava());
+    }
+
+    /**
+     * Creates and registers the sample buffer of the current thread.
+     * The allocations done here may take the slow path again, which finds {@link #NO_SAMPLING} and does nothing.
+     */
+    @NEVER_INLINE
+    private static void createBuffer(Pointer etla) {
+        ALLOCATION_SAMPLES.store(etla, Reference.fromJava(NO_SAMPLING));
+        final SampleBuffer buffer = new SampleBuffer(VmThread.current(), AllocationSamplingBufferSize, AllocationSamplingStackDepth);
+        synchronized (buffersLock) {
+            buffer.next = buffers;
+            buffers = buffer;
+        }
+        ALLOCATION_SAMPLES.store(etla, Reference.fromJava(buffer));
+    }
+
+    /**
+     * Notification that the current thread is entering the allocation slow path. Completes any pending sample
+     * of the thread, charges the bytes allocated since the previous slow path to the sampling count down, and
+     * records the stack of the current allocation if the count down expired.
+     *
+     * Must be called before the allocation is satisfied: the stack walk may allocate and trigger a garbage collection.
+     *
+     * @param etla the thread locals of the current thread
+     * @param allocationMark the current allocation mark of the thread's TLAB
+     * @param size the size of the allocation request
+     * @return {@code true} if the allocation is sampled, in which case {@link #afterSlowPathAllocate} must be called
+     *         with the allocated cell
+     */
+    public static boolean beforeSlowPathAllocate(Pointer etla, Pointer allocationMark, Size size) {
+        SampleBuffer buffer = getBuffer(etla);
+        if (buffer == null) {
+            // Don't allocate the buffer before the thread has a TLAB: the allocation would recurse into the slow path.
+            if (allocationMark.isZero() || !isSampling()) {
+                return false;
+            }
+            createBuffer(etla);
+            return false;
+        }
+        if (buffer == NO_SAMPLING) {
+            return false;
+        }
+        completePendingSample(buffer);
+        long charged = size.toLong();
+        if (!buffer.chargedMark.isZero() && allocationMark.greaterThan(buffer.chargedMark)) {
+            charged += allocationMark.minus(buffer.chargedMark).toLong();
+        }
+        buffer.chargedMark = allocationMark;
+        buffer.countDown -= charged;
+        if (buffer.countDown > 0) {
+            return false;
+        }
+        buffer.countDown = buffer.nextInterval();
+        if (buffer.isFull()) {
+            buffer.dropped++;
+            return false;
+        }
+        final int slot = buffer.head % buffer.types.length;
+        buffer.sizes[slot] = size.toLong();
+        ALLOCATION_SAMPLES.store(etla, Reference.fromJava(NO_SAMPLING));
+        try {
+            captureStack(buffer, slot);
+        } finally {
+            ALLOCATION_SAMPLES.store(etla, Reference.fromJava(buffer));
+        }
+        return true;
+    }
+
+    /**
+     * Notification that the current thread leaves the allocation slow path.
+     *
+     * @param etla the thread locals of the current thread
+     * @param cell the allocated cell, whose hub is about to be installed
+     * @param allocationMark the allocation mark of the thread's TLAB after the allocation
+     * @param sampled the value returned by {@link #beforeSlowPathAllocate}
+     */
+    @INLINE
+    public static void afterSlowPathAllocate(Pointer etla, Pointer cell, Pointer allocationMark, boolean sampled) {
+        final SampleBuffer buffer = getBuffer(etla);
+        if (buffer == null || buffer == NO_SAMPLING) {
+            return;
+        }
+        buffer.chargedMark = allocationMark;
+        if (sampled) {
+            buffer.pendingCell = cell;
+        }
+    }
+
+    /**
+     * Notification that the TLAB of a thread is being reset. Completes the pending sample of the thread, whose object is
+     * about to be moved or reclaimed. May be called by a thread other than the owner of the TLAB, but the owner is then
+     * stopped at a safepoint. Must not allocate.
+     *
+     * @param etla the thread locals of the thread whose TLAB is reset
+     * @param allocationMark the allocation mark of the TLAB before the reset
+     */
+    public static void notifyTLABReset(Pointer etla, Pointer allocationMark) {
+        final SampleBuffer buffer = getBuffer(etla);
+        if (buffer == null || buffer == NO_SAMPLING) {
+            return;
+        }
+        completePendingSample(buffer);
+        if (!buffer.chargedMark.isZero() && allocationMark.greaterThan(buffer.chargedMark)) {
+            buffer.countDown -= allocationMark.minus(buffer.chargedMark).toLong();
+        }
+        buffer.chargedMark = Address.zero();
+    }
+
+    private static void completePendingSample(SampleBuffer buffer) {
+        final Pointer cell = buffer.pendingCell;
+        if (cell.isZero()) {
+            return;
+        }
+        buffer.pendingCell = Pointer.zero();
+        final Hub hub = UnsafeCast.asHub(Layout.readHubReference(Layout.cellToOrigin(cell)).toJava());
+        final int head = buffer.head;
+        buffer.types[head % buffer.types.length] = hub.classActor;
+        // Publish the sample to the sampler thread.
+        buffer.head = head + 1;
+    }
+
+    @NEVER_INLINE
+    private static void captureStack(SampleBuffer buffer, int slot) {
+        buffer.recordingSlot = slot;
+        buffer.recordingDepth = 0;
+        buffer.reachedAllocationSite = false;
+        final Pointer ip = Pointer.fromLong(here());
+        final Pointer sp = VMRegister.getCpuStackPointer();
+        final Pointer fp = VMRegister.getCpuFramePointer();
+        buffer.walk(buffer.stackFrameWalker, ip, sp, fp);
+        buffer.depths[slot] = buffer.recordingDepth;
+    }
+
+    /**
+     * Moves the published samples of all the threads into the histograms and retires the buffers of terminated threads.
+     */
+    private synchronized void drain() {
+        SampleBuffer prev = null;
+        SampleBuffer buffer;
+        synchronized (buffersLock) {
+            buffer = buffers;
+        }
+        while (buffer != null) {
+            final int maxDepth = buffer.methods.length / buffer.types.length;
+            final int head = buffer.head;
+            int tail = buffer.tail;
+            while (tail != head) {
+                final int slot = tail % buffer.types.length;
+                final int depth = buffer.depths[slot];
+                final ClassActor type = buffer.types[slot];
+                final long size = buffer.sizes[slot];
+                final ClassMethodActor[] methods = Arrays.copyOfRange(buffer.methods, slot * maxDepth, slot * maxDepth + depth);
+                final int[] lineNumbers = Arrays.copyOfRange(buffer.lineNumbers, slot * maxDepth, slot * maxDepth + depth);
+                tail++;
+                buffer.tail = tail;
+
+                counts(typeHistogram, type, true).add(size);
+                counts(siteHistogram, new SiteKey(type, methods, lineNumbers), false).add(size);
+                totalSamples++;
+            }
+            final int dropped = buffer.dropped;
+            if (dropped != 0) {
+                buffer.dropped = 0;
+                droppedSamples += dropped;
+            }
+            final SampleBuffer next = buffer.next;
+            if (!buffer.owner.javaThread().isAlive() && buffer.head == buffer.tail) {
+                synchronized (buffersLock) {
+                    if (prev == null) {
+                        // new buffers may have been pushed in front of this one
+                        SampleBuffer b = buffers;
+                        if (b == buffer) {
+                            buffers = next;
+                        } else {
+                            while (b.next != buffer) {
+                                b = b.next;
+                            }
+                            b.next = next;
+                        }
+                    } else {
+                        prev.next = next;
+                    }
+                }
+            } else {
+                prev = buffer;
+            }
+            buffer = next;
+        }
+    }
+
+    private static <K> Counts counts(Map<K, Counts> histogram, K key, boolean withSizeHistogram) {
+        Counts counts = histogram.get(key);
+        if (counts == null) {
+            counts = new Counts(withSizeHistogram);
+            histogram.put(key, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Dumps the histogram of sampled allocations to the log. May be called at any time from any thread.
+     */
+    public static void dump() {
+        final AllocationSampler sampler = theSampler;
+        if (sampler != null) {
+            sampler.drain();
+            sampler.print();
+        }
+    }
+
+    /**
+     * Gets the number of times the histogram of sampled allocations has been dumped.
+     */
+    public static int dumpCount() {
+        return dumpCount;
+    }
+
+    /**
+     * Gets the number of samples of allocations of a given type whose innermost recorded frame is in a given method.
+     * Samples published by threads are aggregated first. May be called at any time from any thread.
+     *
+     * @param type the type of the sampled allocations
+     * @param site the method performing the sampled allocations
+     * @return the number of samples, 0 if allocations are not being sampled
+     */
+    public static long sampleCount(ClassActor type, ClassMethodActor site) {
+        final AllocationSampler sampler = theSampler;
+        if (sampler == null) {
+            return 0L;
+        }
+        sampler.drain();
+        return sampler.siteSampleCount(type, site);
+    }
+
+    private synchronized long siteSampleCount(ClassActor type, ClassMethodActor site) {
+        long samples = 0L;
+        for (Map.Entry<SiteKey, Counts> entry : siteHistogram.entrySet()) {
+            final SiteKey key = entry.getKey();
+            if (key.type == type && key.methods.length > 0 && key.methods[0] == site) {
+                samples += entry.getValue().samples;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Dumps the histogram of sampled allocations at VM termination.
+     */
+    public static void terminate() {
+        dump();
+    }
+
+    private static final Comparator<Map.Entry<?, Counts>> BY_ESTIMATED_BYTES = new Comparator<Map.Entry<?, Counts>>() {
+        public int compare(Map.Entry<?, Counts> e1, Map.Entry<?, Counts> e2) {
+            return Double.compare(e2.getValue().estimatedBytes, e1.getValue().estimatedBytes);
+        }
+    };
+
+    private synchronized void print() {
+        // Sort before taking the log lock, which disables safepoints.
+        final List<Map.Entry<ClassActor, Counts>> types = new ArrayList<Map.Entry<ClassActor, Counts>>(typeHistogram.entrySet());
+        Collections.sort(types, BY_ESTIMATED_BYTES);
+        final List<Map.Entry<SiteKey, Counts>> sites = new ArrayList<Map.Entry<SiteKey, Counts>>(siteHistogram.entrySet());
+        Collections.sort(sites, BY_ESTIMATED_BYTES);
+
+        boolean state = Log.lock();
+        Log.print("Allocation samples: ");
+        Log.print(totalSamples);
+        Log.print(" (");
+        Log.print(droppedSamples);
+        Log.print(" dropped), mean interval: ");
+        Log.print(AllocationSamplingInterval.toLong());
+        Log.println(" bytes");
+        Log.println();
+
+        Log.println("By type (estimated bytes, #samples, sampled bytes, type, sizes as [log2(size)]:#samples):");
+        for (Map.Entry<ClassActor, Counts> entry : types) {
+            final Counts counts = entry.getValue();
+            printCounts(counts);
+            Log.print(entry.getKey().name.toString());
+            for (int i = 0; i < SIZE_BUCKETS; i++) {
+                if (counts.sizeHistogram[i] != 0) {
+                    Log.print(" [");
+                    Log.print(i);
+                    Log.print("]:");
+                    Log.print(counts.sizeHistogram[i]);
+                }
+            }
+            Log.println();
+        }
+        Log.println();
+
+        Log.println("By allocation site (estimated bytes, #samples, sampled bytes, type):");
+        for (Map.Entry<SiteKey, Counts> entry : sites) {
+            final SiteKey key = entry.getKey();
+            printCounts(entry.getValue());
+            Log.println(key.type.name.toString());
+            for (int i = 0; i < key.methods.length; i++) {
+                final ClassMethodActor classMethodActor = key.methods[i];
+                Log.print("      ");
+                Log.print(classMethodActor.holder().name.toString());
+                Log.print('.');
+                Log.print(classMethodActor.name().toString());
+                Log.print('(');
+                if (classMethodActor.nativeFunction == null) {
+                    Log.print(classMethodActor.holder().sourceFileName);
+                    if (key.lineNumbers[i] > 0) {
+                        Log.print(':');
+                        Log.print(key.lineNumbers[i]);
+                    }
+                } else {
+                    Log.print("Native Method");
+                }
+                Log.println(')');
+            }
+        }
+        Log.println();
+        Log.unlock(state);
+        dumpCount++;
+    }
+
+    private static void printCounts(Counts counts) {
+        Log.print("  ");
+        Log.print((long) counts.estimatedBytes);
+        Log.print(" ");
+        Log.print(counts.samples);
+        Log.print(" ");
+        Log.print(counts.sampledBytes);
+        Log.print(" ");
+    }
+}
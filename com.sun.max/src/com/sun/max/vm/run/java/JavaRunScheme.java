@@ -189,6 +189,7 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
         if (heapSamplingProfiler != null) {
             heapSamplingProfiler.terminate();
         }
+        AllocationSampler.terminate();
         if (MaxineVM.allocationProfiler != null) {
             MaxineVM.allocationProfiler.terminate();
         }
@@ -258,6 +259,7 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
                     final String heapProfOptionPrefix = hprofOption.toString();
                     heapSamplingProfiler = new HeapSamplingProfiler(heapProfOptionPrefix, heapProfOptionValue);
                 }
+                AllocationSampler.startSampling();
                 // The same for the Allocation Profiler
                 if (CompilationBroker.AllocationProfilerEntryPoint != null || Profiler.profileAll()) {
                     float beforeAllocProfiler = (float) Heap.reportUsedSpace() / (1024 * 1024);
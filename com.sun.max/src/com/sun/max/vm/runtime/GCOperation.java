@@ -50,6 +50,14 @@ public abstract class GCOperation extends VmOperation {
         return true;
     }
 
+    /**
+     * GC worker threads are never frozen by a garbage collection as they may be asked to take part in it.
+     */
+    @Override
+    protected boolean operateOnThread(VmThread thread) {
+        return !thread.isGCWorkerThread();
+    }
+
     /**
      * Stops the current mutator thread for a garbage collection. Just before stopping, the
      * thread prepares its own stack reference map up to the trap frame. The remainder of the
@@ -32,6 +32,7 @@ import com.sun.max.vm.MaxineVM.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.heap.*;
 import com.sun.max.vm.jdk.*;
 import com.sun.max.vm.jdk.JDK_java_lang_Throwable.*;
 import com.sun.max.vm.object.*;
@@ -119,6 +120,9 @@ public final class Throw {
         convertAssertionToFatalError(throwable);
 
         FatalError.check(throwable != null, "Trying to raise an exception with a null Throwable object");
+        if (HeapDumper.HeapDumpOnOutOfMemoryError && throwable instanceof OutOfMemoryError) {
+            HeapDumper.notifyOutOfMemoryError();
+        }
         final VmStackFrameWalker sfw = VmThread.current().unwindingStackFrameWalker(throwable);
 
         VmThread.current().checkYellowZoneForRaisingException();
@@ -294,6 +294,11 @@ public class VmThread {
      */
     private boolean jvmtiAgent;
 
+    /**
+     * Marks this as a GC worker thread. These are never stopped by a {@link GCOperation} as they take part in it.
+     */
+    private boolean gcWorker;
+
     /**
      * Holds the exception object for the exception currently being raised. This value will only be
      * non-null during the unwinding process between calls to {@link #storeExceptionForHandler(Throwable, TargetMethod, int)}
@@ -1130,6 +1135,22 @@ public class VmThread {
         jvmtiAgent = true;
     }
 
+    /**
+     * Determines if this is a thread helping the {@link VmOperationThread} with garbage collection work.
+     */
+    public final boolean isGCWorkerThread() {
+        return gcWorker;
+    }
+
+    /**
+     * Marks this thread as a GC worker thread. Must be called by the thread itself, before it allocates any
+     * memory or takes part in any garbage collection.
+     */
+    public final void setAsGCWorkerThread() {
+        assert this == current();
+        gcWorker = true;
+    }
+
     /**
      * Bind the given {@code Thread} to this VmThread.
      * @param javaThread thread to be bound
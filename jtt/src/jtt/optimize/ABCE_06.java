@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * @Harness: java
+ * @Runs: 0=0;2=1;10=45;9=!java.lang.ArrayIndexOutOfBoundsException;
+ */
+public class ABCE_06 {
+    public static int test(int arg) {
+        int[] array = new int[arg];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = i;
+        }
+        int r = 0;
+        for (int i = 0; i < array.length; i++) {
+            r += array[i];
+            i++;
+            r += array[i];
+        }
+        return r;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * @Harness: java
+ * @Runs: 0=0;-1=0;1=1006;10=1930;
+ */
+public class LICM_01 {
+    public static int test(int arg) {
+        int x = arg * 3;
+        int r = 0;
+        for (int i = 0; i < arg; i++) {
+            // the division by zero must not be hoisted out of a loop that is not entered
+            r += ((x + 7) ^ (x << 2)) + 1000 / arg;
+        }
+        return r;
+    }
+}
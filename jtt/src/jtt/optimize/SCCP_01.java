@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * @Harness: java
+ * @Runs: 0=11;1=21;10=111;
+ */
+public class SCCP_01 {
+    public static int test(int arg) {
+        int x = 3;
+        int y;
+        if (x > 2) {
+            y = 10;
+        } else {
+            y = 20;
+        }
+        int k = 1;
+        int z = y;
+        for (int i = 0; i < arg; i++) {
+            if (k != 1) {
+                k = 2;
+            }
+            z += k * y;
+        }
+        return z + k;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests a guard on a monomorphic receiver type profile failing once the call site sees another type.
+ * @Harness: java
+ * @Runs: 0=10001; 1=10002; 2=10003
+ */
+public class TypeGuard01 {
+
+    abstract static class Base {
+        abstract int value();
+    }
+
+    static class A extends Base {
+        @Override
+        int value() {
+            return 1;
+        }
+    }
+
+    static class B extends Base {
+        @Override
+        int value() {
+            return 2;
+        }
+    }
+
+    static class C extends Base {
+        @Override
+        int value() {
+            return 3;
+        }
+    }
+
+    static final Base[] receivers = {new A(), new B(), new C()};
+
+    public static int test(int arg) {
+        int sum = 0;
+        // only A is seen at the call site while the method is hot
+        for (int i = 0; i < 10000; i++) {
+            sum += call(receivers[0]);
+        }
+        return sum + call(receivers[arg]);
+    }
+
+    static int call(Base receiver) {
+        return receiver.value();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests the dispatch on a bimorphic receiver type profile and its guard failing once the call site sees a third type.
+ * @Harness: java
+ * @Runs: 0=15001; 1=15002; 2=15003
+ */
+public class TypeGuard02 {
+
+    interface Base {
+        int value();
+    }
+
+    static class A implements Base {
+        public int value() {
+            return 1;
+        }
+    }
+
+    static class B implements Base {
+        public int value() {
+            return 2;
+        }
+    }
+
+    static class C implements Base {
+        public int value() {
+            return 3;
+        }
+    }
+
+    static final Base[] receivers = {new A(), new B(), new C()};
+
+    public static int test(int arg) {
+        int sum = 0;
+        // A and B are seen equally often at the call site while the method is hot
+        for (int i = 0; i < 10000; i++) {
+            sum += call(receivers[i & 1]);
+        }
+        return sum + call(receivers[arg]);
+    }
+
+    static int call(Base receiver) {
+        return receiver.value();
+    }
+}
@@ -55,6 +55,68 @@ def c1x(args):
     olc(['-c=C1X'] + args)
 
 
+_c1xPasses = [
+    ('OptSCCP', ['ConstantsPropagated', 'BranchesFolded']),
+    ('OptLoopInvariantCodeMotion', ['LoopInvariantsHoisted']),
+    ('OptRangeCheckElimination', ['BoundsChecksElminations'])
+]
+
+def _c1xmetrics(args):
+    class Metrics:
+        def __init__(self):
+            self.values = dict()
+            self.inMetrics = False
+
+        def eat(self, line):
+            line = line.strip()
+            if line == 'C1XMetrics {':
+                self.inMetrics = True
+            elif line == '}':
+                self.inMetrics = False
+            elif self.inMetrics and ' = ' in line:
+                (k, v) = line.split(' = ', 1)
+                self.values[k.strip()] = int(v)
+
+    m = Metrics()
+    olc(['-c=C1X', '--C1X:+PrintMetrics'] + args, out=m.eat)
+    if len(m.values) == 0:
+        mx.abort('No C1XMetrics were printed by: mx c1x ' + ' '.join(args))
+    return m.values
+
+def c1xpasses(args):
+    """compare the C1XMetrics with each level 3 pass turned off
+
+    Compiles the given patterns (default: "^jtt.optimize ^jtt.loop" from the
+    jtt project) once with all passes enabled and once with each of the
+    SCCP, loop invariant code motion and range check elimination passes
+    disabled, and prints how the metrics move relative to the first run.
+    The counters a pass maintains itself must drop to 0 when it is off."""
+
+    if len(args) == 0:
+        args = ['-cp', '@jtt', '^jtt.optimize', '^jtt.loop']
+
+    base = _c1xmetrics(args)
+    shown = ['CodeBytesEmitted', 'HIRInstructions', 'LIRInstructions', 'BlocksDeleted', 'DeadCodeEliminated']
+    for (_, own) in _c1xPasses:
+        shown += own
+    mx.log('    {0:<30} {1:>10}'.format('all passes', ''))
+    for name in shown:
+        mx.log('    {0:<30} {1:>10}'.format(name, base.get(name, 0)))
+
+    failed = []
+    for (option, own) in _c1xPasses:
+        values = _c1xmetrics(['--C1X:-' + option] + args)
+        mx.log()
+        mx.log('    {0:<30} {1:>10} {2:>10}'.format('-' + option, 'value', 'delta'))
+        for name in shown:
+            mx.log('    {0:<30} {1:>10} {2:>+10}'.format(name, values.get(name, 0), values.get(name, 0) - base.get(name, 0)))
+        for name in own:
+            if values.get(name, 0) != 0:
+                failed.append('{0} is {1} with -{2}'.format(name, values[name], option))
+    if len(failed) != 0:
+        mx.abort('\n'.join(failed))
+
+
 def _configs():
     class Configs:
         def __init__(self):
@@ -169,6 +231,9 @@ def gate(args):
         mx.log('Rerun "mx canonicalizeprojects" and check-in the modified mx/suite.py files.')
         mx.abort(1)
 
+    mx.log('Comparing C1XMetrics with each level 3 C1X pass turned off')
+    c1xpasses([])
+
     mx.log('Running MaxineTester...')
 
     testme(['-image-configs=java',
@@ -176,6 +241,15 @@ def gate(args):
             '-jtt-image-configs=jtt-c1xc1x,jtt-t1xc1x,jtt-c1xt1x,jtt-t1xt1x',
             '-tests=c1x,junit:uk.ac+tests.unsafe+tests.vm+max.l+max.c+max.u+max.i+max.M+max.p,jsr292,output,javatester'] + testArgs)
     testme(['-image-configs=ss', '-tests=output:Hello+Catch+GC+WeakRef+Final', '-fail-fast'] + testArgs)
+    testme(['-image-configs=msed', '-maxvm-configs=lazysweep', '-tests=output:GC+LazySweep+WeakRef+HeapDump', '-fail-fast'] + testArgs)
+    testme(['-image-configs=msed,immixd', '-maxvm-configs=verifygc', '-tests=output:LargeArray', '-fail-fast'] + testArgs)
+    testme(['-image-configs=msed,gmsed', '-maxvm-configs=pargcstress', '-tests=output:GC+ParallelGCStartup', '-fail-fast'] + testArgs)
+    testme(['-image-configs=gmsed', '-maxvm-configs=parevac', '-tests=output:GC+ParallelEvacuationStress', '-fail-fast'] + testArgs)
+    testme(['-image-configs=gmsed', '-maxvm-configs=pausegoal', '-tests=output:GC+WeakRef+ParallelEvacuationStress', '-fail-fast'] + testArgs)
+    testme(['-jtt-image-configs=jtt-immixc1xc1x', '-tests=javatester', '-fail-fast'] + testArgs)
+    testme(['-jtt-image-configs=jtt-c1xc1x-nosccp,jtt-c1xc1x-nolicm,jtt-c1xc1x-norce', '-tests=javatester', '-fail-fast'] + testArgs)
+    testme(['-tests=vmoutput', '-fail-fast'] + testArgs)
+    testme(['-image-configs=msed-satb', '-maxvm-configs=concmark', '-tests=output:GC+ConcurrentMarking+WeakRef', '-fail-fast'] + testArgs)
 
 
 def gitinit(args):
@@ -609,7 +683,7 @@ def objecttree(args):
                  '-in=' + join(_vmdir, 'maxine.object.tree')] + args)
 
 
-def olc(args):
+def olc(args, out=None):
     """offline compile a list of methods
 
     See Patterns below for a description of the format expected for "patterns..."
@@ -637,7 +711,7 @@ def olc(args):
         i += 1
 
     insCP = pathsep.join(insCP)
-    mx.run_java(['-ea', '-esa', '-cp', mx.classpath() + pathsep + insCP, 'com.oracle.max.vm.ext.maxri.Compile'] + olcArgs)
+    mx.run_java(['-ea', '-esa', '-cp', mx.classpath() + pathsep + insCP, 'com.oracle.max.vm.ext.maxri.Compile'] + olcArgs, out=out)
 
 def getEntryOrExitPoint(option, vmArgs):
     index = vmArgs.index(option)
@@ -928,6 +1002,7 @@ def mx_init(suite):
         'allocprofiler': [allocprofiler, ''],
         'build': [build, '"for help run mx :build -h"'],
         'c1x': [c1x, '[options] patterns...'],
+        'c1xpasses': [c1xpasses, '[-cp classpath] [patterns...]'],
         'configs': [configs, ''],
         'checkcopyrights': [checkcopyrights, '"for help run mx :checkcopyrights -h"'],
         'eclipse': [eclipse, '[VM options]'],
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+/*
+ * @Harness: java
+ * @Runs: (1, 1000, 65536) = true; (4, 1000, 65536) = true;
+ */
+package test.bench.threads;
+
+import test.bench.util.*;
+
+/**
+ * Test for the scalability of large object allocation. Each allocation is larger than the default heap region
+ * of the region-based heap schemes, so this measures the throughput of the heap's large object allocator as the
+ * number of allocating threads grows. When run standalone, the benchmark is repeated for 1, 2, 4, ... threads
+ * up to the specified maximum number of threads.
+ */
+public class LargeObject_new extends RunBench {
+
+    protected static final int DEFAULT_MAX_NT = 8;
+    protected static final int DEFAULT_NA = 1000;
+    protected static final int DEFAULT_AS = 512 * 1024;
+
+    protected LargeObject_new(int nt, int na, int as) {
+        super(new Bench(nt, na, as), new EncapBench(nt, na, as));
+    }
+
+    public static boolean test(int nt, int na, int as) {
+        return new LargeObject_new(nt, na, as).runBench();
+    }
+
+    static class Bench extends MicroBenchmark {
+        protected Barrier barrier1;
+        protected Barrier barrier2;
+        protected int allocSize;
+        protected int nrAllocs;
+        protected int nrThreads;
+
+        Bench(int nt, int na, int as) {
+            nrThreads = nt;
+            nrAllocs = na / nt;
+            allocSize = as;
+        }
+
+        @Override
+        public void prerun() {
+            barrier1 = new Barrier(nrThreads + 1);
+            barrier2 = new Barrier(nrThreads + 1);
+            createThreads();
+        }
+
+        protected void createThreads() {
+            for (int i = 0; i < nrThreads; i++) {
+                new Thread(new AllocationThread(), "LargeAlloc-" + i).start();
+            }
+        }
+
+        @Override
+        public long run() {
+            barrier1.waitForRelease();
+            barrier2.waitForRelease();
+            return defaultResult;
+        }
+
+        class AllocationThread implements Runnable {
+            public void run() {
+                barrier1.waitForRelease();
+                for (int i = 0; i < nrAllocs; i++) {
+                    final byte[] tmp = new byte[allocSize];
+                    tmp[allocSize - 1] = 1;
+                }
+                barrier2.waitForRelease();
+            }
+        }
+    }
+
+    static class EncapBench extends Bench {
+        EncapBench(int nt, int na, int as) {
+            super(nt, na, as);
+        }
+
+        @Override
+        public void createThreads() {
+            for (int i = 0; i < nrThreads; i++) {
+                new Thread(new EncapThread(), "Encap-" + i).start();
+            }
+        }
+
+        class EncapThread implements Runnable {
+            public void run() {
+                barrier1.waitForRelease();
+                barrier2.waitForRelease();
+            }
+        }
+
+    }
+
+    public static void main(String[] args) {
+        int maxNt = DEFAULT_MAX_NT;
+        int na = DEFAULT_NA;
+        int as = DEFAULT_AS;
+        if (args.length > 0) {
+            maxNt = Integer.parseInt(args[0]);
+            if (args.length > 1) {
+                na = Integer.parseInt(args[1]);
+                if (args.length > 2) {
+                    as = Integer.parseInt(args[2]);
+                }
+            }
+        }
+        for (int nt = 1; nt <= maxNt; nt *= 2) {
+            System.out.println("Threads: " + nt);
+            test(nt, na, as);
+        }
+    }
+
+}
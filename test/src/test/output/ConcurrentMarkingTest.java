@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * Mutator workload for heaps that mark concurrently (-XX:+ConcurrentMarking).
+ * Several threads keep rewiring the references of a shared graph while allocating garbage, so that marking
+ * cycles overlap with reference stores the SATB barrier must log. Each node carries a checksum of its payload,
+ * which is verified once all threads are done.
+ */
+public final class ConcurrentMarkingTest {
+
+    private static final int NODES = 4096;
+    private static final int THREADS = 4;
+
+    static final class Node {
+        final int[] payload;
+        final int checksum;
+        Node left;
+        Node right;
+
+        Node(int seed) {
+            payload = new int[8 + seed % 56];
+            int sum = 0;
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = seed * 31 + i;
+                sum += payload[i];
+            }
+            checksum = sum;
+        }
+
+        boolean check() {
+            int sum = 0;
+            for (int i = 0; i < payload.length; i++) {
+                sum += payload[i];
+            }
+            return sum == checksum;
+        }
+    }
+
+    private static final Node[] nodes = new Node[NODES];
+
+    static final class Mutator extends Thread {
+        private final int id;
+        private final int iterations;
+
+        Mutator(int id, int iterations) {
+            this.id = id;
+            this.iterations = iterations;
+        }
+
+        @Override
+        public void run() {
+            int seed = id;
+            for (int i = 0; i < iterations; i++) {
+                seed = seed * 1103515245 + 12345;
+                final int a = (seed >>> 8) % NODES;
+                final int b = (seed >>> 4) % NODES;
+                final Node node = nodes[a];
+                // Move a sub-graph around: the only reference to the old child may be overwritten while the marker traces.
+                final Node child = node.left;
+                node.left = nodes[b].right;
+                nodes[b].right = child;
+                if ((i & 7) == 0) {
+                    final Node replacement = new Node(a);
+                    replacement.left = node.left;
+                    replacement.right = node.right;
+                    nodes[a] = replacement;
+                }
+                final Object[] garbage = new Object[1 + (i & 255)];
+                garbage[0] = node;
+            }
+        }
+    }
+
+    private static int countBroken() {
+        int broken = 0;
+        for (Node node : nodes) {
+            if (!node.check() || (node.left != null && !node.left.check()) || (node.right != null && !node.right.check())) {
+                broken++;
+            }
+        }
+        return broken;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println(ConcurrentMarkingTest.class.getSimpleName() + " starting...");
+        int iterations = 400000;
+        if (args.length > 0) {
+            iterations = Integer.parseInt(args[0]);
+        }
+        for (int i = 0; i < NODES; i++) {
+            nodes[i] = new Node(i);
+        }
+        for (int i = 0; i < NODES; i++) {
+            nodes[i].left = nodes[(i * 7 + 1) % NODES];
+            nodes[i].right = nodes[(i * 13 + 5) % NODES];
+        }
+        final Mutator[] mutators = new Mutator[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            mutators[i] = new Mutator(i, iterations);
+            mutators[i].start();
+        }
+        for (Mutator mutator : mutators) {
+            mutator.join();
+        }
+        System.out.println("Broken nodes: " + countBroken());
+        System.out.println(ConcurrentMarkingTest.class.getSimpleName() + " done.");
+    }
+}
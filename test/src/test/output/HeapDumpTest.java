@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import com.sun.management.*;
+
+/**
+ * Writes a live heap dump in HPROF format with {@link HotSpotDiagnosticMXBean#dumpHeap(String, boolean)}, parses it
+ * and checks that a reachable object and its class are in the dump, and that unreachable objects of the same class aren't.
+ */
+public final class HeapDumpTest {
+
+    static final class Marker {
+        final int value;
+
+        Marker(int value) {
+            this.value = value;
+        }
+    }
+
+    private static final int LIVE_VALUE = 0x5EED1234;
+    private static final int DEAD_VALUE = 0x0BADF00D;
+
+    private static final String MARKER_CLASS_NAME = "test/output/HeapDumpTest$Marker";
+
+    // Record tags
+    private static final int HPROF_UTF8 = 0x01;
+    private static final int HPROF_LOAD_CLASS = 0x02;
+    private static final int HPROF_HEAP_DUMP = 0x0C;
+    private static final int HPROF_HEAP_DUMP_SEGMENT = 0x1C;
+
+    // Heap dump sub-record tags
+    private static final int HPROF_GC_ROOT_UNKNOWN = 0xFF;
+    private static final int HPROF_GC_ROOT_JNI_GLOBAL = 0x01;
+    private static final int HPROF_GC_ROOT_JNI_LOCAL = 0x02;
+    private static final int HPROF_GC_ROOT_JAVA_FRAME = 0x03;
+    private static final int HPROF_GC_ROOT_NATIVE_STACK = 0x04;
+    private static final int HPROF_GC_ROOT_STICKY_CLASS = 0x05;
+    private static final int HPROF_GC_ROOT_THREAD_BLOCK = 0x06;
+    private static final int HPROF_GC_ROOT_MONITOR_USED = 0x07;
+    private static final int HPROF_GC_ROOT_THREAD_OBJ = 0x08;
+    private static final int HPROF_GC_CLASS_DUMP = 0x20;
+    private static final int HPROF_GC_INSTANCE_DUMP = 0x21;
+    private static final int HPROF_GC_OBJ_ARRAY_DUMP = 0x22;
+    private static final int HPROF_GC_PRIM_ARRAY_DUMP = 0x23;
+
+    static Marker liveMarker;
+
+    private static DataInputStream in;
+    private static int idSize;
+
+    private static final Map<Long, String> names = new HashMap<Long, String>();
+    private static final Map<Long, Long> classNames = new HashMap<Long, Long>();
+    private static final Set<Long> dumpedClasses = new HashSet<Long>();
+    private static final List<Long> instanceClasses = new ArrayList<Long>();
+    private static final List<Integer> instanceFirstInts = new ArrayList<Integer>();
+
+    private static void makeGarbage() {
+        for (int i = 0; i < 1000; i++) {
+            new Marker(DEAD_VALUE);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(HeapDumpTest.class.getSimpleName() + " starting...");
+        liveMarker = new Marker(LIVE_VALUE);
+        makeGarbage();
+        final File file = File.createTempFile("HeapDumpTest", ".hprof");
+        // The dump must not overwrite an existing file.
+        file.delete();
+        try {
+            ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class).dumpHeap(file.getPath(), true);
+            parse(file);
+        } finally {
+            file.delete();
+        }
+        Long markerClass = null;
+        for (Map.Entry<Long, Long> entry : classNames.entrySet()) {
+            if (MARKER_CLASS_NAME.equals(names.get(entry.getValue()))) {
+                markerClass = entry.getKey();
+            }
+        }
+        System.out.println("Marker class loaded: " + (markerClass != null));
+        System.out.println("Marker class dumped: " + dumpedClasses.contains(markerClass));
+        int live = 0;
+        int dead = 0;
+        for (int i = 0; i < instanceClasses.size(); i++) {
+            if (instanceClasses.get(i).equals(markerClass)) {
+                if (instanceFirstInts.get(i) == LIVE_VALUE) {
+                    live++;
+                } else if (instanceFirstInts.get(i) == DEAD_VALUE) {
+                    dead++;
+                }
+            }
+        }
+        System.out.println("Live markers: " + live);
+        System.out.println("Dead markers: " + dead);
+        System.out.println(HeapDumpTest.class.getSimpleName() + " done.");
+    }
+
+    private static void parse(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            final StringBuilder header = new StringBuilder();
+            for (int c = in.readUnsignedByte(); c != 0; c = in.readUnsignedByte()) {
+                header.append((char) c);
+            }
+            System.out.println("Header is HPROF: " + header.toString().startsWith("JAVA PROFILE 1.0."));
+            idSize = in.readInt();
+            in.readLong();
+            while (true) {
+                final int tag = in.read();
+                if (tag < 0) {
+                    break;
+                }
+                in.readInt();
+                final long length = in.readInt() & 0xFFFFFFFFL;
+                switch (tag) {
+                    case HPROF_UTF8: {
+                        final long id = readId();
+                        final byte[] bytes = new byte[(int) length - idSize];
+                        in.readFully(bytes);
+                        names.put(id, new String(bytes, "UTF-8"));
+                        break;
+                    }
+                    case HPROF_LOAD_CLASS: {
+                        in.readInt();
+                        final long classId = readId();
+                        in.readInt();
+                        classNames.put(classId, readId());
+                        break;
+                    }
+                    case HPROF_HEAP_DUMP:
+                    case HPROF_HEAP_DUMP_SEGMENT:
+                        parseHeapDump(length);
+                        break;
+                    default:
+                        skip(length);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void parseHeapDump(long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            remaining -= 1 + parseSubRecord(in.readUnsignedByte());
+        }
+    }
+
+    /**
+     * Parses a heap dump sub-record.
+     * @return the number of bytes of the sub-record, tag excluded
+     */
+    private static long parseSubRecord(int tag) throws IOException {
+        switch (tag) {
+            case HPROF_GC_ROOT_UNKNOWN:
+            case HPROF_GC_ROOT_STICKY_CLASS:
+            case HPROF_GC_ROOT_MONITOR_USED:
+                return skip(idSize);
+            case HPROF_GC_ROOT_JNI_GLOBAL:
+                return skip(2 * idSize);
+            case HPROF_GC_ROOT_NATIVE_STACK:
+            case HPROF_GC_ROOT_THREAD_BLOCK:
+                return skip(idSize + 4);
+            case HPROF_GC_ROOT_JNI_LOCAL:
+            case HPROF_GC_ROOT_JAVA_FRAME:
+            case HPROF_GC_ROOT_THREAD_OBJ:
+                return skip(idSize + 8);
+            case HPROF_GC_CLASS_DUMP:
+                return parseClassDump();
+            case HPROF_GC_INSTANCE_DUMP: {
+                readId();
+                in.readInt();
+                instanceClasses.add(readId());
+                final int size = in.readInt();
+                instanceFirstInts.add(size >= 4 ? in.readInt() : 0);
+                skip(size >= 4 ? size - 4 : size);
+                return 2 * idSize + 8 + size;
+            }
+            case HPROF_GC_OBJ_ARRAY_DUMP: {
+                readId();
+                in.readInt();
+                final int length = in.readInt();
+                readId();
+                return 2 * idSize + 8 + skip((long) length * idSize);
+            }
+            case HPROF_GC_PRIM_ARRAY_DUMP: {
+                readId();
+                in.readInt();
+                final int length = in.readInt();
+                final int type = in.readUnsignedByte();
+                return idSize + 9 + skip((long) length * valueSize(type));
+            }
+            default:
+                throw new IOException("unknown heap dump sub-record tag " + tag);
+        }
+    }
+
+    private static long parseClassDump() throws IOException {
+        dumpedClasses.add(readId());
+        long size = idSize + 4 + 6 * idSize + 4;
+        skip(4 + 6 * idSize + 4);
+        final int constants = in.readUnsignedShort();
+        size += 2;
+        for (int i = 0; i < constants; i++) {
+            in.readUnsignedShort();
+            final int type = in.readUnsignedByte();
+            size += 3 + skip(valueSize(type));
+        }
+        final int statics = in.readUnsignedShort();
+        size += 2;
+        for (int i = 0; i < statics; i++) {
+            readId();
+            final int type = in.readUnsignedByte();
+            size += idSize + 1 + skip(valueSize(type));
+        }
+        final int fields = in.readUnsignedShort();
+        size += 2;
+        return size + skip(fields * (idSize + 1));
+    }
+
+    private static int valueSize(int type) {
+        switch (type) {
+            case 2: // object
+                return idSize;
+            case 4: // boolean
+            case 8: // byte
+                return 1;
+            case 5: // char
+            case 9: // short
+                return 2;
+            case 6: // float
+            case 10: // int
+                return 4;
+            default: // double, long
+                return 8;
+        }
+    }
+
+    private static long readId() throws IOException {
+        return idSize == 8 ? in.readLong() : in.readInt() & 0xFFFFFFFFL;
+    }
+
+    private static long skip(long n) throws IOException {
+        long left = n;
+        while (left > 0) {
+            final long skipped = in.skip(left);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            left -= skipped;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * Stress test for concurrent large object allocation. Several threads allocate arrays of mixed sizes, most of them
+ * too large for a thread local allocation buffer, keep some alive across collections and drop the others.
+ * The contents of every array kept alive is checked before it is dropped and once all threads are done.
+ * Best run with heap verification enabled (e.g., {@code -XX:+VerifyAfterGC}).
+ */
+public final class LargeArrayStressTest {
+
+    private static final int THREADS = 8;
+    private static final int KEPT = 16;
+    private static final int[] SIZES = {8 * 1024, 24 * 1024, 64 * 1024, 100 * 1024, 256 * 1024, 1024 * 1024 + 8};
+
+    static final class Allocator extends Thread {
+        private final int id;
+        private final int iterations;
+        final long[][] kept = new long[KEPT][];
+        int errors;
+
+        Allocator(int id, int iterations) {
+            this.id = id;
+            this.iterations = iterations;
+        }
+
+        private static long value(long[] array, int index) {
+            return ((long) array.length << 32) ^ index;
+        }
+
+        private static boolean check(long[] array) {
+            final int step = 1 + array.length / 64;
+            for (int i = 0; i < array.length; i += step) {
+                if (array[i] != value(array, i)) {
+                    return false;
+                }
+            }
+            return array[array.length - 1] == value(array, array.length - 1);
+        }
+
+        @Override
+        public void run() {
+            int seed = id * 7 + 1;
+            for (int i = 0; i < iterations; i++) {
+                seed = seed * 1103515245 + 12345;
+                final int length = SIZES[(seed >>> 16) % SIZES.length] / 8 + (seed >>> 8) % 97;
+                final long[] array = new long[length];
+                final int step = 1 + length / 64;
+                for (int j = 0; j < length; j += step) {
+                    array[j] = value(array, j);
+                }
+                array[length - 1] = value(array, length - 1);
+                if ((seed & 3) == 0) {
+                    final int slot = (seed >>> 4) % KEPT;
+                    if (kept[slot] != null && !check(kept[slot])) {
+                        errors++;
+                    }
+                    kept[slot] = array;
+                }
+            }
+            for (long[] array : kept) {
+                if (array != null && !check(array)) {
+                    errors++;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println(LargeArrayStressTest.class.getSimpleName() + " starting...");
+        int iterations = 2000;
+        if (args.length > 0) {
+            iterations = Integer.parseInt(args[0]);
+        }
+        final Allocator[] allocators = new Allocator[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            allocators[i] = new Allocator(i, iterations);
+            allocators[i].start();
+        }
+        int errors = 0;
+        for (Allocator allocator : allocators) {
+            allocator.join();
+            errors += allocator.errors;
+        }
+        System.out.println("Corrupted arrays: " + errors);
+        System.out.println(LargeArrayStressTest.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * Allocation-heavy workload for heaps that sweep lazily (-XX:+LazySweep).
+ * Keeps a window of live arrays of mixed sizes while dropping many more, so that collections leave regions
+ * with both live and dead objects for the sweeper to reclaim on demand, and checks the contents of the live
+ * arrays as the window slides over them.
+ */
+public final class LazySweepTest {
+
+    private static final int WINDOW = 512;
+
+    private static int[] newArray(int seed) {
+        final int length = 16 + (seed * 7919) % 20000;
+        final int[] array = new int[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = seed + i;
+        }
+        return array;
+    }
+
+    private static boolean check(int[] array, int seed) {
+        if (array.length != 16 + (seed * 7919) % 20000) {
+            return false;
+        }
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] != seed + i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+        System.out.println(LazySweepTest.class.getSimpleName() + " starting...");
+        int rounds = 20;
+        if (args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        final int[][] window = new int[WINDOW][];
+        final int[] seeds = new int[WINDOW];
+        int seed = 0;
+        int errors = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < 20 * WINDOW; i++) {
+                final int[] garbage = newArray(seed++);
+                if ((i & 3) == 0) {
+                    final int slot = (i >> 2) % WINDOW;
+                    if (window[slot] != null && !check(window[slot], seeds[slot])) {
+                        errors++;
+                    }
+                    window[slot] = garbage;
+                    seeds[slot] = seed - 1;
+                }
+            }
+            System.out.println("Round " + round + " done");
+        }
+        for (int slot = 0; slot < WINDOW; slot++) {
+            if (!check(window[slot], seeds[slot])) {
+                errors++;
+            }
+        }
+        System.out.println("Corrupted arrays: " + errors);
+        System.out.println(LazySweepTest.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * Workload for the parallel evacuation of a young generation (-XX:ParallelGCThreads greater than 1).
+ * Run with small evacuation buffers so that workers refill often, and with arrays large enough to be evacuated
+ * directly to the old generation. Lists of nodes holding arrays survive many collections and are checked against their checksums.
+ */
+public final class ParallelEvacuationStressTest {
+
+    private static final int LISTS = 256;
+    private static final int LIST_LENGTH = 32;
+
+    static final class Node {
+        final int[] data;
+        final Node next;
+
+        Node(int[] data, Node next) {
+            this.data = data;
+            this.next = next;
+        }
+    }
+
+    private static int length(int seed, int index) {
+        // Mostly small arrays, with every 16th one large enough to bypass evacuation buffers.
+        return (index & 15) == 0 ? 16 * 1024 + seed % 1024 : 1 + (seed * 31 + index) % 64;
+    }
+
+    private static Node build(int seed) {
+        Node head = null;
+        for (int i = 0; i < LIST_LENGTH; i++) {
+            final int[] data = new int[length(seed, i)];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = seed + i + j;
+            }
+            head = new Node(data, head);
+        }
+        return head;
+    }
+
+    private static long checksum(Node node) {
+        long sum = 0;
+        while (node != null) {
+            for (int value : node.data) {
+                sum = sum * 31 + value;
+            }
+            node = node.next;
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) {
+        System.out.println(ParallelEvacuationStressTest.class.getSimpleName() + " starting...");
+        int rounds = 4000;
+        if (args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        final Node[] lists = new Node[LISTS];
+        final long[] checksums = new long[LISTS];
+        for (int i = 0; i < LISTS; i++) {
+            lists[i] = build(i);
+            checksums[i] = checksum(lists[i]);
+        }
+        int broken = 0;
+        for (int r = 0; r < rounds; r++) {
+            // Replace lists at a stride so that lists of all ages are live at each collection.
+            final int i = (r * 17) % LISTS;
+            lists[i] = build(i);
+            if (r % 64 == 0) {
+                for (int j = 0; j < LISTS; j++) {
+                    if (checksum(lists[j]) != checksums[j]) {
+                        broken++;
+                    }
+                }
+            }
+        }
+        System.out.println("Broken lists: " + broken);
+        System.out.println(ParallelEvacuationStressTest.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * Workload for parallel GC worker start up (-XX:ParallelGCThreads greater than 1).
+ * Run with -XX:ExcessiveGCFrequency so that collections happen while the GC worker threads are being started,
+ * and then while they take part in marking. Trees are built, partly replaced and checked against their checksums.
+ */
+public final class ParallelGCStartupTest {
+
+    private static final int TREES = 64;
+    private static final int DEPTH = 10;
+
+    static final class Node {
+        final long value;
+        Node left;
+        Node right;
+
+        Node(long value) {
+            this.value = value;
+        }
+    }
+
+    private static Node build(int depth, long value) {
+        final Node node = new Node(value);
+        if (depth > 0) {
+            node.left = build(depth - 1, value * 2);
+            node.right = build(depth - 1, value * 2 + 1);
+        }
+        return node;
+    }
+
+    private static long sum(Node node) {
+        long sum = 0;
+        while (node != null) {
+            sum += node.value + sum(node.right);
+            node = node.left;
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) {
+        System.out.println(ParallelGCStartupTest.class.getSimpleName() + " starting...");
+        int rounds = 1000;
+        if (args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        final Node[] trees = new Node[TREES];
+        final long[] sums = new long[TREES];
+        for (int i = 0; i < TREES; i++) {
+            trees[i] = build(DEPTH, i + 1);
+            sums[i] = sum(trees[i]);
+        }
+        int broken = 0;
+        for (int r = 0; r < rounds; r++) {
+            final int i = r % TREES;
+            // Drop a tree and rebuild it, leaving the others live across the collections this triggers.
+            trees[i] = build(DEPTH, i + 1);
+            for (int j = 0; j < TREES; j += 7) {
+                if (sum(trees[j]) != sums[j]) {
+                    broken++;
+                }
+            }
+        }
+        System.out.println("Broken trees: " + broken);
+        System.out.println(ParallelGCStartupTest.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2019, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+import java.lang.management.*;
+import java.util.concurrent.*;
+
+/**
+ * Checks the per-thread allocated bytes reported by {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}:
+ * the count of the current thread covers what it allocated, in TLABs as well as outside of them, and the count of
+ * another thread never decreases while that thread allocates.
+ */
+public final class ThreadAllocatedBytesTest {
+
+    private static final int SMALL_ARRAYS = 4096;
+    private static final int SMALL_ARRAY_LENGTH = 1000;
+    private static final int LARGE_ARRAY_LENGTH = 8 * 1024 * 1024;
+    private static final int WORKER_ROUNDS = 64;
+
+    static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static Object sink;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(ThreadAllocatedBytesTest.class.getSimpleName() + " starting...");
+        System.out.println("Supported: " + threadBean.isThreadAllocatedMemorySupported());
+        System.out.println("Enabled: " + threadBean.isThreadAllocatedMemoryEnabled());
+        checkCurrentThread();
+        checkOtherThread();
+        System.out.println(ThreadAllocatedBytesTest.class.getSimpleName() + " done.");
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        return threadBean.getThreadAllocatedBytes(thread.getId());
+    }
+
+    private static void checkCurrentThread() {
+        final Thread current = Thread.currentThread();
+        long before = allocatedBytes(current);
+        final byte[][] arrays = new byte[SMALL_ARRAYS][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = new byte[SMALL_ARRAY_LENGTH];
+        }
+        sink = arrays;
+        long allocated = allocatedBytes(current) - before;
+        final long smallBytes = (long) SMALL_ARRAYS * SMALL_ARRAY_LENGTH;
+        System.out.println("Small arrays counted: " + (allocated >= smallBytes && allocated < 2 * smallBytes + 1024 * 1024));
+
+        before = allocatedBytes(current);
+        sink = new byte[LARGE_ARRAY_LENGTH];
+        allocated = allocatedBytes(current) - before;
+        System.out.println("Large array counted: " + (allocated >= LARGE_ARRAY_LENGTH && allocated < 2L * LARGE_ARRAY_LENGTH));
+        sink = null;
+    }
+
+    private static void checkOtherThread() throws Exception {
+        final CountDownLatch allocated = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread worker = new Thread() {
+            @Override
+            public void run() {
+                for (int round = 0; round < WORKER_ROUNDS; round++) {
+                    final byte[][] arrays = new byte[SMALL_ARRAYS][];
+                    for (int i = 0; i < arrays.length; i++) {
+                        arrays[i] = new byte[SMALL_ARRAY_LENGTH];
+                    }
+                    sink = arrays;
+                }
+                allocated.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        worker.start();
+        boolean monotonic = true;
+        long last = 0;
+        while (allocated.getCount() != 0) {
+            final long bytes = allocatedBytes(worker);
+            if (bytes < last) {
+                monotonic = false;
+            }
+            last = bytes;
+            Thread.yield();
+        }
+        final long total = allocatedBytes(worker);
+        done.countDown();
+        worker.join();
+        final long workerBytes = (long) WORKER_ROUNDS * SMALL_ARRAYS * SMALL_ARRAY_LENGTH;
+        System.out.println("Other thread monotonic: " + (monotonic && total >= last));
+        // Bytes in the worker's current TLAB may not be counted yet when read from another thread.
+        System.out.println("Other thread counted: " + (total >= workerBytes / 2 && total < 2 * workerBytes));
+    }
+}